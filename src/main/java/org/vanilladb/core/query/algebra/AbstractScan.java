@@ -0,0 +1,58 @@
+package org.vanilladb.core.query.algebra;
+
+import org.vanilladb.core.sql.PrimitiveRecord;
+import org.vanilladb.core.sql.VarcharView;
+
+/**
+ * A skeletal scan which reads the fields as primitives from the record
+ * holding them, as returned by {@link #recordOf(String)}. The fields of a scan
+ * computing their values are read by converting the constants returned by
+ * {@link #getVal(String)}.
+ */
+public abstract class AbstractScan implements Scan {
+
+	@Override
+	public int getInt(String fldName) {
+		PrimitiveRecord rec = recordOf(fldName);
+		if (rec != null)
+			return rec.getInt(fldName);
+		return ((Number) getVal(fldName).asJavaVal()).intValue();
+	}
+
+	@Override
+	public long getLong(String fldName) {
+		PrimitiveRecord rec = recordOf(fldName);
+		if (rec != null)
+			return rec.getLong(fldName);
+		return ((Number) getVal(fldName).asJavaVal()).longValue();
+	}
+
+	@Override
+	public double getDouble(String fldName) {
+		PrimitiveRecord rec = recordOf(fldName);
+		if (rec != null)
+			return rec.getDouble(fldName);
+		return ((Number) getVal(fldName).asJavaVal()).doubleValue();
+	}
+
+	@Override
+	public void getVarchar(String fldName, VarcharView view) {
+		PrimitiveRecord rec = recordOf(fldName);
+		if (rec != null)
+			rec.getVarchar(fldName, view);
+		else
+			view.set((String) getVal(fldName).asJavaVal());
+	}
+
+	/**
+	 * Returns the underlying record holding the specified field, or null if
+	 * this scan computes the values of the field.
+	 * 
+	 * @param fldName
+	 *            the name of the field
+	 * @return the record holding the field, or null
+	 */
+	protected PrimitiveRecord recordOf(String fldName) {
+		return null;
+	}
+}
@@ -5,7 +5,7 @@ import java.util.ArrayList;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.VarcharConstant;
 
-public class ExplainQueryScan implements Scan{
+public class ExplainQueryScan extends AbstractScan {
 	
 	private int id;
 	private StringBuffer buff=new StringBuffer();
@@ -103,6 +103,7 @@ public class ExplainQueryScan implements Scan{
 		else
 			throw new RuntimeException("field " + fldName + " not found.");
 	}
+
 	
 	
 }
\ No newline at end of file
@@ -1,12 +1,13 @@
 package org.vanilladb.core.query.algebra;
 
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 
 /**
  * The scan class corresponding to the <em>product</em> relational algebra
  * operator.
  */
-public class ProductScan implements Scan {
+public class ProductScan extends AbstractScan {
 	private Scan s1, s2;
 	private boolean isLhsEmpty;
 
@@ -86,6 +87,11 @@ public class ProductScan implements Scan {
 			return s2.getVal(fldName);
 	}
 
+	@Override
+	protected PrimitiveRecord recordOf(String fldName) {
+		return s1.hasField(fldName) ? s1 : s2;
+	}
+
 	/**
 	 * Returns true if the specified field is in either of the underlying scans.
 	 * 
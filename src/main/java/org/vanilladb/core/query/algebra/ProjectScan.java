@@ -3,6 +3,7 @@ package org.vanilladb.core.query.algebra;
 import java.util.*;
 
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 
 
 /**
@@ -10,7 +11,7 @@ import org.vanilladb.core.sql.Constant;
  * operator. All methods except hasField delegate their work to the underlying
  * scan.
  */
-public class ProjectScan implements Scan {
+public class ProjectScan extends AbstractScan {
 	private Scan s;
 	private Collection<String> fieldList;
 
@@ -51,6 +52,14 @@ public class ProjectScan implements Scan {
 			throw new RuntimeException("field " + fldName + " not found.");
 	}
 
+	@Override
+	protected PrimitiveRecord recordOf(String fldName) {
+		if (hasField(fldName))
+			return s;
+		else
+			throw new RuntimeException("field " + fldName + " not found.");
+	}
+
 	/**
 	 * Returns true if the specified field is in the projection list.
 	 * 
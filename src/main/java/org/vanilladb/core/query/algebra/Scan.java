@@ -1,6 +1,6 @@
 package org.vanilladb.core.query.algebra;
 
-import org.vanilladb.core.sql.Record;
+import org.vanilladb.core.sql.PrimitiveRecord;
 
 /**
  * The interface will be implemented by each query scan. There is a Scan class
@@ -9,8 +9,14 @@ import org.vanilladb.core.sql.Record;
  * <p>
  * The {@link #beforeFirst()} method must be called before {@link #next()}.
  * </p>
+ * 
+ * <p>
+ * The fields can also be read as primitives. Scans over stored records read
+ * them from the pages without creating any object, while those computing
+ * their values convert the constants.
+ * </p>
  */
-public interface Scan extends Record {
+public interface Scan extends PrimitiveRecord {
 
 	/**
 	 * Positions the scan before its first record.
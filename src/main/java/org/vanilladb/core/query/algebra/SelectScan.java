@@ -1,6 +1,8 @@
 package org.vanilladb.core.query.algebra;
 
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
+import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.predicate.Predicate;
 import org.vanilladb.core.storage.record.*;
 
@@ -9,9 +11,9 @@ import org.vanilladb.core.storage.record.*;
  * The scan class corresponding to the <em>select</em> relational algebra
  * operator. All methods except next delegate their work to the underlying scan.
  */
-public class SelectScan implements UpdateScan {
+public class SelectScan extends AbstractScan implements UpdateScan {
 	private Scan s;
-	private Predicate pred;
+	private Predicate.Evaluator pred;
 
 	/**
 	 * Creates a select scan having the specified underlying scan and predicate.
@@ -22,8 +24,24 @@ public class SelectScan implements UpdateScan {
 	 *            the selection predicate
 	 */
 	public SelectScan(Scan s, Predicate pred) {
+		this(s, pred, new Schema());
+	}
+
+	/**
+	 * Creates a select scan having the specified underlying scan and predicate,
+	 * which compares the fields of the specified schema with constants as
+	 * primitives.
+	 * 
+	 * @param s
+	 *            the scan of the underlying query
+	 * @param pred
+	 *            the selection predicate
+	 * @param sch
+	 *            the schema of the underlying query
+	 */
+	public SelectScan(Scan s, Predicate pred, Schema sch) {
 		this.s = s;
-		this.pred = pred;
+		this.pred = pred.evaluator(sch);
 	}
 
 	// Scan methods
@@ -58,6 +76,11 @@ public class SelectScan implements UpdateScan {
 		return s.getVal(fldName);
 	}
 
+	@Override
+	protected PrimitiveRecord recordOf(String fldName) {
+		return s;
+	}
+
 	@Override
 	public boolean hasField(String fldName) {
 		return s.hasField(fldName);
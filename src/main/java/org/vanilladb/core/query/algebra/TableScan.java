@@ -1,6 +1,7 @@
 package org.vanilladb.core.query.algebra;
 
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.record.*;
@@ -11,7 +12,7 @@ import org.vanilladb.core.storage.tx.Transaction;
  * RecordFile object; most methods just delegate to the corresponding RecordFile
  * methods.
  */
-public class TableScan implements UpdateScan {
+public class TableScan extends AbstractScan implements UpdateScan {
 	private RecordFile rf;
 	private Schema schema;
 
@@ -55,6 +56,11 @@ public class TableScan implements UpdateScan {
 		return rf.getVal(fldName);
 	}
 
+	@Override
+	protected PrimitiveRecord recordOf(String fldName) {
+		return rf;
+	}
+
 	@Override
 	public boolean hasField(String fldName) {
 		return schema.hasField(fldName);
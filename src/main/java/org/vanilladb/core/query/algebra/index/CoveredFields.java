@@ -0,0 +1,99 @@
+package org.vanilladb.core.query.algebra.index;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vanilladb.core.sql.CompositeConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.VarcharView;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+
+/**
+ * The fields whose values the records of an index hold, as the components of
+ * the keys or as the included values. A scan over the index reads these fields
+ * from the current index record, and fetches the data record only for the
+ * other fields. A scan fetching the data records in {@link SortedFetchBatch
+ * batches} reads these fields from the current record of the batch instead.
+ */
+class CoveredFields {
+	private boolean compositeKey;
+	// the component positions of the fields in the keys and included values
+	private Map<String, Integer> keyPos = new HashMap<String, Integer>(),
+			inclPos = new HashMap<String, Integer>();
+
+	/**
+	 * Finds the fields covered by the specified index.
+	 * 
+	 * @param ii
+	 *            information about the index
+	 */
+	CoveredFields(IndexInfo ii) {
+		if (!ii.covers(ii.fieldName()))
+			return;
+		List<String> flds = ii.fieldNames();
+		compositeKey = flds.size() > 1;
+		for (int i = 0; i < flds.size(); i++)
+			keyPos.put(flds.get(i), i);
+		List<String> incls = ii.includedFields();
+		for (int i = 0; i < incls.size(); i++)
+			inclPos.put(incls.get(i), i);
+	}
+
+	/**
+	 * Returns true if the index records hold the value of the specified
+	 * field.
+	 */
+	boolean covers(String fldName) {
+		return keyPos.containsKey(fldName) || inclPos.containsKey(fldName);
+	}
+
+	/**
+	 * Returns true if some covered fields are components of the keys.
+	 */
+	boolean coversKey() {
+		return !keyPos.isEmpty();
+	}
+
+	/**
+	 * Returns true if some covered fields are included values.
+	 */
+	boolean coversIncludedValues() {
+		return !inclPos.isEmpty();
+	}
+
+	/**
+	 * Returns the value of the specified covered field in the current record
+	 * of the specified batch, or of the specified index if the batch is null.
+	 */
+	Constant getVal(Index idx, SortedFetchBatch batch, String fldName) {
+		Integer pos = keyPos.get(fldName);
+		if (pos != null) {
+			Constant key = batch != null ? batch.getKey() : idx.getKey();
+			return compositeKey ? ((CompositeConstant) key).component(pos)
+					: key;
+		}
+		Constant inclVals = batch != null ? batch.getIncludedValues() : idx
+				.getIncludedValues();
+		return ((CompositeConstant) inclVals).component(inclPos.get(fldName));
+	}
+
+	int getInt(Index idx, SortedFetchBatch batch, String fldName) {
+		return ((Number) getVal(idx, batch, fldName).asJavaVal()).intValue();
+	}
+
+	long getLong(Index idx, SortedFetchBatch batch, String fldName) {
+		return ((Number) getVal(idx, batch, fldName).asJavaVal()).longValue();
+	}
+
+	double getDouble(Index idx, SortedFetchBatch batch, String fldName) {
+		return ((Number) getVal(idx, batch, fldName).asJavaVal())
+				.doubleValue();
+	}
+
+	void getVarchar(Index idx, SortedFetchBatch batch, String fldName,
+			VarcharView view) {
+		view.set((String) getVal(idx, batch, fldName).asJavaVal());
+	}
+}
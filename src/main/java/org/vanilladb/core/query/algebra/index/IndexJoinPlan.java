@@ -16,7 +16,10 @@ import org.vanilladb.core.storage.tx.Transaction;
 
 /**
  * The {@link Plan} class corresponding to the <em>indexjoin</em> relational
- * algebra operator.
+ * algebra operator. If many RHS records match each LHS record, the scan
+ * fetches them in {@link SortedFetchBatch batches} sorted by their record IDs.
+ * The LHS records are read in {@link ProbeBatch batches}, so the index is
+ * searched once for each distinct join value of a batch.
  */
 public class IndexJoinPlan extends AbstractJoinPlan {
 	private Plan p1;
@@ -26,6 +29,7 @@ public class IndexJoinPlan extends AbstractJoinPlan {
 	private Schema schema = new Schema();
 	private Transaction tx;
 	private Histogram hist;
+	private boolean sortedFetch, batchedProbe;
 
 	/**
 	 * Implements the join operator, using the specified LHS and RHS plans.
@@ -52,6 +56,8 @@ public class IndexJoinPlan extends AbstractJoinPlan {
 		schema.addAll(tp2.schema());
 		hist = joinHistogram(p1.histogram(), tp2.histogram(), joinField,
 				ii.fieldName());
+		sortedFetch = matchesPerRecord() >= SortedFetchBatch.MIN_FETCHES;
+		batchedProbe = ProbeBatch.BATCH_SIZE > 1;
 	}
 
 	/**
@@ -65,7 +71,8 @@ public class IndexJoinPlan extends AbstractJoinPlan {
 		// throws an exception if p2 is not a tableplan
 		TableScan ts = (TableScan) tp2.open();
 		Index idx = ii.open(tx);
-		return new IndexJoinScan(s, idx, joinField, ts);
+		return new IndexJoinScan(s, batchedProbe ? p1.schema() : null, idx,
+				ii, joinField, ts, sortedFetch);
 	}
 
 	/**
@@ -77,15 +84,36 @@ public class IndexJoinPlan extends AbstractJoinPlan {
 	 *       + R(indexjoin(p1,p2,idx)
 	 * </pre>
 	 * 
+	 * If the LHS records are read in batches, the index is searched once for
+	 * each distinct join value of a batch rather than R(p1) times. If the
+	 * matching records of a LHS record are fetched in sorted batches, they
+	 * cost no more than a scan of the RHS table.
+	 * 
 	 * @see Plan#blocksAccessed()
 	 */
 	@Override
 	public long blocksAccessed() {
 		// block accesses to search for a join record in the index
 		long searchCost = Index.searchCost(ii.indexType(),
-				schema().type(ii.fieldName()), tp2.recordsOutput(), 1);
-		return p1.blocksAccessed() + (p1.recordsOutput() * searchCost)
-				+ recordsOutput();
+				ii.keyType(tp2.schema()), tp2.recordsOutput(), 1);
+		long searches = p1.recordsOutput();
+		if (batchedProbe) {
+			long batches = (searches + ProbeBatch.BATCH_SIZE - 1)
+					/ ProbeBatch.BATCH_SIZE;
+			double joinVals = p1.histogram().distinctValues(joinField);
+			searches = Math.min(searches, batches * (long) Math.ceil(joinVals));
+		}
+		long fetches = recordsOutput();
+		if (sortedFetch)
+			fetches = p1.recordsOutput()
+					* Math.min(matchesPerRecord(), tp2.blocksAccessed());
+		return p1.blocksAccessed() + (searches * searchCost) + fetches;
+	}
+
+	// the estimated number of RHS records matching a LHS record
+	private long matchesPerRecord() {
+		long lhsRecords = p1.recordsOutput();
+		return lhsRecords == 0 ? 0 : recordsOutput() / lhsRecords;
 	}
 
 	/**
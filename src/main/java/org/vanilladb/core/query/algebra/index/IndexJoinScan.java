@@ -1,16 +1,32 @@
 package org.vanilladb.core.query.algebra.index;
 
 import org.vanilladb.core.query.algebra.*;
+import java.util.Collections;
+
+import org.vanilladb.core.sql.CompositeConstantRange;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharView;
 import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
 
 
 /**
  * The scan class corresponding to the indexjoin relational algebra operator.
  * The code is very similar to that of ProductScan, which makes sense because an
  * index join is essentially the product of each LHS record with the matching
- * RHS index records.
+ * RHS index records. As in {@link IndexSelectScan}, the RHS data record is
+ * fetched only when a field not in the index is read, and the matching
+ * records of a LHS record may be fetched in {@link SortedFetchBatch batches}
+ * sorted by their record IDs.
+ * <p>
+ * The scan may also read the LHS records in {@link ProbeBatch batches}, and
+ * search the index once for each distinct join value of a batch, in ascending
+ * order, rather than once for each LHS record. Each matching index record is
+ * then joined with all the LHS records having its join value, and the results
+ * are ordered by the join values within each batch.
+ * </p>
  */
 public class IndexJoinScan implements Scan {
 	private Scan s;
@@ -18,24 +34,93 @@ public class IndexJoinScan implements Scan {
 	private Index idx;
 	private String joinField;
 	private boolean isLhsEmpty;
+	private boolean compositeKey;
+	private CoveredFields covered;
+	private boolean isFetched;
+	// null if the records are fetched in the order of the index
+	private SortedFetchBatch fetchBatch;
+	// null if the index is searched for each LHS record
+	private ProbeBatch probeBatch;
+	// true if the index is searched for the current group of the probe batch
+	private boolean isProbing;
+
+	/**
+	 * Creates an index join scan for the specified LHS scan and RHS index. If
+	 * the index is on several fields, the join value is matched against the
+	 * first one.
+	 * 
+	 * @param s
+	 *            the LHS scan
+	 * @param idx
+	 *            the RHS index
+	 * @param ii
+	 *            information about the RHS index
+	 * @param joinField
+	 *            the LHS field used for joining
+	 * @param ts
+	 *            the table scan of data table
+	 */
+	public IndexJoinScan(Scan s, Index idx, IndexInfo ii, String joinField,
+			TableScan ts) {
+		this(s, idx, ii, joinField, ts, false);
+	}
+
+	/**
+	 * Creates an index join scan for the specified LHS scan and RHS index,
+	 * which fetches the matching RHS data records of each LHS record in
+	 * batches sorted by their record IDs if specified.
+	 * 
+	 * @param s
+	 *            the LHS scan
+	 * @param idx
+	 *            the RHS index
+	 * @param ii
+	 *            information about the RHS index
+	 * @param joinField
+	 *            the LHS field used for joining
+	 * @param ts
+	 *            the table scan of data table
+	 * @param sortedFetch
+	 *            whether to fetch the RHS data records in sorted batches
+	 */
+	public IndexJoinScan(Scan s, Index idx, IndexInfo ii, String joinField,
+			TableScan ts, boolean sortedFetch) {
+		this(s, null, idx, ii, joinField, ts, sortedFetch);
+	}
 
 	/**
-	 * Creates an index join scan for the specified LHS scan and RHS index.
+	 * Creates an index join scan for the specified LHS scan and RHS index,
+	 * which reads the LHS records in batches to search the index once for
+	 * each distinct join value of a batch if the LHS schema is specified.
 	 * 
 	 * @param s
 	 *            the LHS scan
+	 * @param lhsSchema
+	 *            the schema of the LHS records to read in batches, or null to
+	 *            search the index for each LHS record
 	 * @param idx
 	 *            the RHS index
+	 * @param ii
+	 *            information about the RHS index
 	 * @param joinField
 	 *            the LHS field used for joining
 	 * @param ts
 	 *            the table scan of data table
+	 * @param sortedFetch
+	 *            whether to fetch the RHS data records in sorted batches
 	 */
-	public IndexJoinScan(Scan s, Index idx, String joinField, TableScan ts) {
+	public IndexJoinScan(Scan s, Schema lhsSchema, Index idx, IndexInfo ii,
+			String joinField, TableScan ts, boolean sortedFetch) {
 		this.s = s;
 		this.idx = idx;
 		this.joinField = joinField;
 		this.ts = ts;
+		compositeKey = ii.fieldNames().size() > 1;
+		covered = new CoveredFields(ii);
+		if (sortedFetch)
+			fetchBatch = new SortedFetchBatch(covered);
+		if (lhsSchema != null)
+			probeBatch = new ProbeBatch(lhsSchema, joinField);
 		beforeFirst();
 	}
 
@@ -49,9 +134,14 @@ public class IndexJoinScan implements Scan {
 	@Override
 	public void beforeFirst() {
 		s.beforeFirst();
+		if (probeBatch != null) {
+			probeBatch.reset();
+			isProbing = false;
+			return;
+		}
 		isLhsEmpty = !s.next();// in the case that s may be empty
 		if (!isLhsEmpty)
-			resetIndex();
+			resetIndex(s.getVal(joinField));
 	}
 
 	/**
@@ -64,13 +154,15 @@ public class IndexJoinScan implements Scan {
 	 */
 	@Override
 	public boolean next() {
+		if (probeBatch != null)
+			return nextProbe();
 		if (isLhsEmpty)
 			return false;
-		if (idx.next()) {
-			ts.moveToRecordId(idx.getDataRecordId());
+		isFetched = false;
+		if (nextIndexRecord())
 			return true;
-		} else if (!(isLhsEmpty = !s.next())) {
-			resetIndex();
+		else if (!(isLhsEmpty = !s.next())) {
+			resetIndex(s.getVal(joinField));
 			return next();
 		} else
 			return false;
@@ -95,10 +187,58 @@ public class IndexJoinScan implements Scan {
 	 */
 	@Override
 	public Constant getVal(String fldName) {
-		if (ts.hasField(fldName))
-			return ts.getVal(fldName);
+		if (covered.covers(fldName))
+			return covered.getVal(idx, fetchBatch, fldName);
+		else if (ts.hasField(fldName))
+			return dataRecord().getVal(fldName);
+		else
+			return probeBatch != null ? probeBatch.getVal(fldName) : s
+					.getVal(fldName);
+	}
+
+	@Override
+	public int getInt(String fldName) {
+		if (covered.covers(fldName))
+			return covered.getInt(idx, fetchBatch, fldName);
+		else if (ts.hasField(fldName))
+			return dataRecord().getInt(fldName);
+		else
+			return probeBatch != null ? probeBatch.getInt(fldName) : s
+					.getInt(fldName);
+	}
+
+	@Override
+	public long getLong(String fldName) {
+		if (covered.covers(fldName))
+			return covered.getLong(idx, fetchBatch, fldName);
+		else if (ts.hasField(fldName))
+			return dataRecord().getLong(fldName);
+		else
+			return probeBatch != null ? probeBatch.getLong(fldName) : s
+					.getLong(fldName);
+	}
+
+	@Override
+	public double getDouble(String fldName) {
+		if (covered.covers(fldName))
+			return covered.getDouble(idx, fetchBatch, fldName);
+		else if (ts.hasField(fldName))
+			return dataRecord().getDouble(fldName);
 		else
-			return s.getVal(fldName);
+			return probeBatch != null ? probeBatch.getDouble(fldName) : s
+					.getDouble(fldName);
+	}
+
+	@Override
+	public void getVarchar(String fldName, VarcharView view) {
+		if (covered.covers(fldName))
+			covered.getVarchar(idx, fetchBatch, fldName, view);
+		else if (ts.hasField(fldName))
+			dataRecord().getVarchar(fldName, view);
+		else if (probeBatch != null)
+			probeBatch.getVarchar(fldName, view);
+		else
+			s.getVarchar(fldName, view);
 	}
 
 	/**
@@ -111,9 +251,48 @@ public class IndexJoinScan implements Scan {
 		return ts.hasField(fldName) || s.hasField(fldName);
 	}
 
-	private void resetIndex() {
-		Constant searchkey = s.getVal(joinField);
-		idx.beforeFirst(ConstantRange.newInstance(searchkey));
+	/**
+	 * Moves to the next pair of a matching index record and a LHS record of
+	 * the current group, moving to the next group and searching the index
+	 * for its join value once the index records of the group are consumed.
+	 */
+	private boolean nextProbe() {
+		while (true) {
+			if (probeBatch.next())
+				return true;
+			isFetched = false;
+			if (isProbing && nextIndexRecord()) {
+				probeBatch.beforeGroup();
+				continue;
+			}
+			isProbing = probeBatch.nextGroup(s);
+			if (!isProbing)
+				return false;
+			resetIndex(probeBatch.joinValue());
+		}
+	}
+
+	private boolean nextIndexRecord() {
+		return fetchBatch != null ? fetchBatch.next(idx) : idx.next();
+	}
+
+	private void resetIndex(Constant searchkey) {
+		if (compositeKey)
+			idx.beforeFirst(CompositeConstantRange.newInstance(Collections
+					.singletonList(searchkey), null));
+		else
+			idx.beforeFirst(ConstantRange.newInstance(searchkey));
+		if (fetchBatch != null)
+			fetchBatch.reset();
+	}
+
+	private TableScan dataRecord() {
+		if (!isFetched) {
+			ts.moveToRecordId(fetchBatch != null ? fetchBatch
+					.getDataRecordId() : idx.getDataRecordId());
+			isFetched = true;
+		}
+		return ts;
 	}
 
 }
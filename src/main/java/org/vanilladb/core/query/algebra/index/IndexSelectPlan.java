@@ -19,7 +19,8 @@ import org.vanilladb.core.storage.tx.Transaction;
 
 /**
  * The Plan class corresponding to the <em>indexselect</em> relational algebra
- * operator.
+ * operator. If many records are selected, the scan fetches them in
+ * {@link SortedFetchBatch batches} sorted by their record IDs.
  */
 public class IndexSelectPlan implements Plan {
 	private TablePlan tp;
@@ -27,6 +28,7 @@ public class IndexSelectPlan implements Plan {
 	private ConstantRange searchRange;
 	private Transaction tx;
 	private Histogram hist;
+	private boolean sortedFetch;
 
 	/**
 	 * Creates a new indexselect node in the query tree for the specified index
@@ -43,13 +45,43 @@ public class IndexSelectPlan implements Plan {
 	 */
 	public IndexSelectPlan(TablePlan tp, IndexInfo ii,
 			ConstantRange searchRange, Transaction tx) {
+		this(tp, ii, searchRange, singletonRange(ii.fieldName(),
+				searchRange), tx);
+	}
+
+	/**
+	 * Creates a new indexselect node in the query tree for the specified index
+	 * and search range, which is made up of the specified ranges of the
+	 * indexed fields if the index is on several fields.
+	 * 
+	 * @param tp
+	 *            the input table plan
+	 * @param ii
+	 *            information about the index
+	 * @param searchRange
+	 *            the range of search keys
+	 * @param fldRanges
+	 *            the ranges of the indexed fields that the search range is
+	 *            made up of
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public IndexSelectPlan(TablePlan tp, IndexInfo ii,
+			ConstantRange searchRange, Map<String, ConstantRange> fldRanges,
+			Transaction tx) {
 		this.tp = tp;
 		this.ii = ii;
 		this.searchRange = searchRange;
 		this.tx = tx;
+		hist = SelectPlan.constantRangeHistogram(tp.histogram(), fldRanges);
+		sortedFetch = recordsOutput() >= SortedFetchBatch.MIN_FETCHES;
+	}
+
+	private static Map<String, ConstantRange> singletonRange(String fldName,
+			ConstantRange range) {
 		Map<String, ConstantRange> ranges = new HashMap<String, ConstantRange>();
-		ranges.put(ii.fieldName(), searchRange);
-		hist = SelectPlan.constantRangeHistogram(tp.histogram(), ranges);
+		ranges.put(fldName, range);
+		return ranges;
 	}
 
 	/**
@@ -62,20 +94,24 @@ public class IndexSelectPlan implements Plan {
 		// throws an exception if p is not a tableplan.
 		TableScan ts = (TableScan) tp.open();
 		Index idx = ii.open(tx);
-		return new IndexSelectScan(idx, searchRange, ts);
+		return new IndexSelectScan(idx, ii, searchRange, ts, sortedFetch);
 	}
 
 	/**
 	 * Estimates the number of block accesses to compute the index selection,
 	 * which is the same as the index traversal cost plus the number of matching
-	 * data records.
+	 * data records. If the records are fetched in sorted batches, a data block
+	 * is read at most once, so the data table costs no more than a scan of it.
 	 * 
 	 * @see Plan#blocksAccessed()
 	 */
 	@Override
 	public long blocksAccessed() {
-		return Index.searchCost(ii.indexType(), schema().type(ii.fieldName()),
-				tp.recordsOutput(), recordsOutput()) + recordsOutput();
+		long fetches = recordsOutput();
+		if (sortedFetch)
+			fetches = Math.min(fetches, tp.blocksAccessed());
+		return Index.searchCost(ii.indexType(), ii.keyType(schema()),
+				tp.recordsOutput(), recordsOutput()) + fetches;
 	}
 
 	/**
@@ -3,32 +3,70 @@ package org.vanilladb.core.query.algebra.index;
 import org.vanilladb.core.query.algebra.*;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.VarcharView;
 import org.vanilladb.core.storage.index.Index;
-import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
 
 
 /**
  * The scan class corresponding to the select relational algebra operator.
+ * The fields held by the index records are read from the index, and the data
+ * record is fetched only when another field is read, so a query reading only
+ * those fields is answered from the index alone. A scan expecting many
+ * records may fetch the data records in {@link SortedFetchBatch batches}, in
+ * the order of their record IDs rather than of the keys.
  */
 public class IndexSelectScan implements Scan {
 	private Index idx;
 	private TableScan ts;
 	private ConstantRange searchRange;
+	private CoveredFields covered;
+	// null if the records are fetched in the order of the index
+	private SortedFetchBatch batch;
+	// true if the table scan is at the data record of the index record
+	private boolean isFetched;
 
 	/**
 	 * Creates an index select scan for the specified index and search range.
 	 * 
 	 * @param idx
 	 *            the index
+	 * @param ii
+	 *            information about the index
 	 * @param searchRange
 	 *            the range of search keys
 	 * @param ts
 	 *            the table scan of data table
 	 */
-	public IndexSelectScan(Index idx, ConstantRange searchRange, TableScan ts) {
+	public IndexSelectScan(Index idx, IndexInfo ii,
+			ConstantRange searchRange, TableScan ts) {
+		this(idx, ii, searchRange, ts, false);
+	}
+
+	/**
+	 * Creates an index select scan for the specified index and search range,
+	 * which fetches the data records in batches sorted by their record IDs if
+	 * specified.
+	 * 
+	 * @param idx
+	 *            the index
+	 * @param ii
+	 *            information about the index
+	 * @param searchRange
+	 *            the range of search keys
+	 * @param ts
+	 *            the table scan of data table
+	 * @param sortedFetch
+	 *            whether to fetch the data records in sorted batches
+	 */
+	public IndexSelectScan(Index idx, IndexInfo ii,
+			ConstantRange searchRange, TableScan ts, boolean sortedFetch) {
 		this.idx = idx;
+		this.covered = new CoveredFields(ii);
 		this.searchRange = searchRange;
 		this.ts = ts;
+		if (sortedFetch)
+			batch = new SortedFetchBatch(covered);
 		beforeFirst();
 	}
 
@@ -42,24 +80,22 @@ public class IndexSelectScan implements Scan {
 	@Override
 	public void beforeFirst() {
 		idx.beforeFirst(searchRange);
+		if (batch != null)
+			batch.reset();
 	}
 
 	/**
 	 * Moves to the next record, which in this case means moving the index to
 	 * the next record satisfying the selection constant, and returning false if
-	 * there are no more such index records. If there is a next record, the
-	 * method moves the tablescan to the corresponding data record.
+	 * there are no more such index records. The tablescan is moved to the
+	 * corresponding data record when a field not in the index is read.
 	 * 
 	 * @see Scan#next()
 	 */
 	@Override
 	public boolean next() {
-		boolean ok = idx.next();
-		if (ok) {
-			RecordId rid = idx.getDataRecordId();
-			ts.moveToRecordId(rid);
-		}
-		return ok;
+		isFetched = false;
+		return batch != null ? batch.next(idx) : idx.next();
 	}
 
 	/**
@@ -80,7 +116,38 @@ public class IndexSelectScan implements Scan {
 	 */
 	@Override
 	public Constant getVal(String fldName) {
-		return ts.getVal(fldName);
+		if (covered.covers(fldName))
+			return covered.getVal(idx, batch, fldName);
+		return dataRecord().getVal(fldName);
+	}
+
+	@Override
+	public int getInt(String fldName) {
+		if (covered.covers(fldName))
+			return covered.getInt(idx, batch, fldName);
+		return dataRecord().getInt(fldName);
+	}
+
+	@Override
+	public long getLong(String fldName) {
+		if (covered.covers(fldName))
+			return covered.getLong(idx, batch, fldName);
+		return dataRecord().getLong(fldName);
+	}
+
+	@Override
+	public double getDouble(String fldName) {
+		if (covered.covers(fldName))
+			return covered.getDouble(idx, batch, fldName);
+		return dataRecord().getDouble(fldName);
+	}
+
+	@Override
+	public void getVarchar(String fldName, VarcharView view) {
+		if (covered.covers(fldName))
+			covered.getVarchar(idx, batch, fldName, view);
+		else
+			dataRecord().getVarchar(fldName, view);
 	}
 
 	/**
@@ -92,4 +159,13 @@ public class IndexSelectScan implements Scan {
 	public boolean hasField(String fldName) {
 		return ts.hasField(fldName);
 	}
+
+	private TableScan dataRecord() {
+		if (!isFetched) {
+			ts.moveToRecordId(batch != null ? batch.getDataRecordId() : idx
+					.getDataRecordId());
+			isFetched = true;
+		}
+		return ts;
+	}
 }
@@ -0,0 +1,158 @@
+package org.vanilladb.core.query.algebra.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharView;
+
+/**
+ * A batch of the next records of the LHS scan of an index join, sorted by
+ * their join values. The records having the same join value form a group, so
+ * the index is searched once for each distinct join value of a batch, in
+ * ascending order. A B-tree index then reuses its current leaf for the next
+ * value if the value is in it.
+ */
+class ProbeBatch {
+	/**
+	 * The number of LHS records read into a batch.
+	 */
+	static final int BATCH_SIZE;
+
+	static {
+		String prop = System.getProperty(ProbeBatch.class.getName()
+				+ ".BATCH_SIZE");
+		BATCH_SIZE = (prop == null ? 512 : Math.max(1, Integer.parseInt(prop
+				.trim())));
+	}
+
+	private List<String> fields;
+	private String joinField;
+	private List<Map<String, Constant>> records;
+	// the current group is from groupStart (inclusive) to groupEnd
+	private int groupStart, groupEnd, pos;
+	private boolean isLhsDone;
+
+	/**
+	 * Creates an empty batch for the LHS records of the specified schema.
+	 * 
+	 * @param lhsSchema
+	 *            the schema of the LHS records
+	 * @param joinField
+	 *            the LHS field used for joining
+	 */
+	ProbeBatch(Schema lhsSchema, String joinField) {
+		this.fields = new ArrayList<String>(lhsSchema.fields());
+		this.joinField = joinField;
+		records = new ArrayList<Map<String, Constant>>();
+	}
+
+	/**
+	 * Empties the batch. This method should be called after the LHS scan is
+	 * positioned before its first record.
+	 */
+	void reset() {
+		records.clear();
+		groupStart = groupEnd = pos = 0;
+		isLhsDone = false;
+	}
+
+	/**
+	 * Moves to the next group of records having the same join value, reading
+	 * the next batch from the specified LHS scan if this one is consumed. The
+	 * batch is positioned after the last record of the group, so
+	 * {@link #beforeGroup()} must be called before its records are read.
+	 * 
+	 * @param s
+	 *            the LHS scan
+	 * @return false if there are no more LHS records
+	 */
+	boolean nextGroup(Scan s) {
+		if (groupEnd >= records.size() && !fill(s))
+			return false;
+		groupStart = groupEnd;
+		Constant val = records.get(groupStart).get(joinField);
+		groupEnd = groupStart + 1;
+		while (groupEnd < records.size()
+				&& records.get(groupEnd).get(joinField).compareTo(val) == 0)
+			groupEnd++;
+		pos = groupEnd;
+		return true;
+	}
+
+	/**
+	 * Positions the batch before the first record of the current group.
+	 */
+	void beforeGroup() {
+		pos = groupStart - 1;
+	}
+
+	/**
+	 * Moves to the next record of the current group.
+	 * 
+	 * @return false if there are no more records in the group
+	 */
+	boolean next() {
+		if (pos >= groupEnd)
+			return false;
+		return ++pos < groupEnd;
+	}
+
+	/**
+	 * Returns the join value of the current group.
+	 * 
+	 * @return the join value
+	 */
+	Constant joinValue() {
+		return records.get(groupStart).get(joinField);
+	}
+
+	Constant getVal(String fldName) {
+		return records.get(pos).get(fldName);
+	}
+
+	int getInt(String fldName) {
+		return ((Number) getVal(fldName).asJavaVal()).intValue();
+	}
+
+	long getLong(String fldName) {
+		return ((Number) getVal(fldName).asJavaVal()).longValue();
+	}
+
+	double getDouble(String fldName) {
+		return ((Number) getVal(fldName).asJavaVal()).doubleValue();
+	}
+
+	void getVarchar(String fldName, VarcharView view) {
+		view.set((String) getVal(fldName).asJavaVal());
+	}
+
+	private boolean fill(Scan s) {
+		records.clear();
+		groupStart = groupEnd = pos = 0;
+		while (!isLhsDone && records.size() < BATCH_SIZE) {
+			if (!s.next()) {
+				isLhsDone = true;
+				break;
+			}
+			Map<String, Constant> rec = new HashMap<String, Constant>();
+			for (String fld : fields)
+				rec.put(fld, s.getVal(fld));
+			records.add(rec);
+		}
+		Collections.sort(records, new Comparator<Map<String, Constant>>() {
+			@Override
+			public int compare(Map<String, Constant> r1,
+					Map<String, Constant> r2) {
+				return r1.get(joinField).compareTo(r2.get(joinField));
+			}
+		});
+		return !records.isEmpty();
+	}
+}
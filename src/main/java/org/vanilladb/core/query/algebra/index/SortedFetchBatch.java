@@ -0,0 +1,129 @@
+package org.vanilladb.core.query.algebra.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.record.RecordId;
+
+/**
+ * A batch of the next records of an index, sorted by the IDs of their data
+ * records. A scan fetching the data records of a batch in that order reads
+ * each data block once, in ascending order, rather than once for each of its
+ * records in the order of the keys. The records of the index are thus
+ * returned in the order of their data records within each batch.
+ * <p>
+ * The keys and included values of the index records are kept in the batch if
+ * the scan reads them, since the index has moved on when they are read.
+ * </p>
+ */
+class SortedFetchBatch {
+	/**
+	 * The number of index records sorted at once.
+	 */
+	static final int BATCH_SIZE;
+
+	/**
+	 * The least estimated number of data records fetched for a search of an
+	 * index for which the records are fetched in batches.
+	 */
+	static final long MIN_FETCHES;
+
+	static {
+		String prop = System.getProperty(SortedFetchBatch.class.getName()
+				+ ".BATCH_SIZE");
+		BATCH_SIZE = (prop == null ? 1024 : Math.max(1, Integer.parseInt(prop
+				.trim())));
+		prop = System.getProperty(SortedFetchBatch.class.getName()
+				+ ".MIN_FETCHES");
+		MIN_FETCHES = (prop == null ? 32 : Long.parseLong(prop.trim()));
+	}
+
+	private static final Comparator<Entry> RID_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			int cmp = Long.compare(e1.rid.block().number(), e2.rid.block()
+					.number());
+			return cmp != 0 ? cmp : Integer.compare(e1.rid.id(), e2.rid.id());
+		}
+	};
+
+	private static class Entry {
+		RecordId rid;
+		Constant key, inclVals;
+	}
+
+	private List<Entry> entries = new ArrayList<Entry>();
+	private int pos;
+	private boolean isIndexDone;
+	private boolean keepKey, keepInclVals;
+
+	/**
+	 * Creates an empty batch keeping the values of the specified covered
+	 * fields.
+	 * 
+	 * @param covered
+	 *            the fields read from the index records
+	 */
+	SortedFetchBatch(CoveredFields covered) {
+		keepKey = covered.coversKey();
+		keepInclVals = covered.coversIncludedValues();
+	}
+
+	/**
+	 * Empties the batch. This method should be called after the index is
+	 * positioned before its first record of a search.
+	 */
+	void reset() {
+		entries.clear();
+		pos = 0;
+		isIndexDone = false;
+	}
+
+	/**
+	 * Moves to the next record of the batch, reading the next batch from the
+	 * specified index if this one is consumed.
+	 * 
+	 * @param idx
+	 *            the index
+	 * @return false if there are no more index records
+	 */
+	boolean next(Index idx) {
+		if (++pos < entries.size())
+			return true;
+		if (isIndexDone)
+			return false;
+		entries.clear();
+		while (entries.size() < BATCH_SIZE) {
+			if (!idx.next()) {
+				isIndexDone = true;
+				break;
+			}
+			Entry e = new Entry();
+			e.rid = idx.getDataRecordId();
+			if (keepKey)
+				e.key = idx.getKey();
+			if (keepInclVals)
+				e.inclVals = idx.getIncludedValues();
+			entries.add(e);
+		}
+		Collections.sort(entries, RID_ORDER);
+		pos = 0;
+		return !entries.isEmpty();
+	}
+
+	RecordId getDataRecordId() {
+		return entries.get(pos).rid;
+	}
+
+	Constant getKey() {
+		return entries.get(pos).key;
+	}
+
+	Constant getIncludedValues() {
+		return entries.get(pos).inclVals;
+	}
+}
@@ -4,13 +4,14 @@ package org.vanilladb.core.query.algebra.materialize;
 import java.util.*;
 
 import org.vanilladb.core.query.algebra.*;
+import org.vanilladb.core.query.algebra.AbstractScan;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.aggfn.AggregationFn;
 
 /**
  * The Scan class for the <em>groupby</em> operator.
  */
-public class GroupByScan implements Scan {
+public class GroupByScan extends AbstractScan {
 	private Scan ss;
 	private Collection<String> groupFlds;
 	private Collection<AggregationFn> aggFns;
@@ -1,6 +1,6 @@
 package org.vanilladb.core.query.algebra.materialize;
 
-import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
+import static org.vanilladb.core.storage.file.Page.TEMP_BLOCK_SIZE;
 
 import java.util.ArrayList;
 
@@ -67,7 +67,7 @@ public class MaterializePlan implements Plan {
 	public long blocksAccessed() {
 		// create a dummy TableInfo object to calculate record size
 		TableInfo ti = new TableInfo("", p.schema());
-		double rpb = (double) (BLOCK_SIZE / ti.recordSize());
+		double rpb = (double) (TEMP_BLOCK_SIZE / ti.recordSize());
 		return (int) Math.ceil(p.recordsOutput() / rpb);
 	}
 
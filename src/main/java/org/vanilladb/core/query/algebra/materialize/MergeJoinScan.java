@@ -1,13 +1,15 @@
 package org.vanilladb.core.query.algebra.materialize;
 
 import org.vanilladb.core.query.algebra.*;
+import org.vanilladb.core.query.algebra.AbstractScan;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 
 
 /**
  * The Scan class for the <em>mergejoin</em> operator.
  */
-public class MergeJoinScan implements Scan {
+public class MergeJoinScan extends AbstractScan {
 	private SortScan ss1;
 	private SortScan ss2;
 	private String fldName1, fldName2;
@@ -111,6 +113,11 @@ public class MergeJoinScan implements Scan {
 			return ss2.getVal(fldName);
 	}
 
+	@Override
+	protected PrimitiveRecord recordOf(String fldName) {
+		return ss1.hasField(fldName) ? ss1 : ss2;
+	}
+
 	/**
 	 * Returns true if the specified field is in either of the underlying scans.
 	 * 
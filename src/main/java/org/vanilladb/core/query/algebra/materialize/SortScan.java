@@ -4,7 +4,9 @@ package org.vanilladb.core.query.algebra.materialize;
 import java.util.*;
 
 import org.vanilladb.core.query.algebra.*;
+import org.vanilladb.core.query.algebra.AbstractScan;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 import org.vanilladb.core.sql.RecordComparator;
 import org.vanilladb.core.storage.record.RecordId;
 
@@ -12,7 +14,7 @@ import org.vanilladb.core.storage.record.RecordId;
  * The Scan class for the <em>sort</em> operator.
  * 
  */
-public class SortScan implements Scan {
+public class SortScan extends AbstractScan {
 	private UpdateScan s1, s2 = null, currentScan = null;
 	private RecordComparator comp;
 	private boolean hasMore1, hasMore2 = false;
@@ -107,6 +109,11 @@ public class SortScan implements Scan {
 		return currentScan.getVal(fldName);
 	}
 
+	@Override
+	protected PrimitiveRecord recordOf(String fldName) {
+		return currentScan;
+	}
+
 	/**
 	 * Returns true if the specified field is in the current scan.
 	 * 
@@ -15,11 +15,13 @@ public class BufferNeeds {
 	 * 
 	 * @param size
 	 *            the size of the output file
+	 * @param fileName
+	 *            the name of the output file
 	 * @return the highest number less than the number of available buffers,
 	 *         that is a root of the plan's output size
 	 */
-	public static int bestRoot(long size) {
-		int avail = VanillaDB.bufferMgr().available();
+	public static int bestRoot(long size, String fileName) {
+		int avail = VanillaDB.bufferMgr().available(fileName);
 		if (avail <= 1)
 			return 1;
 		int k = Integer.MAX_VALUE;
@@ -38,11 +40,13 @@ public class BufferNeeds {
 	 * 
 	 * @param size
 	 *            the size of the output file
+	 * @param fileName
+	 *            the name of the output file
 	 * @return the highest number less than the number of available buffers,
 	 *         that is a factor of the plan's output size
 	 */
-	public static int bestFactor(long size) {
-		int avail = VanillaDB.bufferMgr().available();
+	public static int bestFactor(long size, String fileName) {
+		int avail = VanillaDB.bufferMgr().available(fileName);
 		if (avail <= 1)
 			return 1;
 		long k = size;
@@ -4,8 +4,11 @@ package org.vanilladb.core.query.algebra.multibuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.vanilladb.core.query.algebra.AbstractScan;
 import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.metadata.TableInfo;
@@ -15,7 +18,7 @@ import org.vanilladb.core.storage.tx.Transaction;
 /**
  * The class for the <em>chunk</em> operator.
  */
-public class ChunkScan implements Scan {
+public class ChunkScan extends AbstractScan {
 	private List<RecordPage> pages;
 	private long startBlkNum, endBlkNum, current;
 	private Schema schema;
@@ -41,6 +44,9 @@ public class ChunkScan implements Scan {
 		this.endBlkNum = endBlkNum;
 		this.schema = ti.schema();
 		this.fileName = ti.fileName();
+		// the pins below wait for the blocks being prefetched
+		VanillaDB.bufferMgr().prefetch(fileName, startBlkNum,
+				(int) (endBlkNum - startBlkNum + 1));
 		for (long i = startBlkNum; i <= endBlkNum; i++) {
 			BlockId blk = new BlockId(fileName, i);
 			pages.add(new RecordPage(blk, ti, tx, true));
@@ -91,6 +97,11 @@ public class ChunkScan implements Scan {
 		return rp.getVal(fldName);
 	}
 
+	@Override
+	protected PrimitiveRecord recordOf(String fldName) {
+		return rp;
+	}
+
 	/**
 	 * @see Scan#hasField(java.lang.String)
 	 */
@@ -56,13 +56,14 @@ public class HashJoinPlan extends AbstractJoinPlan {
 		while (!todoV.isEmpty()) {
 			TempTable ttV = todoV.remove(0);
 			TempTable ttW = todoW.remove(0);
+			String fileName = ttW.getTableInfo().fileName();
 			long size = ttW.getTableInfo().open(tx).fileSize();
-			int avail = VanillaDB.bufferMgr().available();
+			int avail = VanillaDB.bufferMgr().available(fileName);
 			if (avail >= size) {
 				okV.add(ttV);
 				okW.add(ttW);
 			} else {
-				int k = BufferNeeds.bestRoot(size);
+				int k = BufferNeeds.bestRoot(size, fileName);
 				todoV.addAll(partition(ttV, fldName1, k, iteration));
 				todoW.addAll(partition(ttW, fldName2, k, iteration));
 			}
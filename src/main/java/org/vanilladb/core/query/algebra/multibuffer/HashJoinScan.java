@@ -4,10 +4,12 @@ import static org.vanilladb.core.sql.predicate.Term.OP_EQ;
 
 import java.util.List;
 
+import org.vanilladb.core.query.algebra.AbstractScan;
 import org.vanilladb.core.query.algebra.Scan;
 import org.vanilladb.core.query.algebra.SelectScan;
 import org.vanilladb.core.query.algebra.materialize.TempTable;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 import org.vanilladb.core.sql.predicate.Expression;
 import org.vanilladb.core.sql.predicate.FieldNameExpression;
 import org.vanilladb.core.sql.predicate.Predicate;
@@ -16,7 +18,7 @@ import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.tx.Transaction;
 
 
-public class HashJoinScan implements Scan {
+public class HashJoinScan extends AbstractScan {
 	private List<TempTable> tables1, tables2;
 	private Transaction tx;
 	private int currentIndex;
@@ -72,6 +74,11 @@ public class HashJoinScan implements Scan {
 		return current.getVal(fldname);
 	}
 
+	@Override
+	protected PrimitiveRecord recordOf(String fldName) {
+		return current;
+	}
+
 	@Override
 	public boolean hasField(String fldname) {
 		return current.hasField(fldname);
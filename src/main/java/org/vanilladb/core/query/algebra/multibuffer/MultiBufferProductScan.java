@@ -1,7 +1,9 @@
 package org.vanilladb.core.query.algebra.multibuffer;
 
 import org.vanilladb.core.query.algebra.*;
+import org.vanilladb.core.query.algebra.AbstractScan;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -9,7 +11,7 @@ import org.vanilladb.core.storage.tx.Transaction;
 /**
  * The Scan class for the muti-buffer version of the <em>product</em> operator.
  */
-public class MultiBufferProductScan implements Scan {
+public class MultiBufferProductScan extends AbstractScan {
 	private Scan lhsScan, rhsScan = null, prodScan;
 	private TableInfo ti;
 	private Transaction tx;
@@ -32,7 +34,7 @@ public class MultiBufferProductScan implements Scan {
 		this.tx = tx;
 
 		fileSize = ti.open(tx).fileSize();
-		chunkSize = BufferNeeds.bestFactor(fileSize);
+		chunkSize = BufferNeeds.bestFactor(fileSize, ti.fileName());
 		beforeFirst();
 	}
 
@@ -89,6 +91,11 @@ public class MultiBufferProductScan implements Scan {
 		return prodScan.getVal(fldname);
 	}
 
+	@Override
+	protected PrimitiveRecord recordOf(String fldName) {
+		return prodScan;
+	}
+
 	/**
 	 * Returns true if the specified field is in either of the underlying scans.
 	 * 
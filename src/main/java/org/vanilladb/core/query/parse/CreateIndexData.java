@@ -1,10 +1,14 @@
 package org.vanilladb.core.query.parse;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * The parser for the <em>create index</em> statement.
  */
 public class CreateIndexData {
-	private String idxName, tblName, fldName;
+	private String idxName, tblName;
+	private List<String> fldNames, inclFlds;
 	private int idxType;
 
 	/**
@@ -12,9 +16,20 @@ public class CreateIndexData {
 	 */
 	public CreateIndexData(String idxName, String tblName, String fldName,
 			int idxType) {
+		this(idxName, tblName, Collections.singletonList(fldName),
+				Collections.<String> emptyList(), idxType);
+	}
+
+	/**
+	 * Saves the index type, table name, indexed fields and included fields
+	 * of the specified index.
+	 */
+	public CreateIndexData(String idxName, String tblName,
+			List<String> fldNames, List<String> inclFlds, int idxType) {
 		this.idxName = idxName;
 		this.tblName = tblName;
-		this.fldName = fldName;
+		this.fldNames = fldNames;
+		this.inclFlds = inclFlds;
 		this.idxType = idxType;
 	}
 
@@ -37,12 +52,31 @@ public class CreateIndexData {
 	}
 
 	/**
-	 * Returns the name of the indexed field.
+	 * Returns the name of the indexed field, which is the first one if the
+	 * index is on several fields.
 	 * 
 	 * @return the name of the indexed field
 	 */
 	public String fieldName() {
-		return fldName;
+		return fldNames.get(0);
+	}
+
+	/**
+	 * Returns the names of the indexed fields.
+	 * 
+	 * @return the names of the indexed fields
+	 */
+	public List<String> fieldNames() {
+		return fldNames;
+	}
+
+	/**
+	 * Returns the names of the fields included in the index records.
+	 * 
+	 * @return the names of the included fields
+	 */
+	public List<String> includedFields() {
+		return inclFlds;
 	}
 
 	/**
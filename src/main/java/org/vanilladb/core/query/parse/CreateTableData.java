@@ -1,6 +1,7 @@
 package org.vanilladb.core.query.parse;
 
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.storage.metadata.TableInfo;
 
 /**
  * Data for the SQL <em>create table</em> statement.
@@ -8,13 +9,22 @@ import org.vanilladb.core.sql.Schema;
 public class CreateTableData {
 	private String tblName;
 	private Schema schema;
+	private int format;
 
 	/**
 	 * Saves the table name and schema.
 	 */
 	public CreateTableData(String tblName, Schema schema) {
+		this(tblName, schema, TableInfo.FORMAT_FIXED);
+	}
+
+	/**
+	 * Saves the table name, schema, and record format.
+	 */
+	public CreateTableData(String tblName, Schema schema, int format) {
 		this.tblName = tblName;
 		this.schema = schema;
+		this.format = format;
 	}
 
 	/**
@@ -34,4 +44,13 @@ public class CreateTableData {
 	public Schema newSchema() {
 		return schema;
 	}
+
+	/**
+	 * Returns the record format of the new table.
+	 * 
+	 * @return the record format of the new table
+	 */
+	public int format() {
+		return format;
+	}
 }
@@ -0,0 +1,259 @@
+package org.vanilladb.core.query.parse;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharConstant;
+
+/**
+ * Data for the SQL <em>load</em> statement, which loads the rows of a file of
+ * comma-separated values into a table in bulk. The data of a batch of insert
+ * statements into the same fields of a table are turned into a load of their
+ * rows as well.
+ *
+ * <p>
+ * Each line of the file is a row. A value containing commas or double quotes
+ * is enclosed in double quotes, and a double quote in it is written twice, as
+ * in <code>"Smith, ""Jr."""</code>. A value cannot span lines.
+ * </p>
+ */
+public class LoadData {
+	/**
+	 * Iterates through the rows to be loaded. The iterator must be closed if
+	 * it is not exhausted.
+	 */
+	public interface RowIterator extends Iterator<List<Constant>> {
+		/**
+		 * Releases the file read by the iterator, if any.
+		 */
+		void close();
+	}
+
+	private String tblName;
+	private List<String> fields;
+	private String fileName;
+	private List<List<Constant>> rows;
+
+	/**
+	 * Saves the table name, the field list, and the name of the file of rows.
+	 */
+	public LoadData(String tblName, List<String> fields, String fileName) {
+		this.tblName = tblName;
+		this.fields = fields;
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Saves the table name, the field list, and the rows of values.
+	 */
+	public LoadData(String tblName, List<String> fields,
+			List<List<Constant>> rows) {
+		this.tblName = tblName;
+		this.fields = fields;
+		this.rows = rows;
+	}
+
+	/**
+	 * Returns the name of the affected table.
+	 *
+	 * @return the name of the affected table
+	 */
+	public String tableName() {
+		return tblName;
+	}
+
+	/**
+	 * Returns a list of fields for which values will be specified in the new
+	 * records.
+	 *
+	 * @return a list of field names
+	 */
+	public List<String> fields() {
+		return fields;
+	}
+
+	/**
+	 * Returns the name of the file of rows, or null if the rows are given as
+	 * values.
+	 *
+	 * @return the name of the file
+	 */
+	public String fileName() {
+		return fileName;
+	}
+
+	/**
+	 * Returns the rows given as values, or null if the rows are read from a
+	 * file.
+	 *
+	 * @return a list of rows, each of which corresponds to the list of fields
+	 */
+	public List<List<Constant>> rows() {
+		return rows;
+	}
+
+	/**
+	 * Returns an iterator through the rows to be loaded. A line of the file is
+	 * split at the commas outside quoted values, and each value is converted
+	 * to the type of its field in the specified schema; a varchar value is
+	 * taken as is, without its quotes. A malformed line raises a
+	 * {@link BadSyntaxException}.
+	 *
+	 * @param sch
+	 *            the schema of the table
+	 * @return an iterator through the rows
+	 */
+	public RowIterator rowIterator(final Schema sch) {
+		if (rows != null) {
+			final Iterator<List<Constant>> iter = rows.iterator();
+			return new RowIterator() {
+				@Override
+				public boolean hasNext() {
+					return iter.hasNext();
+				}
+
+				@Override
+				public List<Constant> next() {
+					return iter.next();
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+		final BufferedReader reader;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(fileName), "UTF-8"));
+		} catch (IOException e) {
+			throw new RuntimeException("cannot read " + fileName);
+		}
+		return new RowIterator() {
+			private String line;
+			private int lineNum;
+
+			@Override
+			public boolean hasNext() {
+				try {
+					while (line == null) {
+						line = reader.readLine();
+						if (line == null) {
+							close();
+							return false;
+						}
+						lineNum++;
+						if (line.trim().isEmpty())
+							line = null;
+					}
+					return true;
+				} catch (IOException e) {
+					close();
+					throw new RuntimeException("cannot read " + fileName);
+				}
+			}
+
+			@Override
+			public List<Constant> next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				List<String> vals = split(line);
+				line = null;
+				if (vals.size() != fields.size())
+					throw new BadSyntaxException("#fields and #values "
+							+ "does not match at line " + lineNum);
+				List<Constant> row = new ArrayList<Constant>(vals.size());
+				for (int i = 0; i < vals.size(); i++)
+					row.add(toConstant(sch.type(fields.get(i)), vals.get(i)));
+				return row;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void close() {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					throw new RuntimeException("cannot close " + fileName);
+				}
+			}
+
+			private List<String> split(String line) {
+				List<String> vals = new ArrayList<String>();
+				int pos = 0;
+				while (true) {
+					if (pos < line.length() && line.charAt(pos) == '"') {
+						// a quoted value ends at a quote not written twice
+						StringBuilder sb = new StringBuilder();
+						int end;
+						pos++;
+						while ((end = line.indexOf('"', pos)) >= 0) {
+							sb.append(line, pos, end);
+							pos = end + 1;
+							if (pos >= line.length() || line.charAt(pos) != '"')
+								break;
+							sb.append('"');
+							pos++;
+						}
+						if (end < 0 || pos < line.length()
+								&& line.charAt(pos) != ',')
+							throw new BadSyntaxException("bad quoted value at "
+									+ "line " + lineNum);
+						vals.add(sb.toString());
+					} else {
+						int end = line.indexOf(',', pos);
+						if (end < 0)
+							end = line.length();
+						vals.add(line.substring(pos, end));
+						pos = end;
+					}
+					if (pos >= line.length())
+						return vals;
+					// skips the comma
+					pos++;
+				}
+			}
+
+			private Constant toConstant(Type type, String val) {
+				try {
+					switch (type.getSqlType()) {
+					case java.sql.Types.INTEGER:
+						return new IntegerConstant(Integer.parseInt(val
+								.trim()));
+					case java.sql.Types.BIGINT:
+						return new BigIntConstant(Long.parseLong(val.trim()));
+					case java.sql.Types.DOUBLE:
+						return new DoubleConstant(Double.parseDouble(val
+								.trim()));
+					default:
+						return new VarcharConstant(val);
+					}
+				} catch (NumberFormatException e) {
+					throw new BadSyntaxException("bad value '" + val
+							+ "' at line " + lineNum);
+				}
+			}
+		};
+	}
+}
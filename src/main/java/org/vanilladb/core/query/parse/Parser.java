@@ -16,6 +16,8 @@ import static org.vanilladb.core.sql.predicate.Term.OP_GTE;
 import static org.vanilladb.core.sql.predicate.Term.OP_LT;
 import static org.vanilladb.core.sql.predicate.Term.OP_LTE;
 import static org.vanilladb.core.storage.index.Index.IDX_BTREE;
+import static org.vanilladb.core.storage.metadata.TableInfo.FORMAT_FIXED;
+import static org.vanilladb.core.storage.metadata.TableInfo.FORMAT_SLOTTED;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -393,6 +395,8 @@ public class Parser {
 	public Object updateCommand() {
 		if (lex.matchKeyword("insert"))
 			return insert();
+		else if (lex.matchKeyword("load"))
+			return load();
 		else if (lex.matchKeyword("delete"))
 			return delete();
 		else if (lex.matchKeyword("update"))
@@ -418,6 +422,18 @@ public class Parser {
 		return new InsertData(tblname, flds, vals);
 	}
 
+	private LoadData load() {
+		lex.eatKeyword("load");
+		lex.eatKeyword("into");
+		String tblname = lex.eatId();
+		lex.eatDelim('(');
+		List<String> flds = idList();
+		lex.eatDelim(')');
+		lex.eatKeyword("from");
+		String fileName = lex.eatStringConstant();
+		return new LoadData(tblname, flds, fileName);
+	}
+
 	private DeleteData delete() {
 		lex.eatKeyword("delete");
 		lex.eatKeyword("from");
@@ -510,7 +526,13 @@ public class Parser {
 		lex.eatDelim('(');
 		Schema sch = fieldDefs();
 		lex.eatDelim(')');
-		return new CreateTableData(tblname, sch);
+		int format = FORMAT_FIXED;
+		if (lex.matchKeyword("slotted")) {
+			lex.eatKeyword("slotted");
+			format = FORMAT_SLOTTED;
+		} else if (lex.matchKeyword("fixed"))
+			lex.eatKeyword("fixed");
+		return new CreateTableData(tblname, sch, format);
 	}
 
 	private Schema fieldDefs() {
@@ -563,8 +585,19 @@ public class Parser {
 		lex.eatKeyword("on");
 		String tblname = lex.eatId();
 		lex.eatDelim('(');
-		String fldname = id();
+		List<String> fldnames = idList();
 		lex.eatDelim(')');
-		return new CreateIndexData(idxname, tblname, fldname, DEFAULT_IDX);
+		List<String> inclflds = new ArrayList<String>();
+		if (lex.matchKeyword("include")) {
+			lex.eatKeyword("include");
+			lex.eatDelim('(');
+			inclflds = idList();
+			lex.eatDelim(')');
+		}
+		// only a B-tree index has several fields
+		int idxtype = fldnames.size() > 1 || !inclflds.isEmpty() ? IDX_BTREE
+				: DEFAULT_IDX;
+		return new CreateIndexData(idxname, tblname, fldnames, inclflds,
+				idxtype);
 	}
 }
@@ -2,6 +2,7 @@ package org.vanilladb.core.query.planner;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import org.vanilladb.core.query.algebra.Plan;
 import org.vanilladb.core.query.algebra.SelectPlan;
@@ -12,9 +13,13 @@ import org.vanilladb.core.query.parse.CreateTableData;
 import org.vanilladb.core.query.parse.CreateViewData;
 import org.vanilladb.core.query.parse.DeleteData;
 import org.vanilladb.core.query.parse.InsertData;
+import org.vanilladb.core.query.parse.LoadData;
+import org.vanilladb.core.query.parse.LoadData.RowIterator;
 import org.vanilladb.core.query.parse.ModifyData;
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordLoader;
 import org.vanilladb.core.storage.tx.Transaction;
 
 /**
@@ -75,10 +80,35 @@ public class BasicUpdatePlanner implements UpdatePlanner {
 		return 1;
 	}
 
+	@Override
+	public int executeLoad(LoadData data, Transaction tx) {
+		QueryVerifier.verifyLoadData(data, tx);
+		TableInfo ti = VanillaDB.mdMgr().getTableInfo(data.tableName(), tx);
+		RecordLoader loader = new RecordLoader(ti, tx);
+		RowIterator rows = data.rowIterator(ti.schema());
+		int count = 0;
+		try {
+			while (rows.hasNext()) {
+				List<Constant> row = rows.next();
+				loader.insert();
+				Iterator<Constant> iter = row.iterator();
+				for (String fldname : data.fields())
+					loader.setVal(fldname, iter.next());
+				count++;
+			}
+		} finally {
+			rows.close();
+		}
+		loader.close();
+		VanillaDB.mdMgr().countRecordUpdates(data.tableName(), count);
+		return count;
+	}
+
 	@Override
 	public int executeCreateTable(CreateTableData data, Transaction tx) {
 		QueryVerifier.verifyCreateTableData(data, tx);
-		VanillaDB.mdMgr().createTable(data.tableName(), data.newSchema(), tx);
+		VanillaDB.mdMgr().createTable(data.tableName(), data.newSchema(),
+				data.format(), tx);
 		return 0;
 	}
 
@@ -93,7 +123,7 @@ public class BasicUpdatePlanner implements UpdatePlanner {
 	public int executeCreateIndex(CreateIndexData data, Transaction tx) {
 		QueryVerifier.verifyCreateIndexData(data, tx);
 		VanillaDB.mdMgr().createIndex(data.indexName(), data.tableName(),
-				data.fieldName(), data.indexType(), tx);
+				data.fieldNames(), data.includedFields(), data.indexType(), tx);
 		return 0;
 	}
 }
@@ -1,14 +1,19 @@
 package org.vanilladb.core.query.planner;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.vanilladb.core.query.algebra.Plan;
 import org.vanilladb.core.query.parse.CreateIndexData;
 import org.vanilladb.core.query.parse.CreateTableData;
 import org.vanilladb.core.query.parse.CreateViewData;
 import org.vanilladb.core.query.parse.DeleteData;
 import org.vanilladb.core.query.parse.InsertData;
+import org.vanilladb.core.query.parse.LoadData;
 import org.vanilladb.core.query.parse.ModifyData;
 import org.vanilladb.core.query.parse.Parser;
 import org.vanilladb.core.query.parse.QueryData;
+import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.storage.tx.Transaction;
 
 
@@ -18,6 +23,18 @@ import org.vanilladb.core.storage.tx.Transaction;
  * @author sciore
  */
 public class Planner {
+	/**
+	 * The least number of insert statements in a batch to be executed as a
+	 * bulk load.
+	 */
+	public static final int MIN_BATCH_LOAD;
+
+	static {
+		String prop = System.getProperty(Planner.class.getName()
+				+ ".MIN_BATCH_LOAD");
+		MIN_BATCH_LOAD = (prop == null ? 100 : Integer.parseInt(prop.trim()));
+	}
+
 	private QueryPlanner qPlanner;
 	private UpdatePlanner uPlanner;
 
@@ -59,6 +76,8 @@ public class Planner {
 		Object obj = parser.updateCommand();
 		if (obj instanceof InsertData)
 			return uPlanner.executeInsert((InsertData) obj, tx);
+		else if (obj instanceof LoadData)
+			return uPlanner.executeLoad((LoadData) obj, tx);
 		else if (obj instanceof DeleteData)
 			return uPlanner.executeDelete((DeleteData) obj, tx);
 		else if (obj instanceof ModifyData)
@@ -72,4 +91,56 @@ public class Planner {
 		else
 			throw new UnsupportedOperationException();
 	}
+
+	/**
+	 * Executes a batch of SQL update statements. A batch of at least
+	 * <code>MIN_BATCH_LOAD</code> insert statements into the same fields of
+	 * the same table is executed as a single bulk load of their values;
+	 * otherwise the statements are executed one by one.
+	 * 
+	 * @param cmds
+	 *            the SQL update strings
+	 * @param tx
+	 *            the transaction
+	 * @return the numbers of affected records of the statements
+	 */
+	public int[] executeBatch(List<String> cmds, Transaction tx) {
+		if (tx.isReadOnly())
+			throw new UnsupportedOperationException();
+		int[] counts = new int[cmds.size()];
+		LoadData load = cmds.size() < MIN_BATCH_LOAD ? null : toLoad(cmds);
+		if (load != null) {
+			uPlanner.executeLoad(load, tx);
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = 1;
+			return counts;
+		}
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = executeUpdate(cmds.get(i), tx);
+		return counts;
+	}
+
+	/**
+	 * Returns the load of the values of the specified insert statements, or
+	 * null if they are not all insert statements into the same fields of the
+	 * same table.
+	 */
+	private LoadData toLoad(List<String> cmds) {
+		InsertData first = null;
+		List<List<Constant>> rows = new ArrayList<List<Constant>>(cmds
+				.size());
+		for (String cmd : cmds) {
+			Object obj = new Parser(cmd).updateCommand();
+			if (!(obj instanceof InsertData))
+				return null;
+			InsertData data = (InsertData) obj;
+			if (first == null)
+				first = data;
+			else if (!data.tableName().equals(first.tableName())
+					|| !data.fields().equals(first.fields()))
+				return null;
+			rows.add(data.vals());
+		}
+		return new LoadData(first.tableName(), first.fields(), rows);
+	}
 }
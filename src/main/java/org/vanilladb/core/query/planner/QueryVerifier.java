@@ -1,14 +1,17 @@
 package org.vanilladb.core.query.planner;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import org.vanilladb.core.query.parse.CreateIndexData;
 import org.vanilladb.core.query.parse.CreateTableData;
 import org.vanilladb.core.query.parse.CreateViewData;
 import org.vanilladb.core.query.parse.DeleteData;
 import org.vanilladb.core.query.parse.InsertData;
+import org.vanilladb.core.query.parse.LoadData;
 import org.vanilladb.core.query.parse.ModifyData;
 import org.vanilladb.core.query.parse.Parser;
 import org.vanilladb.core.query.parse.QueryData;
@@ -121,6 +124,41 @@ public class QueryVerifier {
 		}
 	}
 
+	public static void verifyLoadData(LoadData data, Transaction tx) {
+		// examine table name
+		TableInfo ti = VanillaDB.mdMgr().getTableInfo(data.tableName(), tx);
+		if (ti == null)
+			throw new BadSemanticException("table " + data.tableName()
+					+ " does not exist");
+
+		// examine the fields existence
+		Schema sch = ti.schema();
+		List<String> fields = data.fields();
+		for (String field : fields)
+			if (!sch.hasField(field))
+				throw new BadSemanticException("field " + field
+						+ " does not exist");
+
+		// examine the file existence
+		if (data.fileName() != null) {
+			if (!new File(data.fileName()).canRead())
+				throw new BadSemanticException("file " + data.fileName()
+						+ " cannot be read");
+			return;
+		}
+
+		// examine the number and type of the values of each row
+		for (List<Constant> vals : data.rows()) {
+			if (fields.size() != vals.size())
+				throw new BadSemanticException(
+						"#fields and #values does not match");
+			for (int i = 0; i < fields.size(); i++)
+				if (!matchFieldAndConstant(sch, fields.get(i), vals.get(i)))
+					throw new BadSemanticException("field " + fields.get(i)
+							+ " doesn't match corresponding value in type");
+		}
+	}
+
 	public static void verifyModifyData(ModifyData data, Transaction tx) {
 		// examine Table name
 		TableInfo ti = VanillaDB.mdMgr().getTableInfo(data.tableName(), tx);
@@ -169,18 +207,24 @@ public class QueryVerifier {
 					+ " does not exist");
 
 		Schema sch = ti.schema();
-		String fieldName = data.fieldName();
-		// examine if column exist
-		if (!sch.hasField(fieldName))
-			throw new BadSemanticException("field " + fieldName
-					+ " does not exist in table " + tableName);
+		Set<String> fields = new HashSet<String>();
+		List<String> allFields = new ArrayList<String>(data.fieldNames());
+		allFields.addAll(data.includedFields());
+		for (String fieldName : allFields) {
+			// examine if column exist
+			if (!sch.hasField(fieldName))
+				throw new BadSemanticException("field " + fieldName
+						+ " does not exist in table " + tableName);
+			if (!fields.add(fieldName))
+				throw new BadSemanticException("field " + fieldName
+						+ " appears twice in index " + data.indexName());
+		}
 
 		// examine the index
-		Map<String, IndexInfo> indexInfoes = VanillaDB.mdMgr().getIndexInfo(
-				tableName, tx);
-		if (indexInfoes.containsKey(fieldName))
-			throw new BadSemanticException("field" + fieldName
-					+ " has already been indexed");
+		for (IndexInfo ii : VanillaDB.mdMgr().getAllIndexInfo(tableName, tx))
+			if (ii.fieldNames().equals(data.fieldNames()))
+				throw new BadSemanticException("field" + data.fieldNames()
+						+ " has already been indexed");
 	}
 
 	public static void verifyCreateViewData(CreateViewData data, Transaction tx) {
@@ -5,6 +5,7 @@ import org.vanilladb.core.query.parse.CreateTableData;
 import org.vanilladb.core.query.parse.CreateViewData;
 import org.vanilladb.core.query.parse.DeleteData;
 import org.vanilladb.core.query.parse.InsertData;
+import org.vanilladb.core.query.parse.LoadData;
 import org.vanilladb.core.query.parse.ModifyData;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -27,6 +28,18 @@ public interface UpdatePlanner {
 	 */
 	int executeInsert(InsertData data, Transaction tx);
 
+	/**
+	 * Executes the specified load statement, and returns the number of
+	 * affected records.
+	 * 
+	 * @param data
+	 *            the parsed representation of the load statement
+	 * @param tx
+	 *            the calling transaction
+	 * @return the number of affected records
+	 */
+	int executeLoad(LoadData data, Transaction tx);
+
 	/**
 	 * Executes the specified delete statement, and returns the number of
 	 * affected records.
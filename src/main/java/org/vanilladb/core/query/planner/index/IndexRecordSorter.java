@@ -0,0 +1,312 @@
+package org.vanilladb.core.query.planner.index;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.UpdateScan;
+import org.vanilladb.core.query.algebra.materialize.TempTable;
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.IndexLoader;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Sorts the index records of a data file by an external merge sort, and loads
+ * them into an index in the order of their keys. The records are collected in
+ * memory, and every <code>RUN_SIZE</code> records are sorted and written to a
+ * temporary table as a run. Since each run being merged holds a buffer, the
+ * runs are merged into longer runs as many at a time as the available
+ * buffers allow, until the remaining runs and the records left in memory can
+ * be merged at once into the index.
+ */
+class IndexRecordSorter {
+	/**
+	 * The number of index records sorted in memory at a time.
+	 */
+	static final int RUN_SIZE;
+
+	static {
+		String prop = System.getProperty(IndexRecordSorter.class.getName()
+				+ ".RUN_SIZE");
+		RUN_SIZE = (prop == null ? 100000 : Math.max(1, Integer.parseInt(prop
+				.trim())));
+	}
+
+	// the buffers kept for the run being written or the pages being loaded
+	private static final int RESERVED_BUFFERS = 4;
+
+	private static final String KEY = "key", BLOCK = "block", ID = "id",
+			INCL = "incl";
+
+	private static class IndexRecord {
+		Constant key;
+		RecordId rid;
+		Constant inclVals;
+
+		IndexRecord(Constant key, RecordId rid, Constant inclVals) {
+			this.key = key;
+			this.rid = rid;
+			this.inclVals = inclVals;
+		}
+	}
+
+	private static final Comparator<IndexRecord> KEY_ORDER =
+			new Comparator<IndexRecord>() {
+		@Override
+		public int compare(IndexRecord r1, IndexRecord r2) {
+			return r1.key.compareTo(r2.key);
+		}
+	};
+
+	/**
+	 * A sorted run being merged, positioned at its smallest record left.
+	 */
+	private abstract static class Run {
+		IndexRecord current;
+
+		abstract boolean next();
+
+		void close() {
+		}
+	}
+
+	/**
+	 * The destination of the merged records.
+	 */
+	private abstract static class Sink {
+		abstract void insert(IndexRecord rec);
+	}
+
+	private static final Comparator<Run> RUN_ORDER = new Comparator<Run>() {
+		@Override
+		public int compare(Run r1, Run r2) {
+			return KEY_ORDER.compare(r1.current, r2.current);
+		}
+	};
+
+	private String dataFileName;
+	private Transaction tx;
+	private Schema schema;
+	private List<IndexRecord> recs = new ArrayList<IndexRecord>();
+	private List<TempTable> runs = new ArrayList<TempTable>();
+
+	/**
+	 * Creates a sorter of index records.
+	 *
+	 * @param keyType
+	 *            the type of the keys
+	 * @param inclType
+	 *            the type of the values of the included fields, or null if
+	 *            the index includes no field
+	 * @param dataFileName
+	 *            the name of the data file of the record IDs
+	 * @param tx
+	 *            the calling transaction
+	 */
+	IndexRecordSorter(Type keyType, Type inclType, String dataFileName,
+			Transaction tx) {
+		this.dataFileName = dataFileName;
+		this.tx = tx;
+		schema = new Schema();
+		schema.addField(KEY, keyType);
+		schema.addField(BLOCK, BIGINT);
+		schema.addField(ID, INTEGER);
+		if (inclType != null)
+			schema.addField(INCL, inclType);
+	}
+
+	/**
+	 * Adds an index record to be sorted. The key must be of the type of the
+	 * keys.
+	 *
+	 * @param key
+	 *            the key of the index record
+	 * @param rid
+	 *            the data record ID of the index record
+	 * @param inclVals
+	 *            the values of the included fields, or null if the index
+	 *            includes no field
+	 */
+	void add(Constant key, RecordId rid, Constant inclVals) {
+		recs.add(new IndexRecord(key, rid, inclVals));
+		if (recs.size() == RUN_SIZE)
+			writeRun();
+	}
+
+	/**
+	 * Loads the added records into the specified index in the order of their
+	 * keys, and closes the index. The number of runs merged at a time is
+	 * bounded by the buffers available for temporary tables.
+	 *
+	 * @param idx
+	 *            the index
+	 */
+	void loadInto(Index idx) {
+		int fanIn = 2;
+		if (!runs.isEmpty())
+			fanIn = VanillaDB.bufferMgr().available(
+					runs.get(0).getTableInfo().fileName())
+					- RESERVED_BUFFERS;
+		loadInto(idx, fanIn);
+	}
+
+	/**
+	 * Loads the added records into the specified index in the order of their
+	 * keys, merging at most the specified number of runs at a time, and
+	 * closes the index.
+	 *
+	 * @param idx
+	 *            the index
+	 * @param maxFanIn
+	 *            the maximum number of runs merged at a time
+	 */
+	void loadInto(Index idx, int maxFanIn) {
+		int fanIn = Math.max(2, maxFanIn);
+		// the records in memory are merged without a buffer
+		while (runs.size() > fanIn) {
+			List<TempTable> merged = new ArrayList<TempTable>();
+			for (int i = 0; i < runs.size(); i += fanIn)
+				merged.add(mergeRuns(runs.subList(i,
+						Math.min(i + fanIn, runs.size()))));
+			runs = merged;
+		}
+		Collections.sort(recs, KEY_ORDER);
+		final IndexLoader loader = idx.loader();
+		List<Run> sources = new ArrayList<Run>();
+		for (TempTable tt : runs)
+			sources.add(tempRun(tt));
+		sources.add(memoryRun());
+		try {
+			merge(sources, new Sink() {
+				@Override
+				void insert(IndexRecord rec) {
+					loader.insert(rec.key, rec.rid, rec.inclVals);
+				}
+			});
+		} finally {
+			loader.close();
+		}
+		recs.clear();
+		runs.clear();
+	}
+
+	private TempTable mergeRuns(List<TempTable> group) {
+		List<Run> sources = new ArrayList<Run>();
+		for (TempTable tt : group)
+			sources.add(tempRun(tt));
+		TempTable tt = new TempTable(schema, tx);
+		final UpdateScan s = tt.open();
+		try {
+			merge(sources, new Sink() {
+				@Override
+				void insert(IndexRecord rec) {
+					write(s, rec);
+				}
+			});
+		} finally {
+			s.close();
+		}
+		return tt;
+	}
+
+	/**
+	 * Merges the specified runs into the specified sink, and closes them.
+	 */
+	private void merge(List<Run> sources, Sink sink) {
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(sources.size(),
+				RUN_ORDER);
+		try {
+			for (Run run : sources)
+				addRun(queue, run);
+			while (!queue.isEmpty()) {
+				Run run = queue.poll();
+				sink.insert(run.current);
+				addRun(queue, run);
+			}
+		} finally {
+			for (Run run : queue)
+				run.close();
+		}
+	}
+
+	private void writeRun() {
+		Collections.sort(recs, KEY_ORDER);
+		TempTable tt = new TempTable(schema, tx);
+		UpdateScan s = tt.open();
+		for (IndexRecord rec : recs)
+			write(s, rec);
+		s.close();
+		runs.add(tt);
+		recs.clear();
+	}
+
+	private void write(UpdateScan s, IndexRecord rec) {
+		s.insert();
+		s.setVal(KEY, rec.key);
+		s.setVal(BLOCK, new BigIntConstant(rec.rid.block().number()));
+		s.setVal(ID, new IntegerConstant(rec.rid.id()));
+		if (rec.inclVals != null)
+			s.setVal(INCL, rec.inclVals);
+	}
+
+	/**
+	 * Moves the run to its next record, and puts it in the queue if it has
+	 * one.
+	 */
+	private void addRun(PriorityQueue<Run> queue, Run run) {
+		if (run.next())
+			queue.add(run);
+		else
+			run.close();
+	}
+
+	private Run tempRun(TempTable tt) {
+		final Scan s = tt.open();
+		s.beforeFirst();
+		return new Run() {
+			@Override
+			boolean next() {
+				if (!s.next())
+					return false;
+				current = new IndexRecord(s.getVal(KEY), new RecordId(
+						new BlockId(dataFileName, s.getLong(BLOCK)),
+						s.getInt(ID)), schema.hasField(INCL) ? s.getVal(INCL)
+						: null);
+				return true;
+			}
+
+			@Override
+			void close() {
+				s.close();
+			}
+		};
+	}
+
+	private Run memoryRun() {
+		final Iterator<IndexRecord> iter = recs.iterator();
+		return new Run() {
+			@Override
+			boolean next() {
+				if (!iter.hasNext())
+					return false;
+				current = iter.next();
+				return true;
+			}
+		};
+	}
+}
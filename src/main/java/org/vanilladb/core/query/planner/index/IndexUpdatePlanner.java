@@ -3,6 +3,8 @@ package org.vanilladb.core.query.planner.index;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.vanilladb.core.query.algebra.Plan;
@@ -14,14 +16,20 @@ import org.vanilladb.core.query.parse.CreateTableData;
 import org.vanilladb.core.query.parse.CreateViewData;
 import org.vanilladb.core.query.parse.DeleteData;
 import org.vanilladb.core.query.parse.InsertData;
+import org.vanilladb.core.query.parse.LoadData;
+import org.vanilladb.core.query.parse.LoadData.RowIterator;
 import org.vanilladb.core.query.parse.ModifyData;
 import org.vanilladb.core.query.planner.QueryVerifier;
 import org.vanilladb.core.query.planner.UpdatePlanner;
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Record;
+import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.RecordLoader;
 import org.vanilladb.core.storage.tx.Transaction;
 
 /**
@@ -40,34 +48,94 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 		s.insert();
 		RecordId rid = s.getRecordId();
 
-		// then modify each field, inserting an index record if appropriate
-		Map<String, IndexInfo> indexes = VanillaDB.mdMgr().getIndexInfo(
-				tblname, tx);
+		// then modify each field
 		Iterator<Constant> valIter = data.vals().iterator();
-		for (String fldname : data.fields()) {
-			Constant val = valIter.next();
-			s.setVal(fldname, val);
+		for (String fldname : data.fields())
+			s.setVal(fldname, valIter.next());
 
-			IndexInfo ii = indexes.get(fldname);
-			if (ii != null) {
-				Index idx = ii.open(tx);
-				idx.insert(val, rid);
-				idx.close();
-			}
+		// and insert an index record into each index
+		for (IndexInfo ii : VanillaDB.mdMgr().getAllIndexInfo(tblname, tx)) {
+			Index idx = ii.open(tx);
+			idx.insert(ii.key(s), rid, ii.includedValues(s));
+			idx.close();
 		}
 		s.close();
 		VanillaDB.mdMgr().countRecordUpdates(data.tableName(), 1);
 		return 1;
 	}
 
+	/**
+	 * Loads the records in bulk, and then loads their index records into each
+	 * index of the table in the order of their keys. An empty B-tree index is
+	 * thereby built bottom-up, and the insertions into a non-empty one go to
+	 * the leaves one after another. Only the indexes whose fields are all
+	 * loaded are filled.
+	 */
+	@Override
+	public int executeLoad(LoadData data, Transaction tx) {
+		QueryVerifier.verifyLoadData(data, tx);
+		String tblname = data.tableName();
+		TableInfo ti = VanillaDB.mdMgr().getTableInfo(tblname, tx);
+		Schema sch = ti.schema();
+		Map<IndexInfo, IndexRecordSorter> sorters =
+				new LinkedHashMap<IndexInfo, IndexRecordSorter>();
+		for (IndexInfo ii : VanillaDB.mdMgr().getAllIndexInfo(tblname, tx))
+			if (data.fields().containsAll(ii.fieldNames())
+					&& data.fields().containsAll(ii.includedFields()))
+				sorters.put(ii, new IndexRecordSorter(ii.keyType(sch), ii
+						.includedType(sch), ti.fileName(), tx));
+		final Map<String, Constant> vals = new HashMap<String, Constant>();
+		Record rec = new Record() {
+			@Override
+			public Constant getVal(String fldName) {
+				return vals.get(fldName);
+			}
+		};
+
+		RecordLoader loader = new RecordLoader(ti, tx);
+		RowIterator rows = data.rowIterator(ti.schema());
+		int count = 0;
+		try {
+			while (rows.hasNext()) {
+				List<Constant> row = rows.next();
+				loader.insert();
+				Iterator<Constant> iter = row.iterator();
+				for (String fldname : data.fields())
+					loader.setVal(fldname, iter.next());
+				if (sorters.isEmpty()) {
+					count++;
+					continue;
+				}
+
+				// the record ID is read after all values are set
+				RecordId rid = loader.currentRecordId();
+				iter = row.iterator();
+				for (String fldname : data.fields())
+					vals.put(fldname, iter.next().castTo(sch.type(fldname)));
+				for (Map.Entry<IndexInfo, IndexRecordSorter> e : sorters
+						.entrySet())
+					e.getValue().add(e.getKey().key(rec), rid,
+							e.getKey().includedValues(rec));
+				count++;
+			}
+		} finally {
+			rows.close();
+		}
+		loader.close();
+		for (Map.Entry<IndexInfo, IndexRecordSorter> e : sorters.entrySet())
+			e.getValue().loadInto(e.getKey().open(tx));
+		VanillaDB.mdMgr().countRecordUpdates(tblname, count);
+		return count;
+	}
+
 	@Override
 	public int executeDelete(DeleteData data, Transaction tx) {
 		QueryVerifier.verifyDeleteData(data, tx);
 		String tblname = data.tableName();
 		Plan p = new TablePlan(tblname, tx);
 		p = new SelectPlan(p, data.pred());
-		Map<String, IndexInfo> indexes = VanillaDB.mdMgr().getIndexInfo(
-				tblname, tx);
+		List<IndexInfo> indexes = VanillaDB.mdMgr().getAllIndexInfo(tblname,
+				tx);
 
 		UpdateScan s = (UpdateScan) p.open();
 		s.beforeFirst();
@@ -75,10 +143,9 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 		while (s.next()) {
 			// first, delete the record's record ID from every index
 			RecordId rid = s.getRecordId();
-			for (String fldname : indexes.keySet()) {
-				Constant val = s.getVal(fldname);
-				Index idx = indexes.get(fldname).open(tx);
-				idx.delete(val, rid);
+			for (IndexInfo ii : indexes) {
+				Index idx = ii.open(tx);
+				idx.delete(ii.key(s), rid);
 				idx.close();
 			}
 			// then delete the record
@@ -97,42 +164,39 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 		Collection<String> targetflds = data.targetFields();
 		Plan p = new TablePlan(tblname, tx);
 		p = new SelectPlan(p, data.pred());
-		// open all indexs associate with target fields
-		HashMap<String, Index> idxMap = new HashMap<String, Index>();
-		for (String fld : targetflds) {
-			IndexInfo ii = VanillaDB.mdMgr().getIndexInfo(tblname, tx).get(fld);
-			Index idx = (ii == null) ? null : ii.open(tx);
-			if (idx != null)
-				idxMap.put(fld, idx);
-		}
+		// open all indexs holding some of the target fields
+		Map<IndexInfo, Index> idxMap = new LinkedHashMap<IndexInfo, Index>();
+		for (IndexInfo ii : VanillaDB.mdMgr().getAllIndexInfo(tblname, tx))
+			for (String fld : targetflds)
+				if (ii.fieldNames().contains(fld)
+						|| ii.includedFields().contains(fld)) {
+					idxMap.put(ii, ii.open(tx));
+					break;
+				}
 
 		UpdateScan s = (UpdateScan) p.open();
 		s.beforeFirst();
 		int count = 0;
+		Map<IndexInfo, Constant> oldKeys = new HashMap<IndexInfo, Constant>();
 		while (s.next()) {
-			Constant newval, oldval;
-			for (String fld : targetflds) {
-				// first, update the record
-				newval = data.newValue(fld).evaluate(s);
-				oldval = s.getVal(fld);
-				s.setVal(fld, newval);
-
-				// then update the appropriate index, if it exists
-				Index idx = idxMap.get(fld);
-				if (idx != null) {
-					RecordId rid = s.getRecordId();
-					idx.delete(oldval, rid);
-					idx.insert(newval, rid);
-				}
+			for (IndexInfo ii : idxMap.keySet())
+				oldKeys.put(ii, ii.key(s));
+			// first, update the record
+			for (String fld : targetflds)
+				s.setVal(fld, data.newValue(fld).evaluate(s));
+
+			// then update the appropriate indexes
+			RecordId rid = s.getRecordId();
+			for (Map.Entry<IndexInfo, Index> e : idxMap.entrySet()) {
+				IndexInfo ii = e.getKey();
+				e.getValue().delete(oldKeys.get(ii), rid);
+				e.getValue().insert(ii.key(s), rid, ii.includedValues(s));
 			}
 			count++;
 		}
 		// close opened indexs
-		for (String fld : targetflds) {
-			Index idx = idxMap.get(fld);
-			if (idx != null)
-				idx.close();
-		}
+		for (Index idx : idxMap.values())
+			idx.close();
 		s.close();
 		VanillaDB.mdMgr().countRecordUpdates(data.tableName(), count);
 		return count;
@@ -141,7 +205,8 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 	@Override
 	public int executeCreateTable(CreateTableData data, Transaction tx) {
 		QueryVerifier.verifyCreateTableData(data, tx);
-		VanillaDB.mdMgr().createTable(data.tableName(), data.newSchema(), tx);
+		VanillaDB.mdMgr().createTable(data.tableName(), data.newSchema(),
+				data.format(), tx);
 		return 0;
 	}
 
@@ -152,11 +217,30 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 		return 0;
 	}
 
+	/**
+	 * Creates the index, and fills it with the index records of the records
+	 * already in the table. The index records are sorted by an external sort
+	 * and loaded in the order of their keys, so a B-tree index is built
+	 * bottom-up in one pass.
+	 */
 	@Override
 	public int executeCreateIndex(CreateIndexData data, Transaction tx) {
 		QueryVerifier.verifyCreateIndexData(data, tx);
-		VanillaDB.mdMgr().createIndex(data.indexName(), data.tableName(),
-				data.fieldName(), data.indexType(), tx);
+		String tblname = data.tableName();
+		VanillaDB.mdMgr().createIndex(data.indexName(), tblname,
+				data.fieldNames(), data.includedFields(), data.indexType(), tx);
+
+		TableInfo ti = VanillaDB.mdMgr().getTableInfo(tblname, tx);
+		IndexInfo ii = new IndexInfo(data.indexName(), tblname,
+				data.fieldNames(), data.includedFields(), data.indexType());
+		IndexRecordSorter sorter = new IndexRecordSorter(ii.keyType(ti
+				.schema()), ii.includedType(ti.schema()), ti.fileName(), tx);
+		UpdateScan s = (UpdateScan) new TablePlan(tblname, tx).open();
+		s.beforeFirst();
+		while (s.next())
+			sorter.add(ii.key(s), s.getRecordId(), ii.includedValues(s));
+		s.close();
+		sorter.loadInto(ii.open(tx));
 		return 0;
 	}
 }
@@ -1,8 +1,12 @@
 package org.vanilladb.core.query.planner.opt;
 
 import static org.vanilladb.core.storage.index.Index.IDX_BTREE;
+import static org.vanilladb.core.storage.index.Index.IDX_EXT_HASH;
 import static org.vanilladb.core.storage.index.Index.IDX_HASH;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -13,6 +17,8 @@ import org.vanilladb.core.query.algebra.index.IndexJoinPlan;
 import org.vanilladb.core.query.algebra.index.IndexSelectPlan;
 import org.vanilladb.core.query.algebra.multibuffer.MultiBufferProductPlan;
 import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.CompositeConstantRange;
+import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.ConstantRange;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.predicate.Predicate;
@@ -27,7 +33,7 @@ class TablePlanner {
 	private TablePlan tp;
 	private Predicate pred;
 	private Schema sch;
-	private Map<String, IndexInfo> idxes;
+	private List<IndexInfo> idxes;
 	private Transaction tx;
 
 	/**
@@ -48,7 +54,7 @@ class TablePlanner {
 		this.tx = tx;
 		tp = new TablePlan(tblName, tx);
 		sch = tp.schema();
-		idxes = VanillaDB.mdMgr().getIndexInfo(tblName, tx);
+		idxes = VanillaDB.mdMgr().getAllIndexInfo(tblName, tx);
 	}
 
 	/**
@@ -113,20 +119,57 @@ class TablePlanner {
 	 * moved across the term operator. Therefore this method may not identify
 	 * all possible index selects. It is users' responsibility to issue queries
 	 * that help the identification: e.g., "F < C", not "F - C < 0".
-	 * 
+	 * <p>
+	 * An index on several fields is searched by the constants of its first
+	 * fields, followed by the range of the next field, if any. Of all usable
+	 * indexes, the one of the least estimated block accesses is chosen.
+	 * </p>
 	 */
 	private Plan makeIndexSelectPlan() {
-		for (String fld : idxes.keySet()) {
-			ConstantRange searchRange = pred.constantRange(fld);
+		Plan best = null;
+		for (IndexInfo ii : idxes) {
+			Plan p = makeIndexSelectPlan(ii);
+			if (p != null
+					&& (best == null || p.blocksAccessed() < best
+							.blocksAccessed()))
+				best = p;
+		}
+		return best;
+	}
+
+	private Plan makeIndexSelectPlan(IndexInfo ii) {
+		Map<String, ConstantRange> fldRanges =
+				new HashMap<String, ConstantRange>();
+		List<String> flds = ii.fieldNames();
+		if (flds.size() == 1) {
+			ConstantRange searchRange = pred.constantRange(flds.get(0));
 			if (searchRange == null)
-				continue;
-			IndexInfo ii = idxes.get(fld);
-			if ((ii.indexType() == IDX_HASH && searchRange.isConstant())
-					|| ii.indexType() == IDX_BTREE) {
+				return null;
+			boolean hash = ii.indexType() == IDX_HASH
+					|| ii.indexType() == IDX_EXT_HASH;
+			if ((hash && searchRange.isConstant())
+					|| ii.indexType() == IDX_BTREE)
 				return new IndexSelectPlan(tp, ii, searchRange, tx);
+			return null;
+		}
+		// the constants of the first fields, and the range of the next one
+		List<Constant> prefix = new ArrayList<Constant>();
+		ConstantRange next = null;
+		for (String fld : flds) {
+			ConstantRange range = pred.constantRange(fld);
+			if (range == null)
+				break;
+			fldRanges.put(fld, range);
+			if (!range.isConstant()) {
+				next = range;
+				break;
 			}
+			prefix.add(range.asConstant());
 		}
-		return null;
+		if (fldRanges.isEmpty())
+			return null;
+		return new IndexSelectPlan(tp, ii, CompositeConstantRange.newInstance(
+				prefix, next), fldRanges, tx);
 	}
 
 	/**
@@ -135,16 +178,16 @@ class TablePlanner {
 	 * of a predicate. Currently, fields and constants in a term cannot be moved
 	 * across the term operator. Therefore this method may not identify all
 	 * possible index joins. It is users' responsibility to issue queries that
-	 * help the identification: e.g., "F1 = F2", not "F1 - F2 = 0".
+	 * help the identification: e.g., "F1 = F2", not "F1 - F2 = 0". An index on
+	 * several fields is searched by its first field.
 	 * 
 	 */
 	private Plan makeIndexJoinPlan(Plan trunk, Schema trunkSch) {
-		for (String fld : idxes.keySet()) {
-			Set<String> outerFlds = pred.joinFields(fld);
+		for (IndexInfo ii : idxes) {
+			Set<String> outerFlds = pred.joinFields(ii.fieldName());
 			if (outerFlds != null)
 				for (String outerFld : outerFlds)
 					if (trunkSch.hasField(outerFld)) {
-						IndexInfo ii = idxes.get(fld);
 						Plan p = new IndexJoinPlan(trunk, tp, ii, outerFld, tx);
 						/*
 						 * Ideally, a select plan for this table should be
@@ -92,9 +92,11 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements
 	 * Attempts to change the transaction isolation level for this connection.
 	 * This method will commit current transaction and start a new transaction.
 	 * Currently, the only supported isolation levels are
-	 * {@link Connection#TRANSACTION_SERIALIZABLE} and
-	 * {@link Connection#TRANSACTION_REPEATABLE_READ}. The auto-commit mode must
-	 * be set to false before calling this method.
+	 * {@link Connection#TRANSACTION_SERIALIZABLE},
+	 * {@link Connection#TRANSACTION_REPEATABLE_READ}, and
+	 * {@link VanillaDbConnection#TRANSACTION_SNAPSHOT} for read-only
+	 * connections. The auto-commit mode must be set to false before calling
+	 * this method.
 	 */
 	@Override
 	public void setTransactionIsolation(int level) throws RemoteException {
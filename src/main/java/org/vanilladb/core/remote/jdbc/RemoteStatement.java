@@ -2,6 +2,7 @@ package org.vanilladb.core.remote.jdbc;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * The RMI remote interface corresponding to Statement. The methods are
@@ -13,4 +14,6 @@ public interface RemoteStatement extends Remote {
 	RemoteResultSet executeQuery(String qry) throws RemoteException;
 
 	int executeUpdate(String cmd) throws RemoteException;
+
+	int[] executeBatch(List<String> cmds) throws RemoteException;
 }
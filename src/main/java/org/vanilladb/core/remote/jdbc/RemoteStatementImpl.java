@@ -3,6 +3,7 @@ package org.vanilladb.core.remote.jdbc;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
 
 import org.vanilladb.core.query.algebra.Plan;
 import org.vanilladb.core.server.VanillaDB;
@@ -63,4 +64,29 @@ class RemoteStatementImpl extends UnicastRemoteObject implements
 			throw e;
 		}
 	}
+
+	/**
+	 * Executes the specified batch of SQL update commands as a single
+	 * statement. The method sends the commands to the planner, which may
+	 * execute a batch of insert commands as a bulk load.
+	 * 
+	 * @see RemoteStatement#executeBatch(java.util.List)
+	 */
+	@Override
+	public int[] executeBatch(List<String> cmds) throws RemoteException {
+		try {
+			Transaction tx = rconn.getTransaction();
+			if (tx.isReadOnly())
+				throw new UnsupportedOperationException();
+			int[] result = VanillaDB.planner().executeBatch(cmds, tx);
+			if (rconn.getAutoCommit())
+				rconn.commit();
+			else
+				rconn.endStatement();
+			return result;
+		} catch (RuntimeException e) {
+			rconn.rollback();
+			throw e;
+		}
+	}
 }
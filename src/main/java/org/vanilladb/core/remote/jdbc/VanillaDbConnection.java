@@ -8,6 +8,13 @@ import java.sql.Statement;
  * transform RemoteExceptions into SQLExceptions.
  */
 public class VanillaDbConnection extends ConnectionAdapter {
+	/**
+	 * The isolation level of snapshot isolation, which is available to
+	 * read-only transactions only. A snapshot transaction takes no lock and
+	 * reads the values committed before it started.
+	 */
+	public static final int TRANSACTION_SNAPSHOT = 4096;
+
 	private RemoteConnection rconn;
 
 	public VanillaDbConnection(RemoteConnection c) {
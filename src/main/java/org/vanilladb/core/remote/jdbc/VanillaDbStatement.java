@@ -2,6 +2,8 @@ package org.vanilladb.core.remote.jdbc;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * An adapter class that wraps RemoteStatement. Its methods do nothing except
@@ -9,6 +11,7 @@ import java.sql.SQLException;
  */
 public class VanillaDbStatement extends StatementAdapter {
 	private RemoteStatement rstmt;
+	private List<String> batch = new ArrayList<String>();
 
 	public VanillaDbStatement(RemoteStatement s) {
 		rstmt = s;
@@ -31,4 +34,22 @@ public class VanillaDbStatement extends StatementAdapter {
 		}
 	}
 
+	public void addBatch(String cmd) throws SQLException {
+		batch.add(cmd);
+	}
+
+	public void clearBatch() throws SQLException {
+		batch.clear();
+	}
+
+	public int[] executeBatch() throws SQLException {
+		try {
+			return rstmt.executeBatch(batch);
+		} catch (Exception e) {
+			throw new SQLException(e);
+		} finally {
+			batch = new ArrayList<String>();
+		}
+	}
+
 }
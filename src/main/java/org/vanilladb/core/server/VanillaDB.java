@@ -12,6 +12,7 @@ import org.vanilladb.core.query.planner.QueryPlanner;
 import org.vanilladb.core.query.planner.UpdatePlanner;
 import org.vanilladb.core.query.planner.index.IndexUpdatePlanner;
 import org.vanilladb.core.query.planner.opt.HeuristicQueryPlanner;
+import org.vanilladb.core.remote.jdbc.VanillaDbConnection;
 import org.vanilladb.core.storage.buffer.BufferMgr;
 import org.vanilladb.core.storage.file.FileMgr;
 import org.vanilladb.core.storage.log.LogMgr;
@@ -20,6 +21,7 @@ import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.storage.tx.concurrency.ConcurrencyMgr;
 import org.vanilladb.core.storage.tx.concurrency.RepeatableReadConcurrencyMgr;
 import org.vanilladb.core.storage.tx.concurrency.SerializableConcurrencyMgr;
+import org.vanilladb.core.storage.tx.concurrency.SnapshotConcurrencyMgr;
 import org.vanilladb.core.storage.tx.recovery.RecoveryMgr;
 
 /**
@@ -42,7 +44,7 @@ public class VanillaDB {
 
 	private static boolean inited;
 	private static String queryPlanner, updatePlanner, serializableConcurMgr,
-			repeatableReadConcurMgr, recMgr;
+			repeatableReadConcurMgr, snapshotConcurMgr, recMgr;
 
 	/**
 	 * Initializes the system. This method is called during system startup.
@@ -95,6 +97,10 @@ public class VanillaDB {
 				+ ".REPEATABLE_READ_CONCUR_MGR");
 		repeatableReadConcurMgr = (prop == null ? "org.vanilladb.core.storage.tx.concurrency.RepeatableReadConcurrencyMgr"
 				: prop.trim());
+		prop = System.getProperty(VanillaDB.class.getName()
+				+ ".SNAPSHOT_CONCUR_MGR");
+		snapshotConcurMgr = (prop == null ? "org.vanilladb.core.storage.tx.concurrency.SnapshotConcurrencyMgr"
+				: prop.trim());
 		prop = System.getProperty(VanillaDB.class.getName() + ".RECOVERY_MGR");
 		recMgr = (prop == null ? "org.vanilladb.core.storage.tx.recovery.RecoveryMgr"
 				: prop.trim());
@@ -277,6 +283,25 @@ public class VanillaDB {
 				concurMgr = new RepeatableReadConcurrencyMgr(txNum);
 			}
 			break;
+		case VanillaDbConnection.TRANSACTION_SNAPSHOT:
+			if (!readOnly)
+				throw new UnsupportedOperationException(
+						"snapshot isolation is for read-only transactions only");
+			try {
+				Class<?> cls = Class.forName(snapshotConcurMgr);
+				Class partypes[] = new Class[1];
+				partypes[0] = Long.TYPE;
+				Constructor ct = cls.getConstructor(partypes);
+				concurMgr = (ConcurrencyMgr) ct.newInstance(Long.valueOf(txNum));
+			} catch (Exception e) {
+				// do nothing
+			}
+			if (concurMgr == null) {
+				if (logger.isLoggable(Level.WARNING))
+					logger.warning("no snapshot concurrency mgr found, using default");
+				concurMgr = new SnapshotConcurrencyMgr(txNum);
+			}
+			break;
 		default:
 			throw new UnsupportedOperationException(
 					"unsupported isolation level");
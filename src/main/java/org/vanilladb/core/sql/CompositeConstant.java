@@ -0,0 +1,214 @@
+package org.vanilladb.core.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.vanilladb.core.util.ByteHelper;
+
+/**
+ * The class that wraps a sequence of constants as a {@link CompositeType
+ * composite} value. The values are ordered by their first components, then by
+ * their second components, and so on.
+ * <p>
+ * A composite constant may also be the bound of a range of the values
+ * beginning with some components (see {@link CompositeConstantRange}). Such a
+ * bound is less, or greater, than every value it is a prefix of, and is never
+ * stored.
+ * </p>
+ */
+public class CompositeConstant extends Constant {
+	private Constant[] vals;
+	// -1 or 1 if this is a bound below or above the values beginning with it
+	private int bound;
+	private CompositeType type;
+
+	/**
+	 * Create a constant by wrapping the specified constants.
+	 * 
+	 * @param vals
+	 *            the components
+	 */
+	public CompositeConstant(List<Constant> vals) {
+		this(vals.toArray(new Constant[vals.size()]), 0);
+	}
+
+	/**
+	 * Reads a composite value of the specified type from its bytes.
+	 */
+	public CompositeConstant(byte[] v, CompositeType type) {
+		this.type = type;
+		vals = new Constant[type.numComponents()];
+		for (int i = 0; i < vals.length; i++) {
+			Type t = type.componentType(i);
+			int pos = type.offset(i);
+			int size = t.maxSize();
+			if (!t.isFixedSize()) {
+				size = ByteHelper.toInteger(Arrays.copyOfRange(v, pos, pos
+						+ ByteHelper.INT_SIZE));
+				pos += ByteHelper.INT_SIZE;
+			}
+			vals[i] = Constant.newInstance(t,
+					Arrays.copyOfRange(v, pos, pos + size));
+		}
+	}
+
+	CompositeConstant(Constant[] vals, int bound) {
+		this.vals = vals;
+		this.bound = bound;
+		List<Type> types = new ArrayList<Type>(vals.length);
+		for (Constant c : vals)
+			types.add(c.getType());
+		type = new CompositeType(types);
+	}
+
+	/**
+	 * Returns the number of components of this value.
+	 * 
+	 * @return the number of components
+	 */
+	public int numComponents() {
+		return vals.length;
+	}
+
+	/**
+	 * Returns the specified component of this value.
+	 * 
+	 * @param i
+	 *            the index of the component
+	 * @return the component
+	 */
+	public Constant component(int i) {
+		return vals[i];
+	}
+
+	@Override
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the list of the Java values of the components.
+	 * 
+	 * @see Constant#asJavaVal()
+	 */
+	@Override
+	public Object asJavaVal() {
+		List<Object> result = new ArrayList<Object>(vals.length);
+		for (Constant c : vals)
+			result.add(c.asJavaVal());
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Each component is laid at its offset in the type, as a page stores a
+	 * value of the type of the component.
+	 */
+	@Override
+	public byte[] asBytes() {
+		if (bound != 0)
+			throw new UnsupportedOperationException();
+		byte[] result = new byte[type.maxSize()];
+		for (int i = 0; i < vals.length; i++) {
+			int pos = type.offset(i);
+			byte[] v = vals[i].asBytes();
+			if (!type.componentType(i).isFixedSize()) {
+				System.arraycopy(ByteHelper.toBytes(v.length), 0, result, pos,
+						ByteHelper.INT_SIZE);
+				pos += ByteHelper.INT_SIZE;
+			}
+			System.arraycopy(v, 0, result, pos, v.length);
+		}
+		return result;
+	}
+
+	@Override
+	public int size() {
+		return type.maxSize();
+	}
+
+	@Override
+	public Constant castTo(Type type) {
+		if (getType().equals(type))
+			return this;
+		if (!(type instanceof CompositeType)
+				|| ((CompositeType) type).numComponents() != vals.length)
+			throw new IllegalArgumentException();
+		CompositeType ct = (CompositeType) type;
+		Constant[] result = new Constant[vals.length];
+		for (int i = 0; i < vals.length; i++)
+			result[i] = vals[i].castTo(ct.componentType(i));
+		return new CompositeConstant(result, bound);
+	}
+
+	/**
+	 * Indicates whether some other object is {@link Constant} object and its
+	 * value equal to this one.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (obj == null)
+			return false;
+		return compareTo((Constant) obj) == 0;
+	}
+
+	@Override
+	public int compareTo(Constant c) {
+		if (!(c instanceof CompositeConstant))
+			throw new IllegalArgumentException();
+		CompositeConstant cc = (CompositeConstant) c;
+		int n = Math.min(vals.length, cc.vals.length);
+		for (int i = 0; i < n; i++) {
+			int cmp = vals[i].compareTo(cc.vals[i]);
+			if (cmp != 0)
+				return cmp;
+		}
+		if (vals.length == cc.vals.length)
+			return Integer.compare(bound, cc.bound);
+		if (vals.length < cc.vals.length)
+			return bound != 0 ? bound : -1;
+		return cc.bound != 0 ? -cc.bound : 1;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(vals) + bound;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < vals.length; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(vals[i]);
+		}
+		if (bound != 0)
+			sb.append(vals.length > 0 ? ", " : "").append(
+					bound < 0 ? "-Infinity" : "Infinity");
+		return sb.append(')').toString();
+	}
+
+	@Override
+	public Constant add(Constant c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Constant sub(Constant c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Constant div(Constant c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Constant mul(Constant c) {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,282 @@
+package org.vanilladb.core.sql;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A range of {@link CompositeConstant composite} values. Since the values are
+ * ordered component by component, the values having some given first
+ * components, followed by a component in a range, are all between two bounds
+ * (see {@link #newInstance(List, ConstantRange)}).
+ */
+public class CompositeConstantRange extends ConstantRange {
+	private CompositeConstant low;
+	private CompositeConstant high;
+	private boolean lowIncl;
+	private boolean highIncl;
+
+	/**
+	 * Returns the range of the values beginning with the specified
+	 * components, which are followed by a component in the specified range.
+	 * The bounds of the range are below or above all values they are a prefix
+	 * of, so the range holds the values whatever their other components are.
+	 * 
+	 * @param prefix
+	 *            the first components of the values
+	 * @param next
+	 *            the range of the component following the prefix, or null if
+	 *            it can be any value
+	 * @return the range of the values
+	 */
+	public static CompositeConstantRange newInstance(List<Constant> prefix,
+			ConstantRange next) {
+		Constant[] p = prefix.toArray(new Constant[prefix.size()]);
+		CompositeConstant low = null, high = null;
+		if (next != null && next.hasLowerBound())
+			low = new CompositeConstant(append(p, next.low()),
+					next.isLowInclusive() ? -1 : 1);
+		else if (p.length > 0)
+			low = new CompositeConstant(p, -1);
+		if (next != null && next.hasUpperBound())
+			high = new CompositeConstant(append(p, next.high()),
+					next.isHighInclusive() ? 1 : -1);
+		else if (p.length > 0)
+			high = new CompositeConstant(p, 1);
+		return new CompositeConstantRange(low, true, high, true);
+	}
+
+	private static Constant[] append(Constant[] prefix, Constant c) {
+		Constant[] result = Arrays.copyOf(prefix, prefix.length + 1);
+		result[prefix.length] = c;
+		return result;
+	}
+
+	/**
+	 * Constructs a new instance.
+	 * 
+	 * @param low
+	 *            the lower bound. <code>null</code> means unbound.
+	 * @param lowIncl
+	 *            whether the lower bound is inclusive
+	 * @param high
+	 *            the higher bound. <code>null</code> means unbound.
+	 * @param highIncl
+	 *            whether the higher bound is inclusive
+	 */
+	public CompositeConstantRange(CompositeConstant low, boolean lowIncl,
+			CompositeConstant high, boolean highIncl) {
+		this.low = low;
+		this.lowIncl = low != null && lowIncl;
+		this.high = high;
+		this.highIncl = high != null && highIncl;
+	}
+
+	/*
+	 * Getters
+	 */
+
+	@Override
+	public boolean isValid() {
+		if (low == null || high == null)
+			return true;
+		int cmp = low.compareTo(high);
+		return cmp < 0 || (cmp == 0 && lowIncl && highIncl);
+	}
+
+	@Override
+	public boolean hasLowerBound() {
+		return low != null;
+	}
+
+	@Override
+	public boolean hasUpperBound() {
+		return high != null;
+	}
+
+	@Override
+	public Constant low() {
+		if (low != null)
+			return low;
+		throw new IllegalStateException();
+	}
+
+	@Override
+	public Constant high() {
+		if (high != null)
+			return high;
+		throw new IllegalStateException();
+	}
+
+	@Override
+	public boolean isLowInclusive() {
+		if (low != null)
+			return lowIncl;
+		throw new IllegalStateException();
+	}
+
+	@Override
+	public boolean isHighInclusive() {
+		if (high != null)
+			return highIncl;
+		throw new IllegalStateException();
+	}
+
+	@Override
+	public double length() {
+		throw new UnsupportedOperationException();
+	}
+
+	/*
+	 * Constant operations.
+	 */
+
+	@Override
+	public ConstantRange applyLow(Constant c, boolean incl) {
+		if (!(c instanceof CompositeConstant))
+			throw new IllegalArgumentException();
+		CompositeConstant l = low;
+		boolean li = lowIncl;
+		if (low == null || low.compareTo(c) < 0) {
+			l = (CompositeConstant) c;
+			li = incl;
+		} else if (low.compareTo(c) == 0 && !incl)
+			li = false;
+		return new CompositeConstantRange(l, li, high, highIncl);
+	}
+
+	@Override
+	public ConstantRange applyHigh(Constant c, boolean incl) {
+		if (!(c instanceof CompositeConstant))
+			throw new IllegalArgumentException();
+		CompositeConstant h = high;
+		boolean hi = highIncl;
+		if (high == null || high.compareTo(c) > 0) {
+			h = (CompositeConstant) c;
+			hi = incl;
+		} else if (high.compareTo(c) == 0 && !incl)
+			hi = false;
+		return new CompositeConstantRange(low, lowIncl, h, hi);
+	}
+
+	@Override
+	public ConstantRange applyConstant(Constant c) {
+		return applyLow(c, true).applyHigh(c, true);
+	}
+
+	@Override
+	public boolean isConstant() {
+		return low != null && high != null && low.equals(high) && lowIncl
+				&& highIncl;
+	}
+
+	@Override
+	public Constant asConstant() {
+		if (isConstant())
+			return low;
+		throw new IllegalStateException();
+	}
+
+	@Override
+	public boolean contains(Constant c) {
+		if (!(c instanceof CompositeConstant))
+			throw new IllegalArgumentException();
+		if (!isValid())
+			return false;
+		if (low != null) {
+			int cmp = c.compareTo(low);
+			if (cmp < 0 || (cmp == 0 && !lowIncl))
+				return false;
+		}
+		if (high != null) {
+			int cmp = c.compareTo(high);
+			if (cmp > 0 || (cmp == 0 && !highIncl))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Range operations.
+	 */
+
+	@Override
+	public boolean isOverlapping(ConstantRange r) {
+		if (!(r instanceof CompositeConstantRange))
+			throw new IllegalArgumentException();
+		return isValid() && r.isValid() && intersect(r).isValid();
+	}
+
+	@Override
+	public boolean contains(ConstantRange r) {
+		if (!(r instanceof CompositeConstantRange))
+			throw new IllegalArgumentException();
+		if (!isValid() || !r.isValid())
+			return false;
+		CompositeConstantRange cr = (CompositeConstantRange) r;
+		if (low != null) {
+			if (cr.low == null)
+				return false;
+			int cmp = cr.low.compareTo(low);
+			if (cmp < 0 || (cmp == 0 && cr.lowIncl && !lowIncl))
+				return false;
+		}
+		if (high != null) {
+			if (cr.high == null)
+				return false;
+			int cmp = cr.high.compareTo(high);
+			if (cmp > 0 || (cmp == 0 && cr.highIncl && !highIncl))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public ConstantRange intersect(ConstantRange r) {
+		if (!(r instanceof CompositeConstantRange))
+			throw new IllegalArgumentException();
+		CompositeConstantRange cr = (CompositeConstantRange) r;
+		ConstantRange result = this;
+		if (cr.low != null)
+			result = result.applyLow(cr.low, cr.lowIncl);
+		if (cr.high != null)
+			result = result.applyHigh(cr.high, cr.highIncl);
+		return result;
+	}
+
+	@Override
+	public ConstantRange union(ConstantRange r) {
+		if (!(r instanceof CompositeConstantRange))
+			throw new IllegalArgumentException();
+		CompositeConstantRange cr = (CompositeConstantRange) r;
+
+		CompositeConstant l = null;
+		boolean li = false;
+		if (low != null && cr.low != null) {
+			int cmp = low.compareTo(cr.low);
+			l = cmp <= 0 ? low : cr.low;
+			li = cmp < 0 ? lowIncl : cmp > 0 ? cr.lowIncl : lowIncl
+					|| cr.lowIncl;
+		}
+
+		CompositeConstant h = null;
+		boolean hi = false;
+		if (high != null && cr.high != null) {
+			int cmp = high.compareTo(cr.high);
+			h = cmp >= 0 ? high : cr.high;
+			hi = cmp > 0 ? highIncl : cmp < 0 ? cr.highIncl : highIncl
+					|| cr.highIncl;
+		}
+		return new CompositeConstantRange(l, li, h, hi);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(lowIncl ? '[' : '(');
+		sb.append(low == null ? "-Infinity" : low);
+		sb.append(", ");
+		sb.append(high == null ? "Infinity" : high);
+		sb.append(highIncl ? ']' : ')');
+		return sb.toString();
+	}
+}
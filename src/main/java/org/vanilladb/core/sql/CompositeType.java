@@ -0,0 +1,135 @@
+package org.vanilladb.core.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.vanilladb.core.util.ByteHelper;
+
+/**
+ * The type of the composite values, each of which consists of a value of each
+ * of the component types in turn. A composite value is the key of an index on
+ * several fields, or the values of the fields included in an index, rather
+ * than the value of a field of a table.
+ * <p>
+ * A composite value takes a fixed number of bytes, in which each component
+ * takes the space of the largest value of its type, so the component types
+ * must have bounded sizes.
+ * </p>
+ */
+public class CompositeType extends Type {
+	private Type[] types;
+	private int[] offsets;
+	private int size;
+
+	/**
+	 * Creates the composite type of the specified component types.
+	 * 
+	 * @param types
+	 *            the types of the components
+	 */
+	public CompositeType(List<Type> types) {
+		this.types = types.toArray(new Type[types.size()]);
+		offsets = new int[this.types.length];
+		for (int i = 0; i < this.types.length; i++) {
+			offsets[i] = size;
+			Type t = this.types[i];
+			size += t.isFixedSize() ? t.maxSize() : ByteHelper.INT_SIZE
+					+ t.maxSize();
+		}
+	}
+
+	@Override
+	public int getSqlType() {
+		return java.sql.Types.STRUCT;
+	}
+
+	/**
+	 * Returns the number of components.
+	 */
+	@Override
+	public int getArgument() {
+		return types.length;
+	}
+
+	@Override
+	public boolean isFixedSize() {
+		return true;
+	}
+
+	@Override
+	public boolean isNumeric() {
+		return false;
+	}
+
+	@Override
+	public int maxSize() {
+		return size;
+	}
+
+	@Override
+	public Constant maxValue() {
+		List<Constant> vals = new ArrayList<Constant>(types.length);
+		for (Type t : types)
+			vals.add(t.maxValue().castTo(t));
+		return new CompositeConstant(vals);
+	}
+
+	@Override
+	public Constant minValue() {
+		List<Constant> vals = new ArrayList<Constant>(types.length);
+		for (Type t : types)
+			vals.add(t.minValue().castTo(t));
+		return new CompositeConstant(vals);
+	}
+
+	/**
+	 * Returns the number of components of the values of this type.
+	 * 
+	 * @return the number of components
+	 */
+	public int numComponents() {
+		return types.length;
+	}
+
+	/**
+	 * Returns the type of the specified component.
+	 * 
+	 * @param i
+	 *            the index of the component
+	 * @return the type of the component
+	 */
+	public Type componentType(int i) {
+		return types[i];
+	}
+
+	/**
+	 * Returns the offset of the specified component in the bytes of a value.
+	 * 
+	 * @param i
+	 *            the index of the component
+	 * @return the offset of the component, in bytes
+	 */
+	public int offset(int i) {
+		return offsets[i];
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (obj == null || !(obj instanceof CompositeType))
+			return false;
+		return Arrays.equals(types, ((CompositeType) obj).types);
+	}
+
+	@Override
+	public String toString() {
+		return "COMPOSITE" + Arrays.toString(types);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(types);
+	}
+}
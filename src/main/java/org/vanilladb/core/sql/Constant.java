@@ -3,8 +3,12 @@ package org.vanilladb.core.sql;
 import static java.sql.Types.BIGINT;
 import static java.sql.Types.DOUBLE;
 import static java.sql.Types.INTEGER;
+import static java.sql.Types.STRUCT;
 import static java.sql.Types.VARCHAR;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An abstract class that denotes a value of a supported {@link Type type}.
  */
@@ -30,6 +34,8 @@ public abstract class Constant implements Comparable<Constant> {
 			return new DoubleConstant(val);
 		case (VARCHAR):
 			return new VarcharConstant(val, type);
+		case (STRUCT):
+			return new CompositeConstant(val, (CompositeType) type);
 		}
 		throw new UnsupportedOperationException("Unspported SQL type: "
 				+ type.getSqlType());
@@ -38,7 +44,8 @@ public abstract class Constant implements Comparable<Constant> {
 	/**
 	 * Constructs a new instance of the specified type with default value. For
 	 * all numeric constants, the default value is 0; for string constants, the
-	 * default value is an empty string.
+	 * default value is an empty string; and a composite constant consists of
+	 * the default values of its components.
 	 * 
 	 * @param type
 	 *            the specified type
@@ -54,6 +61,13 @@ public abstract class Constant implements Comparable<Constant> {
 			return new DoubleConstant(0);
 		case (VARCHAR):
 			return new VarcharConstant("");
+		case (STRUCT):
+			CompositeType ct = (CompositeType) type;
+			List<Constant> vals = new ArrayList<Constant>();
+			for (int i = 0; i < ct.numComponents(); i++)
+				vals.add(defaultInstance(ct.componentType(i)).castTo(
+						ct.componentType(i)));
+			return new CompositeConstant(vals);
 		}
 		throw new UnsupportedOperationException("Unspported SQL type: "
 				+ type.getSqlType());
@@ -12,7 +12,8 @@ public abstract class ConstantRange {
 	 * converted to {@link DoubleConstant}s and an instance of
 	 * {@link DoubleConstantRange} will be returned. Otherwise of the bounds are
 	 * of string types, an instance of {@link VarcharConstantRange} will be
-	 * returned.
+	 * returned, and if they are composite values, an instance of
+	 * {@link CompositeConstantRange}.
 	 * 
 	 * @param low
 	 *            the lower bound. <code>null</code> means unbound. Note that
@@ -49,6 +50,9 @@ public abstract class ConstantRange {
 					: null;
 			return new VarcharConstantRange(lowVarchar, lowIncl,
 					(VarcharConstant) highVarchar, highIncl);
+		} else if (type.getSqlType() == java.sql.Types.STRUCT) {
+			return new CompositeConstantRange((CompositeConstant) low,
+					lowIncl, (CompositeConstant) high, highIncl);
 		}
 
 		throw new UnsupportedOperationException();
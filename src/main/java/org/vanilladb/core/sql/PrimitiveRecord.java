@@ -0,0 +1,45 @@
+package org.vanilladb.core.sql;
+
+/**
+ * A record whose field values can also be read as Java primitives, without
+ * creating a {@link Constant} for each read.
+ */
+public interface PrimitiveRecord extends Record {
+	/**
+	 * Returns the value of the specified integer field.
+	 *
+	 * @param fldName
+	 *            the name of the field, whose type must be INTEGER
+	 * @return the value of that field
+	 */
+	int getInt(String fldName);
+
+	/**
+	 * Returns the value of the specified integer or big integer field.
+	 *
+	 * @param fldName
+	 *            the name of the field, whose type must be INTEGER or BIGINT
+	 * @return the value of that field, widened to a long
+	 */
+	long getLong(String fldName);
+
+	/**
+	 * Returns the value of the specified numeric field.
+	 *
+	 * @param fldName
+	 *            the name of the field, whose type must be numeric
+	 * @return the value of that field, widened to a double
+	 */
+	double getDouble(String fldName);
+
+	/**
+	 * Reads the value of the specified varchar field into the specified view,
+	 * replacing its contents.
+	 *
+	 * @param fldName
+	 *            the name of the field, whose type must be VARCHAR
+	 * @param view
+	 *            the view to hold the value
+	 */
+	void getVarchar(String fldName, VarcharView view);
+}
@@ -0,0 +1,105 @@
+package org.vanilladb.core.sql;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A reusable holder of a varchar value. Reading a value into a view decodes it
+ * into the char array of the view, which is reallocated only when a longer
+ * value comes, so a scan can read a varchar field of every record by one view.
+ *
+ * <p>
+ * A view is not thread-safe.
+ * </p>
+ */
+public class VarcharView implements CharSequence {
+	private CharsetDecoder decoder;
+	private CharBuffer chars = CharBuffer.allocate(32);
+
+	/**
+	 * Replaces the contents of this view by the chars decoded from the
+	 * remaining bytes of the specified buffer, in the charset of
+	 * {@link VarcharType#CHAR_SET}. The position of the buffer is moved to its
+	 * limit.
+	 *
+	 * @param bytes
+	 *            the encoded value
+	 */
+	public void decode(ByteBuffer bytes) {
+		if (decoder == null)
+			decoder = Charset.forName(VarcharType.CHAR_SET).newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		int maxChars = (int) Math.ceil(bytes.remaining()
+				* (double) decoder.maxCharsPerByte());
+		if (chars.capacity() < maxChars)
+			chars = CharBuffer.allocate(Math.max(maxChars,
+					chars.capacity() * 2));
+		chars.clear();
+		decoder.reset();
+		decoder.decode(bytes, chars, true);
+		decoder.flush(chars);
+		chars.flip();
+	}
+
+	/**
+	 * Replaces the contents of this view by the specified string.
+	 *
+	 * @param s
+	 *            the string
+	 */
+	public void set(String s) {
+		if (chars.capacity() < s.length())
+			chars = CharBuffer.allocate(Math.max(s.length(),
+					chars.capacity() * 2));
+		chars.clear();
+		s.getChars(0, s.length(), chars.array(), 0);
+		chars.limit(s.length());
+	}
+
+	/**
+	 * Compares the value of this view with the specified string, in the order
+	 * of {@link String#compareTo(String)}.
+	 *
+	 * @param s
+	 *            the string
+	 * @return a negative integer, zero, or a positive integer as this value is
+	 *         less than, equal to, or greater than the string
+	 */
+	public int compareTo(String s) {
+		char[] a = chars.array();
+		int len = chars.limit();
+		int n = Math.min(len, s.length());
+		for (int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if (a[i] != c)
+				return a[i] - c;
+		}
+		return len - s.length();
+	}
+
+	@Override
+	public int length() {
+		return chars.limit();
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index >= chars.limit())
+			throw new IndexOutOfBoundsException();
+		return chars.array()[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().substring(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars.array(), 0, chars.limit());
+	}
+}
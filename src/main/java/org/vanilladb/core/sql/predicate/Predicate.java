@@ -70,6 +70,23 @@ public class Predicate {
 		return true;
 	}
 
+	/**
+	 * Returns an evaluator of this predicate on the records of the specified
+	 * schema, which evaluates the terms by their own evaluators.
+	 * 
+	 * @param sch
+	 *            the schema of the records
+	 * @return an evaluator of this predicate
+	 * @see Term#evaluator(Schema)
+	 */
+	public Evaluator evaluator(Schema sch) {
+		Term.Evaluator[] evals = new Term.Evaluator[terms.size()];
+		int i = 0;
+		for (Term t : terms)
+			evals[i++] = t.evaluator(sch);
+		return new Evaluator(evals);
+	}
+
 	/**
 	 * Returns the sub-predicate that applies to the specified schema.
 	 * 
@@ -194,4 +211,30 @@ public class Predicate {
 			result += " and " + iter.next().toString();
 		return result;
 	}
+
+	/**
+	 * Evaluates a predicate on the records of a schema.
+	 */
+	public static class Evaluator {
+		private Term.Evaluator[] evals;
+
+		private Evaluator(Term.Evaluator[] evals) {
+			this.evals = evals;
+		}
+
+		/**
+		 * Returns true if the predicate evaluates to true with respect to the
+		 * specified record, which must be of the schema of this evaluator.
+		 * 
+		 * @param rec
+		 *            the record
+		 * @return true if the predicate evaluates to true
+		 */
+		public boolean isSatisfied(Record rec) {
+			for (Term.Evaluator e : evals)
+				if (!e.isSatisfied(rec))
+					return false;
+			return true;
+		}
+	}
 }
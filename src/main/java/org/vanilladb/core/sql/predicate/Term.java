@@ -1,17 +1,36 @@
 package org.vanilladb.core.sql.predicate;
 
+import static java.sql.Types.DOUBLE;
+import static java.sql.Types.VARCHAR;
+
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 import org.vanilladb.core.sql.Record;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharView;
 
 /**
  * A comparison between two expressions.
+ * 
+ * <p>
+ * A term comparing a field with a constant can be evaluated by an
+ * {@link Evaluator} made for the schema of the records, which reads the field
+ * as a primitive from a {@link PrimitiveRecord}, so evaluating it on a stored
+ * record allocates nothing. The term itself is immutable and can be shared.
+ * </p>
  */
 public class Term {
 	public abstract static class Operator {
 		abstract Operator complement();
 
 		abstract boolean isSatisfied(Expression lhs, Expression rhs, Record rec);
+
+		/**
+		 * Returns true if the operator holds for the specified result of a
+		 * comparison between the left and right hand sides.
+		 */
+		abstract boolean accepts(int cmp);
 	}
 
 	public static final Operator OP_EQ = new Operator() {
@@ -25,6 +44,11 @@ public class Term {
 			return lhs.evaluate(rec).equals(rhs.evaluate(rec));
 		}
 
+		@Override
+		boolean accepts(int cmp) {
+			return cmp == 0;
+		}
+
 		@Override
 		public String toString() {
 			return "=";
@@ -42,6 +66,11 @@ public class Term {
 			return lhs.evaluate(rec).compareTo(rhs.evaluate(rec)) < 0;
 		}
 
+		@Override
+		boolean accepts(int cmp) {
+			return cmp < 0;
+		}
+
 		@Override
 		public String toString() {
 			return "<";
@@ -59,6 +88,11 @@ public class Term {
 			return lhs.evaluate(rec).compareTo(rhs.evaluate(rec)) <= 0;
 		}
 
+		@Override
+		boolean accepts(int cmp) {
+			return cmp <= 0;
+		}
+
 		@Override
 		public String toString() {
 			return "<=";
@@ -76,6 +110,11 @@ public class Term {
 			return complement().isSatisfied(rhs, lhs, rec);
 		}
 
+		@Override
+		boolean accepts(int cmp) {
+			return cmp > 0;
+		}
+
 		@Override
 		public String toString() {
 			return ">";
@@ -93,19 +132,41 @@ public class Term {
 			return complement().isSatisfied(rhs, lhs, rec);
 		}
 
+		@Override
+		boolean accepts(int cmp) {
+			return cmp >= 0;
+		}
+
 		@Override
 		public String toString() {
 			return ">=";
 		}
 	};
 
+	// how a field is compared with a constant
+	private static final int CMP_LONG = 1, CMP_DOUBLE = 2, CMP_VARCHAR = 3,
+			CMP_CONSTANT = 4;
+
 	private Operator op;
 	private Expression lhs, rhs;
+	// the field, constant and operator of a term of the form "F<OP>C"
+	private String fld;
+	private Constant val;
+	private Operator fldOp;
 
 	public Term(Expression lhs, Operator op, Expression rhs) {
 		this.lhs = lhs;
 		this.op = op;
 		this.rhs = rhs;
+		if (lhs.isFieldName() && rhs.isConstant()) {
+			fld = lhs.asFieldName();
+			val = rhs.asConstant();
+			fldOp = op;
+		} else if (rhs.isFieldName() && lhs.isConstant()) {
+			fld = rhs.asFieldName();
+			val = lhs.asConstant();
+			fldOp = op.complement();
+		}
 	}
 
 	/**
@@ -188,7 +249,94 @@ public class Term {
 		return op.isSatisfied(lhs, rhs, rec);
 	}
 
+	/**
+	 * Returns an evaluator of this term on the records of the specified
+	 * schema. An evaluator keeps a view for the varchar values read, so each
+	 * scan should make its own.
+	 * 
+	 * @param sch
+	 *            the schema of the records
+	 * @return an evaluator of this term
+	 */
+	public Evaluator evaluator(Schema sch) {
+		if (fld == null || !sch.hasField(fld))
+			return new Evaluator(CMP_CONSTANT);
+		return new Evaluator(compareMode(sch.type(fld)));
+	}
+
 	public String toString() {
 		return lhs.toString() + op.toString() + rhs.toString();
 	}
+
+	/**
+	 * Decides how the field of the specified type is compared with the
+	 * constant, in the same way as {@link Constant#compareTo(Constant)} does.
+	 */
+	private int compareMode(Type fldType) {
+		Type valType = val.getType();
+		if (fldType.isNumeric() && valType.isNumeric()) {
+			if (fldType.getSqlType() == DOUBLE
+					|| valType.getSqlType() == DOUBLE)
+				return CMP_DOUBLE;
+			return CMP_LONG;
+		}
+		if (fldType.getSqlType() == VARCHAR && valType.getSqlType() == VARCHAR)
+			return CMP_VARCHAR;
+		return CMP_CONSTANT;
+	}
+
+	/**
+	 * Evaluates the term on the records of a schema. If the term compares a
+	 * field with a constant, the field is read as a primitive from a
+	 * {@link PrimitiveRecord} and compared as the schema decided.
+	 */
+	public class Evaluator {
+		private int cmpMode;
+		private long longVal;
+		private double doubleVal;
+		private String stringVal;
+		private VarcharView view;
+
+		private Evaluator(int cmpMode) {
+			this.cmpMode = cmpMode;
+			switch (cmpMode) {
+			case CMP_LONG:
+				longVal = ((Number) val.asJavaVal()).longValue();
+				break;
+			case CMP_DOUBLE:
+				doubleVal = ((Number) val.asJavaVal()).doubleValue();
+				break;
+			case CMP_VARCHAR:
+				stringVal = (String) val.asJavaVal();
+				view = new VarcharView();
+				break;
+			}
+		}
+
+		/**
+		 * Returns true if the term is satisfied by the specified record,
+		 * which must be of the schema of this evaluator.
+		 * 
+		 * @param rec
+		 *            the record
+		 * @return true if the term is satisfied
+		 */
+		public boolean isSatisfied(Record rec) {
+			if (cmpMode != CMP_CONSTANT && rec instanceof PrimitiveRecord) {
+				PrimitiveRecord prec = (PrimitiveRecord) rec;
+				switch (cmpMode) {
+				case CMP_LONG:
+					return fldOp.accepts(Long.compare(prec.getLong(fld),
+							longVal));
+				case CMP_DOUBLE:
+					return fldOp.accepts(Double.compare(prec.getDouble(fld),
+							doubleVal));
+				case CMP_VARCHAR:
+					prec.getVarchar(fld, view);
+					return fldOp.accepts(view.compareTo(stringVal));
+				}
+			}
+			return op.isSatisfied(lhs, rhs, rec);
+		}
+	}
 }
\ No newline at end of file
@@ -1,19 +1,38 @@
 package org.vanilladb.core.storage.buffer;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.storage.file.*;
 
 
 /**
- * Manages the pinning and unpinning of buffers to blocks.
+ * Manages the pinning and unpinning of buffers to blocks. The buffer to be
+ * replaced is chosen by the {@link ReplacementPolicy} named by the property
+ * <code>REPLACEMENT_POLICY</code>.
  */
-class BasicBufferMgr {
-	private Buffer[] bufferPool;
+class BasicBufferMgr implements BufferPoolMgr {
+	private static Logger logger = Logger.getLogger(BasicBufferMgr.class
+			.getName());
+	private static final String REPLACEMENT_POLICY;
+
+	private List<Buffer> bufferPool;
 	private Map<BlockId, Buffer> blockMap;
-	private int numAvailable, lastReplacedBuff;
+	private ReplacementPolicy policy;
+	private int numAvailable;
+	private long numHits, numMisses;
+
+	static {
+		String prop = System.getProperty(BasicBufferMgr.class.getName()
+				+ ".REPLACEMENT_POLICY");
+		REPLACEMENT_POLICY = (prop == null ? RoundRobinPolicy.class.getName()
+				: prop.trim());
+	}
 
 	/**
 	 * Creates a buffer manager having the specified number of buffer slots.
@@ -22,26 +41,65 @@ class BasicBufferMgr {
 	 * it gets from the class {@link VanillaDB}. Those objects are created
 	 * during system initialization. Thus this constructor cannot be called
 	 * until {@link VanillaDB#initFileAndLogMgr(String)} or is called first.
+	 *
+	 * @param numBuffs
+	 *            the number of buffer slots to allocate
+	 * @param blockSize
+	 *            the size of the pages in the buffers
+	 */
+	BasicBufferMgr(int numBuffs, int blockSize) {
+		this(numBuffs, blockSize, newReplacementPolicy());
+	}
+
+	/**
+	 * Creates a buffer manager having the specified number of buffer slots of
+	 * the specified size, and replacing buffers by the specified policy.
 	 * 
 	 * @param numBuffs
 	 *            the number of buffer slots to allocate
+	 * @param blockSize
+	 *            the size of the pages in the buffers
+	 * @param policy
+	 *            the replacement policy used by this buffer manager only
 	 */
-	BasicBufferMgr(int numBuffs) {
-		bufferPool = new Buffer[numBuffs];
+	BasicBufferMgr(int numBuffs, int blockSize, ReplacementPolicy policy) {
+		bufferPool = new ArrayList<Buffer>(numBuffs);
 		blockMap = new HashMap<BlockId, Buffer>();
+		this.policy = policy;
 		numAvailable = numBuffs;
-		lastReplacedBuff = 0;
-		for (int i = 0; i < numBuffs; i++)
-			bufferPool[i] = new Buffer();
+		for (int i = 0; i < numBuffs; i++) {
+			Buffer buff = new Buffer(blockSize);
+			bufferPool.add(buff);
+			policy.bufferAdded(buff);
+		}
 	}
 
 	/**
-	 * Flushes the dirty buffers modified by the specified transaction.
+	 * Creates an instance of the configured replacement policy. Falls back to
+	 * {@link RoundRobinPolicy} if the policy cannot be created.
 	 * 
+	 * @return a new replacement policy
+	 */
+	static ReplacementPolicy newReplacementPolicy() {
+		try {
+			return (ReplacementPolicy) Class.forName(REPLACEMENT_POLICY)
+					.newInstance();
+		} catch (Exception e) {
+			if (logger.isLoggable(Level.WARNING))
+				logger.warning("cannot create replacement policy "
+						+ REPLACEMENT_POLICY);
+			return new RoundRobinPolicy();
+		}
+	}
+
+	/**
+	 * Flushes the dirty buffers modified by the specified transaction.
+	 *
 	 * @param txNum
 	 *            the transaction's id number
 	 */
-	synchronized void flushAll(long txNum) {
+	@Override
+	public synchronized void flushAll(long txNum) {
 		for (Buffer buff : bufferPool)
 			if (buff.isModifiedBy(txNum))
 				buff.flush();
@@ -52,26 +110,55 @@ class BasicBufferMgr {
 	 * assigned to that block then that buffer is used; otherwise, an unpinned
 	 * buffer from the pool is chosen. Returns a null value if there are no
 	 * available buffers.
-	 * 
+	 *
 	 * @param blk
 	 *            a block ID
 	 * @return the pinned buffer
 	 */
-	synchronized Buffer pin(BlockId blk) {
+	@Override
+	public synchronized Buffer pin(BlockId blk) {
 		Buffer buff = findExistingBuffer(blk);
+		boolean loaded = false;
 		if (buff == null) {
-			buff = chooseUnpinnedBuffer();
+			buff = policy.chooseUnpinnedBuffer();
 			if (buff == null)
 				return null;
-			BlockId oldBlk = buff.block();
-			if (oldBlk != null)
-				blockMap.remove(oldBlk);
+			unmap(buff);
 			buff.assignToBlock(blk);
 			blockMap.put(blk, buff);
-		}
+			loaded = true;
+			numMisses++;
+		} else
+			numHits++;
 		if (!buff.isPinned())
 			numAvailable--;
 		buff.pin();
+		policy.bufferPinned(buff, loaded);
+		return buff;
+	}
+
+	/**
+	 * Pins an unpinned buffer to the specified block without reading the
+	 * block. Returns a null value if the block is already in the pool or there
+	 * are no available buffers.
+	 *
+	 * @param blk
+	 *            a block ID
+	 * @return the pinned buffer
+	 */
+	@Override
+	public synchronized Buffer reserve(BlockId blk) {
+		if (findExistingBuffer(blk) != null)
+			return null;
+		Buffer buff = policy.chooseUnpinnedBuffer();
+		if (buff == null)
+			return null;
+		unmap(buff);
+		buff.reserveForBlock(blk);
+		blockMap.put(blk, buff);
+		numAvailable--;
+		buff.pin();
+		policy.bufferPinned(buff, true);
 		return buff;
 	}
 
@@ -79,35 +166,36 @@ class BasicBufferMgr {
 	 * Allocates a new block in the specified file, and pins a buffer to it.
 	 * Returns null (without allocating the block) if there are no available
 	 * buffers.
-	 * 
+	 *
 	 * @param fileName
 	 *            the name of the file
 	 * @param fmtr
 	 *            a pageformatter object, used to format the new block
 	 * @return the pinned buffer
 	 */
-	synchronized Buffer pinNew(String fileName, PageFormatter fmtr) {
-		Buffer buff = chooseUnpinnedBuffer();
+	@Override
+	public synchronized Buffer pinNew(String fileName, PageFormatter fmtr) {
+		Buffer buff = policy.chooseUnpinnedBuffer();
 		if (buff == null)
 			return null;
-		BlockId oldBlk = buff.block();
-		if (oldBlk != null)
-			blockMap.remove(oldBlk);
+		unmap(buff);
 
 		buff.assignToNew(fileName, fmtr);
 		numAvailable--;
 		buff.pin();
 		blockMap.put(buff.block(), buff);
+		policy.bufferPinned(buff, true);
 		return buff;
 	}
 
 	/**
 	 * Unpins the specified buffers.
-	 * 
+	 *
 	 * @param buffs
 	 *            the buffers to be unpinned
 	 */
-	synchronized void unpin(Buffer... buffs) {
+	@Override
+	public synchronized void unpin(Buffer... buffs) {
 		for (Buffer buff : buffs) {
 			buff.unpin();
 			if (!buff.isPinned())
@@ -117,30 +205,119 @@ class BasicBufferMgr {
 
 	/**
 	 * Returns the number of available (i.e. unpinned) buffers.
-	 * 
+	 *
 	 * @return the number of available buffers
 	 */
-	synchronized int available() {
+	@Override
+	public synchronized int available() {
 		return numAvailable;
 	}
 
-	private Buffer findExistingBuffer(BlockId blk) {
-		Buffer buff = blockMap.get(blk);
-		if (buff != null && buff.block().equals(blk))
-			return buff;
-		return null;
+	@Override
+	public synchronized Buffer[] buffers() {
+		return bufferPool.toArray(new Buffer[bufferPool.size()]);
 	}
 
-	private Buffer chooseUnpinnedBuffer() {
-		int currBlk = (lastReplacedBuff + 1) % bufferPool.length;
-		while (currBlk != lastReplacedBuff) {
-			Buffer buff = bufferPool[currBlk];
-			if (!buff.isPinned()) {
-				lastReplacedBuff = currBlk;
-				return buff;
+	/**
+	 * Removes an unpinned buffer from this pool so that it can be handed to
+	 * another pool. The buffer is flushed before it leaves, so a later
+	 * {@link #flushAll(long)} never misses a page that is moving between
+	 * pools. Returns a null value if all buffers are pinned.
+	 *
+	 * @return the removed buffer
+	 */
+	synchronized Buffer evictUnpinnedBuffer() {
+		Buffer buff = policy.chooseUnpinnedBuffer();
+		if (buff == null)
+			return null;
+		unmap(buff);
+		buff.flush();
+		bufferPool.remove(buff);
+		policy.bufferRemoved(buff);
+		numAvailable--;
+		return buff;
+	}
+
+	/**
+	 * Adds a buffer removed from another pool by
+	 * {@link #evictUnpinnedBuffer()} to this pool. If the buffer is pinned, it
+	 * has just been assigned to a new block, and is registered as holding the
+	 * block. Since the block is in its file before it is registered, another
+	 * thread may have pinned it to a buffer of this pool in the meantime; that
+	 * buffer then takes the new page and is pinned instead, so a block is
+	 * never held by two buffers.
+	 *
+	 * @param buff
+	 *            the buffer to be added
+	 * @return the buffer pinned to the new block, or the specified buffer if
+	 *         it is not pinned
+	 */
+	synchronized Buffer adopt(Buffer buff) {
+		bufferPool.add(buff);
+		policy.bufferAdded(buff);
+		if (!buff.isPinned()) {
+			numAvailable++;
+			return buff;
+		}
+		Buffer existing = findExistingBuffer(buff.block());
+		if (existing == null) {
+			blockMap.put(buff.block(), buff);
+			policy.bufferPinned(buff, true);
+			return buff;
+		}
+		// a prefetch may be reading the block into the existing buffer
+		boolean interrupted = false, loaded;
+		while (true) {
+			try {
+				loaded = existing.waitUntilLoaded();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
 			}
-			currBlk = (currBlk + 1) % bufferPool.length;
 		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (!loaded) {
+			// the new buffer replaces the one that failed to load
+			blockMap.put(buff.block(), buff);
+			policy.bufferPinned(buff, true);
+			return buff;
+		}
+		existing.takeNewPage(buff);
+		numAvailable++;
+		if (!existing.isPinned())
+			numAvailable--;
+		existing.pin();
+		policy.bufferPinned(existing, false);
+		return existing;
+	}
+
+	/**
+	 * Returns the fraction of pins that found their block already in this
+	 * pool.
+	 * 
+	 * @return the hit ratio
+	 */
+	synchronized double hitRatio() {
+		long numPins = numHits + numMisses;
+		return numPins == 0 ? 0.0 : (double) numHits / numPins;
+	}
+
+	/**
+	 * Removes the mapping of the block of the specified buffer, unless the
+	 * block is mapped to another buffer.
+	 */
+	private void unmap(Buffer buff) {
+		BlockId oldBlk = buff.block();
+		if (oldBlk != null && blockMap.get(oldBlk) == buff)
+			blockMap.remove(oldBlk);
+	}
+
+	private Buffer findExistingBuffer(BlockId blk) {
+		Buffer buff = blockMap.get(blk);
+		// a buffer that failed to load its block is never found again
+		if (buff != null && buff.block().equals(blk) && !buff.isLoadFailed())
+			return buff;
 		return null;
 	}
 }
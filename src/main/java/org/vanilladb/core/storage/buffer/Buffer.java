@@ -2,10 +2,12 @@ package org.vanilladb.core.storage.buffer;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharView;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
 
@@ -18,12 +20,29 @@ import org.vanilladb.core.storage.file.Page;
  * corresponding log record.
  */
 public class Buffer {
-	private Page contents = new Page();
+	private Page contents;
 	private BlockId blk = null;
 	private int pins = 0;
 	private Set<Long> modifiedBy = new HashSet<Long>();
 	// negative means no corresponding log record
 	private long maxLsn = -1;
+	// the LSN of the first log record since the page was last written to disk
+	private long recLsn = -1;
+	// true while the page is being read by a prefetcher
+	private volatile boolean loading;
+	// true if the prefetcher failed to read the page
+	private volatile boolean loadFailed;
+	// the latch of the page, and its version, which is odd while latched
+	private final ReentrantLock latch = new ReentrantLock();
+	private volatile long version;
+
+	/*
+	 * Access metadata used by the replacement policy of the buffer pool. These
+	 * fields are guarded by the monitor of the pool owning this buffer.
+	 */
+	private boolean referenced;
+	private long[] accessHistory;
+	private int queue;
 
 	/**
 	 * Creates a new buffer, wrapping a new {@link Page page}. This constructor
@@ -32,8 +51,13 @@ public class Buffer {
 	 * that it gets from the class {@link VanillaDB}. That object is created
 	 * during system initialization. Thus this constructor cannot be called
 	 * until {@link VanillaDB#initFileAndLogMgr(String)} or is called first.
+	 * 
+	 * @param blockSize
+	 *            the size of the page, which must be the block size of the
+	 *            files the buffer is used for
 	 */
-	Buffer() {
+	Buffer(int blockSize) {
+		contents = new Page(blockSize);
 	}
 
 	/**
@@ -52,6 +76,65 @@ public class Buffer {
 		return contents.getVal(offset, type);
 	}
 
+	/**
+	 * Returns the integer at the specified offset of this buffer's page. The
+	 * read takes no lock of the buffer; see {@link Page#getInt(int)}.
+	 * 
+	 * @param offset
+	 *            the byte offset of the page
+	 * @return the integer at that offset
+	 */
+	public int getInt(int offset) {
+		return contents.getInt(offset);
+	}
+
+	/**
+	 * Returns the long integer at the specified offset of this buffer's page.
+	 * The read takes no lock of the buffer; see {@link Page#getInt(int)}.
+	 * 
+	 * @param offset
+	 *            the byte offset of the page
+	 * @return the long integer at that offset
+	 */
+	public long getLong(int offset) {
+		return contents.getLong(offset);
+	}
+
+	/**
+	 * Returns the double at the specified offset of this buffer's page. The
+	 * read takes no lock of the buffer; see {@link Page#getInt(int)}.
+	 * 
+	 * @param offset
+	 *            the byte offset of the page
+	 * @return the double at that offset
+	 */
+	public double getDouble(int offset) {
+		return contents.getDouble(offset);
+	}
+
+	/**
+	 * Reads the varchar at the specified offset of this buffer's page into the
+	 * specified view.
+	 * 
+	 * @param offset
+	 *            the byte offset of the page
+	 * @param view
+	 *            the view to hold the value
+	 */
+	public void getVarchar(int offset, VarcharView view) {
+		contents.getVarchar(offset, view);
+	}
+
+	/**
+	 * Returns a copy of this buffer's page, taken while no value is being
+	 * written to the page.
+	 * 
+	 * @return a copy of the page
+	 */
+	public synchronized Page copyPage() {
+		return contents.copy();
+	}
+
 	/**
 	 * Writes a value to the specified offset of this buffer's page. This method
 	 * assumes that the transaction has already written an appropriate log
@@ -70,12 +153,123 @@ public class Buffer {
 	 */
 	public synchronized void setVal(int offset, Constant val, long txNum,
 			long lsn) {
-		modifiedBy.add(txNum);
-		if (lsn >= 0)
-			maxLsn = lsn;
+		setModified(txNum, lsn);
 		contents.setVal(offset, val);
 	}
 
+	/**
+	 * Returns the specified number of bytes at the specified offset of the
+	 * buffer's page.
+	 * 
+	 * @param offset
+	 *            the byte offset of the page
+	 * @param length
+	 *            the number of bytes
+	 * @return a copy of the bytes
+	 */
+	public synchronized byte[] getBytes(int offset, int length) {
+		return contents.getBytes(offset, length);
+	}
+
+	/**
+	 * Writes the specified bytes to the specified offset of the buffer's page,
+	 * like {@link #setVal(int, Constant, long, long)} writes a value.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param bytes
+	 *            the bytes to be written
+	 * @param txNum
+	 *            the id of the transaction performing the modification
+	 * @param lsn
+	 *            the LSN of the corresponding log record
+	 */
+	public synchronized void setBytes(int offset, byte[] bytes, long txNum,
+			long lsn) {
+		setModified(txNum, lsn);
+		contents.setBytes(offset, bytes);
+	}
+
+	private void setModified(long txNum, long lsn) {
+		modifiedBy.add(txNum);
+		if (lsn >= 0) {
+			if (lsn > maxLsn)
+				maxLsn = lsn;
+			if (recLsn < 0 || lsn < recLsn)
+				recLsn = lsn;
+		}
+	}
+
+	/**
+	 * Formats the page of this buffer by the specified formatter, as a new
+	 * block is formatted. Like {@link #setVal(int, Constant, long, long)},
+	 * this method assumes that the transaction has already written an
+	 * appropriate log record, and a negative lsn value indicates that a log
+	 * record was not necessary.
+	 * 
+	 * @param fmtr
+	 *            the page formatter
+	 * @param txNum
+	 *            the id of the transaction performing the modification
+	 * @param lsn
+	 *            the LSN of the corresponding log record
+	 */
+	public synchronized void format(PageFormatter fmtr, long txNum, long lsn) {
+		setModified(txNum, lsn);
+		fmtr.format(contents);
+	}
+
+	/**
+	 * Latches the page exclusively, so that the readers validating the
+	 * version of the page see that it is being modified. The latch is
+	 * reentrant, and is held only while the values of a page are modified,
+	 * never while a transaction waits for a lock.
+	 */
+	public void latch() {
+		latch.lock();
+		if (latch.getHoldCount() == 1)
+			version++;
+	}
+
+	/**
+	 * Releases the latch of the page.
+	 */
+	public void unlatch() {
+		if (latch.getHoldCount() == 1)
+			version++;
+		latch.unlock();
+	}
+
+	/**
+	 * Returns the version of the page, waiting until no other thread latches
+	 * the page. A reader takes the version before reading the page without
+	 * latching it, and the values read are consistent only if
+	 * {@link #validate(long)} returns true afterwards.
+	 * 
+	 * @return the version of the page
+	 */
+	public long stableVersion() {
+		long v = version;
+		while ((v & 1) != 0 && !latch.isHeldByCurrentThread()) {
+			latch.lock();
+			latch.unlock();
+			v = version;
+		}
+		return v;
+	}
+
+	/**
+	 * Returns true if the page has not been latched since the specified
+	 * version was taken.
+	 * 
+	 * @param version
+	 *            a version returned by {@link #stableVersion()}
+	 * @return true if the version is still current
+	 */
+	public boolean validate(long version) {
+		return this.version == version;
+	}
+
 	/**
 	 * Returns a block ID refers to the disk block that the buffer is pinned to.
 	 * 
@@ -85,6 +279,15 @@ public class Buffer {
 		return blk;
 	}
 
+	/**
+	 * Returns the size of the page of this buffer.
+	 * 
+	 * @return the size of the page, in bytes
+	 */
+	int blockSize() {
+		return contents.blockSize();
+	}
+
 	/**
 	 * Writes the page to its disk block if the page is dirty. The method
 	 * ensures that the corresponding log record has been written to disk prior
@@ -95,6 +298,7 @@ public class Buffer {
 			VanillaDB.logMgr().flush(maxLsn);
 			contents.write(blk);
 			modifiedBy.clear();
+			recLsn = -1;
 		}
 	}
 
@@ -134,6 +338,28 @@ public class Buffer {
 		return modifiedBy.contains(txNum);
 	}
 
+	/**
+	 * Returns true if the page has been modified since it was last written to
+	 * disk.
+	 * 
+	 * @return true if the buffer is dirty
+	 */
+	synchronized boolean isModified() {
+		return modifiedBy.size() > 0;
+	}
+
+	/**
+	 * Returns the LSN of the earliest log record whose modification to this
+	 * page may not have been written to disk, that is, the recovery LSN of the
+	 * page in the dirty page table. Returns -1 if no logged modification is
+	 * pending.
+	 * 
+	 * @return the recovery LSN of the page
+	 */
+	synchronized long recoveryLsn() {
+		return recLsn;
+	}
+
 	/**
 	 * Reads the contents of the specified block into the buffer's page. If the
 	 * buffer was dirty, then the contents of the previous page are first
@@ -145,10 +371,103 @@ public class Buffer {
 	synchronized void assignToBlock(BlockId blk) {
 		flush();
 		this.blk = blk;
+		loadFailed = false;
 		contents.read(blk);
 		pins = 0;
 	}
 
+	/**
+	 * Assigns the buffer to the specified block without reading its contents,
+	 * which are loaded later by {@link #loadAll(Buffer[])}. Until then, the
+	 * threads pinning the block wait in {@link #waitUntilLoaded()}. If the
+	 * buffer was dirty, then the contents of the previous page are first
+	 * written to disk.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 */
+	synchronized void reserveForBlock(BlockId blk) {
+		flush();
+		this.blk = blk;
+		loading = true;
+		loadFailed = false;
+		pins = 0;
+	}
+
+	/**
+	 * Reads the contents of consecutive blocks into the specified buffers
+	 * reserved by {@link #reserveForBlock(BlockId)}, and wakes up the threads
+	 * waiting for them. If the blocks cannot be read at once, they are read
+	 * one by one. The buffers whose blocks still cannot be read are marked as
+	 * failed, so that the pool no longer finds their blocks in them and the
+	 * waiting threads pin the blocks again.
+	 * 
+	 * @param buffs
+	 *            the buffers of consecutive blocks
+	 * @throws RuntimeException
+	 *             if any of the blocks cannot be read
+	 */
+	static void loadAll(Buffer[] buffs) {
+		Page[] pages = new Page[buffs.length];
+		for (int i = 0; i < buffs.length; i++)
+			pages[i] = buffs[i].contents;
+		boolean[] failed = new boolean[buffs.length];
+		RuntimeException failure = null;
+		try {
+			Page.read(buffs[0].blk, pages);
+		} catch (RuntimeException e) {
+			// falls back to reading the blocks one by one
+			for (int i = 0; i < buffs.length; i++) {
+				try {
+					buffs[i].contents.read(buffs[i].blk);
+				} catch (RuntimeException e2) {
+					failed[i] = true;
+					if (failure == null)
+						failure = e2;
+				}
+			}
+		}
+		for (int i = 0; i < buffs.length; i++) {
+			Buffer buff = buffs[i];
+			synchronized (buff) {
+				buff.loadFailed = failed[i];
+				buff.loading = false;
+				buff.notifyAll();
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Waits until the contents of the page have been loaded, if the buffer
+	 * has been reserved for a prefetched block. Returns false if the block
+	 * could not be read, in which case the page holds no valid contents and
+	 * the caller should unpin the buffer and pin the block again.
+	 * 
+	 * @return true if the page holds the contents of the block
+	 * @throws InterruptedException
+	 */
+	boolean waitUntilLoaded() throws InterruptedException {
+		if (loading) {
+			synchronized (this) {
+				while (loading)
+					wait();
+			}
+		}
+		return !loadFailed;
+	}
+
+	/**
+	 * Returns true if the prefetcher failed to read the block of this buffer.
+	 * Such a buffer is not used for its block again until it is reassigned.
+	 * 
+	 * @return true if the block could not be loaded
+	 */
+	boolean isLoadFailed() {
+		return loadFailed;
+	}
+
 	/**
 	 * Initializes the buffer's page according to the specified formatter, and
 	 * appends the page to the specified file. If the buffer was dirty, then the
@@ -163,6 +482,97 @@ public class Buffer {
 		flush();
 		fmtr.format(contents);
 		blk = contents.append(fileName);
+		loadFailed = false;
 		pins = 0;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Takes the page of the specified buffer, which has just been assigned to
+	 * the new block held by this buffer and is reachable by no other thread.
+	 * This buffer may have read the block before its contents were written.
+	 * The specified buffer gets the old page of this one and holds no block.
+	 * 
+	 * @param newBuff
+	 *            the buffer assigned to the new block
+	 */
+	synchronized void takeNewPage(Buffer newBuff) {
+		Page page = contents;
+		contents = newBuff.contents;
+		newBuff.contents = page;
+		newBuff.blk = null;
+		newBuff.pins = 0;
+	}
+
+	/**
+	 * Returns true if the reference bit of this buffer is set.
+	 * 
+	 * @return true if the buffer has been referenced
+	 */
+	boolean isReferenced() {
+		return referenced;
+	}
+
+	/**
+	 * Sets or clears the reference bit of this buffer.
+	 * 
+	 * @param referenced
+	 *            the new value of the reference bit
+	 */
+	void setReferenced(boolean referenced) {
+		this.referenced = referenced;
+	}
+
+	/**
+	 * Clears the access history and keeps the times of at most the specified
+	 * number of accesses from now on.
+	 * 
+	 * @param length
+	 *            the number of access times to keep
+	 */
+	void resetAccessHistory(int length) {
+		accessHistory = new long[length];
+	}
+
+	/**
+	 * Records an access to this buffer at the specified time.
+	 * 
+	 * @param time
+	 *            the time of the access
+	 */
+	void recordAccess(long time) {
+		System.arraycopy(accessHistory, 0, accessHistory, 1,
+				accessHistory.length - 1);
+		accessHistory[0] = time;
+	}
+
+	/**
+	 * Returns the time of the (i+1)-th most recent access recorded, or 0 if
+	 * there are not that many.
+	 * 
+	 * @param i
+	 *            the index of the access, where 0 is the most recent one
+	 * @return the time of the access
+	 */
+	long accessTime(int i) {
+		return accessHistory[i];
+	}
+
+	/**
+	 * Returns the queue of the replacement policy that this buffer is in.
+	 * 
+	 * @return the id of the queue
+	 */
+	int queue() {
+		return queue;
+	}
+
+	/**
+	 * Sets the queue of the replacement policy that this buffer is in.
+	 * 
+	 * @param queue
+	 *            the id of the queue
+	 */
+	void setQueue(int queue) {
+		this.queue = queue;
+	}
+}
@@ -0,0 +1,129 @@
+package org.vanilladb.core.storage.buffer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A background writer cleaning dirty buffers so that transactions seldom have
+ * to write a page themselves. Each flusher watches a slice of the buffer
+ * pool. Once the fraction of dirty buffers in its slice exceeds the high
+ * watermark, the flusher writes unpinned dirty buffers until the fraction
+ * drops to the low watermark. Pages are written through
+ * {@link Buffer#flush()}, which forces the log up to the page's LSN first, so
+ * the write-ahead logging rule is kept.
+ */
+class BufferFlusher implements Runnable {
+	private static Logger logger = Logger.getLogger(BufferFlusher.class
+			.getName());
+	static final int NUM_FLUSHERS;
+	private static final double HIGH_WATERMARK, LOW_WATERMARK;
+	private static final long FLUSH_INTERVAL;
+
+	private BufferPoolMgr bufferPool;
+	private int id, numFlushers;
+	private double highWatermark, lowWatermark;
+	private long flushInterval;
+
+	static {
+		String prop = System.getProperty(BufferFlusher.class.getName()
+				+ ".NUM_FLUSHERS");
+		NUM_FLUSHERS = (prop == null ? 0 : Integer.parseInt(prop.trim()));
+		prop = System.getProperty(BufferFlusher.class.getName()
+				+ ".HIGH_WATERMARK");
+		HIGH_WATERMARK = (prop == null ? 0.5 : Double.parseDouble(prop.trim()));
+		prop = System.getProperty(BufferFlusher.class.getName()
+				+ ".LOW_WATERMARK");
+		LOW_WATERMARK = (prop == null ? 0.25 : Double.parseDouble(prop.trim()));
+		prop = System.getProperty(BufferFlusher.class.getName()
+				+ ".FLUSH_INTERVAL");
+		FLUSH_INTERVAL = (prop == null ? 50 : Long.parseLong(prop.trim()));
+	}
+
+	/**
+	 * Starts the configured number of flushers over the specified buffer pool.
+	 * 
+	 * @param bufferPool
+	 *            the buffer pool to be cleaned
+	 */
+	static void startFlushers(BufferPoolMgr bufferPool) {
+		startFlushers(bufferPool, NUM_FLUSHERS, HIGH_WATERMARK, LOW_WATERMARK,
+				FLUSH_INTERVAL);
+	}
+
+	/**
+	 * Starts the specified number of flushers over the specified buffer pool,
+	 * regardless of the configuration.
+	 * 
+	 * @param bufferPool
+	 *            the buffer pool to be cleaned
+	 * @param numFlushers
+	 *            the number of flushers
+	 * @param highWatermark
+	 *            the fraction of dirty buffers at which a flusher starts
+	 * @param lowWatermark
+	 *            the fraction of dirty buffers at which a flusher stops
+	 * @param flushInterval
+	 *            the interval between two checks, in milliseconds
+	 * @return the threads of the flushers
+	 */
+	static Thread[] startFlushers(BufferPoolMgr bufferPool, int numFlushers,
+			double highWatermark, double lowWatermark, long flushInterval) {
+		Thread[] threads = new Thread[Math.max(numFlushers, 0)];
+		for (int i = 0; i < threads.length; i++) {
+			BufferFlusher flusher = new BufferFlusher(bufferPool, i);
+			flusher.numFlushers = numFlushers;
+			flusher.highWatermark = highWatermark;
+			flusher.lowWatermark = lowWatermark;
+			flusher.flushInterval = flushInterval;
+			threads[i] = new Thread(flusher);
+			threads[i].setName("BufferFlusher-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		if (numFlushers > 0 && logger.isLoggable(Level.INFO))
+			logger.info("started " + numFlushers + " buffer flushers");
+		return threads;
+	}
+
+	private BufferFlusher(BufferPoolMgr bufferPool, int id) {
+		this.bufferPool = bufferPool;
+		this.id = id;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				Thread.sleep(flushInterval);
+				clean();
+			} catch (InterruptedException e) {
+				return;
+			} catch (Exception e) {
+				if (logger.isLoggable(Level.WARNING))
+					logger.warning("buffer flusher failed: " + e);
+			}
+		}
+	}
+
+	private void clean() {
+		Buffer[] buffs = bufferPool.buffers();
+		int sliceSize = 0, numDirty = 0;
+		for (int i = id; i < buffs.length; i += numFlushers) {
+			sliceSize++;
+			if (buffs[i].isModified())
+				numDirty++;
+		}
+		if (numDirty <= sliceSize * highWatermark)
+			return;
+		int target = (int) (sliceSize * lowWatermark);
+		for (int i = id; i < buffs.length; i += numFlushers) {
+			if (numDirty <= target)
+				return;
+			Buffer buff = buffs[i];
+			if (!buff.isPinned() && buff.isModified()) {
+				buff.flush();
+				numDirty--;
+			}
+		}
+	}
+}
@@ -1,9 +1,14 @@
 package org.vanilladb.core.storage.buffer;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,6 +34,43 @@ import org.vanilladb.core.storage.tx.TransactionStartListener;
  * when transaction commit/rollback/recovery.
  * 
  * <p>
+ * If the property <code>NUM_PARTITIONS</code> is greater than one, the buffer
+ * pool is split into that many independently locked partitions (see
+ * {@link PartitionedBufferMgr}). Pinning and unpinning only synchronize on the
+ * buffer manager itself when a thread has to wait for a buffer.
+ * </p>
+ * 
+ * <p>
+ * Dirty buffers are written by the transactions replacing them or committing,
+ * and also by the background {@link BufferFlusher}s, if any are configured.
+ * </p>
+ * 
+ * <p>
+ * Blocks ahead of sequential scans are loaded by the background
+ * {@link BufferPrefetcher}s, if any are configured. A prefetched block is
+ * registered in the pool before it is read, so a transaction pinning it
+ * meanwhile waits for the read instead of issuing its own.
+ * </p>
+ * 
+ * <p>
+ * Buffer waits are not part of the waits-for graph of the lock table since
+ * any unpinned buffer satisfies them, so they are still bounded by
+ * <code>MAX_TIME</code>. The numbers of such timeouts and of aborted buffer
+ * requests are counted.
+ * </p>
+ * 
+ * <p>
+ * Each distinct block size (see {@link Page#blockSize(String)}) has a buffer
+ * pool of its own, whose buffers hold pages of that size. The pools share the
+ * bytes of <code>BUFFER_SIZE</code> pages of the default block size, split in
+ * proportion to <code>DATA_SHARE</code>, <code>INDEX_SHARE</code> and
+ * <code>TEMP_SHARE</code>. The shares of the kinds of files having the same
+ * block size go to the same pool, so a single pool gets all the bytes. The
+ * threads waiting for a buffer are queued by pool, so a full pool does not
+ * hold up the others.
+ * </p>
+ * 
+ * <p>
  * A block must be pinned first before its getters/setters can be called.
  * </p>
  * 
@@ -39,10 +81,21 @@ public class BufferMgr implements TransactionStartListener,
 	protected static final int BUFFER_SIZE;
 	private static final long MAX_TIME;
 	private static final long EPSILON;
+	private static final int NUM_PARTITIONS;
+	private static final int DATA_SHARE, INDEX_SHARE, TEMP_SHARE;
 
-	private BasicBufferMgr bufferMgr;
+	// the buffer pools and the block sizes of their pages
+	private BufferPoolMgr[] pools;
+	private int[] blockSizes;
+	private int[] poolSizes;
 	private Map<Long, List<Buffer>> pinnedByMap;
-	private List<Thread> waitingThreads;
+	// the threads waiting for a buffer of each pool
+	private List<List<Thread>> waitingThreads;
+	// the sizes of waitingThreads, readable without holding the monitor
+	private AtomicIntegerArray numWaiting;
+	private AtomicLong numAborts = new AtomicLong();
+	private AtomicLong numTimeouts = new AtomicLong();
+	private BufferPrefetcher prefetcher;
 
 	static {
 		String prop = System.getProperty(BufferMgr.class.getName()
@@ -52,6 +105,15 @@ public class BufferMgr implements TransactionStartListener,
 		EPSILON = (prop == null ? 50 : Long.parseLong(prop.trim()));
 		prop = System.getProperty(BufferMgr.class.getName() + ".BUFFER_SIZE");
 		BUFFER_SIZE = (prop == null ? 1024 : Integer.parseInt(prop.trim()));
+		prop = System.getProperty(BufferMgr.class.getName()
+				+ ".NUM_PARTITIONS");
+		NUM_PARTITIONS = (prop == null ? 1 : Integer.parseInt(prop.trim()));
+		prop = System.getProperty(BufferMgr.class.getName() + ".DATA_SHARE");
+		DATA_SHARE = (prop == null ? 2 : Integer.parseInt(prop.trim()));
+		prop = System.getProperty(BufferMgr.class.getName() + ".INDEX_SHARE");
+		INDEX_SHARE = (prop == null ? 1 : Integer.parseInt(prop.trim()));
+		prop = System.getProperty(BufferMgr.class.getName() + ".TEMP_SHARE");
+		TEMP_SHARE = (prop == null ? 1 : Integer.parseInt(prop.trim()));
 	}
 
 	/**
@@ -64,25 +126,62 @@ public class BufferMgr implements TransactionStartListener,
 	 * 
 	 */
 	public BufferMgr() {
-		bufferMgr = new BasicBufferMgr(BUFFER_SIZE);
-		pinnedByMap = new HashMap<Long, List<Buffer>>();
-		waitingThreads = new LinkedList<Thread>();
-		if (logger.isLoggable(Level.INFO))
-			logger.info("buffer pool size " + BUFFER_SIZE);
+		// the shares of the pool bytes by block size
+		Map<Integer, Long> sizes = new LinkedHashMap<Integer, Long>();
+		addShare(sizes, Page.BLOCK_SIZE, DATA_SHARE);
+		addShare(sizes, Page.INDEX_BLOCK_SIZE, INDEX_SHARE);
+		addShare(sizes, Page.TEMP_BLOCK_SIZE, TEMP_SHARE);
+		long totalShares = 0;
+		for (long share : sizes.values())
+			totalShares += share;
+		long poolBytes = (long) BUFFER_SIZE * Page.BLOCK_SIZE;
+		pools = new BufferPoolMgr[sizes.size()];
+		blockSizes = new int[sizes.size()];
+		poolSizes = new int[sizes.size()];
+		waitingThreads = new ArrayList<List<Thread>>();
+		int i = 0;
+		for (Map.Entry<Integer, Long> e : sizes.entrySet()) {
+			int blockSize = e.getKey();
+			int numBuffs = (int) Math.max(1, poolBytes * e.getValue()
+					/ Math.max(totalShares, 1) / blockSize);
+			if (NUM_PARTITIONS > 1)
+				pools[i] = new PartitionedBufferMgr(numBuffs, NUM_PARTITIONS,
+						blockSize);
+			else
+				pools[i] = new BasicBufferMgr(numBuffs, blockSize);
+			blockSizes[i] = blockSize;
+			poolSizes[i] = numBuffs;
+			waitingThreads.add(new LinkedList<Thread>());
+			BufferFlusher.startFlushers(pools[i]);
+			if (logger.isLoggable(Level.INFO))
+				logger.info("buffer pool size " + numBuffs + " of "
+						+ blockSize + "-byte pages, partitions "
+						+ Math.max(NUM_PARTITIONS, 1));
+			i++;
+		}
+		numWaiting = new AtomicIntegerArray(pools.length);
+		pinnedByMap = new ConcurrentHashMap<Long, List<Buffer>>();
+		prefetcher = BufferPrefetcher.startPrefetchers(this);
+	}
+
+	private static void addShare(Map<Integer, Long> sizes, int blockSize,
+			int share) {
+		Long s = sizes.get(blockSize);
+		sizes.put(blockSize, (s == null ? 0 : s) + Math.max(share, 0));
 	}
 
 	@Override
-	public synchronized void onTxCommit(Transaction tx) {
+	public void onTxCommit(Transaction tx) {
 		unpinAll(tx);
 	}
 
 	@Override
-	public synchronized void onTxRollback(Transaction tx) {
+	public void onTxRollback(Transaction tx) {
 		unpinAll(tx);
 	}
 
 	@Override
-	public synchronized void onTxEndStatement(Transaction tx) {
+	public void onTxEndStatement(Transaction tx) {
 		// do nothing
 	}
 
@@ -102,42 +201,62 @@ public class BufferMgr implements TransactionStartListener,
 	 *            the calling transaction id
 	 * @return the buffer pinned to that block
 	 */
-	public synchronized Buffer pin(BlockId blk, long txNum) {
-		List<Buffer> bufferList = pinnedByMap.get(txNum);
+	public Buffer pin(BlockId blk, long txNum) {
+		int p = poolOf(blk.fileName());
 		/*
 		 * Throws buffer abort exception if the calling tx requires buffers more
 		 * than the size of buffer pool.
 		 */
-		if (bufferList != null && bufferList.size() == BUFFER_SIZE)
+		if (holdsWholePool(txNum, p)) {
+			numAborts.incrementAndGet();
 			throw new BufferAbortException();
-		try {
-			Buffer buff;
-			long timestamp = System.currentTimeMillis();
-			buff = bufferMgr.pin(blk);
-			if (buff == null
-					&& !waitingThreads.contains(Thread.currentThread()))
-				waitingThreads.add(Thread.currentThread());
-			while (buff == null && !waitingTooLong(timestamp)) {
-				wait(MAX_TIME);
-				if (waitingThreads.get(0).equals(Thread.currentThread()))
-					buff = bufferMgr.pin(blk);
-			}
-			waitingThreads.remove(Thread.currentThread());
-			if (buff == null) {
-				waitingThreads.add(Thread.currentThread());
-				repin(txNum);
-				pin(blk, txNum);
-			} else {
-				if (bufferList == null) {
-					bufferList = new LinkedList<Buffer>();
-					pinnedByMap.put(txNum, bufferList);
+		}
+		BufferPoolMgr pool = pools[p];
+		Buffer buff = null;
+		// threads already waiting are served first
+		if (numWaiting.get(p) == 0)
+			buff = pool.pin(blk);
+		if (buff == null) {
+			synchronized (this) {
+				try {
+					enqueue(p);
+					long timestamp = System.currentTimeMillis();
+					if (isFirstWaiting(p))
+						buff = pool.pin(blk);
+					while (buff == null && !waitingTooLong(timestamp)) {
+						wait(MAX_TIME);
+						if (isFirstWaiting(p))
+							buff = pool.pin(blk);
+					}
+					dequeue(p);
+					if (buff == null) {
+						numTimeouts.incrementAndGet();
+						enqueue(p);
+						repin(txNum);
+						return pin(blk, txNum);
+					}
+				} catch (InterruptedException e) {
+					dequeue(p);
+					numAborts.incrementAndGet();
+					throw new BufferAbortException();
 				}
-				bufferList.add(buff);
 			}
-			return buff;
+		}
+		addPinnedBuffer(txNum, buff);
+		boolean loaded;
+		try {
+			loaded = buff.waitUntilLoaded();
 		} catch (InterruptedException e) {
+			unpin(txNum, buff);
+			numAborts.incrementAndGet();
 			throw new BufferAbortException();
 		}
+		if (!loaded) {
+			// the prefetch failed, so the block is read by the next pin
+			unpin(txNum, buff);
+			return pin(blk, txNum);
+		}
+		return buff;
 	}
 
 	/**
@@ -153,45 +272,49 @@ public class BufferMgr implements TransactionStartListener,
 	 *            the calling transaction id
 	 * @return the buffer pinned to that block
 	 */
-	public synchronized Buffer pinNew(String fileName, PageFormatter fmtr,
-			long txNum) {
-		List<Buffer> bufferList = pinnedByMap.get(txNum);
+	public Buffer pinNew(String fileName, PageFormatter fmtr, long txNum) {
+		int p = poolOf(fileName);
 		/*
 		 * throws buffer abort exception if the calling tx requires buffers more
 		 * than the size of buffer pool
 		 */
-
-		if (bufferList != null && bufferList.size() == BUFFER_SIZE)
+		if (holdsWholePool(txNum, p)) {
+			numAborts.incrementAndGet();
 			throw new BufferAbortException();
-		try {
-			Buffer buff;
-			long timestamp = System.currentTimeMillis();
-			buff = bufferMgr.pinNew(fileName, fmtr);
-			if (buff == null
-					&& !waitingThreads.contains(Thread.currentThread()))
-				waitingThreads.add(Thread.currentThread());
-			while (buff == null && !waitingTooLong(timestamp)) {
-				wait(MAX_TIME);
-				if (waitingThreads.get(0).equals(Thread.currentThread()))
-					buff = bufferMgr.pinNew(fileName, fmtr);
-			}
-			waitingThreads.remove(Thread.currentThread());
-			if (buff == null) {
-				waitingThreads.add(Thread.currentThread());
-				repin(txNum);
-				buff = pinNew(fileName, fmtr, txNum);
-			} else {
-				bufferList = pinnedByMap.get(txNum);
-				if (bufferList == null) {
-					bufferList = new LinkedList<Buffer>();
-					pinnedByMap.put(txNum, bufferList);
+		}
+		BufferPoolMgr pool = pools[p];
+		Buffer buff = null;
+		// threads already waiting are served first
+		if (numWaiting.get(p) == 0)
+			buff = pool.pinNew(fileName, fmtr);
+		if (buff == null) {
+			synchronized (this) {
+				try {
+					enqueue(p);
+					long timestamp = System.currentTimeMillis();
+					if (isFirstWaiting(p))
+						buff = pool.pinNew(fileName, fmtr);
+					while (buff == null && !waitingTooLong(timestamp)) {
+						wait(MAX_TIME);
+						if (isFirstWaiting(p))
+							buff = pool.pinNew(fileName, fmtr);
+					}
+					dequeue(p);
+					if (buff == null) {
+						numTimeouts.incrementAndGet();
+						enqueue(p);
+						repin(txNum);
+						return pinNew(fileName, fmtr, txNum);
+					}
+				} catch (InterruptedException e) {
+					dequeue(p);
+					numAborts.incrementAndGet();
+					throw new BufferAbortException();
 				}
-				bufferList.add(buff);
 			}
-			return buff;
-		} catch (InterruptedException e) {
-			throw new BufferAbortException();
 		}
+		addPinnedBuffer(txNum, buff);
+		return buff;
 	}
 
 	/**
@@ -201,15 +324,94 @@ public class BufferMgr implements TransactionStartListener,
 	 * @param buff
 	 *            the buffer to be unpinned
 	 */
-	public synchronized void unpin(long txNum, Buffer... buffs) {
+	public void unpin(long txNum, Buffer... buffs) {
 		List<Buffer> bufferList = pinnedByMap.get(txNum);
+		boolean released = false;
 		for (Buffer buff : buffs) {
-			bufferMgr.unpin(buff);
+			int p = poolOf(buff.block().fileName());
+			pools[p].unpin(buff);
 			if (bufferList != null && bufferList.contains(buff))
 				bufferList.remove(buff);
-			if (!buff.isPinned())
+			/*
+			 * A waiting thread registers itself before it looks for a buffer,
+			 * so it either sees the released buffer or is seen here.
+			 */
+			if (!buff.isPinned() && numWaiting.get(p) > 0)
+				released = true;
+		}
+		if (released) {
+			synchronized (this) {
 				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Asks the prefetchers to load the specified blocks into the buffer pool.
+	 * The method returns immediately, and does nothing if no prefetcher is
+	 * configured or too many requests are pending.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @param blkNum
+	 *            the number of the first block
+	 * @param numBlocks
+	 *            the number of blocks
+	 */
+	public void prefetch(String fileName, long blkNum, int numBlocks) {
+		if (prefetcher != null && numBlocks > 0)
+			prefetcher.submit(fileName, blkNum, numBlocks);
+	}
+
+	/**
+	 * Returns true if blocks can be prefetched by this buffer manager.
+	 * 
+	 * @return true if any prefetcher is configured
+	 */
+	boolean canPrefetch() {
+		return prefetcher != null;
+	}
+
+	/**
+	 * Returns the average time a prefetch request takes to finish, or 0 if
+	 * none has finished.
+	 * 
+	 * @return the average prefetch latency, in nanoseconds
+	 */
+	long prefetchLatency() {
+		return prefetcher == null ? 0 : prefetcher.latency();
+	}
+
+	/**
+	 * Loads the specified blocks that are not in the buffer pool yet. The
+	 * blocks beyond the end of the file are skipped, and so are all blocks
+	 * once there are not enough unpinned buffers left for the transactions.
+	 * Each run of consecutive missing blocks is read at once.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @param blkNum
+	 *            the number of the first block
+	 * @param numBlocks
+	 *            the number of blocks
+	 */
+	void load(String fileName, long blkNum, int numBlocks) {
+		long end = Math.min(blkNum + numBlocks, VanillaDB.fileMgr().size(
+				fileName));
+		int p = poolOf(fileName);
+		List<Buffer> run = new ArrayList<Buffer>(numBlocks);
+		for (long b = blkNum; b < end; b++) {
+			Buffer buff = null;
+			if (numWaiting.get(p) == 0 && pools[p].available() > numBlocks)
+				buff = pools[p].reserve(new BlockId(fileName, b));
+			if (buff != null)
+				run.add(buff);
+			else {
+				loadRun(run);
+				run.clear();
+			}
 		}
+		loadRun(run);
 	}
 
 	/**
@@ -219,7 +421,41 @@ public class BufferMgr implements TransactionStartListener,
 	 *            the transaction's id number
 	 */
 	public void flushAll(long txNum) {
-		bufferMgr.flushAll(txNum);
+		for (BufferPoolMgr pool : pools)
+			pool.flushAll(txNum);
+	}
+
+	/**
+	 * Returns the smallest recovery LSN in the dirty page table, that is, the
+	 * LSN of the earliest log record whose modification may exist only in the
+	 * buffer pool. Returns -1 if no buffer holds such a modification.
+	 * 
+	 * @return the smallest recovery LSN of the dirty buffers
+	 */
+	public long minRecoveryLsn() {
+		long minLsn = -1;
+		for (Buffer buff : buffers()) {
+			long lsn = buff.recoveryLsn();
+			if (lsn >= 0 && (minLsn < 0 || lsn < minLsn))
+				minLsn = lsn;
+		}
+		return minLsn;
+	}
+
+	/**
+	 * Flushes the dirty buffers holding a logged modification older than the
+	 * specified LSN, so that the smallest recovery LSN of the buffer pool
+	 * advances past it.
+	 * 
+	 * @param lsn
+	 *            the LSN below which no recovery LSN is kept
+	 */
+	public void flushDirtyBuffers(long lsn) {
+		for (Buffer buff : buffers()) {
+			long recLsn = buff.recoveryLsn();
+			if (recLsn >= 0 && recLsn < lsn)
+				buff.flush();
+		}
 	}
 
 	/**
@@ -228,9 +464,61 @@ public class BufferMgr implements TransactionStartListener,
 	 * @return the number of available buffers
 	 */
 	public int available() {
-		return bufferMgr.available();
+		int numAvailable = 0;
+		for (BufferPoolMgr pool : pools)
+			numAvailable += pool.available();
+		return numAvailable;
+	}
+
+	/**
+	 * Returns the number of available (ie unpinned) buffers in the pool holding
+	 * the blocks of the specified file.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return the number of available buffers for the file
+	 */
+	public int available(String fileName) {
+		return pools[poolOf(fileName)].available();
+	}
+
+	/**
+	 * Returns the number of buffer requests aborted with a
+	 * {@link BufferAbortException}.
+	 * 
+	 * @return the number of aborted buffer requests
+	 */
+	public long numAborts() {
+		return numAborts.get();
+	}
+
+	/**
+	 * Returns the number of times a transaction waited longer than the maximal
+	 * waiting time for a buffer and had to repin its buffers.
+	 * 
+	 * @return the number of buffer wait timeouts
+	 */
+	public long numTimeouts() {
+		return numTimeouts.get();
 	}
 	
+	private void loadRun(List<Buffer> run) {
+		if (run.isEmpty())
+			return;
+		Buffer[] buffs = run.toArray(new Buffer[run.size()]);
+		try {
+			Buffer.loadAll(buffs);
+		} finally {
+			int p = poolOf(buffs[0].block().fileName());
+			pools[p].unpin(buffs);
+			if (numWaiting.get(p) > 0) {
+				synchronized (this) {
+					notifyAll();
+				}
+			}
+		}
+	}
+
 	private void unpinAll(Transaction tx) {
 		long txNum = tx.getTransactionNumber();
 		List<Buffer> buffs = pinnedByMap.get(txNum);
@@ -239,25 +527,92 @@ public class BufferMgr implements TransactionStartListener,
 		pinnedByMap.remove(txNum);
 	}
 
+	private void addPinnedBuffer(long txNum, Buffer buff) {
+		List<Buffer> bufferList = pinnedByMap.get(txNum);
+		if (bufferList == null) {
+			bufferList = new LinkedList<Buffer>();
+			pinnedByMap.put(txNum, bufferList);
+		}
+		bufferList.add(buff);
+	}
+
 	/**
 	 * Unpins all currently pinned buffers of the calling transaction and repins
-	 * them.
+	 * them. The caller must hold the monitor of this buffer manager.
 	 */
 	private void repin(long txNum) {
 		try {
 			List<Buffer> currentPinnedBuffs = pinnedByMap.get(txNum);
 			if (currentPinnedBuffs == null)
 				return;
-			List<Buffer> buffs = new LinkedList<Buffer>(currentPinnedBuffs);
+			// the buffers may be reassigned once unpinned, so remember the blocks
+			List<BlockId> blks = new LinkedList<BlockId>();
+			for (Buffer buff : currentPinnedBuffs)
+				blks.add(buff.block());
 			unpin(txNum, currentPinnedBuffs.toArray(new Buffer[0]));
 			wait(MAX_TIME);
-			for (Buffer buff : buffs)
-				pin(buff.block(), txNum);
+			for (BlockId blk : blks)
+				pin(blk, txNum);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
 	}
 
+	private Buffer[] buffers() {
+		List<Buffer> buffs = new ArrayList<Buffer>();
+		for (BufferPoolMgr pool : pools)
+			buffs.addAll(Arrays.asList(pool.buffers()));
+		return buffs.toArray(new Buffer[buffs.size()]);
+	}
+
+	/**
+	 * Returns true if the specified transaction holds as many pins on the
+	 * buffers of the specified pool as the pool has buffers.
+	 */
+	private boolean holdsWholePool(long txNum, int pool) {
+		List<Buffer> bufferList = pinnedByMap.get(txNum);
+		if (bufferList == null || bufferList.size() < poolSizes[pool])
+			return false;
+		if (pools.length == 1)
+			return true;
+		int numPins = 0;
+		for (Buffer buff : bufferList)
+			if (buff.blockSize() == blockSizes[pool])
+				numPins++;
+		return numPins >= poolSizes[pool];
+	}
+
+	/**
+	 * Returns the index of the pool holding the blocks of the specified file.
+	 */
+	private int poolOf(String fileName) {
+		if (pools.length == 1)
+			return 0;
+		int blockSize = Page.blockSize(fileName);
+		for (int i = 1; i < pools.length; i++)
+			if (blockSizes[i] == blockSize)
+				return i;
+		return 0;
+	}
+
+	private void enqueue(int pool) {
+		List<Thread> threads = waitingThreads.get(pool);
+		if (!threads.contains(Thread.currentThread()))
+			threads.add(Thread.currentThread());
+		numWaiting.set(pool, threads.size());
+	}
+
+	private void dequeue(int pool) {
+		List<Thread> threads = waitingThreads.get(pool);
+		threads.remove(Thread.currentThread());
+		numWaiting.set(pool, threads.size());
+	}
+
+	private boolean isFirstWaiting(int pool) {
+		return waitingThreads.get(pool).get(0)
+				.equals(Thread.currentThread());
+	}
+
 	private boolean waitingTooLong(long startTime) {
 		return System.currentTimeMillis() - startTime + EPSILON > MAX_TIME;
 	}
@@ -0,0 +1,76 @@
+package org.vanilladb.core.storage.buffer;
+
+import org.vanilladb.core.storage.file.BlockId;
+
+/**
+ * The operations a buffer pool must offer to the {@link BufferMgr}. A buffer
+ * pool never blocks: if no buffer is available it returns a null value and
+ * leaves the waiting to the {@link BufferMgr}.
+ */
+interface BufferPoolMgr {
+
+	/**
+	 * Flushes the dirty buffers modified by the specified transaction.
+	 *
+	 * @param txNum
+	 *            the transaction's id number
+	 */
+	void flushAll(long txNum);
+
+	/**
+	 * Pins a buffer to the specified block. Returns a null value if there are
+	 * no available buffers.
+	 *
+	 * @param blk
+	 *            a block ID
+	 * @return the pinned buffer
+	 */
+	Buffer pin(BlockId blk);
+
+	/**
+	 * Pins an unpinned buffer to the specified block without reading the
+	 * block, which is left to the caller (see {@link Buffer#loadAll(Buffer[])}).
+	 * Returns a null value if the block is already in the pool or there are no
+	 * available buffers.
+	 *
+	 * @param blk
+	 *            a block ID
+	 * @return the pinned buffer
+	 */
+	Buffer reserve(BlockId blk);
+
+	/**
+	 * Allocates a new block in the specified file, and pins a buffer to it.
+	 * Returns null (without allocating the block) if there are no available
+	 * buffers.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @param fmtr
+	 *            a pageformatter object, used to format the new block
+	 * @return the pinned buffer
+	 */
+	Buffer pinNew(String fileName, PageFormatter fmtr);
+
+	/**
+	 * Unpins the specified buffers.
+	 *
+	 * @param buffs
+	 *            the buffers to be unpinned
+	 */
+	void unpin(Buffer... buffs);
+
+	/**
+	 * Returns the number of available (i.e. unpinned) buffers.
+	 *
+	 * @return the number of available buffers
+	 */
+	int available();
+
+	/**
+	 * Returns a snapshot of the buffers in this pool.
+	 *
+	 * @return the buffers
+	 */
+	Buffer[] buffers();
+}
@@ -0,0 +1,120 @@
+package org.vanilladb.core.storage.buffer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background readers loading blocks into the buffer pool ahead of sequential
+ * scans. Prefetch requests are queued by {@link BufferMgr#prefetch} and served
+ * by <code>NUM_PREFETCHERS</code> threads, each reading a run of consecutive
+ * blocks by a single scattering read. If the queue is full, the request is
+ * dropped, since the scan will read the blocks itself anyway.
+ *
+ * <p>
+ * The prefetchers keep the average time between queueing a request and
+ * finishing it, which {@link ReadAhead} uses to decide how far ahead of a scan
+ * to read.
+ * </p>
+ */
+class BufferPrefetcher implements Runnable {
+	private static Logger logger = Logger.getLogger(BufferPrefetcher.class
+			.getName());
+	static final int NUM_PREFETCHERS;
+	private static final int QUEUE_SIZE = 256;
+
+	private static class Request {
+		String fileName;
+		long blkNum;
+		int numBlocks;
+		long queuedTime;
+	}
+
+	private BufferMgr bufferMgr;
+	private BlockingQueue<Request> requests = new ArrayBlockingQueue<Request>(
+			QUEUE_SIZE);
+	// the moving average of the request latencies, in nanoseconds
+	private volatile long latency;
+
+	static {
+		String prop = System.getProperty(BufferPrefetcher.class.getName()
+				+ ".NUM_PREFETCHERS");
+		NUM_PREFETCHERS = (prop == null ? 0 : Integer.parseInt(prop.trim()));
+	}
+
+	/**
+	 * Starts the configured number of prefetchers for the specified buffer
+	 * manager. Returns a null value if no prefetcher is configured.
+	 *
+	 * @param bufferMgr
+	 *            the buffer manager loading the blocks
+	 * @return the prefetchers, sharing one request queue
+	 */
+	static BufferPrefetcher startPrefetchers(BufferMgr bufferMgr) {
+		if (NUM_PREFETCHERS <= 0)
+			return null;
+		BufferPrefetcher prefetcher = new BufferPrefetcher(bufferMgr);
+		for (int i = 0; i < NUM_PREFETCHERS; i++) {
+			Thread thread = new Thread(prefetcher);
+			thread.setName("BufferPrefetcher-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		if (logger.isLoggable(Level.INFO))
+			logger.info("started " + NUM_PREFETCHERS + " buffer prefetchers");
+		return prefetcher;
+	}
+
+	private BufferPrefetcher(BufferMgr bufferMgr) {
+		this.bufferMgr = bufferMgr;
+	}
+
+	/**
+	 * Queues a request to load the specified blocks. Returns false if the
+	 * queue is full.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @param blkNum
+	 *            the number of the first block
+	 * @param numBlocks
+	 *            the number of blocks
+	 * @return true if the request is queued
+	 */
+	boolean submit(String fileName, long blkNum, int numBlocks) {
+		Request req = new Request();
+		req.fileName = fileName;
+		req.blkNum = blkNum;
+		req.numBlocks = numBlocks;
+		req.queuedTime = System.nanoTime();
+		return requests.offer(req);
+	}
+
+	/**
+	 * Returns the average time between queueing a request and finishing it.
+	 *
+	 * @return the average latency, in nanoseconds
+	 */
+	long latency() {
+		return latency;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				Request req = requests.take();
+				bufferMgr.load(req.fileName, req.blkNum, req.numBlocks);
+				long t = System.nanoTime() - req.queuedTime;
+				// races between prefetchers only lose a sample
+				latency = latency == 0 ? t : (latency * 7 + t) / 8;
+			} catch (InterruptedException e) {
+				return;
+			} catch (Exception e) {
+				if (logger.isLoggable(Level.WARNING))
+					logger.warning("buffer prefetcher failed: " + e);
+			}
+		}
+	}
+}
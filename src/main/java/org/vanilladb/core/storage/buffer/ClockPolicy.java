@@ -0,0 +1,51 @@
+package org.vanilladb.core.storage.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CLOCK policy. Each pin sets the reference bit of a buffer. The clock
+ * hand sweeps the buffers, clearing the reference bits it passes, and
+ * replaces the first unpinned buffer whose bit is already clear.
+ */
+class ClockPolicy implements ReplacementPolicy {
+	private List<Buffer> buffers = new ArrayList<Buffer>();
+	private int hand;
+
+	@Override
+	public void bufferAdded(Buffer buff) {
+		buff.setReferenced(false);
+		buffers.add(buff);
+	}
+
+	@Override
+	public void bufferRemoved(Buffer buff) {
+		int idx = buffers.indexOf(buff);
+		buffers.remove(idx);
+		if (idx < hand)
+			hand--;
+	}
+
+	@Override
+	public void bufferPinned(Buffer buff, boolean loaded) {
+		buff.setReferenced(true);
+	}
+
+	@Override
+	public Buffer chooseUnpinnedBuffer() {
+		int size = buffers.size();
+		// two sweeps suffice to find a buffer whose bit has been cleared
+		for (int i = 0; i < 2 * size; i++) {
+			hand = hand % size;
+			Buffer buff = buffers.get(hand);
+			hand++;
+			if (buff.isPinned())
+				continue;
+			if (buff.isReferenced())
+				buff.setReferenced(false);
+			else
+				return buff;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,61 @@
+package org.vanilladb.core.storage.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The LRU-K policy. Each buffer remembers the times of its last K pins, and
+ * the unpinned buffer whose K-th most recent pin is the oldest is replaced.
+ * Buffers pinned fewer than K times since they were loaded are replaced
+ * first, least recently used first, so that a block touched once by a scan
+ * does not push out blocks that are used repeatedly.
+ */
+class LruKPolicy implements ReplacementPolicy {
+	private static final int K;
+
+	private List<Buffer> buffers = new ArrayList<Buffer>();
+	// a logical clock advanced on every pin
+	private long time;
+
+	static {
+		String prop = System.getProperty(LruKPolicy.class.getName() + ".K");
+		K = (prop == null ? 2 : Integer.parseInt(prop.trim()));
+	}
+
+	@Override
+	public void bufferAdded(Buffer buff) {
+		buff.resetAccessHistory(K);
+		buffers.add(buff);
+	}
+
+	@Override
+	public void bufferRemoved(Buffer buff) {
+		buffers.remove(buff);
+	}
+
+	@Override
+	public void bufferPinned(Buffer buff, boolean loaded) {
+		if (loaded)
+			buff.resetAccessHistory(K);
+		buff.recordAccess(++time);
+	}
+
+	@Override
+	public Buffer chooseUnpinnedBuffer() {
+		Buffer victim = null;
+		for (Buffer buff : buffers) {
+			if (buff.isPinned())
+				continue;
+			if (victim == null || isOlder(buff, victim))
+				victim = buff;
+		}
+		return victim;
+	}
+
+	private boolean isOlder(Buffer buff, Buffer other) {
+		long kth = buff.accessTime(K - 1), otherKth = other.accessTime(K - 1);
+		if (kth != otherKth)
+			return kth < otherKth;
+		return buff.accessTime(0) < other.accessTime(0);
+	}
+}
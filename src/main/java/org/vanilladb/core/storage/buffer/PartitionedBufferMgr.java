@@ -0,0 +1,127 @@
+package org.vanilladb.core.storage.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.vanilladb.core.storage.file.BlockId;
+
+/**
+ * A buffer pool split into independently locked partitions. Each block is
+ * mapped to a home partition by the hash value of its {@link BlockId}, so
+ * threads pinning different blocks rarely contend for the same monitor. Each
+ * partition is a {@link BasicBufferMgr} which does its own replacement. When
+ * the home partition has no unpinned buffer, a buffer is stolen from another
+ * partition.
+ */
+class PartitionedBufferMgr implements BufferPoolMgr {
+	private BasicBufferMgr[] partitions;
+
+	/**
+	 * Creates a partitioned buffer pool having the specified number of buffer
+	 * slots of the specified size distributed evenly over the specified
+	 * number of partitions.
+	 *
+	 * @param numBuffs
+	 *            the number of buffer slots to allocate
+	 * @param numPartitions
+	 *            the number of partitions
+	 * @param blockSize
+	 *            the size of the pages in the buffers
+	 */
+	PartitionedBufferMgr(int numBuffs, int numPartitions, int blockSize) {
+		partitions = new BasicBufferMgr[numPartitions];
+		for (int i = 0; i < numPartitions; i++) {
+			int size = numBuffs / numPartitions
+					+ (i < numBuffs % numPartitions ? 1 : 0);
+			partitions[i] = new BasicBufferMgr(size, blockSize);
+		}
+	}
+
+	@Override
+	public void flushAll(long txNum) {
+		for (BasicBufferMgr partition : partitions)
+			partition.flushAll(txNum);
+	}
+
+	@Override
+	public Buffer pin(BlockId blk) {
+		int home = partitionOf(blk);
+		Buffer buff = partitions[home].pin(blk);
+		while (buff == null) {
+			Buffer stolen = steal(home);
+			if (stolen == null)
+				return null;
+			partitions[home].adopt(stolen);
+			buff = partitions[home].pin(blk);
+		}
+		return buff;
+	}
+
+	@Override
+	public Buffer reserve(BlockId blk) {
+		// a prefetch never steals buffers from other partitions
+		return partitions[partitionOf(blk)].reserve(blk);
+	}
+
+	@Override
+	public Buffer pinNew(String fileName, PageFormatter fmtr) {
+		int start = (fileName.hashCode() & Integer.MAX_VALUE)
+				% partitions.length;
+		Buffer buff = partitions[start].evictUnpinnedBuffer();
+		if (buff == null)
+			buff = steal(start);
+		if (buff == null)
+			return null;
+		/*
+		 * The buffer belongs to no partition at this point, so no other
+		 * thread can reach it while the new block is being appended. The
+		 * block may be pinned to another buffer before it is adopted, in
+		 * which case that buffer holds the new page.
+		 */
+		buff.assignToNew(fileName, fmtr);
+		buff.pin();
+		return partitions[partitionOf(buff.block())].adopt(buff);
+	}
+
+	@Override
+	public void unpin(Buffer... buffs) {
+		for (Buffer buff : buffs)
+			partitions[partitionOf(buff.block())].unpin(buff);
+	}
+
+	@Override
+	public int available() {
+		int numAvailable = 0;
+		for (BasicBufferMgr partition : partitions)
+			numAvailable += partition.available();
+		return numAvailable;
+	}
+
+	@Override
+	public Buffer[] buffers() {
+		List<Buffer> buffs = new ArrayList<Buffer>();
+		for (BasicBufferMgr partition : partitions)
+			buffs.addAll(Arrays.asList(partition.buffers()));
+		return buffs.toArray(new Buffer[buffs.size()]);
+	}
+
+	/**
+	 * Takes an unpinned buffer away from a partition other than the specified
+	 * one. Only one partition monitor is held at a time, so concurrent steals
+	 * cannot deadlock each other.
+	 */
+	private Buffer steal(int home) {
+		for (int i = 1; i < partitions.length; i++) {
+			Buffer buff = partitions[(home + i) % partitions.length]
+					.evictUnpinnedBuffer();
+			if (buff != null)
+				return buff;
+		}
+		return null;
+	}
+
+	private int partitionOf(BlockId blk) {
+		return (blk.hashCode() & Integer.MAX_VALUE) % partitions.length;
+	}
+}
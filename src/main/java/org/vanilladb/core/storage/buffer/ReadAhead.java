@@ -0,0 +1,117 @@
+package org.vanilladb.core.storage.buffer;
+
+import org.vanilladb.core.server.VanillaDB;
+
+/**
+ * Detects the sequential accesses of a scan to the blocks of a file and
+ * prefetches the blocks ahead of it through the {@link BufferMgr}.
+ *
+ * <p>
+ * Once the scan has moved to the next block a few times in a row, the blocks
+ * in a window ahead of the current one are requested. The next window is
+ * requested when the scan has consumed half of the current one, so the reads
+ * overlap the processing of the scan. The size of the window follows the
+ * observed speed of the scan: it covers twice the blocks the scan consumes
+ * while a prefetch request is served, between 4 and <code>MAX_WINDOW</code>
+ * blocks. A jump to another block resets the detector.
+ * </p>
+ *
+ * <p>
+ * A read-ahead belongs to a single scan and is not thread-safe.
+ * </p>
+ */
+public class ReadAhead {
+	private static final int MAX_WINDOW;
+	private static final int MIN_WINDOW = 4;
+	// the number of moves to the next block before prefetching starts
+	private static final int SEQUENTIAL_THRESHOLD = 2;
+
+	static {
+		String prop = System.getProperty(ReadAhead.class.getName()
+				+ ".MAX_WINDOW");
+		MAX_WINDOW = (prop == null ? 64 : Math.max(MIN_WINDOW, Integer
+				.parseInt(prop.trim())));
+	}
+
+	private String fileName;
+	private BufferMgr bufferMgr;
+	private long lastBlkNum = -2;
+	private int numSequential;
+	// the block after the last requested one
+	private long prefetchedTo;
+	private int window = MIN_WINDOW;
+	private long lastRequestBlkNum, lastRequestTime;
+
+	/**
+	 * Creates a read-ahead for a scan of the specified file.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 */
+	public ReadAhead(String fileName) {
+		this(fileName, VanillaDB.bufferMgr());
+	}
+
+	/**
+	 * Creates a read-ahead for a scan of the specified file, prefetching the
+	 * blocks through the specified buffer manager.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @param bufferMgr
+	 *            the buffer manager loading the blocks
+	 */
+	ReadAhead(String fileName, BufferMgr bufferMgr) {
+		this.fileName = fileName;
+		this.bufferMgr = bufferMgr;
+	}
+
+	/**
+	 * Notifies the read-ahead that the scan is moving to the specified block.
+	 * This method should be called before the block is pinned.
+	 *
+	 * @param blkNum
+	 *            the number of the block
+	 */
+	public void blockAccessed(long blkNum) {
+		if (!bufferMgr.canPrefetch())
+			return;
+		if (blkNum == lastBlkNum + 1)
+			numSequential++;
+		else {
+			numSequential = 0;
+			prefetchedTo = blkNum + 1;
+			window = MIN_WINDOW;
+			lastRequestTime = 0;
+		}
+		lastBlkNum = blkNum;
+		if (numSequential < SEQUENTIAL_THRESHOLD
+				|| blkNum + window / 2 < prefetchedTo)
+			return;
+
+		long now = System.nanoTime();
+		if (lastRequestTime > 0)
+			adjustWindow(blkNum - lastRequestBlkNum, now - lastRequestTime);
+		lastRequestBlkNum = blkNum;
+		lastRequestTime = now;
+		long from = Math.max(prefetchedTo, blkNum + 1);
+		long to = blkNum + 1 + window;
+		if (to > from) {
+			bufferMgr.prefetch(fileName, from, (int) (to - from));
+			prefetchedTo = to;
+		}
+	}
+
+	/**
+	 * Sizes the window by the number of blocks consumed in the specified time
+	 * since the last request.
+	 */
+	private void adjustWindow(long numBlocks, long elapsed) {
+		long latency = bufferMgr.prefetchLatency();
+		if (latency <= 0 || elapsed <= 0)
+			return;
+		double blocks = 2.0 * numBlocks * latency / elapsed;
+		window = (int) Math.max(MIN_WINDOW, Math.min(MAX_WINDOW,
+				Math.ceil(blocks)));
+	}
+}
@@ -0,0 +1,44 @@
+package org.vanilladb.core.storage.buffer;
+
+/**
+ * Decides which unpinned buffer of a {@link BasicBufferMgr} should be
+ * replaced. A policy is notified whenever a buffer joins or leaves the pool
+ * and whenever a buffer is pinned. All methods are called while the owning
+ * buffer pool is locked, so implementations need not be thread-safe.
+ */
+interface ReplacementPolicy {
+
+	/**
+	 * Notifies the policy that the specified buffer joins the pool.
+	 * 
+	 * @param buff
+	 *            the new buffer
+	 */
+	void bufferAdded(Buffer buff);
+
+	/**
+	 * Notifies the policy that the specified buffer leaves the pool.
+	 * 
+	 * @param buff
+	 *            the removed buffer
+	 */
+	void bufferRemoved(Buffer buff);
+
+	/**
+	 * Notifies the policy that the specified buffer has been pinned.
+	 * 
+	 * @param buff
+	 *            the pinned buffer
+	 * @param loaded
+	 *            true if the buffer has just been assigned to a new block
+	 */
+	void bufferPinned(Buffer buff, boolean loaded);
+
+	/**
+	 * Chooses the unpinned buffer to be replaced. Returns a null value if all
+	 * buffers are pinned.
+	 * 
+	 * @return the buffer to be replaced
+	 */
+	Buffer chooseUnpinnedBuffer();
+}
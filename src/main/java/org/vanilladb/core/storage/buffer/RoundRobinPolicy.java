@@ -0,0 +1,42 @@
+package org.vanilladb.core.storage.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the next unpinned buffer after the one replaced last, ignoring how
+ * recently or how often the buffers have been used.
+ */
+class RoundRobinPolicy implements ReplacementPolicy {
+	private List<Buffer> buffers = new ArrayList<Buffer>();
+	private int lastReplacedBuff;
+
+	@Override
+	public void bufferAdded(Buffer buff) {
+		buffers.add(buff);
+	}
+
+	@Override
+	public void bufferRemoved(Buffer buff) {
+		buffers.remove(buff);
+	}
+
+	@Override
+	public void bufferPinned(Buffer buff, boolean loaded) {
+		// do nothing
+	}
+
+	@Override
+	public Buffer chooseUnpinnedBuffer() {
+		int size = buffers.size();
+		for (int i = 1; i <= size; i++) {
+			int currBlk = (lastReplacedBuff + i) % size;
+			Buffer buff = buffers.get(currBlk);
+			if (!buff.isPinned()) {
+				lastReplacedBuff = currBlk;
+				return buff;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,100 @@
+package org.vanilladb.core.storage.buffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.vanilladb.core.storage.file.BlockId;
+
+/**
+ * The scan-resistant 2Q policy. A newly loaded block enters the FIFO queue
+ * A1in. When it is replaced from A1in, its block ID is remembered in the ghost
+ * queue A1out. Only a block that is loaded again while it is remembered in
+ * A1out is put into the LRU queue Am, so blocks read once by a scan never
+ * displace the blocks in Am.
+ */
+class TwoQueuePolicy implements ReplacementPolicy {
+	static final int NONE = 0, A1IN = 1, AM = 2;
+	private static final double KIN, KOUT;
+
+	private Set<Buffer> a1in = new LinkedHashSet<Buffer>();
+	private Set<Buffer> am = new LinkedHashSet<Buffer>();
+	private Set<BlockId> a1out = new LinkedHashSet<BlockId>();
+	private int numBuffs;
+
+	static {
+		String prop = System.getProperty(TwoQueuePolicy.class.getName()
+				+ ".KIN");
+		KIN = (prop == null ? 0.25 : Double.parseDouble(prop.trim()));
+		prop = System.getProperty(TwoQueuePolicy.class.getName() + ".KOUT");
+		KOUT = (prop == null ? 0.5 : Double.parseDouble(prop.trim()));
+	}
+
+	@Override
+	public void bufferAdded(Buffer buff) {
+		// empty buffers are replaced first
+		buff.setQueue(A1IN);
+		a1in.add(buff);
+		numBuffs++;
+	}
+
+	@Override
+	public void bufferRemoved(Buffer buff) {
+		dequeue(buff);
+		numBuffs--;
+	}
+
+	@Override
+	public void bufferPinned(Buffer buff, boolean loaded) {
+		if (loaded) {
+			dequeue(buff);
+			if (a1out.remove(buff.block())) {
+				buff.setQueue(AM);
+				am.add(buff);
+			} else {
+				buff.setQueue(A1IN);
+				a1in.add(buff);
+			}
+		} else if (buff.queue() == AM) {
+			// move to the most recently used end
+			am.remove(buff);
+			am.add(buff);
+		}
+	}
+
+	@Override
+	public Buffer chooseUnpinnedBuffer() {
+		Buffer victim = null;
+		if (a1in.size() > Math.max(1, (int) (numBuffs * KIN)))
+			victim = firstUnpinned(a1in);
+		if (victim == null)
+			victim = firstUnpinned(am);
+		if (victim == null)
+			victim = firstUnpinned(a1in);
+		if (victim != null && victim.queue() == A1IN
+				&& victim.block() != null) {
+			a1out.add(victim.block());
+			if (a1out.size() > Math.max(1, (int) (numBuffs * KOUT))) {
+				Iterator<BlockId> iter = a1out.iterator();
+				iter.next();
+				iter.remove();
+			}
+		}
+		return victim;
+	}
+
+	private void dequeue(Buffer buff) {
+		if (buff.queue() == A1IN)
+			a1in.remove(buff);
+		else if (buff.queue() == AM)
+			am.remove(buff);
+		buff.setQueue(NONE);
+	}
+
+	private Buffer firstUnpinned(Set<Buffer> queue) {
+		for (Buffer buff : queue)
+			if (!buff.isPinned())
+				return buff;
+		return null;
+	}
+}
@@ -8,6 +8,8 @@ package org.vanilladb.core.storage.file;
 public class BlockId {
 	private String fileName;
 	private long blkNum;
+	// the block ID is used as a hash key on every pin, so cache its hash code
+	private int hashCode;
 
 	/**
 	 * Constructs a block ID for the specified fileName and block number.
@@ -20,6 +22,7 @@ public class BlockId {
 	public BlockId(String fileName, long blkNum) {
 		this.fileName = fileName;
 		this.blkNum = blkNum;
+		this.hashCode = toString().hashCode();
 	}
 
 	/**
@@ -54,6 +57,6 @@ public class BlockId {
 	}
 
 	public int hashCode() {
-		return toString().hashCode();
+		return hashCode;
 	}
 }
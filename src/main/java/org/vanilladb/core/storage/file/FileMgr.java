@@ -1,18 +1,20 @@
 package org.vanilladb.core.storage.file;
 
-import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
-
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.storage.log.LogMgr;
 
 
 /**
@@ -26,12 +28,176 @@ import org.vanilladb.core.server.VanillaDB;
  * {@link #isNew() isNew} is called during system initialization by
  * {@link VanillaDB#init}. Method {@link #size(String) size} is called by the
  * log manager and transaction manager to determine the end of the file.
+ * 
+ * <p>
+ * Blocks are read and written by positional I/O without any lock, so
+ * concurrent accesses to the same file proceed in parallel. Each open file
+ * caches its number of blocks, and an append atomically reserves the next
+ * block number before writing it. The reserved block counts in the size of
+ * the file only after it and all the blocks before it are written, so a
+ * reader never sees a block beyond the end of the written ones. A write past
+ * the end of a file extends the file as well, and the blocks skipped by the
+ * write read as zeros. A file may be opened by
+ * <code>CHANNELS_PER_FILE</code> channels, which are picked by the accessing
+ * threads in turn, for platforms that serialize the positional I/O on a
+ * channel.
+ * </p>
+ * 
+ * <p>
+ * The names of temporary files start with "_temp", and the names of index
+ * files end with {@link #INDEX_FILE_EXTENSION}. The category of a file
+ * decides its block size (see {@link Page#blockSize(String)}) and whether it
+ * is memory mapped.
+ * </p>
+ * 
+ * <p>
+ * The index files of older databases end with ".tbl" like the data files.
+ * Such a file is renamed when its index is first opened, provided that the
+ * index block size is still the default block size; otherwise the index must
+ * be rebuilt. A database must be shut down cleanly before the upgrade, since
+ * the log records of the old files are not redone under the new names.
+ * </p>
+ * 
+ * <p>
+ * The blocks of data, index and temporary files can be read from read-only
+ * memory mappings instead, as set by <code>MMAP_DATA</code>,
+ * <code>MMAP_INDEX</code> and <code>MMAP_TEMP</code>. The log file is never
+ * mapped. A file is mapped in chunks covering its current length. The tail
+ * chunk is remapped once the file has grown enough, and the blocks beyond the
+ * mapped length are read from the channel meanwhile. All writes still go
+ * through the synchronous channel, and a read-only mapping never writes back
+ * any page by itself, so a block reaches the disk only when its buffer is
+ * flushed after the log records of its changes. The mappings see these
+ * writes through the page cache of the operating system.
+ * </p>
  */
 public class FileMgr {
+	/**
+	 * The extension of the names of index files.
+	 */
+	public static final String INDEX_FILE_EXTENSION = ".idx";
+	// the extension of the index files of older databases
+	private static final String LEGACY_INDEX_FILE_EXTENSION = ".tbl";
+
 	private static Logger logger = Logger.getLogger(FileMgr.class.getName());
+	private static final int CHANNELS_PER_FILE;
+	private static final boolean MMAP_DATA, MMAP_INDEX, MMAP_TEMP;
+	// the maximal size of a mapped chunk
+	private static final long MAP_CHUNK_BYTES = 64 * 1024 * 1024;
+	// the number of blocks a file grows by before its tail chunk is remapped
+	private static final int REMAP_BLOCKS = 64;
 	private File dbDirectory;
 	private boolean isNew;
-	private Map<String, FileChannel> openFiles = new HashMap<String, FileChannel>();
+	// map all the files but the log file, regardless of the configuration
+	private boolean mapAll;
+	// the number of blocks in a mapped chunk, or 0 for MAP_CHUNK_BYTES
+	private int chunkBlocks;
+	private int remapBlocks = REMAP_BLOCKS;
+	private ConcurrentHashMap<String, OpenFile> openFiles = new ConcurrentHashMap<String, OpenFile>();
+
+	static {
+		String prop = System.getProperty(FileMgr.class.getName()
+				+ ".CHANNELS_PER_FILE");
+		CHANNELS_PER_FILE = (prop == null ? 1 : Math.max(1, Integer
+				.parseInt(prop.trim())));
+		prop = System.getProperty(FileMgr.class.getName() + ".MMAP_DATA");
+		MMAP_DATA = (prop == null ? false : Boolean.parseBoolean(prop.trim()));
+		prop = System.getProperty(FileMgr.class.getName() + ".MMAP_INDEX");
+		MMAP_INDEX = (prop == null ? false : Boolean.parseBoolean(prop.trim()));
+		prop = System.getProperty(FileMgr.class.getName() + ".MMAP_TEMP");
+		MMAP_TEMP = (prop == null ? false : Boolean.parseBoolean(prop.trim()));
+	}
+
+	private static class Mapping {
+		MappedByteBuffer[] chunks;
+		// the number of mapped bytes
+		long size;
+
+		Mapping(MappedByteBuffer[] chunks, long size) {
+			this.chunks = chunks;
+			this.size = size;
+		}
+	}
+
+	private static class OpenFile {
+		FileChannel[] channels;
+		int blockSize;
+		// the size of a mapped chunk, a multiple of the block size
+		long chunkSize;
+		int remapBlocks;
+		// the number of blocks, including those reserved but not written yet
+		AtomicLong reserved;
+		// the number of blocks which have been written, or skipped by a write
+		volatile long numBlocks;
+		boolean mapped;
+		volatile Mapping mapping = new Mapping(new MappedByteBuffer[0], 0);
+
+		FileChannel channel() {
+			if (channels.length == 1)
+				return channels[0];
+			int i = (int) (Thread.currentThread().getId() % channels.length);
+			return channels[i];
+		}
+
+		/**
+		 * Reserves the blocks up to the specified block, and returns the first
+		 * of them, or -1 if the specified block has been reserved already.
+		 */
+		long reserveTo(long blkNum) {
+			long n = reserved.get();
+			while (n <= blkNum) {
+				if (reserved.compareAndSet(n, blkNum + 1))
+					return n;
+				n = reserved.get();
+			}
+			return -1;
+		}
+
+		/**
+		 * Adds the specified reserved blocks, which have been written, to the
+		 * size of the file once all the blocks before them are added.
+		 */
+		synchronized void publish(long from, long to) {
+			boolean interrupted = false;
+			while (numBlocks < from) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			numBlocks = to;
+			notifyAll();
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		/**
+		 * Extends the mapping to cover the specified length of the file, or
+		 * returns null if the file is shorter or has not grown enough since
+		 * the last mapping.
+		 */
+		synchronized Mapping remap(long end) throws IOException {
+			Mapping m = mapping;
+			if (end <= m.size)
+				return m;
+			long fileSize = channels[0].size() / blockSize * blockSize;
+			if (fileSize < end
+					|| (m.size > 0 && fileSize - m.size < remapBlocks
+							* blockSize))
+				return null;
+			int n = (int) ((fileSize + chunkSize - 1) / chunkSize);
+			// all chunks but the last one are full and kept
+			MappedByteBuffer[] chunks = Arrays.copyOf(m.chunks, n);
+			for (int i = Math.max(m.chunks.length - 1, 0); i < n; i++) {
+				long start = i * chunkSize;
+				chunks[i] = channels[0].map(MapMode.READ_ONLY, start,
+						Math.min(chunkSize, fileSize - start));
+			}
+			mapping = new Mapping(chunks, fileSize);
+			return mapping;
+		}
+	}
 
 	/**
 	 * Creates a file manager for the specified database. The database will be
@@ -54,11 +220,34 @@ public class FileMgr {
 
 		// remove any leftover temporary tables
 		for (String filename : dbDirectory.list())
-			if (filename.startsWith("_temp"))
+			if (isTempFile(filename))
 				new File(dbDirectory, filename).delete();
 
 		if (logger.isLoggable(Level.INFO))
-			logger.info("block size " + Page.BLOCK_SIZE);
+			logger.info("block size " + Page.BLOCK_SIZE + ", index block size "
+					+ Page.INDEX_BLOCK_SIZE + ", temp block size "
+					+ Page.TEMP_BLOCK_SIZE);
+	}
+
+	/**
+	 * Creates a file manager which maps all the files but the log file in
+	 * chunks of the specified number of blocks, and remaps the tail chunk of
+	 * a file after it grows by the specified number of blocks. The tests use
+	 * it to exercise the mappings with small files.
+	 * 
+	 * @param dbName
+	 *            the name of the directory that holds the database
+	 * @param chunkBlocks
+	 *            the number of blocks in a mapped chunk
+	 * @param remapBlocks
+	 *            the number of blocks a file grows by before its tail chunk
+	 *            is remapped
+	 */
+	FileMgr(String dbName, int chunkBlocks, int remapBlocks) {
+		this(dbName);
+		this.mapAll = true;
+		this.chunkBlocks = chunkBlocks;
+		this.remapBlocks = remapBlocks;
 	}
 
 	/**
@@ -71,16 +260,69 @@ public class FileMgr {
 	 */
 	void read(BlockId blk, ByteBuffer bb) {
 		try {
-			FileChannel fc = getFile(blk.fileName());
-			synchronized (fc) {
-				bb.clear();
-				fc.read(bb, blk.number() * BLOCK_SIZE);
+			OpenFile file = getFile(blk.fileName());
+			checkBlockSize(file, bb);
+			if (file.mapped && readMapped(file, blk, bb))
+				return;
+			FileChannel fc = file.channel();
+			bb.clear();
+			long pos = blk.number() * file.blockSize;
+			while (bb.hasRemaining()) {
+				int n = fc.read(bb, pos + bb.position());
+				if (n < 0)
+					break;
 			}
+			// a block reserved by an append but not written yet reads as zeros
+			while (bb.hasRemaining())
+				bb.put((byte) 0);
 		} catch (IOException e) {
 			throw new RuntimeException("cannot read block " + blk);
 		}
 	}
 
+	/**
+	 * Reads the contents of consecutive disk blocks into bytebuffers by a
+	 * single scattering read. The channel position is only used by this
+	 * method, so the read is serialized with the other scattering reads on the
+	 * same channel but not with the positional I/O.
+	 * 
+	 * @param blk
+	 *            the ID of the first block
+	 * @param bbs
+	 *            the bytebuffers, one for each block
+	 */
+	void read(BlockId blk, ByteBuffer[] bbs) {
+		try {
+			OpenFile file = getFile(blk.fileName());
+			for (ByteBuffer bb : bbs)
+				checkBlockSize(file, bb);
+			if (file.mapped) {
+				for (int i = 0; i < bbs.length; i++) {
+					BlockId b = new BlockId(blk.fileName(), blk.number() + i);
+					if (!readMapped(file, b, bbs[i]))
+						read(b, bbs[i]);
+				}
+				return;
+			}
+			FileChannel fc = file.channel();
+			for (ByteBuffer bb : bbs)
+				bb.clear();
+			synchronized (fc) {
+				fc.position(blk.number() * file.blockSize);
+				while (bbs[bbs.length - 1].hasRemaining()) {
+					if (fc.read(bbs) < 0)
+						break;
+				}
+			}
+			// the blocks reserved by appends but not written yet read as zeros
+			for (ByteBuffer bb : bbs)
+				while (bb.hasRemaining())
+					bb.put((byte) 0);
+		} catch (IOException e) {
+			throw new RuntimeException("cannot read blocks from " + blk);
+		}
+	}
+
 	/**
 	 * Writes the contents of a bytebuffer into a disk block.
 	 * 
@@ -91,10 +333,15 @@ public class FileMgr {
 	 */
 	void write(BlockId blk, ByteBuffer bb) {
 		try {
-			FileChannel fc = getFile(blk.fileName());
-			synchronized (fc) {
-				bb.rewind();
-				fc.write(bb, blk.number() * BLOCK_SIZE);
+			OpenFile file = getFile(blk.fileName());
+			checkBlockSize(file, bb);
+			long from = file.reserveTo(blk.number());
+			try {
+				writeFully(file.channel(), bb, blk.number() * file.blockSize);
+			} finally {
+				// a failed write must not hold back the later appends
+				if (from >= 0)
+					file.publish(from, blk.number() + 1);
 			}
 		} catch (IOException e) {
 			throw new RuntimeException("cannot write block" + blk);
@@ -112,21 +359,61 @@ public class FileMgr {
 	 */
 	BlockId append(String fileName, ByteBuffer bb) {
 		try {
-			FileChannel fc = getFile(fileName);
-			synchronized (fc) {
-				long newblknum = fc.size() / BLOCK_SIZE;
-				BlockId blk = new BlockId(fileName, newblknum);
+			OpenFile file = getFile(fileName);
+			checkBlockSize(file, bb);
+			long newblknum = file.reserved.getAndIncrement();
+			BlockId blk = new BlockId(fileName, newblknum);
+			try {
+				writeFully(file.channel(), bb, blk.number() * file.blockSize);
+			} finally {
+				file.publish(newblknum, newblknum + 1);
+			}
+			return blk;
+		} catch (IOException e) {
+			throw new RuntimeException("cannot access " + fileName);
+		}
+	}
+
+	/**
+	 * Appends the contents of bytebuffers to the end of the specified file by
+	 * a single gathering write, one block for each bytebuffer. Like the
+	 * scattering read, the write is serialized with the other gathering and
+	 * scattering I/O on the same channel.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @param bbs
+	 *            the bytebuffers
+	 * @return the ID of the first newly-created block
+	 */
+	BlockId append(String fileName, ByteBuffer[] bbs) {
+		try {
+			OpenFile file = getFile(fileName);
+			for (ByteBuffer bb : bbs) {
+				checkBlockSize(file, bb);
 				bb.rewind();
-				fc.write(bb, blk.number() * BLOCK_SIZE);
-				return blk;
 			}
+			long newblknum = file.reserved.getAndAdd(bbs.length);
+			BlockId blk = new BlockId(fileName, newblknum);
+			FileChannel fc = file.channel();
+			try {
+				synchronized (fc) {
+					fc.position(newblknum * file.blockSize);
+					while (bbs[bbs.length - 1].hasRemaining())
+						fc.write(bbs);
+				}
+			} finally {
+				file.publish(newblknum, newblknum + bbs.length);
+			}
+			return blk;
 		} catch (IOException e) {
 			throw new RuntimeException("cannot access " + fileName);
 		}
 	}
 
 	/**
-	 * Returns the number of blocks in the specified file.
+	 * Returns the number of blocks in the specified file. The blocks being
+	 * appended are not counted until they are written.
 	 * 
 	 * @param fileName
 	 *            the name of the file
@@ -134,15 +421,34 @@ public class FileMgr {
 	 */
 	public long size(String fileName) {
 		try {
-			FileChannel fc = getFile(fileName);
-			synchronized (fc) {
-				return fc.size() / BLOCK_SIZE;
-			}
+			return getFile(fileName).numBlocks;
 		} catch (IOException e) {
 			throw new RuntimeException("cannot access " + fileName);
 		}
 	}
 
+	/**
+	 * Returns true if the specified file holds a temporary table.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return true if the file is temporary
+	 */
+	public static boolean isTempFile(String fileName) {
+		return fileName.startsWith("_temp");
+	}
+
+	/**
+	 * Returns true if the specified file holds an index.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return true if the file is an index file
+	 */
+	public static boolean isIndexFile(String fileName) {
+		return fileName.endsWith(INDEX_FILE_EXTENSION);
+	}
+
 	/**
 	 * Returns a boolean indicating whether the file manager had to create a new
 	 * database directory.
@@ -154,25 +460,131 @@ public class FileMgr {
 	}
 
 	/**
-	 * Returns the file channel for the specified filename. The file channel is
+	 * Returns the number of blocks of the specified file covered by its
+	 * mapping.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return the number of mapped blocks
+	 */
+	long mappedBlocks(String fileName) {
+		try {
+			OpenFile file = getFile(fileName);
+			return file.mapping.size / file.blockSize;
+		} catch (IOException e) {
+			throw new RuntimeException("cannot access " + fileName);
+		}
+	}
+
+	private boolean isMapped(String fileName) {
+		if (fileName.equals(LogMgr.LOG_FILE))
+			return false;
+		if (mapAll)
+			return true;
+		if (isTempFile(fileName))
+			return MMAP_TEMP;
+		if (isIndexFile(fileName))
+			return MMAP_INDEX;
+		return MMAP_DATA;
+	}
+
+	/**
+	 * Copies the specified block from the mapping of the file into the
+	 * bytebuffer. Returns false if the block is not mapped, in which case it
+	 * should be read from the channel.
+	 */
+	private boolean readMapped(OpenFile file, BlockId blk, ByteBuffer bb)
+			throws IOException {
+		long pos = blk.number() * file.blockSize;
+		Mapping m = file.mapping;
+		if (pos + file.blockSize > m.size) {
+			m = file.remap(pos + file.blockSize);
+			if (m == null)
+				return false;
+		}
+		ByteBuffer src = m.chunks[(int) (pos / file.chunkSize)].duplicate();
+		int off = (int) (pos % file.chunkSize);
+		src.limit(off + file.blockSize);
+		src.position(off);
+		bb.clear();
+		bb.put(src);
+		return true;
+	}
+
+	private void checkBlockSize(OpenFile file, ByteBuffer bb) {
+		if (bb.capacity() != file.blockSize)
+			throw new IllegalArgumentException("a page of " + bb.capacity()
+					+ " bytes cannot hold a block of " + file.blockSize
+					+ " bytes");
+	}
+
+	private void writeFully(FileChannel fc, ByteBuffer bb, long pos)
+			throws IOException {
+		bb.rewind();
+		while (bb.hasRemaining())
+			fc.write(bb, pos + bb.position());
+	}
+
+	/**
+	 * Returns the open file for the specified filename. The open files are
 	 * stored in a map keyed on the filename. If the file is not open, then it
-	 * is opened and the file channel is added to the map.
+	 * is opened and added to the map. Only the opening of files is serialized.
 	 * 
 	 * @param fileName
 	 *            the specified filename
-	 * @return the file channel associated with the open file.
+	 * @return the open file
 	 * @throws IOException
 	 */
-	private FileChannel getFile(String fileName) throws IOException {
+	private OpenFile getFile(String fileName) throws IOException {
+		OpenFile file = openFiles.get(fileName);
+		if (file != null)
+			return file;
 		synchronized (openFiles) {
-			FileChannel fc = openFiles.get(fileName);
-			if (fc == null) {
+			file = openFiles.get(fileName);
+			if (file == null) {
 				File dbTable = new File(dbDirectory, fileName);
-				RandomAccessFile f = new RandomAccessFile(dbTable, "rws");
-				fc = f.getChannel();
-				openFiles.put(fileName, fc);
+				if (isIndexFile(fileName) && !dbTable.exists())
+					renameLegacyIndexFile(dbTable);
+				file = new OpenFile();
+				file.blockSize = Page.blockSize(fileName);
+				file.chunkSize = (chunkBlocks > 0 ? chunkBlocks
+						: MAP_CHUNK_BYTES / file.blockSize) * file.blockSize;
+				file.remapBlocks = remapBlocks;
+				file.channels = new FileChannel[CHANNELS_PER_FILE];
+				for (int i = 0; i < CHANNELS_PER_FILE; i++)
+					file.channels[i] = new RandomAccessFile(dbTable, "rws")
+							.getChannel();
+				file.numBlocks = file.channels[0].size() / file.blockSize;
+				file.reserved = new AtomicLong(file.numBlocks);
+				file.mapped = isMapped(fileName);
+				openFiles.put(fileName, file);
 			}
-			return fc;
+			return file;
 		}
 	}
+
+	/**
+	 * Renames the index file of an older database, which ends with ".tbl", to
+	 * the specified index file if there is one.
+	 * 
+	 * @param indexFile
+	 *            the index file, which does not exist yet
+	 */
+	private void renameLegacyIndexFile(File indexFile) {
+		String name = indexFile.getName();
+		File legacy = new File(dbDirectory, name.substring(0, name.length()
+				- INDEX_FILE_EXTENSION.length())
+				+ LEGACY_INDEX_FILE_EXTENSION);
+		if (!legacy.exists())
+			return;
+		if (Page.INDEX_BLOCK_SIZE != Page.BLOCK_SIZE)
+			throw new RuntimeException("cannot read " + legacy.getName()
+					+ " in blocks of " + Page.INDEX_BLOCK_SIZE
+					+ " bytes; rebuild the index");
+		if (!legacy.renameTo(indexFile))
+			throw new RuntimeException("cannot rename " + legacy.getName());
+		if (logger.isLoggable(Level.INFO))
+			logger.info("renamed index file " + legacy.getName() + " to "
+					+ name);
+	}
 }
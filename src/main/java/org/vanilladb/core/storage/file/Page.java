@@ -6,6 +6,7 @@ import java.nio.ByteBuffer;
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharView;
 import org.vanilladb.core.util.ByteHelper;
 
 
@@ -37,6 +38,14 @@ import org.vanilladb.core.util.ByteHelper;
  * p3.read(blk);
  * String s = (String) p3.getVal(20).asJavaVal();
  * </pre>
+ * 
+ * <p>
+ * The blocks of index files and temporary files may be larger than those of
+ * the other files, as set by <code>INDEX_BLOCK_SIZE</code> and
+ * <code>TEMP_BLOCK_SIZE</code>. The block size of a file is told by its name
+ * (see {@link #blockSize(String)}), and a page must have the block size of the
+ * file it is read from or written to.
+ * </p>
  */
 public class Page {
 	/**
@@ -44,9 +53,40 @@ public class Page {
 	 */
 	public static final int BLOCK_SIZE;
 
+	/**
+	 * The number of bytes in a block of an index file.
+	 */
+	public static final int INDEX_BLOCK_SIZE;
+
+	/**
+	 * The number of bytes in a block of a temporary file.
+	 */
+	public static final int TEMP_BLOCK_SIZE;
+
 	static {
 		String prop = System.getProperty(Page.class.getName() + ".BLOCK_SIZE");
 		BLOCK_SIZE = (prop == null ? 4000 : Integer.parseInt(prop.trim()));
+		prop = System.getProperty(Page.class.getName() + ".INDEX_BLOCK_SIZE");
+		INDEX_BLOCK_SIZE = (prop == null ? BLOCK_SIZE : Integer.parseInt(prop
+				.trim()));
+		prop = System.getProperty(Page.class.getName() + ".TEMP_BLOCK_SIZE");
+		TEMP_BLOCK_SIZE = (prop == null ? BLOCK_SIZE : Integer.parseInt(prop
+				.trim()));
+	}
+
+	/**
+	 * Returns the number of bytes in a block of the specified file.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return the block size of the file
+	 */
+	public static int blockSize(String fileName) {
+		if (FileMgr.isTempFile(fileName))
+			return TEMP_BLOCK_SIZE;
+		if (FileMgr.isIndexFile(fileName))
+			return INDEX_BLOCK_SIZE;
+		return BLOCK_SIZE;
 	}
 
 	/**
@@ -71,7 +111,7 @@ public class Page {
 				+ val.size();
 	}
 
-	private ByteBuffer contents = ByteBuffer.allocateDirect(BLOCK_SIZE);
+	private ByteBuffer contents;
 	private FileMgr fileMgr = VanillaDB.fileMgr();
 
 	/**
@@ -84,6 +124,45 @@ public class Page {
 	 * {@link VanillaDB#initFileLogAndBufferMgr(String)} is called first.
 	 */
 	public Page() {
+		this(BLOCK_SIZE);
+	}
+
+	/**
+	 * Creates a new page of the specified size, which must be the block size
+	 * of the files the page is used for.
+	 * 
+	 * @param blockSize
+	 *            the number of bytes in the page
+	 */
+	public Page(int blockSize) {
+		contents = ByteBuffer.allocateDirect(blockSize);
+	}
+
+	private Page(ByteBuffer contents) {
+		this.contents = contents;
+	}
+
+	/**
+	 * Returns the number of bytes in this page.
+	 * 
+	 * @return the size of the page
+	 */
+	public int blockSize() {
+		return contents.capacity();
+	}
+
+	/**
+	 * Returns a copy of this page. The copy is kept in the heap and is meant
+	 * to be read only, such as an image of the page at a point in time.
+	 * 
+	 * @return a new page with the same contents
+	 */
+	public synchronized Page copy() {
+		ByteBuffer src = contents.duplicate();
+		src.clear();
+		ByteBuffer copy = ByteBuffer.allocate(src.capacity());
+		copy.put(src);
+		return new Page(copy);
 	}
 
 	/**
@@ -96,6 +175,23 @@ public class Page {
 		fileMgr.read(blk, contents);
 	}
 
+	/**
+	 * Populates the specified pages with the contents of consecutive disk
+	 * blocks, starting from the specified one, by a single read. The pages
+	 * must not be accessed by other threads until this method returns.
+	 * 
+	 * @param blk
+	 *            the ID of the first block
+	 * @param pages
+	 *            the pages, one for each block
+	 */
+	public static void read(BlockId blk, Page[] pages) {
+		ByteBuffer[] bbs = new ByteBuffer[pages.length];
+		for (int i = 0; i < pages.length; i++)
+			bbs[i] = pages[i].contents;
+		VanillaDB.fileMgr().read(blk, bbs);
+	}
+
 	/**
 	 * Writes the contents of the page to the specified disk block.
 	 * 
@@ -117,6 +213,24 @@ public class Page {
 		return fileMgr.append(fileName, contents);
 	}
 
+	/**
+	 * Appends the contents of the specified pages to the specified file, one
+	 * block for each page, by a single write. The pages must not be accessed
+	 * by other threads until this method returns.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @param pages
+	 *            the pages
+	 * @return the reference to the first newly-created disk block
+	 */
+	public static BlockId append(String fileName, Page[] pages) {
+		ByteBuffer[] bbs = new ByteBuffer[pages.length];
+		for (int i = 0; i < pages.length; i++)
+			bbs[i] = pages[i].contents;
+		return VanillaDB.fileMgr().append(fileName, bbs);
+	}
+
 	/**
 	 * Returns the value at a specified offset of this page. If a constant was
 	 * not stored at that offset, the behavior of the method is unpredictable.
@@ -136,6 +250,99 @@ public class Page {
 		return Constant.newInstance(type, byteval);
 	}
 
+	/**
+	 * Returns the integer at the specified offset of this page. Unlike
+	 * {@link #getVal(int, Type)}, the read neither moves the position of the
+	 * page nor creates any object, and so takes no lock of the page. The caller
+	 * must hold a lock protecting the value, which orders the read after the
+	 * writes of other threads. A transaction lock of the record (or block)
+	 * does; a pin alone does not. A value read without such a lock, such as
+	 * the flag of a slot a scan passes over, must be read through a
+	 * synchronized method like {@link #getVal(int, Type)} instead.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @return the integer at that offset
+	 */
+	public int getInt(int offset) {
+		return contents.getInt(offset);
+	}
+
+	/**
+	 * Returns the long integer at the specified offset of this page, without
+	 * taking the lock of the page. See {@link #getInt(int)}.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @return the long integer at that offset
+	 */
+	public long getLong(int offset) {
+		return contents.getLong(offset);
+	}
+
+	/**
+	 * Returns the double at the specified offset of this page, without taking
+	 * the lock of the page. See {@link #getInt(int)}.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @return the double at that offset
+	 */
+	public double getDouble(int offset) {
+		return contents.getDouble(offset);
+	}
+
+	/**
+	 * Reads the varchar at the specified offset of this page into the
+	 * specified view, replacing its contents.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param view
+	 *            the view to hold the value
+	 */
+	public synchronized void getVarchar(int offset, VarcharView view) {
+		int size = contents.getInt(offset);
+		int limit = contents.limit();
+		contents.limit(offset + ByteHelper.INT_SIZE + size);
+		contents.position(offset + ByteHelper.INT_SIZE);
+		try {
+			view.decode(contents);
+		} finally {
+			contents.limit(limit);
+		}
+	}
+
+	/**
+	 * Returns the specified number of bytes at the specified offset of this
+	 * page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param length
+	 *            the number of bytes
+	 * @return a copy of the bytes
+	 */
+	public synchronized byte[] getBytes(int offset, int length) {
+		byte[] bytes = new byte[length];
+		contents.position(offset);
+		contents.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writes the specified bytes to the specified offset on the page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param bytes
+	 *            the bytes to be written
+	 */
+	public synchronized void setBytes(int offset, byte[] bytes) {
+		contents.position(offset);
+		contents.put(bytes);
+	}
+
 	/**
 	 * Writes a constant value to the specified offset on the page.
 	 * 
@@ -149,7 +356,8 @@ public class Page {
 		byte[] byteval = val.asBytes();
 		if (!val.getType().isFixedSize()) {
 			// check the field capacity and value size
-			if (offset + ByteHelper.INT_SIZE + byteval.length > BLOCK_SIZE)
+			if (offset + ByteHelper.INT_SIZE + byteval.length > contents
+					.capacity())
 				throw new BufferOverflowException();
 			contents.putInt(byteval.length);
 		}
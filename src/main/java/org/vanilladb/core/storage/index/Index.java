@@ -1,9 +1,12 @@
 package org.vanilladb.core.storage.index;
 
+import org.vanilladb.core.sql.CompositeConstant;
+import org.vanilladb.core.sql.CompositeType;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.ConstantRange;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.index.btree.BTreeIndex;
+import org.vanilladb.core.storage.index.hash.ExtendibleHashIndex;
 import org.vanilladb.core.storage.index.hash.HashIndex;
 import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.tx.Transaction;
@@ -17,7 +20,7 @@ public abstract class Index {
 	/**
 	 * A supported index type.
 	 */
-	public static final int IDX_HASH = 0, IDX_BTREE = 1;
+	public static final int IDX_HASH = 0, IDX_BTREE = 1, IDX_EXT_HASH = 2;
 
 	/**
 	 * Estimates the number of block accesses required to find all index records
@@ -44,16 +47,49 @@ public abstract class Index {
 			return HashIndex.searchCost(fldType, totRecs, matchRecs);
 		else if (idxType == IDX_BTREE)
 			return BTreeIndex.searchCost(fldType, totRecs, matchRecs);
+		else if (idxType == IDX_EXT_HASH)
+			return ExtendibleHashIndex.searchCost(fldType, totRecs, matchRecs);
 		else
 			throw new IllegalArgumentException("unsupported index type");
 	}
 
 	public static Index newInstance(String dataFileName, String idxName,
 			int idxType, Type fldType, Transaction tx) {
+		return newInstance(dataFileName, idxName, idxType, fldType, null, tx);
+	}
+
+	/**
+	 * Opens an index of the specified type which includes the values of some
+	 * fields in its records. Only the B-tree indexes include fields.
+	 * 
+	 * @param dataFileName
+	 *            the name of data file
+	 * @param idxName
+	 *            the name of the index
+	 * @param idxType
+	 *            the index type
+	 * @param fldType
+	 *            the type of the keys, which is a {@link CompositeType
+	 *            composite} type if the index is on several fields
+	 * @param inclType
+	 *            the type of the values of the included fields, or null if
+	 *            the index includes no field
+	 * @param tx
+	 *            the calling transaction
+	 * @return the index
+	 */
+	public static Index newInstance(String dataFileName, String idxName,
+			int idxType, Type fldType, Type inclType, Transaction tx) {
+		if (inclType != null && idxType != IDX_BTREE)
+			throw new IllegalArgumentException(
+					"only a B-tree index includes fields");
 		if (idxType == IDX_HASH)
 			return new HashIndex(dataFileName, idxName, fldType, tx);
 		else if (idxType == IDX_BTREE)
-			return new BTreeIndex(dataFileName, idxName, fldType, tx);
+			return new BTreeIndex(dataFileName, idxName, fldType, inclType,
+					tx);
+		else if (idxType == IDX_EXT_HASH)
+			return new ExtendibleHashIndex(dataFileName, idxName, fldType, tx);
 		else
 			throw new IllegalArgumentException("unsupported index type");
 	}
@@ -83,6 +119,26 @@ public abstract class Index {
 	 */
 	public abstract RecordId getDataRecordId();
 
+	/**
+	 * Returns the key of the current index record. Only the B-tree indexes
+	 * return their keys, which they keep in order.
+	 * 
+	 * @return the key of the current index record
+	 */
+	public Constant getKey() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns the values of the included fields of the current index record,
+	 * which are the fields of a {@link CompositeConstant}.
+	 * 
+	 * @return the values of the included fields
+	 */
+	public Constant getIncludedValues() {
+		throw new UnsupportedOperationException();
+	}
+
 	/**
 	 * Inserts an index record having the specified key and data record ID.
 	 * 
@@ -93,6 +149,22 @@ public abstract class Index {
 	 */
 	public abstract void insert(Constant key, RecordId dataRecordId);
 
+	/**
+	 * Inserts an index record having the specified key, data record ID and
+	 * values of the included fields. An index which includes no field ignores
+	 * the values.
+	 * 
+	 * @param key
+	 *            the key in the new index record.
+	 * @param dataRecordId
+	 *            the data record ID in the new index record.
+	 * @param inclVals
+	 *            the values of the included fields, or null
+	 */
+	public void insert(Constant key, RecordId dataRecordId, Constant inclVals) {
+		insert(key, dataRecordId);
+	}
+
 	/**
 	 * Deletes the index record having the specified key and data record ID.
 	 * 
@@ -103,6 +175,32 @@ public abstract class Index {
 	 */
 	public abstract void delete(Constant key, RecordId dataRecordId);
 
+	/**
+	 * Returns a loader which inserts index records given in the order of
+	 * their keys. By default, the loader inserts the records one by one.
+	 * 
+	 * @return a loader of this index
+	 */
+	public IndexLoader loader() {
+		return new IndexLoader() {
+			@Override
+			public void insert(Constant key, RecordId dataRecordId) {
+				Index.this.insert(key, dataRecordId);
+			}
+
+			@Override
+			public void insert(Constant key, RecordId dataRecordId,
+					Constant inclVals) {
+				Index.this.insert(key, dataRecordId, inclVals);
+			}
+
+			@Override
+			public void close() {
+				Index.this.close();
+			}
+		};
+	}
+
 	/**
 	 * Closes the index.
 	 */
@@ -0,0 +1,43 @@
+package org.vanilladb.core.storage.index;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.storage.record.RecordId;
+
+/**
+ * An interface used to fill an index with many index records at once. The
+ * records are given in the order of their keys, so an index which can be built
+ * faster from sorted records provides its own loader through
+ * {@link Index#loader()}.
+ */
+public interface IndexLoader {
+	/**
+	 * Inserts an index record having the specified key and data record ID. The
+	 * key must not be less than the key of the previous record.
+	 *
+	 * @param key
+	 *            the key in the new index record
+	 * @param dataRecordId
+	 *            the data record ID in the new index record
+	 */
+	void insert(Constant key, RecordId dataRecordId);
+
+	/**
+	 * Inserts an index record having the specified key, data record ID and
+	 * values of the included fields. The key must not be less than the key of
+	 * the previous record.
+	 *
+	 * @param key
+	 *            the key in the new index record
+	 * @param dataRecordId
+	 *            the data record ID in the new index record
+	 * @param inclVals
+	 *            the values of the included fields, or null if the index
+	 *            includes no field
+	 */
+	void insert(Constant key, RecordId dataRecordId, Constant inclVals);
+
+	/**
+	 * Finishes the loading, and closes the index.
+	 */
+	void close();
+}
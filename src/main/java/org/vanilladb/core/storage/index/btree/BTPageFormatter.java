@@ -2,7 +2,6 @@ package org.vanilladb.core.storage.index.btree;
 
 import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.INTEGER;
-import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
 
 import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
@@ -36,21 +35,30 @@ public class BTPageFormatter implements PageFormatter {
 
 	/**
 	 * Formats the page by initializing as many index-record slots as possible
-	 * to have default values.
+	 * to have default values. A page in the compressed format gets an empty
+	 * slot directory instead.
 	 * 
 	 * @see PageFormatter#format(Page)
 	 */
 	@Override
 	public void format(Page page) {
 		// init number of records
-		page.setVal(Page.maxSize(INTEGER), new IntegerConstant(0));
+		page.setVal(0, new IntegerConstant(0));
 		// set flags
 		for (int i = 0; i < flags.length; i++)
 			page.setVal(Page.maxSize(INTEGER) + Page.maxSize(BIGINT) * i,
 					new BigIntConstant(flags[i]));
+		if (ti.format() == TableInfo.FORMAT_SLOTTED) {
+			CompressedBTreePage.format(page, flags.length);
+			return;
+		}
+		// init high key
+		page.setVal(BTreePage.highKeyPosition(flags.length), Constant
+				.defaultInstance(BTreePage.keyType(ti)));
 		int recSize = ti.recordSize();
-		for (int pos = Page.maxSize(INTEGER) + Page.maxSize(BIGINT)
-				* flags.length; pos + recSize <= BLOCK_SIZE; pos += recSize)
+		int blockSize = page.blockSize();
+		for (int pos = BTreePage.slotPosition(ti, flags.length, 0); pos
+				+ recSize <= blockSize; pos += recSize)
 			makeDefaultRecord(page, pos);
 	}
 
@@ -5,8 +5,12 @@ import static org.vanilladb.core.storage.index.btree.BTreeIndex.OP_DELETE;
 import static org.vanilladb.core.storage.index.btree.BTreeIndex.OP_INSERT;
 import static org.vanilladb.core.storage.index.btree.BTreeIndex.OP_SEARCH;
 
+import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Schema;
@@ -21,17 +25,63 @@ import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
  * A B-tree directory page that iterates over the B-tree directory blocks in a
  * file.
  * <p>
- * There is one flag in each B-tree directory block: the level (starting from 0
- * at the deepest) of that block in the directory.
+ * There are two flags in each B-tree directory block: the level (starting
+ * from 0 at the deepest) of that block in the directory, and a pointer to the
+ * right sibling of the block at the same level, or -1 if there is none. With
+ * the high keys of the pages, the directory is a B-link tree.
+ * </p>
+ * <p>
+ * The directory is searched without locks. A page is read optimistically and
+ * read again if its version has changed in the meantime, and a search moves
+ * right whenever the search key is not less than the high key of a page. The
+ * directory is modified only by posting the entries of split pages, which
+ * latches the page modified and xlocks it until the posting commits.
+ * </p>
+ * <p>
+ * The entry of a split page may never be posted if the system crashes before
+ * the posting or the posting transaction is aborted. A search moving right
+ * thus records the {@link SplitLink sibling link} it has followed, and the
+ * entry of the link is posted by {@link #completeSplit} if it is still
+ * missing.
  * </p>
  */
 public class BTreeDir {
+	/**
+	 * A sibling link followed by a search, from a page split off without a
+	 * directory entry or with an entry not posted yet.
+	 */
+	static class SplitLink {
+		// the level of the missing entry, which is 0 for a split leaf
+		private long level;
+		private long leftBlkNum;
+
+		SplitLink(long level, long leftBlkNum) {
+			this.level = level;
+			this.leftBlkNum = leftBlkNum;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof SplitLink))
+				return false;
+			SplitLink l = (SplitLink) obj;
+			return level == l.level && leftBlkNum == l.leftBlkNum;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (int) level + (int) (leftBlkNum ^ (leftBlkNum >>> 32));
+		}
+	}
+
 	/**
 	 * A field name of the schema of B-tree directory records.
 	 */
 	static final String SCH_KEY = "key", SCH_CHILD = "child";
 
-	static int NUM_FLAGS = 1;
+	static int NUM_FLAGS = 2;
 
 	/**
 	 * Returns the schema of the B-tree directory records.
@@ -56,6 +106,14 @@ public class BTreeDir {
 		p.setFlag(0, val);
 	}
 
+	static long getSiblingFlag(BTreePage p) {
+		return p.getFlag(1);
+	}
+
+	static void setSiblingFlag(BTreePage p, long val) {
+		p.setFlag(1, val);
+	}
+
 	static Constant getKey(BTreePage p, int slot) {
 		return p.getVal(slot, SCH_KEY);
 	}
@@ -70,10 +128,99 @@ public class BTreeDir {
 		p.setVal(slot, SCH_CHILD, new BigIntConstant(blkNum));
 	}
 
+	/**
+	 * Posts the directory entry of a leaf split off by a committed
+	 * transaction to the directory, and the entries of the directory pages
+	 * split in turn to the levels above. Each level is posted by a
+	 * transaction of its own, which commits right away, so a posted entry is
+	 * never undone. If a posting transaction is aborted, the entry is left
+	 * out, and the searches still reach the page through the sibling link of
+	 * its left neighbor until one of them completes the split.
+	 * 
+	 * @param dataFileName
+	 *            the data file name
+	 * @param ti
+	 *            the metadata of the B-tree directory file
+	 * @param e
+	 *            the directory entry of the new leaf
+	 */
+	static void post(String dataFileName, TableInfo ti, DirEntry e) {
+		post(dataFileName, ti, e, 0);
+	}
+
+	private static void post(String dataFileName, TableInfo ti, DirEntry e,
+			long level) {
+		for (; e != null; level++) {
+			Transaction tx = VanillaDB.transaction(
+					Connection.TRANSACTION_SERIALIZABLE, false);
+			try {
+				// waits for a bulk load of the index, if any
+				tx.concurrencyMgr().sLock(ti.fileName());
+				BTreeDir root = new BTreeDir(dataFileName, new BlockId(
+						ti.fileName(), 0), ti, tx);
+				e = root.post(e, level);
+				root.close();
+			} catch (LockAbortException ex) {
+				tx.rollback();
+				return;
+			}
+			tx.commit();
+		}
+	}
+
+	/**
+	 * Posts the directory entry of the sibling of the page from which the
+	 * specified link was followed, if the entry is missing, and the entries of
+	 * the directory pages split in turn. The page is slocked first, so a split
+	 * is posted only once it has committed, and the link is read again since
+	 * a rolled back split has left no link.
+	 * 
+	 * @param dataFileName
+	 *            the data file name
+	 * @param ti
+	 *            the metadata of the B-tree directory file
+	 * @param leafTi
+	 *            the metadata of the B-tree leaf file
+	 * @param link
+	 *            the link followed by a search
+	 */
+	static void completeSplit(String dataFileName, TableInfo ti,
+			TableInfo leafTi, SplitLink link) {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		DirEntry e = null;
+		try {
+			tx.concurrencyMgr().sLock(ti.fileName());
+			boolean isLeaf = link.level == 0;
+			TableInfo leftTi = isLeaf ? leafTi : ti;
+			BlockId leftBlk = new BlockId(leftTi.fileName(), link.leftBlkNum);
+			tx.concurrencyMgr().sLockIndexBlock(leftBlk);
+			BTreePage left = BTreePage.newInstance(dataFileName, leftBlk,
+					isLeaf ? BTreeLeaf.NUM_FLAGS : NUM_FLAGS, leftTi, tx);
+			long siblingBlkNum = isLeaf ? BTreeLeaf.getSiblingFlag(left)
+					: getSiblingFlag(left);
+			if (siblingBlkNum != -1)
+				e = new DirEntry(left.getHighKey(), siblingBlkNum);
+			left.close();
+			if (e != null) {
+				BTreeDir root = new BTreeDir(dataFileName, new BlockId(
+						ti.fileName(), 0), ti, tx);
+				e = root.post(e, link.level);
+				root.close();
+			}
+		} catch (LockAbortException ex) {
+			tx.rollback();
+			return;
+		}
+		tx.commit();
+		post(dataFileName, ti, e, link.level + 1);
+	}
+
 	private TableInfo ti;
 	private Transaction tx;
 	private BTreePage contents;
 	private String dataFileName;
+	private List<SplitLink> linksFollowed;
 
 	/**
 	 * Creates an object to hold the contents of the specified B-tree block.
@@ -91,7 +238,7 @@ public class BTreeDir {
 		this.ti = ti;
 		this.tx = tx;
 		this.dataFileName = dataFileName;
-		contents = new BTreePage(dataFileName, blk, NUM_FLAGS, ti, tx);
+		contents = BTreePage.newInstance(dataFileName, blk, NUM_FLAGS, ti, tx);
 	}
 
 	/**
@@ -101,9 +248,24 @@ public class BTreeDir {
 		contents.close();
 	}
 
+	/**
+	 * Returns the sibling links followed by the searches of this object.
+	 * 
+	 * @return the links followed
+	 */
+	List<SplitLink> linksFollowed() {
+		if (linksFollowed == null)
+			return Collections.emptyList();
+		return linksFollowed;
+	}
+
 	/**
 	 * Returns the block number of the B-tree leaf block that contains the
-	 * specified search key.
+	 * specified search key. The directory is searched from this block, which
+	 * must be the root, without locks. The leaf is slocked for a search and
+	 * xlocked for an insertion or a deletion, and the method moves right
+	 * through the siblings of the leaf if the leaf has been split since the
+	 * directory was read.
 	 * 
 	 * @param searchKey
 	 *            the search key
@@ -112,120 +274,129 @@ public class BTreeDir {
 	 * @return the BlockId of the leaf block containing that search key
 	 */
 	public BlockId search(Constant searchKey, int action, TableInfo leafTi) {
-		BlockId rootBlk = contents.currentBlk();
-		if (action == OP_SEARCH) {
-			long leafBlkNum = searchWithSLock(searchKey);
-			BlockId leafBlk = new BlockId(leafTi.fileName(), leafBlkNum);
-			sLockIndexBlock(leafBlk);
-			tx.concurrencyMgr().releaseIndexBlocks(contents.currentBlk());
-			return leafBlk;
-		} else if (action == OP_DELETE) {
-			long leafBlkNum = searchWithSLock(searchKey);
-			BlockId leafBlk = new BlockId(leafTi.fileName(), leafBlkNum);
-			xLockIndexBlock(leafBlk);
-			tx.concurrencyMgr().releaseIndexBlocks(contents.currentBlk());
-			return leafBlk;
-		} else if (action == OP_INSERT) {
-			long leafBlkNum = searchWithSLock(searchKey);
-			BlockId leafBlk = new BlockId(leafTi.fileName(), leafBlkNum);
-			xLockIndexBlock(leafBlk);
-			BTreePage leaf = new BTreePage(dataFileName, leafBlk,
+		BlockId leafBlk = new BlockId(leafTi.fileName(), findBlockNumber(
+				searchKey, -1));
+		lockLeaf(leafBlk, action);
+		while (true) {
+			BTreePage leaf = BTreePage.newInstance(dataFileName, leafBlk,
 					BTreeLeaf.NUM_FLAGS, leafTi, tx);
-			if (leaf.isGettingFull()
-					|| searchKey.compareTo(BTreeLeaf.getKey(leaf, 0)) < 0) {
-				tx.concurrencyMgr().releaseIndexBlocks(contents.currentBlk());
-				tx.concurrencyMgr().releaseIndexBlocks(leafBlk);
-				contents.close();
-				contents = new BTreePage(dataFileName, rootBlk, NUM_FLAGS, ti,
-						tx);
-				leafBlk = xLockToLeaf(searchKey, leafTi);
-			}
+			long siblingBlkNum = BTreeLeaf.getSiblingFlag(leaf);
+			boolean moveRight = siblingBlkNum != -1
+					&& searchKey.compareTo(leaf.getHighKey()) >= 0;
 			leaf.close();
-			return leafBlk;
+			if (!moveRight)
+				return leafBlk;
+			follow(new SplitLink(0, leafBlk.number()));
+			BlockId prevBlk = leafBlk;
+			leafBlk = new BlockId(leafTi.fileName(), siblingBlkNum);
+			lockLeaf(leafBlk, action);
+			tx.concurrencyMgr().releaseIndexBlocks(prevBlk);
 		}
-		throw new IllegalArgumentException();
 	}
 
-	private long searchWithSLock(Constant searchKey) {
-		// search from root to level 0
-		BlockId parentBlk = contents.currentBlk();
-		sLockIndexBlock(parentBlk);
-		long childBlkNum = findChildBlockNumber(searchKey);
-		BlockId childBlk;
-		while (getLevelFlag(contents) > 0) {
-			// lock child
-			childBlk = new BlockId(ti.fileName(), childBlkNum);
-			sLockIndexBlock(childBlk);
-			BTreePage child = new BTreePage(dataFileName, childBlk, NUM_FLAGS,
-					ti, tx);
-			// release parent block
-			tx.concurrencyMgr().releaseIndexBlocks(parentBlk);
-			contents.close();
-			contents = child;
-			childBlkNum = findChildBlockNumber(searchKey);
-			parentBlk = contents.currentBlk();
+	/**
+	 * Returns the number of the block at the specified level that covers the
+	 * specified search key, or the number of the leaf block covering the key
+	 * if the level is -1. Each page is read without a latch, and is read again
+	 * if its version shows that a writer has latched it in the meantime.
+	 */
+	private long findBlockNumber(Constant searchKey, long level) {
+		BTreePage page = contents;
+		while (true) {
+			long version = page.stableVersion();
+			long pageLevel, nextBlkNum;
+			boolean moveRight;
+			try {
+				pageLevel = getLevelFlag(page);
+				nextBlkNum = getSiblingFlag(page);
+				moveRight = nextBlkNum != -1
+						&& searchKey.compareTo(page.getHighKey()) >= 0;
+				if (!moveRight && pageLevel > level)
+					nextBlkNum = findChildBlockNumber(page, searchKey);
+			} catch (RuntimeException e) {
+				// the values read may be inconsistent
+				if (page.validate(version))
+					throw e;
+				continue;
+			}
+			if (!page.validate(version))
+				continue;
+			if (!moveRight && pageLevel <= level)
+				nextBlkNum = page.currentBlk().number();
+			if (moveRight)
+				follow(new SplitLink(pageLevel + 1, page.currentBlk().number()));
+			if (page != contents)
+				page.close();
+			if (!moveRight && (pageLevel <= level || pageLevel == 0))
+				return nextBlkNum;
+			page = BTreePage.newInstance(dataFileName, new BlockId(
+					ti.fileName(), nextBlkNum), NUM_FLAGS, ti, tx);
 		}
-		// current blk not release slock yet
-		return childBlkNum; // leaf block number
 	}
 
-	private BlockId xLockToLeaf(Constant searchKey, TableInfo leafTi) {
-		// search from root to level 0
-		xLockIndexBlock(contents.currentBlk());
-		ArrayList<BlockId> parentBlks = new ArrayList<BlockId>();
-		parentBlks.add(contents.currentBlk());
-		long childBlkNum = findChildBlockNumber(searchKey);
-		BlockId childBlk;
-		while (getLevelFlag(contents) > 0) {
-			// lock child
-			childBlk = new BlockId(ti.fileName(), childBlkNum);
-			xLockIndexBlock(childBlk);
-			BTreePage child = new BTreePage(dataFileName, childBlk, NUM_FLAGS,
-					ti, tx);
-			// release parent blocks if child is safe
-			if (!child.isGettingFull()) {
-				tx.concurrencyMgr().releaseIndexBlocks(
-						parentBlks.toArray(new BlockId[0]));
-				parentBlks.clear();
+	private void follow(SplitLink link) {
+		if (linksFollowed == null)
+			linksFollowed = new ArrayList<SplitLink>();
+		if (!linksFollowed.contains(link))
+			linksFollowed.add(link);
+	}
+
+	/**
+	 * Inserts the specified entry into the page at the specified level that
+	 * covers the key of the entry, unless the page has it already. The page
+	 * is xlocked and latched before it is modified, and the method moves
+	 * right if the page has been split since the search. If the root splits,
+	 * then a new root is made; otherwise, the entry of the split page is
+	 * returned to be posted to the level above.
+	 */
+	private DirEntry post(DirEntry e, long level) {
+		long blkNum = findBlockNumber(e.key(), level);
+		while (true) {
+			BlockId blk = new BlockId(ti.fileName(), blkNum);
+			tx.concurrencyMgr().xLockIndexBlock(blk);
+			if (!blk.equals(contents.currentBlk())) {
+				contents.close();
+				contents = BTreePage.newInstance(dataFileName, blk,
+						NUM_FLAGS, ti, tx);
 			}
-			contents.close();
-			contents = child;
-			childBlkNum = findChildBlockNumber(searchKey);
-			parentBlks.add(contents.currentBlk());
+			contents.latch();
+			blkNum = getSiblingFlag(contents);
+			if (blkNum == -1 || e.key().compareTo(contents.getHighKey()) < 0)
+				break;
+			contents.unlatch();
 		}
-		BlockId leafBlk = new BlockId(leafTi.fileName(), childBlkNum);
-		xLockIndexBlock(leafBlk);
-		BTreePage leaf = new BTreePage(dataFileName, leafBlk,
-				BTreeLeaf.NUM_FLAGS, leafTi, tx);
-		if (!(leaf.isGettingFull() || searchKey.compareTo(BTreeLeaf.getKey(
-				leaf, 0)) < 0)) {
-			tx.concurrencyMgr().releaseIndexBlocks(
-					parentBlks.toArray(new BlockId[0]));
-			parentBlks.clear();
+		try {
+			if (hasEntry(e))
+				return null;
+			DirEntry newEntry = insertEntry(e);
+			if (newEntry != null && contents.currentBlk().number() == 0) {
+				makeNewRoot(newEntry);
+				return null;
+			}
+			return newEntry;
+		} finally {
+			contents.unlatch();
 		}
-		leaf.close();
-		return leafBlk;
 	}
 
 	/**
 	 * Creates a new root block for the B-tree. The new root will have two
 	 * children: the old root, and the specified block. Since the root must
 	 * always be in block 0 of the file, the contents of block 0 will get
-	 * transferred to a new block (serving as the old root).
+	 * transferred to a new block (serving as the old root), whose right
+	 * sibling is the specified block.
 	 * 
 	 * @param e
 	 *            the directory entry to be added as a child of the new root
 	 */
-	public void makeNewRoot(DirEntry e) {
-		if (contents.currentBlk().number() != 0) {
-			contents.close();
-			contents = new BTreePage(dataFileName,
-					new BlockId(ti.fileName(), 0), NUM_FLAGS, ti, tx);
-		}
+	private void makeNewRoot(DirEntry e) {
 		Constant firstval = getKey(contents, 0);
 		long level = getLevelFlag(contents);
 		// transfer all records to the new block
-		long newBlkNum = contents.split(0, new long[] { level });
+		long newBlkNum = contents.split(0, null, new long[] { level,
+				getSiblingFlag(contents) });
+		setSiblingFlag(contents, -1);
+		contents.setHighKey(Constant.defaultInstance(BTreePage.keyType(ti)));
 		DirEntry oldRootEntry = new DirEntry(firstval, newBlkNum);
 		insertEntry(oldRootEntry);
 		insertEntry(e);
@@ -234,51 +405,41 @@ public class BTreeDir {
 
 	/**
 	 * Inserts a new directory entry into the B-tree directory block. If the
-	 * block is at level 0, then the entry is inserted there. Otherwise, the
-	 * entry is inserted into the appropriate child node, and the return value
-	 * is examined. A non-null return value indicates that the child node
-	 * splits, and so the returned entry is inserted into this block. If this
-	 * block splits, then the method similarly returns the entry of the new
-	 * block to its caller; otherwise, the method returns null.
-	 * 
-	 * @param e
-	 *            the directory entry to be inserted
-	 * @return the directory entry of the newly-split block, if one exists;
-	 *         otherwise, null
+	 * block is full, it splits, the new block becomes its right sibling, and
+	 * the method returns the entry of the new block; otherwise, the method
+	 * returns null.
 	 */
-	public DirEntry insert(DirEntry e) {
-		if (getLevelFlag(contents) == 0)
-			return insertEntry(e);
-		long childBlkNum = findChildBlockNumber(e.key());
-		BTreeDir child = new BTreeDir(dataFileName, new BlockId(ti.fileName(),
-				childBlkNum), ti, tx);
-		/*
-		 * Recursive calls to the child's intert(). All the blocks in the
-		 * calling stack will be pinned simultaneously.
-		 */
-		DirEntry myEntry = child.insert(e);
-		child.close();
-		return (myEntry != null) ? insertEntry(myEntry) : null;
-	}
-
 	private DirEntry insertEntry(DirEntry e) {
-		int newslot = 1 + findSlotBefore(e.key());
+		int newslot = 1 + findSlotBefore(contents, e.key());
 		insert(contents, newslot, e.key(), e.blockNumber());
 		if (!contents.isFull())
 			return null;
 		// split full page
 		int splitPos = contents.getNumRecords() / 2;
 		Constant splitVal = getKey(contents, splitPos);
-		long newBlkNum = contents.split(splitPos,
-				new long[] { getLevelFlag(contents) });
+		long newBlkNum = contents.split(splitPos, splitVal, new long[] {
+				getLevelFlag(contents), getSiblingFlag(contents) });
+		setSiblingFlag(contents, newBlkNum);
 		return new DirEntry(splitVal, newBlkNum);
 	}
 
-	private long findChildBlockNumber(Constant searchKey) {
-		int slot = findSlotBefore(searchKey);
-		if (getKey(contents, slot + 1).equals(searchKey))
+	private boolean hasEntry(DirEntry e) {
+		int slot = 1 + findSlotBefore(contents, e.key());
+		while (slot < contents.getNumRecords()
+				&& getKey(contents, slot).equals(e.key())) {
+			if (getChildBlockNumber(contents, slot) == e.blockNumber())
+				return true;
+			slot++;
+		}
+		return false;
+	}
+
+	private long findChildBlockNumber(BTreePage p, Constant searchKey) {
+		int slot = findSlotBefore(p, searchKey);
+		if (slot + 1 < p.getNumRecords()
+				&& getKey(p, slot + 1).equals(searchKey))
 			slot++;
-		return getChildBlockNumber(contents, slot);
+		return getChildBlockNumber(p, slot);
 	}
 
 	/**
@@ -288,26 +449,27 @@ public class BTreeDir {
 	 *            the search key
 	 * @return the position before where the search key goes
 	 */
-	private int findSlotBefore(Constant searchKey) {
-		int slot = 0;
-		while (slot < contents.getNumRecords()
-				&& getKey(contents, slot).compareTo(searchKey) < 0)
-			slot++;
-		return slot - 1;
-	}
-
-	private void sLockIndexBlock(BlockId blk) {
-		try {
-			tx.concurrencyMgr().sLockIndexBlock(blk);
-		} catch (LockAbortException e) {
-			tx.rollback();
-			throw e;
+	private int findSlotBefore(BTreePage p, Constant searchKey) {
+		// binary search, since the keys of a page are sorted
+		int slot = 0, end = p.getNumRecords();
+		while (slot < end) {
+			int mid = (slot + end) >>> 1;
+			if (getKey(p, mid).compareTo(searchKey) < 0)
+				slot = mid + 1;
+			else
+				end = mid;
 		}
+		return slot - 1;
 	}
 
-	private void xLockIndexBlock(BlockId blk) {
+	private void lockLeaf(BlockId blk, int action) {
 		try {
-			tx.concurrencyMgr().xLockIndexBlock(blk);
+			if (action == OP_SEARCH)
+				tx.concurrencyMgr().sLockIndexBlock(blk);
+			else if (action == OP_INSERT || action == OP_DELETE)
+				tx.concurrencyMgr().xLockIndexBlock(blk);
+			else
+				throw new IllegalArgumentException();
 		} catch (LockAbortException e) {
 			tx.rollback();
 			throw e;
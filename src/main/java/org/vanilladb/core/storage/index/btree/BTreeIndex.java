@@ -1,6 +1,11 @@
 package org.vanilladb.core.storage.index.btree;
 
-import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
+import static org.vanilladb.core.storage.file.Page.INDEX_BLOCK_SIZE;
+import static org.vanilladb.core.storage.metadata.TableInfo.FORMAT_FIXED;
+import static org.vanilladb.core.storage.metadata.TableInfo.FORMAT_SLOTTED;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.Constant;
@@ -9,17 +14,45 @@ import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.buffer.BufferMgr;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
 import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.IndexLoader;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
 import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
 
 
 /**
  * A B-tree implementation of {@link Index}.
+ * <p>
+ * The pages at each level of the tree are linked to their right siblings, and
+ * the directory is searched without locks (see {@link BTreeDir}). Only the
+ * leaves are locked by the transactions, since their modifications are undone
+ * value by value. A split of a leaf is undone with the transaction as well, so
+ * its directory entry is posted only after the transaction commits; until
+ * then, the searches reach the new leaf through its left sibling. The entries
+ * missing for the sibling links followed by the searches of a transaction are
+ * posted when it ends.
+ * </p>
  */
 public class BTreeIndex extends Index {
+	/**
+	 * True if the files of the indexes on varchar fields are laid out in the
+	 * compressed format of {@link CompressedBTreePage}. The format of an index
+	 * is decided when the index is opened, so the setting must not change
+	 * while such indexes exist.
+	 */
+	public static final boolean COMPRESS_KEYS;
+
+	static {
+		String prop = System.getProperty(BTreeIndex.class.getName()
+				+ ".COMPRESS_KEYS");
+		COMPRESS_KEYS = (prop == null ? true : Boolean.parseBoolean(prop
+				.trim()));
+	}
+
 	static final int OP_SEARCH = 0, OP_INSERT = 1, OP_DELETE = 2;
 
 	private Transaction tx;
@@ -29,11 +62,17 @@ public class BTreeIndex extends Index {
 	private String dataFileName;
 	private BufferMgr bufferMgr = VanillaDB.bufferMgr();
 	private Type dataType;
+	// the directory entries of the leaves split by the transaction
+	private List<DirEntry> splits = new ArrayList<DirEntry>();
+	// the sibling links followed by the searches of the transaction
+	private List<BTreeDir.SplitLink> linksFollowed =
+			new ArrayList<BTreeDir.SplitLink>();
+	private boolean isListening;
 
 	public static long searchCost(Type fldType, long totRecs, long matchRecs) {
-		int dirRpb = BLOCK_SIZE
+		int dirRpb = INDEX_BLOCK_SIZE
 				/ new TableInfo("", BTreeDir.schema(fldType)).recordSize();
-		int leafRpb = BLOCK_SIZE
+		int leafRpb = INDEX_BLOCK_SIZE
 				/ new TableInfo("", BTreeLeaf.schema(fldType)).recordSize();
 		long leafs = (int) Math.ceil((double) totRecs / leafRpb);
 		long matchLeafs = (int) Math.ceil((double) matchRecs / leafRpb);
@@ -57,12 +96,37 @@ public class BTreeIndex extends Index {
 	 */
 	public BTreeIndex(String dataFileName, String idxName, Type fldType,
 			Transaction tx) {
+		this(dataFileName, idxName, fldType, null, tx);
+	}
+
+	/**
+	 * Opens a B-tree index whose leaf records include the values of some
+	 * fields. The keys are compressed only if the index is on a single
+	 * varchar field and includes no field.
+	 * 
+	 * @param dataFileName
+	 *            the name of data file
+	 * @param idxName
+	 *            the name of the index
+	 * @param fldType
+	 *            the type of the keys
+	 * @param inclType
+	 *            the type of the values of the included fields, or null if
+	 *            the index includes no field
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public BTreeIndex(String dataFileName, String idxName, Type fldType,
+			Type inclType, Transaction tx) {
 		this.dataFileName = dataFileName;
 		this.tx = tx;
 		this.dataType = fldType;
+		int format = COMPRESS_KEYS && !fldType.isFixedSize()
+				&& inclType == null ? FORMAT_SLOTTED : FORMAT_FIXED;
 		// deal with the leaves
 		String leafTbl = idxName + "leaf";
-		this.leafTi = new TableInfo(leafTbl, BTreeLeaf.schema(fldType));
+		this.leafTi = new TableInfo(leafTbl, BTreeLeaf.schema(fldType,
+				inclType), format, leafTbl + FileMgr.INDEX_FILE_EXTENSION);
 
 		try {
 			tx.concurrencyMgr().sLock(leafTi.fileName());
@@ -86,7 +150,8 @@ public class BTreeIndex extends Index {
 
 		// deal with the directory
 		String dirTbl = idxName + "dir";
-		this.dirTi = new TableInfo(dirTbl, BTreeDir.schema(fldType));
+		this.dirTi = new TableInfo(dirTbl, BTreeDir.schema(fldType), format,
+				dirTbl + FileMgr.INDEX_FILE_EXTENSION);
 		this.rootBlk = new BlockId(dirTi.fileName(), 0);
 
 		try {
@@ -104,14 +169,21 @@ public class BTreeIndex extends Index {
 			}
 			// create new root block
 			Buffer buff = bufferMgr.pinNew(dirTi.fileName(),
-					new BTPageFormatter(dirTi, new long[] { 0 }),
+					new BTPageFormatter(dirTi, new long[] { 0, -1 }),
 					tx.getTransactionNumber());
 			bufferMgr.unpin(tx.getTransactionNumber(), buff);
 		}
 
-		BTreePage rootpage = new BTreePage(dataFileName, rootBlk,
+		BTreePage rootpage = BTreePage.newInstance(dataFileName, rootBlk,
 				BTreeDir.NUM_FLAGS, dirTi, tx);
 		if (rootpage.getNumRecords() == 0) {
+			// no search reads the root until the entry is committed
+			try {
+				tx.concurrencyMgr().xLock(dirTi.fileName());
+			} catch (LockAbortException e) {
+				tx.rollback();
+				throw e;
+			}
 			// insert initial directory entry
 			Constant minval = dataType.minValue();
 			BTreeDir.insert(rootpage, 0, minval, 0);
@@ -124,14 +196,22 @@ public class BTreeIndex extends Index {
 	 * bound of the specified key range. The method then position the page
 	 * before the first record (if any) matching the that lower bound. The leaf
 	 * page is kept open, for use by the methods {@link #next} and
-	 * {@link #getDataRecordId}.
+	 * {@link #getDataRecordId}. If the range begins in the leaf page kept
+	 * open by the previous search, the page is reused without traversing the
+	 * directory, so the searches for ascending keys read each leaf once.
 	 * 
 	 * @see Index#beforeFirst
 	 */
 	@Override
 	public void beforeFirst(ConstantRange searchRange) {
-		if (!searchRange.isValid())
+		if (!searchRange.isValid()) {
+			close();
 			return;
+		}
+		// no directory search if the range begins in the current leaf
+		if (leaf != null && leaf.moveToRange(searchRange))
+			return;
+		close();
 
 		traverseIndexWithCrabbing(searchRange, OP_SEARCH);
 	}
@@ -159,28 +239,56 @@ public class BTreeIndex extends Index {
 		return leaf.getDataRecordId();
 	}
 
+	/**
+	 * Returns the key of the current index record in B-tree leaves.
+	 * 
+	 * @see Index#getKey()
+	 */
+	@Override
+	public Constant getKey() {
+		return leaf.getKey();
+	}
+
+	/**
+	 * Returns the values of the included fields of the current index record
+	 * in B-tree leaves.
+	 * 
+	 * @see Index#getIncludedValues()
+	 */
+	@Override
+	public Constant getIncludedValues() {
+		return leaf.getIncludedValues();
+	}
+
 	/**
 	 * Inserts the specified record into the index. The method first traverses
 	 * the directory to find the appropriate leaf page; then it inserts the
 	 * record into the leaf. If the insertion causes the leaf to split, then the
-	 * method calls insert on the root, passing it the directory entry of the
-	 * new leaf page. If the root node splits, then {@link BTreeDir#makeNewRoot}
-	 * is called.
+	 * directory entry of the new leaf page is posted to the directory by
+	 * {@link BTreeDir#post} when the transaction commits.
 	 * 
 	 * @see Index#insert(Constant, RecordId)
 	 */
 	@Override
 	public void insert(Constant key, RecordId dataRecordId) {
+		insert(key, dataRecordId, null);
+	}
+
+	/**
+	 * Inserts the specified record, including the specified values, into the
+	 * index.
+	 * 
+	 * @see Index#insert(Constant, RecordId, Constant)
+	 */
+	@Override
+	public void insert(Constant key, RecordId dataRecordId, Constant inclVals) {
 		traverseIndexWithCrabbing(ConstantRange.newInstance(key), OP_INSERT);
-		DirEntry e = leaf.insert(dataRecordId);
+		DirEntry e = leaf.insert(dataRecordId, inclVals);
 		close();
-		if (e == null)
-			return;
-		BTreeDir root = new BTreeDir(dataFileName, rootBlk, dirTi, tx);
-		DirEntry e2 = root.insert(e);
-		if (e2 != null)
-			root.makeNewRoot(e2);
-		root.close();
+		if (e != null) {
+			splits.add(e);
+			listenToTxEnd();
+		}
 	}
 
 	/**
@@ -197,6 +305,18 @@ public class BTreeIndex extends Index {
 		close();
 	}
 
+	/**
+	 * Returns a loader which builds the index bottom-up if it is empty, and
+	 * inserts the records one by one otherwise.
+	 * 
+	 * @see Index#loader()
+	 */
+	@Override
+	public IndexLoader loader() {
+		close();
+		return new BTreeLoader(this, dataFileName, leafTi, dirTi, tx);
+	}
+
 	/**
 	 * Closes the index by closing its open leaf page, if necessary.
 	 * 
@@ -210,6 +330,41 @@ public class BTreeIndex extends Index {
 		}
 	}
 
+	/**
+	 * Posts the entries of the leaves split by the transaction after it
+	 * commits, and completes the splits whose sibling links have been
+	 * followed after it ends.
+	 */
+	private void listenToTxEnd() {
+		if (isListening)
+			return;
+		isListening = true;
+		tx.addLifecycleListener(new TransactionLifecycleListener() {
+			@Override
+			public void onTxCommit(Transaction tx) {
+				for (DirEntry split : splits)
+					BTreeDir.post(dataFileName, dirTi, split);
+				completeSplits();
+			}
+
+			@Override
+			public void onTxRollback(Transaction tx) {
+				// the splits have been undone
+				completeSplits();
+			}
+
+			@Override
+			public void onTxEndStatement(Transaction tx) {
+				// do nothing
+			}
+		});
+	}
+
+	private void completeSplits() {
+		for (BTreeDir.SplitLink link : linksFollowed)
+			BTreeDir.completeSplit(dataFileName, dirTi, leafTi, link);
+	}
+
 	private void traverseIndexWithCrabbing(ConstantRange searchRange, int action) {
 		BlockId leafblk;
 		/*
@@ -217,11 +372,16 @@ public class BTreeIndex extends Index {
 		 * search range.
 		 */
 		if (!searchRange.hasLowerBound())
-			leafblk = new BlockId(dataFileName, 0);
+			leafblk = new BlockId(leafTi.fileName(), 0);
 		else {
 			BTreeDir root = new BTreeDir(dataFileName, rootBlk, dirTi, tx);
 			leafblk = root.search(searchRange.low(), action, leafTi);
 			root.close();
+			for (BTreeDir.SplitLink link : root.linksFollowed()) {
+				if (!linksFollowed.contains(link))
+					linksFollowed.add(link);
+				listenToTxEnd();
+			}
 		}
 		leaf = new BTreeLeaf(dataFileName, leafblk, leafTi, searchRange, tx);
 	}
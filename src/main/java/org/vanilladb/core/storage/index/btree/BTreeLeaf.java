@@ -4,6 +4,7 @@ import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.INTEGER;
 
 import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.CompositeType;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.ConstantRange;
 import org.vanilladb.core.sql.IntegerConstant;
@@ -24,7 +25,14 @@ import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
  * overflow page, this flag is set to -1. If the page is the last overflow
  * block, then this flag points circularly to the regular block. The second flag
  * is a pointer to the next sibling (regular) block. The value of this flag is
- * undefined if the block is an overflow page.
+ * undefined if the block is an overflow page. A split sets the high key of
+ * the block to a key separating it from the new sibling (see
+ * {@link BTreePage#separator(int)}).
+ * </p>
+ * <p>
+ * The records of the leaves of an index including some fields hold the
+ * values of those fields as well, in a field of a {@link CompositeType
+ * composite} type after the data record ID.
  * </p>
  * <p>
  * Note that currently there will be some "dead blocks" in the file that are
@@ -39,7 +47,7 @@ public class BTreeLeaf {
 	 * A field name of the schema of B-tree leaf records.
 	 */
 	static final String SCH_KEY = "key", SCH_RID_BLOCK = "block",
-			SCH_RID_ID = "id";
+			SCH_RID_ID = "id", SCH_INCL = "incl";
 
 	static int NUM_FLAGS = 2;
 
@@ -52,10 +60,28 @@ public class BTreeLeaf {
 	 * @return the schema of the index records
 	 */
 	static Schema schema(Type fldType) {
+		return schema(fldType, null);
+	}
+
+	/**
+	 * Returns the schema of the B-tree leaf records of an index including
+	 * some fields.
+	 * 
+	 * @param fldType
+	 *            the type of the indexed field
+	 * @param inclType
+	 *            the type of the values of the included fields, or null if
+	 *            the index includes no field
+	 * 
+	 * @return the schema of the index records
+	 */
+	static Schema schema(Type fldType, Type inclType) {
 		Schema sch = new Schema();
 		sch.addField(SCH_KEY, fldType);
 		sch.addField(SCH_RID_BLOCK, BIGINT);
 		sch.addField(SCH_RID_ID, INTEGER);
+		if (inclType != null)
+			sch.addField(SCH_INCL, inclType);
 		return sch;
 	}
 
@@ -85,11 +111,19 @@ public class BTreeLeaf {
 		return new RecordId(new BlockId(dataFileName, blkNum), id);
 	}
 
-	static void insert(BTreePage p, int slot, Constant val, RecordId rid) {
+	static Constant getIncludedValues(BTreePage p, int slot) {
+		return p.getVal(slot, SCH_INCL);
+	}
+
+	static void insert(BTreePage p, int slot, Constant val, RecordId rid,
+			Constant inclVals) {
 		p.insert(slot);
 		p.setVal(slot, SCH_KEY, val);
 		p.setVal(slot, SCH_RID_BLOCK, new BigIntConstant(rid.block().number()));
 		p.setVal(slot, SCH_RID_ID, new IntegerConstant(rid.id()));
+		if (p.ti.schema().hasField(SCH_INCL))
+			p.setVal(slot, SCH_INCL, inclVals != null ? inclVals : Constant
+					.defaultInstance(p.ti.schema().type(SCH_INCL)));
 	}
 
 	private TableInfo ti;
@@ -127,7 +161,8 @@ public class BTreeLeaf {
 		this.ti = ti;
 		this.searchRange = searchRange;
 		this.tx = tx;
-		this.currentPage = new BTreePage(dataFileName, blk, NUM_FLAGS, ti, tx);
+		this.currentPage = BTreePage.newInstance(dataFileName, blk,
+				NUM_FLAGS, ti, tx);
 		moveSlotBefore();
 	}
 
@@ -180,6 +215,30 @@ public class BTreeLeaf {
 		}
 	}
 
+	/**
+	 * Positions the leaf before the first record matching the specified
+	 * search range if the range begins in the current regular block, which
+	 * holds every key from that of its first record up to its high key. The
+	 * leaf is not moved if the range may begin in another block.
+	 * 
+	 * @param searchRange
+	 *            the range of search keys
+	 * @return true if the leaf is positioned for the search range
+	 */
+	public boolean moveToRange(ConstantRange searchRange) {
+		if (overflowing || !searchRange.hasLowerBound()
+				|| currentPage.getNumRecords() == 0)
+			return false;
+		Constant low = searchRange.low();
+		if (low.compareTo(getKey(currentPage, 0)) < 0
+				|| (getSiblingFlag(currentPage) != -1 && low
+						.compareTo(currentPage.getHighKey()) >= 0))
+			return false;
+		this.searchRange = searchRange;
+		moveSlotBefore();
+		return true;
+	}
+
 	/**
 	 * Returns the data record ID of the current B-tree leaf record.
 	 * 
@@ -190,22 +249,44 @@ public class BTreeLeaf {
 	}
 
 	/**
-	 * Inserts a new B-tree leaf record having the specified data record ID and
-	 * the previously-specified search key. This method can only be called once,
-	 * immediately after construction.
+	 * Returns the key of the current B-tree leaf record.
+	 * 
+	 * @return the key of the current record
+	 */
+	public Constant getKey() {
+		return getKey(currentPage, currentSlot);
+	}
+
+	/**
+	 * Returns the values of the included fields of the current B-tree leaf
+	 * record.
+	 * 
+	 * @return the values of the included fields of the current record
+	 */
+	public Constant getIncludedValues() {
+		return getIncludedValues(currentPage, currentSlot);
+	}
+
+	/**
+	 * Inserts a new B-tree leaf record having the specified data record ID,
+	 * values of the included fields and the previously-specified search key.
+	 * This method can only be called once, immediately after construction.
 	 * 
 	 * @param dataRecordId
 	 *            the data record ID of the new record
+	 * @param inclVals
+	 *            the values of the included fields, or null if the index
+	 *            includes no field
 	 * @return the directory entry of the newly-split page or null of there is
 	 *         no split
 	 */
-	public DirEntry insert(RecordId dataRecordId) {
+	public DirEntry insert(RecordId dataRecordId, Constant inclVals) {
 		// search range must be a constant
 		if (!searchRange.isConstant())
 			throw new IllegalStateException();
 		currentSlot++;
 		Constant searchKey = searchRange.asConstant();
-		insert(currentPage, currentSlot, searchKey, dataRecordId);
+		insert(currentPage, currentSlot, searchKey, dataRecordId, inclVals);
 		/*
 		 * If the inserted key is less than the key stored in overflow block,
 		 * split this block to make sure that the key of the first record in
@@ -214,10 +295,9 @@ public class BTreeLeaf {
 		 */
 		if (currentSlot == 0 && getOverflowFlag(currentPage) != -1
 				&& !getKey(currentPage, 1).equals(searchKey)) {
-			Constant splitKey = getKey(currentPage, 1);
-			long newBlkNum = currentPage
-					.split(1, new long[] { getOverflowFlag(currentPage),
-							getSiblingFlag(currentPage) });
+			Constant splitKey = currentPage.separator(1);
+			long newBlkNum = currentPage.split(1, splitKey, new long[] {
+					getOverflowFlag(currentPage), getSiblingFlag(currentPage) });
 			setOverflowFlag(currentPage, -1);
 			setSiblingFlag(currentPage, newBlkNum);
 			return new DirEntry(splitKey, newBlkNum);
@@ -238,8 +318,8 @@ public class BTreeLeaf {
 			 */
 			long overflowFlag = (getOverflowFlag(currentPage) == -1) ? currentPage
 					.currentBlk().number() : getOverflowFlag(currentPage);
-			long newBlkNum = currentPage.split(1,
-					new long[] { overflowFlag, -1 });
+			long newBlkNum = currentPage.split(1, null, new long[] {
+					overflowFlag, -1 });
 			setOverflowFlag(currentPage, newBlkNum);
 			return null;
 		} else {
@@ -255,8 +335,9 @@ public class BTreeLeaf {
 				while (getKey(currentPage, splitPos - 1).equals(splitKey))
 					splitPos--;
 			}
-			long newBlkNum = currentPage.split(splitPos, new long[] { -1,
-					getSiblingFlag(currentPage) });
+			splitKey = currentPage.separator(splitPos);
+			long newBlkNum = currentPage.split(splitPos, splitKey, new long[] {
+					-1, getSiblingFlag(currentPage) });
 			setSiblingFlag(currentPage, newBlkNum);
 			return new DirEntry(splitKey, newBlkNum);
 		}
@@ -290,8 +371,8 @@ public class BTreeLeaf {
 				Constant firstKey = getKey(currentPage, 0);
 				BlockId blk = new BlockId(ti.fileName(),
 						getOverflowFlag(currentPage));
-				BTreePage overflowPage = new BTreePage(dataFileName, blk,
-						NUM_FLAGS, ti, tx);
+				BTreePage overflowPage = BTreePage.newInstance(dataFileName,
+						blk, NUM_FLAGS, ti, tx);
 				if ((currentPage.getNumRecords() == 0 || (overflowPage
 						.getNumRecords() != 0 && getKey(overflowPage, 0) != firstKey))) {
 					overflowPage
@@ -313,8 +394,8 @@ public class BTreeLeaf {
 			 */
 			if (currentPage.getNumRecords() == 0) {
 				BlockId blk = new BlockId(ti.fileName(), moveFrom);
-				BTreePage prePage = new BTreePage(dataFileName, blk, NUM_FLAGS,
-						ti, tx);
+				BTreePage prePage = BTreePage.newInstance(dataFileName, blk,
+						NUM_FLAGS, ti, tx);
 				long overflowFlag = (getOverflowFlag(currentPage) == prePage
 						.currentBlk().number()) ? -1
 						: getOverflowFlag(currentPage);
@@ -326,14 +407,25 @@ public class BTreeLeaf {
 	}
 
 	/**
-	 * Positions the current slot right before the first index record matching
-	 * the specified search range.
+	 * Positions the current slot right before the first index record that is
+	 * not below the specified search range. If the range has no record in this
+	 * block, that is also where a record having the search key goes.
 	 */
 	private void moveSlotBefore() {
 		int slot = 0;
-		while (slot < currentPage.getNumRecords()
-				&& !searchRange.contains(getKey(currentPage, slot))) {
-			slot++;
+		if (searchRange.hasLowerBound()) {
+			Constant low = searchRange.low();
+			boolean lowIncl = searchRange.isLowInclusive();
+			// binary search, since the keys of a page are sorted
+			int end = currentPage.getNumRecords();
+			while (slot < end) {
+				int mid = (slot + end) >>> 1;
+				int cmp = getKey(currentPage, mid).compareTo(low);
+				if (cmp > 0 || (cmp == 0 && lowIncl))
+					end = mid;
+				else
+					slot = mid + 1;
+			}
 		}
 		currentSlot = slot - 1;
 	}
@@ -347,7 +439,8 @@ public class BTreeLeaf {
 		BlockId blk = new BlockId(ti.fileName(), blkNum);
 		sLockIndexBlock(blk);
 		currentPage.close();
-		currentPage = new BTreePage(dataFileName, blk, NUM_FLAGS, ti, tx);
+		currentPage = BTreePage.newInstance(dataFileName, blk, NUM_FLAGS, ti,
+				tx);
 		currentSlot = slot;
 	}
 
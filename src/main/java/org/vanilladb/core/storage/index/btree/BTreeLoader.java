@@ -0,0 +1,404 @@
+package org.vanilladb.core.storage.index.btree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.index.IndexLoader;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+
+/**
+ * Builds an empty B-tree index bottom-up from index records given in the
+ * order of their keys. The leaves are packed one after another up to
+ * <code>FILL_FACTOR</code> of their capacity, and the directory entries of the
+ * finished pages are packed into the pages of the level above in the same
+ * way, so the tree is built in one pass without searching it.
+ *
+ * <p>
+ * The new pages are appended to the index files by writing them directly,
+ * without logging their values, while the loading transaction xlocks both
+ * files. Only the root and the first leaf, which the empty index already has,
+ * are changed through the log; the first leaf is left empty, and linked to
+ * the first new leaf. So a rolled back load leaves an empty index, and the
+ * new pages are unreachable.
+ * </p>
+ *
+ * <p>
+ * As with the insertions, the records of a key never span two sibling
+ * leaves: the records of a key filling a leaf go to overflow blocks of the
+ * leaf. If the index is not empty, the records are inserted one by one.
+ * Every page is linked to its right sibling at the same level, and its high
+ * key is the first key of the sibling.
+ * </p>
+ *
+ * <p>
+ * The pages in the compressed format of {@link CompressedBTreePage} are
+ * filled by the space of their records instead of their number, and a leaf is
+ * followed by the shortest separator of its last key and the first key of its
+ * sibling, which becomes the high key of the leaf and the key of the sibling
+ * in the directory.
+ * </p>
+ */
+class BTreeLoader implements IndexLoader {
+	private static final double FILL_FACTOR;
+
+	static {
+		String prop = System.getProperty(BTreeLoader.class.getName()
+				+ ".FILL_FACTOR");
+		double fillFactor = (prop == null ? 0.9 : Double.parseDouble(prop
+				.trim()));
+		FILL_FACTOR = Math.min(Math.max(fillFactor, 0.0), 1.0);
+	}
+
+	private static final String[] DIR_FIELDS = { BTreeDir.SCH_KEY,
+			BTreeDir.SCH_CHILD };
+
+	/**
+	 * The entries of the unfinished page of a directory level.
+	 */
+	private class DirLevel {
+		int level;
+		List<Constant> keys = new ArrayList<Constant>();
+		List<Long> children = new ArrayList<Long>();
+		int numPages;
+		// the space of the entries, or their number in the fixed format
+		int used;
+		// the number of the unfinished page, or -1 before the first page
+		// is written
+		long blkNum = -1;
+
+		DirLevel(int level) {
+			this.level = level;
+		}
+
+		void add(Constant key, long childBlkNum) {
+			int space = space(dirTi, key);
+			if (keys.size() >= 2 && used + space > dirFill) {
+				if (blkNum < 0)
+					blkNum = nextDirBlkNum++;
+				long siblingBlkNum = nextDirBlkNum++;
+				writeDirPage(siblingBlkNum, key);
+				numPages++;
+				dirLevel(level + 1).add(keys.get(0), blkNum);
+				keys.clear();
+				children.clear();
+				used = 0;
+				blkNum = siblingBlkNum;
+			}
+			keys.add(key);
+			children.add(childBlkNum);
+			used += space;
+		}
+
+		void writeDirPage(long siblingBlkNum, Constant highKey) {
+			Constant[][] recs = new Constant[keys.size()][];
+			for (int i = 0; i < recs.length; i++)
+				recs[i] = new Constant[] { keys.get(i),
+						new BigIntConstant(children.get(i)) };
+			writePage(dirTi, BTreeDir.NUM_FLAGS, new long[] { level,
+					siblingBlkNum }, keys.get(0), highKey, DIR_FIELDS, recs,
+					blkNum);
+		}
+	}
+
+	private BTreeIndex idx;
+	private String dataFileName;
+	private TableInfo leafTi, dirTi;
+	private Transaction tx;
+	// false if the index is not empty, and the records are inserted instead
+	private boolean building;
+	// true if the pages are in the compressed format
+	private boolean compressed;
+	private Page page;
+	private String[] leafFields;
+	private int leafFill, leafCapacity, dirFill;
+	private long nextLeafBlkNum, nextDirBlkNum;
+
+	// the number of the current leaf, or -1 before the first record
+	private long leafBlkNum = -1;
+	private long firstLeafBlkNum;
+	// the key of the current leaf in the directory, and the space of its
+	// records, or their number in the fixed format
+	private Constant leafLowKey;
+	private int leafUsed;
+	private List<Constant> keys = new ArrayList<Constant>();
+	private List<RecordId> rids = new ArrayList<RecordId>();
+	// the values of the included fields, if the index includes fields
+	private List<Constant> incls = new ArrayList<Constant>();
+	private long overflowFlag = -1;
+	private List<DirLevel> dirLevels = new ArrayList<DirLevel>();
+
+	/**
+	 * Starts loading the specified B-tree index. Both files of the index are
+	 * xlocked.
+	 */
+	BTreeLoader(BTreeIndex idx, String dataFileName, TableInfo leafTi,
+			TableInfo dirTi, Transaction tx) {
+		this.idx = idx;
+		this.dataFileName = dataFileName;
+		this.leafTi = leafTi;
+		this.dirTi = dirTi;
+		this.tx = tx;
+		try {
+			tx.concurrencyMgr().xLock(leafTi.fileName());
+			tx.concurrencyMgr().xLock(dirTi.fileName());
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+		/*
+		 * The index is empty if its root points only to the first leaf, which
+		 * has no records and no sibling. The files may still have more blocks,
+		 * left unreachable by a rolled back load, and the new pages simply
+		 * follow them.
+		 */
+		BTreePage root = BTreePage.newInstance(dataFileName, new BlockId(
+				dirTi.fileName(), 0), BTreeDir.NUM_FLAGS, dirTi, tx);
+		building = BTreeDir.getLevelFlag(root) == 0
+				&& root.getNumRecords() == 1
+				&& BTreeDir.getChildBlockNumber(root, 0) == 0;
+		root.close();
+		if (building) {
+			BTreePage firstLeaf = BTreePage.newInstance(dataFileName,
+					new BlockId(leafTi.fileName(), 0), BTreeLeaf.NUM_FLAGS,
+					leafTi, tx);
+			building = firstLeaf.getNumRecords() == 0
+					&& BTreeLeaf.getSiblingFlag(firstLeaf) == -1
+					&& BTreeLeaf.getOverflowFlag(firstLeaf) == -1;
+			firstLeaf.close();
+		}
+		if (!building)
+			return;
+		nextLeafBlkNum = VanillaDB.fileMgr().size(leafTi.fileName());
+		nextDirBlkNum = VanillaDB.fileMgr().size(dirTi.fileName());
+
+		compressed = leafTi.format() == TableInfo.FORMAT_SLOTTED;
+		if (leafTi.schema().hasField(BTreeLeaf.SCH_INCL))
+			leafFields = new String[] { BTreeLeaf.SCH_KEY,
+					BTreeLeaf.SCH_RID_BLOCK, BTreeLeaf.SCH_RID_ID,
+					BTreeLeaf.SCH_INCL };
+		else
+			leafFields = new String[] { BTreeLeaf.SCH_KEY,
+					BTreeLeaf.SCH_RID_BLOCK, BTreeLeaf.SCH_RID_ID };
+		page = new Page(Page.blockSize(leafTi.fileName()));
+		leafCapacity = capacity(leafTi, BTreeLeaf.NUM_FLAGS);
+		leafFill = Math.max(1, (int) (leafCapacity * FILL_FACTOR));
+		int dirCapacity = capacity(dirTi, BTreeDir.NUM_FLAGS);
+		dirFill = Math.max(2, (int) (dirCapacity * FILL_FACTOR));
+		// the first leaf covers the keys less than its first one as well
+		leafLowKey = BTreePage.keyType(leafTi).minValue();
+	}
+
+	@Override
+	public void insert(Constant key, RecordId dataRecordId) {
+		insert(key, dataRecordId, null);
+	}
+
+	@Override
+	public void insert(Constant key, RecordId dataRecordId, Constant inclVals) {
+		if (!building) {
+			idx.insert(key, dataRecordId, inclVals);
+			return;
+		}
+		int n = keys.size();
+		int space = space(leafTi, key);
+		boolean sameKey = n > 0 && keys.get(n - 1).equals(key);
+		if (leafBlkNum < 0) {
+			leafBlkNum = nextLeafBlkNum++;
+			firstLeafBlkNum = leafBlkNum;
+		} else if (overflowFlag != -1 && !sameKey) {
+			// the leaf holds only the key of its overflow blocks
+			nextLeaf(n, key);
+		} else if (leafUsed + space <= leafFill
+				|| (sameKey && leafUsed + space <= leafCapacity)) {
+			// the leaf has room
+		} else if (!sameKey)
+			nextLeaf(n, key);
+		else {
+			int start = n - 1;
+			while (start > 0 && keys.get(start - 1).equals(key))
+				start--;
+			if (start > 0)
+				// moves the records of the key to the next leaf
+				nextLeaf(start, key);
+			else
+				overflow();
+		}
+		keys.add(key);
+		rids.add(dataRecordId);
+		incls.add(inclVals);
+		leafUsed += space;
+	}
+
+	/**
+	 * Writes the remaining pages, and makes the root and the first leaf
+	 * point to them.
+	 */
+	@Override
+	public void close() {
+		if (!building || leafBlkNum < 0) {
+			idx.close();
+			return;
+		}
+		finishLeaf(keys.size(), -1, null);
+		for (int i = 0;; i++) {
+			DirLevel l = dirLevel(i);
+			if (l.numPages == 0) {
+				writeRoot(l);
+				break;
+			}
+			l.writeDirPage(-1, null);
+			dirLevel(i + 1).add(l.keys.get(0), l.blkNum);
+		}
+		// the first leaf covers no key
+		BTreePage firstLeaf = BTreePage.newInstance(dataFileName, new BlockId(
+				leafTi.fileName(), 0), BTreeLeaf.NUM_FLAGS, leafTi, tx);
+		BTreeLeaf.setSiblingFlag(firstLeaf, firstLeafBlkNum);
+		firstLeaf.setHighKey(BTreePage.keyType(leafTi).minValue());
+		firstLeaf.close();
+		building = false;
+		idx.close();
+	}
+
+	/**
+	 * Finishes the current leaf with the specified number of its first
+	 * records, and moves the rest to a new leaf, which is followed by the
+	 * specified key.
+	 */
+	private void nextLeaf(int numRecs, Constant key) {
+		long blkNum = nextLeafBlkNum++;
+		Constant highKey = numRecs < keys.size() ? keys.get(numRecs) : key;
+		if (compressed)
+			highKey = CompressedBTreePage.shortestSeparator(keys
+					.get(numRecs - 1), highKey);
+		finishLeaf(numRecs, blkNum, highKey);
+		leafBlkNum = blkNum;
+	}
+
+	private void finishLeaf(int numRecs, long siblingBlkNum,
+			Constant highKey) {
+		writeLeafPage(numRecs, new long[] { overflowFlag, siblingBlkNum },
+				highKey, leafBlkNum);
+		dirLevel(0).add(leafLowKey, leafBlkNum);
+		leafLowKey = highKey;
+		keys.subList(0, numRecs).clear();
+		rids.subList(0, numRecs).clear();
+		incls.subList(0, numRecs).clear();
+		leafUsed = 0;
+		for (Constant key : keys)
+			leafUsed += space(leafTi, key);
+		overflowFlag = -1;
+	}
+
+	/**
+	 * Moves the records of the full leaf, all of the same key, to a new
+	 * overflow block. The overflow blocks of a leaf are linked into a ring
+	 * through the leaf, newest first, as {@link BTreeLeaf} links them.
+	 */
+	private void overflow() {
+		long blkNum = nextLeafBlkNum++;
+		writeLeafPage(keys.size(), new long[] {
+				overflowFlag == -1 ? leafBlkNum : overflowFlag, -1 }, null,
+				blkNum);
+		overflowFlag = blkNum;
+		keys.clear();
+		rids.clear();
+		incls.clear();
+		leafUsed = 0;
+	}
+
+	private void writeLeafPage(int numRecs, long[] flags, Constant highKey,
+			long blkNum) {
+		Constant[][] recs = new Constant[numRecs][];
+		for (int i = 0; i < numRecs; i++) {
+			RecordId rid = rids.get(i);
+			recs[i] = new Constant[leafFields.length];
+			recs[i][0] = keys.get(i);
+			recs[i][1] = new BigIntConstant(rid.block().number());
+			recs[i][2] = new IntegerConstant(rid.id());
+			if (leafFields.length > 3)
+				recs[i][3] = incls.get(i) != null ? incls.get(i) : Constant
+						.defaultInstance(leafTi.schema().type(
+								BTreeLeaf.SCH_INCL));
+		}
+		writePage(leafTi, BTreeLeaf.NUM_FLAGS, flags, leafLowKey, highKey,
+				leafFields, recs, blkNum);
+	}
+
+	/**
+	 * Writes a page of the specified records. The high key is null if the
+	 * page has no right sibling. The low key is kept only in the compressed
+	 * format.
+	 */
+	private void writePage(TableInfo ti, int numFlags, long[] flags,
+			Constant lowKey, Constant highKey, String[] fields,
+			Constant[][] recs, long blkNum) {
+		new BTPageFormatter(ti, flags).format(page);
+		if (compressed) {
+			CompressedBTreePage.layout(page, ti, numFlags, lowKey, highKey,
+					fields, recs);
+			page.write(new BlockId(ti.fileName(), blkNum));
+			return;
+		}
+		page.setVal(0, new IntegerConstant(recs.length));
+		if (highKey != null)
+			page.setVal(BTreePage.highKeyPosition(numFlags), highKey
+					.castTo(BTreePage.keyType(ti)));
+		Schema sch = ti.schema();
+		for (int i = 0; i < recs.length; i++) {
+			int pos = BTreePage.slotPosition(ti, numFlags, i);
+			for (int j = 0; j < fields.length; j++)
+				page.setVal(pos + ti.offset(fields[j]), recs[i][j]
+						.castTo(sch.type(fields[j])));
+		}
+		page.write(new BlockId(ti.fileName(), blkNum));
+	}
+
+	/**
+	 * Replaces the entry of the root of the empty index with the entries of
+	 * the specified level, through the log.
+	 */
+	private void writeRoot(DirLevel l) {
+		BTreePage root = BTreePage.newInstance(dataFileName, new BlockId(
+				dirTi.fileName(), 0), BTreeDir.NUM_FLAGS, dirTi, tx);
+		while (root.getNumRecords() > 0)
+			root.delete(0);
+		for (int i = 0; i < l.keys.size(); i++)
+			BTreeDir.insert(root, i, l.keys.get(i), l.children.get(i));
+		BTreeDir.setLevelFlag(root, l.level);
+		root.close();
+	}
+
+	/**
+	 * Returns the space that a record of the specified key takes in a page of
+	 * the specified file, which is 1 in the fixed format.
+	 */
+	private int space(TableInfo ti, Constant key) {
+		return compressed ? CompressedBTreePage.recordSpace(ti, key) : 1;
+	}
+
+	/**
+	 * Returns the space of the records that a page of the specified file
+	 * holds, or their number in the fixed format.
+	 */
+	private int capacity(TableInfo ti, int numFlags) {
+		int blockSize = Page.blockSize(ti.fileName());
+		return compressed ? CompressedBTreePage.capacity(ti, numFlags,
+				blockSize) : BTreePage.maxNumRecords(ti, numFlags, blockSize);
+	}
+
+	private DirLevel dirLevel(int level) {
+		if (level == dirLevels.size())
+			dirLevels.add(new DirLevel(level));
+		return dirLevels.get(level);
+	}
+}
@@ -2,10 +2,14 @@ package org.vanilladb.core.storage.index.btree;
 
 import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.INTEGER;
-import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.CompositeConstant;
+import org.vanilladb.core.sql.CompositeType;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
@@ -24,21 +28,58 @@ import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
  * or {@link BTreeLeaf}.
  * <p>
  * The content of each B-tree block begins with an integer storing the number of
- * index records in that page, then a series of integer flags, followed by a
- * series of slots holding index records. Index records are sorted in ascending
- * order.
+ * index records in that page, then a series of integer flags and the high key
+ * of the page, followed by a series of slots holding index records. Index
+ * records are sorted in ascending order.
+ * </p>
+ * <p>
+ * The high key is the least key that the page does not cover, and is defined
+ * only if the page has a right sibling. A search moves to the right sibling
+ * of a page if the search key is not less than the high key, as in a B-link
+ * tree, so a page split off lately is found before its parent has the entry
+ * of it.
+ * </p>
+ * <p>
+ * The files of an index may be laid out in the compressed format of
+ * {@link CompressedBTreePage} instead, which is told by the record format of
+ * their metadata. The pages are opened by {@link #newInstance} in the format
+ * of their files.
  * </p>
  */
 public class BTreePage {
-	private TableInfo ti;
-	private BlockId blk;
-	private Buffer buff;
-	private int numFlags;
-	private Transaction tx;
-	private int slotSize;
-	private String dataFileName;
+	TableInfo ti;
+	BlockId blk;
+	Buffer buff;
+	int numFlags;
+	Transaction tx;
+	int blockSize;
+	String dataFileName;
 	private BufferMgr bufferMgr = VanillaDB.bufferMgr();
 
+	/**
+	 * Opens a page for the specified B-tree block in the format of the
+	 * B-tree file.
+	 * 
+	 * @param dataFileName
+	 *            the data file name
+	 * @param blk
+	 *            a block ID refers to the B-tree block
+	 * @param numFlags
+	 *            the number of flags in this b-tree page
+	 * @param ti
+	 *            the metadata for the particular B-tree file
+	 * @param tx
+	 *            the calling transaction
+	 * @return the page
+	 */
+	public static BTreePage newInstance(String dataFileName, BlockId blk,
+			int numFlags, TableInfo ti, Transaction tx) {
+		if (ti.format() == TableInfo.FORMAT_SLOTTED)
+			return new CompressedBTreePage(dataFileName, blk, numFlags, ti,
+					tx);
+		return new BTreePage(dataFileName, blk, numFlags, ti, tx);
+	}
+
 	/**
 	 * Opens a page for the specified B-tree block.
 	 * 
@@ -60,7 +101,7 @@ public class BTreePage {
 		this.numFlags = numFlags;
 		this.ti = ti;
 		this.tx = tx;
-		slotSize = ti.recordSize();
+		blockSize = Page.blockSize(blk.fileName());
 		buff = bufferMgr.pin(blk, tx.getTransactionNumber());
 	}
 
@@ -81,7 +122,7 @@ public class BTreePage {
 	 * @return the i-th flag
 	 */
 	public long getFlag(int i) {
-		return (Long) buff.getVal(
+		return (Long) tx.concurrencyMgr().getVal(buff,
 				Page.maxSize(INTEGER) + Page.maxSize(BIGINT) * i, BIGINT)
 				.asJavaVal();
 	}
@@ -103,18 +144,74 @@ public class BTreePage {
 		buff.setVal(offset, v, tx.getTransactionNumber(), lsn);
 	}
 
+	/**
+	 * Returns the high key of the page. The value is undefined if the page
+	 * has no right sibling.
+	 * 
+	 * @return the high key
+	 */
+	public Constant getHighKey() {
+		return read(highKeyPosition(numFlags), keyType(ti));
+	}
+
+	/**
+	 * Sets the high key of the page.
+	 * 
+	 * @param key
+	 *            the high key
+	 */
+	public void setHighKey(Constant key) {
+		xLockCurrentBlk();
+		write(highKeyPosition(numFlags), key.castTo(keyType(ti)));
+	}
+
+	/**
+	 * Returns the low key of the page, the least key that the page covers.
+	 * The fixed format does not keep the low key, and returns the least value
+	 * of the key type.
+	 * 
+	 * @return the low key
+	 */
+	public Constant getLowKey() {
+		return keyType(ti).minValue();
+	}
+
+	/**
+	 * Sets the range of the keys that the page covers, from the low key up to
+	 * the high key. The fixed format keeps only the high key.
+	 * 
+	 * @param lowKey
+	 *            the low key
+	 * @param highKey
+	 *            the high key
+	 */
+	void setKeyRange(Constant lowKey, Constant highKey) {
+		setHighKey(highKey);
+	}
+
+	/**
+	 * Returns a key greater than the key of the record before the specified
+	 * slot and not greater than the key of the slot, which separates the
+	 * records of a leaf split at the slot. A page in the fixed format has no
+	 * use of a shorter key, and returns the key of the slot.
+	 * 
+	 * @param slot
+	 *            the split position, which must not be 0
+	 * @return the separator key
+	 */
+	public Constant separator(int slot) {
+		return getVal(slot, BTreeLeaf.SCH_KEY);
+	}
+
 	public Constant getVal(int slot, String fldName) {
 		Type type = ti.schema().type(fldName);
-		return buff.getVal(fieldPosition(slot, fldName), type);
+		return read(fieldPosition(slot, fldName), type);
 	}
 
 	public void setVal(int slot, String fldName, Constant val) {
 		xLockCurrentBlk();
 		Type type = ti.schema().type(fldName);
-		Constant v = val.castTo(type);
-		int pos = fieldPosition(slot, fldName);
-		long lsn = tx.recoveryMgr().setVal(buff, pos, v);
-		buff.setVal(pos, v, tx.getTransactionNumber(), lsn);
+		write(fieldPosition(slot, fldName), val.castTo(type));
 	}
 
 	public void insert(int slot) {
@@ -136,7 +233,7 @@ public class BTreePage {
 	 * @return true if the block is full
 	 */
 	public boolean isFull() {
-		return slotPosition(getNumRecords() + 1) >= BLOCK_SIZE;
+		return slotPosition(getNumRecords() + 1) >= blockSize;
 	}
 
 	/**
@@ -145,26 +242,72 @@ public class BTreePage {
 	 * @return true if the block is going to be full after insertion
 	 */
 	public boolean isGettingFull() {
-		return slotPosition(getNumRecords() + 2) >= BLOCK_SIZE;
+		return slotPosition(getNumRecords() + 2) >= blockSize;
+	}
+
+	/**
+	 * Latches the buffer of the page while the page is being modified. See
+	 * {@link Buffer#latch()}.
+	 */
+	public void latch() {
+		buff.latch();
+	}
+
+	/**
+	 * Releases the latch of the buffer of the page.
+	 */
+	public void unlatch() {
+		buff.unlatch();
+	}
+
+	/**
+	 * Returns the version of the page to be validated after reading the page
+	 * without latching it. See {@link Buffer#stableVersion()}.
+	 * 
+	 * @return the version of the page
+	 */
+	public long stableVersion() {
+		return buff.stableVersion();
+	}
+
+	/**
+	 * Returns true if the page has not been modified since the specified
+	 * version was taken.
+	 * 
+	 * @param version
+	 *            a version returned by {@link #stableVersion()}
+	 * @return true if the values read since then are consistent
+	 */
+	public boolean validate(long version) {
+		return buff.validate(version);
 	}
 
 	/**
 	 * Splits the page at the specified slot. A new page is created, and the
 	 * records of the page starting from the split slot are transferred to the
-	 * new page.
+	 * new page. The new page covers the keys from the split key up to the high
+	 * key of the page, which takes the split key as its high key. If the split
+	 * key is null, the new page covers the same keys as the page, which keeps
+	 * its key range.
 	 * 
 	 * @param splitSlot
 	 *            the split position
+	 * @param splitKey
+	 *            the least key of the new page, or null
 	 * @param flags
 	 *            the flag values
 	 * @return the number of the new block
 	 */
-	public long split(int splitSlot, long[] flags) {
+	public long split(int splitSlot, Constant splitKey, long[] flags) {
 		BlockId newBlk = appendNew(flags);
-		BTreePage newPage = new BTreePage(dataFileName, newBlk, flags.length,
+		BTreePage newPage = newInstance(dataFileName, newBlk, flags.length,
 				ti, tx);
+		newPage.setKeyRange(splitKey == null ? getLowKey() : splitKey,
+				getHighKey());
 		transferRecords(splitSlot, newPage, 0, getNumRecords() - splitSlot);
 		newPage.close();
+		if (splitKey != null)
+			setHighKey(splitKey);
 		return newBlk.number();
 	}
 
@@ -190,7 +333,8 @@ public class BTreePage {
 	 * @return the number of index records in this page
 	 */
 	public int getNumRecords() {
-		return (Integer) buff.getVal(0, INTEGER).asJavaVal();
+		return (Integer) tx.concurrencyMgr().getVal(buff, 0, INTEGER)
+				.asJavaVal();
 	}
 
 	private void setNumRecords(int n) {
@@ -206,31 +350,94 @@ public class BTreePage {
 			setVal(to, fldname, getVal(from, fldname));
 	}
 
+	/**
+	 * Appends a new block to the file. The file is not xlocked, since the new
+	 * block is reached only through the page being split, which is locked or
+	 * latched already.
+	 */
 	private BlockId appendNew(long[] flags) {
-		// xlock file
-		try {
-			tx.concurrencyMgr().xLock(ti.fileName());
-		} catch (LockAbortException e) {
-			tx.rollback();
-			throw e;
-		}
 		Buffer buff = bufferMgr.pinNew(ti.fileName(), new BTPageFormatter(ti,
 				flags), tx.getTransactionNumber());
 		bufferMgr.unpin(tx.getTransactionNumber(), buff);
 		return buff.block();
 	}
 
+	/**
+	 * Reads a value of the specified type at the specified position. A
+	 * composite value is read component by component, as it is written.
+	 */
+	private Constant read(int pos, Type type) {
+		if (!(type instanceof CompositeType))
+			return tx.concurrencyMgr().getVal(buff, pos, type);
+		CompositeType ct = (CompositeType) type;
+		List<Constant> vals = new ArrayList<Constant>(ct.numComponents());
+		for (int i = 0; i < ct.numComponents(); i++)
+			vals.add(tx.concurrencyMgr().getVal(buff, pos + ct.offset(i),
+					ct.componentType(i)));
+		return new CompositeConstant(vals);
+	}
+
+	/**
+	 * Writes the specified value at the specified position. A composite value
+	 * is written component by component, since the log records hold values of
+	 * the SQL types only.
+	 */
+	private void write(int pos, Constant val) {
+		if (val instanceof CompositeConstant) {
+			CompositeConstant cc = (CompositeConstant) val;
+			CompositeType ct = (CompositeType) cc.getType();
+			for (int i = 0; i < cc.numComponents(); i++)
+				write(pos + ct.offset(i), cc.component(i));
+			return;
+		}
+		long lsn = tx.recoveryMgr().setVal(buff, pos, val);
+		buff.setVal(pos, val, tx.getTransactionNumber(), lsn);
+	}
+
 	private int fieldPosition(int slot, String fldname) {
 		int offset = ti.offset(fldname);
 		return slotPosition(slot) + offset;
 	}
 
 	private int slotPosition(int slot) {
-		return Page.maxSize(INTEGER) + Page.maxSize(BIGINT) * numFlags
-				+ (slot * slotSize);
+		return slotPosition(ti, numFlags, slot);
+	}
+
+	/**
+	 * Returns the position of the high key in a page having the specified
+	 * number of flags.
+	 */
+	static int highKeyPosition(int numFlags) {
+		return Page.maxSize(INTEGER) + Page.maxSize(BIGINT) * numFlags;
+	}
+
+	/**
+	 * Returns the position of the specified slot in a page of the specified
+	 * B-tree file having the specified number of flags.
+	 */
+	static int slotPosition(TableInfo ti, int numFlags, int slot) {
+		return highKeyPosition(numFlags) + Page.maxSize(keyType(ti))
+				+ (slot * ti.recordSize());
+	}
+
+	/**
+	 * Returns the largest number of records that a page of the specified
+	 * B-tree file having the specified number of flags holds without being
+	 * full.
+	 */
+	static int maxNumRecords(TableInfo ti, int numFlags, int blockSize) {
+		return (blockSize - slotPosition(ti, numFlags, 0) - 1)
+				/ ti.recordSize() - 1;
+	}
+
+	/**
+	 * Returns the type of the keys of the specified B-tree file.
+	 */
+	static Type keyType(TableInfo ti) {
+		return ti.schema().type(BTreeLeaf.SCH_KEY);
 	}
 
-	private void xLockCurrentBlk() {
+	void xLockCurrentBlk() {
 		try {
 			tx.concurrencyMgr().xLockIndexBlock(blk);
 		} catch (LockAbortException e) {
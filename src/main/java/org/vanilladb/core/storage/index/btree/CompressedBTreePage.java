@@ -0,0 +1,624 @@
+package org.vanilladb.core.storage.index.btree;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.ConcurrencyMgr;
+
+/**
+ * A B-tree page in the compressed format, in which the files of an index on a
+ * varchar field are laid out if {@link BTreeIndex#COMPRESS_KEYS} is set. The
+ * records of such a file are described by a {@link TableInfo} in the
+ * {@link TableInfo#FORMAT_SLOTTED slotted} format, where the key field holds
+ * the offset of its value.
+ * 
+ * <p>
+ * The page begins with the number of records and the flags, as a page in the
+ * fixed format does, followed by the offset of the lowest data of the page,
+ * the number of dead bytes among the data, and the offsets of the low key, the
+ * high key and the prefix of the page. The slot directory follows the header
+ * and grows towards the end of the page, while the records and the values are
+ * allocated from the end of the page backwards, each taking a multiple of
+ * four bytes. A value is stored as a varchar, and an offset of 0 stands for an
+ * empty string.
+ * </p>
+ * 
+ * <p>
+ * A page covers the keys from its low key up to, but not including, its high
+ * key. Every key between the two begins with their longest common prefix,
+ * which is kept once as the prefix of the page, and a record keeps only the
+ * rest of its key. The prefix grows when a split narrows the key range of a
+ * page, and never has to shrink. A page without a right sibling has an empty
+ * high key, and thus an empty prefix. The leaves split at the shortest
+ * separators of their keys (see {@link #separator(int)}), so that the
+ * directory pages hold short keys as well.
+ * </p>
+ * 
+ * <p>
+ * A page is full if a record of the longest key may not fit after the key
+ * range of the page is replaced, as a split does. The space of deleted records
+ * and replaced values is dead until the page is rebuilt, which happens when an
+ * allocation does not fit between the slots and the data, and whenever the key
+ * range of the page changes. The page is rebuilt in a copy of itself, and only
+ * the words that differ are written.
+ * </p>
+ * 
+ * <p>
+ * Every change is written as integers and big integers, so that the log keeps
+ * the exact old bytes and undoing the changes restores the page byte by byte.
+ * As with the slotted record pages, the snapshot transactions read the page
+ * from a whole-page image.
+ * </p>
+ */
+public class CompressedBTreePage extends BTreePage {
+	private static final int INT_SIZE = Page.maxSize(INTEGER),
+			LONG_SIZE = Page.maxSize(BIGINT);
+
+	/**
+	 * The offsets of the fields of the header that follow the flags.
+	 */
+	private static final int DATA_START = 0, DEAD_BYTES = INT_SIZE,
+			LOW_KEY = 2 * INT_SIZE, HIGH_KEY = 3 * INT_SIZE,
+			PREFIX = 4 * INT_SIZE;
+
+	private static final int HEADER_SIZE = 5 * INT_SIZE, SLOT_SIZE = INT_SIZE;
+
+	private int header, top, keyOffset;
+	private Type keyType;
+	// the space of a record of the longest key, and that kept for a split
+	private int maxRecordSpace, reservedSpace;
+	// the page seen by a snapshot transaction, or null for the buffer
+	private Page image;
+
+	/**
+	 * Opens a page for the specified block of a B-tree file in the compressed
+	 * format.
+	 * 
+	 * @param dataFileName
+	 *            the data file name
+	 * @param blk
+	 *            a block ID refers to the B-tree block
+	 * @param numFlags
+	 *            the number of flags in this b-tree page
+	 * @param ti
+	 *            the metadata for the particular B-tree file
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public CompressedBTreePage(String dataFileName, BlockId blk,
+			int numFlags, TableInfo ti, Transaction tx) {
+		super(dataFileName, blk, numFlags, ti, tx);
+		header = headerPosition(numFlags);
+		top = top(blockSize);
+		keyOffset = ti.offset(BTreeLeaf.SCH_KEY);
+		keyType = keyType(ti);
+		maxRecordSpace = maxRecordSpace(ti);
+		reservedSpace = 2 * valueSpace(keyType.maxSize());
+		image = tx.concurrencyMgr().readPage(buff);
+	}
+
+	/**
+	 * Initializes the header of an empty page in the compressed format, which
+	 * holds the flags already.
+	 * 
+	 * @param page
+	 *            the page
+	 * @param numFlags
+	 *            the number of flags in the page
+	 */
+	static void format(Page page, int numFlags) {
+		int header = headerPosition(numFlags);
+		page.setVal(header + DATA_START, new IntegerConstant(top(page
+				.blockSize())));
+		for (int pos = DEAD_BYTES; pos < HEADER_SIZE; pos += INT_SIZE)
+			page.setVal(header + pos, new IntegerConstant(0));
+	}
+
+	/**
+	 * Lays out the specified records and key range in the specified page,
+	 * which holds the flags already. The records must be sorted, and fit in
+	 * the page.
+	 * 
+	 * @param page
+	 *            the page
+	 * @param ti
+	 *            the metadata of the B-tree file
+	 * @param numFlags
+	 *            the number of flags in the page
+	 * @param lowKey
+	 *            the low key, or null for the least key
+	 * @param highKey
+	 *            the high key, or null if the page has no right sibling
+	 * @param fields
+	 *            the names of the fields of the records
+	 * @param recs
+	 *            the values of the records, in the order of the fields
+	 */
+	static void layout(Page page, TableInfo ti, int numFlags,
+			Constant lowKey, Constant highKey, String[] fields,
+			Constant[][] recs) {
+		String low = lowKey == null ? "" : (String) lowKey.asJavaVal();
+		String high = highKey == null ? "" : (String) highKey.asJavaVal();
+		String prefix = low.substring(0, commonPrefixLength(low, high));
+		int header = headerPosition(numFlags);
+		int dataStart = top(page.blockSize());
+		dataStart = putValue(page, dataStart, header + LOW_KEY, low);
+		dataStart = putValue(page, dataStart, header + HIGH_KEY, high);
+		dataStart = putValue(page, dataStart, header + PREFIX, prefix);
+		int recordSize = ti.recordSize();
+		int keyOffset = ti.offset(BTreeLeaf.SCH_KEY);
+		for (int i = 0; i < recs.length; i++) {
+			dataStart -= recordSize;
+			int pos = dataStart;
+			for (int j = 0; j < fields.length; j++) {
+				if (!fields[j].equals(BTreeLeaf.SCH_KEY)) {
+					page.setVal(pos + ti.offset(fields[j]), recs[i][j]
+							.castTo(ti.schema().type(fields[j])));
+					continue;
+				}
+				String key = (String) recs[i][j].asJavaVal();
+				if (!key.startsWith(prefix))
+					throw new IllegalArgumentException("key '" + key
+							+ "' is out of the range of the page");
+				dataStart = putValue(page, dataStart, pos + keyOffset,
+						key.substring(prefix.length()));
+			}
+			page.setVal(slotPosition(numFlags, i), new IntegerConstant(pos));
+		}
+		if (slotPosition(numFlags, recs.length) > dataStart)
+			throw new BufferOverflowException();
+		page.setVal(0, new IntegerConstant(recs.length));
+		page.setVal(header + DATA_START, new IntegerConstant(dataStart));
+		page.setVal(header + DEAD_BYTES, new IntegerConstant(0));
+	}
+
+	/**
+	 * Returns the space taken by a record of the specified key in a page of
+	 * the specified B-tree file, without a prefix.
+	 * 
+	 * @param ti
+	 *            the metadata of the B-tree file
+	 * @param key
+	 *            the key of the record
+	 * @return the space of the record, in bytes
+	 */
+	static int recordSpace(TableInfo ti, Constant key) {
+		return SLOT_SIZE + ti.recordSize() + valueSpace(key.size());
+	}
+
+	/**
+	 * Returns the largest space of the records that a page of the specified
+	 * B-tree file holds without being full, whatever its key range is.
+	 * 
+	 * @param ti
+	 *            the metadata of the B-tree file
+	 * @param numFlags
+	 *            the number of flags in the page
+	 * @param blockSize
+	 *            the block size of the file
+	 * @return the space of the records, in bytes
+	 */
+	static int capacity(TableInfo ti, int numFlags, int blockSize) {
+		int keySpace = valueSpace(keyType(ti).maxSize());
+		return top(blockSize) - slotPosition(numFlags, 0) - 5 * keySpace
+				- maxRecordSpace(ti);
+	}
+
+	/**
+	 * Returns the shortest key that is greater than the specified key on the
+	 * left and not greater than that on the right. The key is a prefix of the
+	 * key on the right.
+	 * 
+	 * @param left
+	 *            the key on the left
+	 * @param right
+	 *            the key on the right, greater than that on the left
+	 * @return the separator key
+	 */
+	static Constant shortestSeparator(Constant left, Constant right) {
+		String l = (String) left.asJavaVal(), r = (String) right.asJavaVal();
+		int len = 0;
+		while (len < l.length() && len < r.length()
+				&& l.charAt(len) == r.charAt(len))
+			len++;
+		// one more character of the key on the right exceeds the left one
+		len = Math.min(len + 1, r.length());
+		// keeps a surrogate pair together
+		if (len < r.length() && Character.isHighSurrogate(r.charAt(len - 1)))
+			len++;
+		return len == r.length() ? right : new VarcharConstant(r.substring(0,
+				len));
+	}
+
+	@Override
+	public long getFlag(int i) {
+		return readLong(INT_SIZE + LONG_SIZE * i);
+	}
+
+	@Override
+	public void setFlag(int i, long val) {
+		beforeChange();
+		write(INT_SIZE + LONG_SIZE * i, new BigIntConstant(val));
+	}
+
+	@Override
+	public Constant getHighKey() {
+		return readValue(readInt(header + HIGH_KEY));
+	}
+
+	/**
+	 * Sets the high key of the page, which rebuilds the page with the prefix
+	 * of its new key range.
+	 */
+	@Override
+	public void setHighKey(Constant key) {
+		setKeyRange(getLowKey(), key);
+	}
+
+	@Override
+	public Constant getLowKey() {
+		return readValue(readInt(header + LOW_KEY));
+	}
+
+	@Override
+	void setKeyRange(Constant lowKey, Constant highKey) {
+		beforeChange();
+		rebuild(lowKey, highKey);
+	}
+
+	/**
+	 * Returns the shortest key separating the records at the specified slot.
+	 * See {@link #shortestSeparator(Constant, Constant)}.
+	 */
+	@Override
+	public Constant separator(int slot) {
+		return shortestSeparator(getVal(slot - 1, BTreeLeaf.SCH_KEY), getVal(
+				slot, BTreeLeaf.SCH_KEY));
+	}
+
+	@Override
+	public Constant getVal(int slot, String fldName) {
+		int pos = recordPosition(slot);
+		if (!fldName.equals(BTreeLeaf.SCH_KEY))
+			return readVal(pos + ti.offset(fldName), ti.schema()
+					.type(fldName));
+		int ptr = readInt(pos + keyOffset);
+		int prefixPtr = readInt(header + PREFIX);
+		if (prefixPtr == 0)
+			return readValue(ptr);
+		return new VarcharConstant(readString(prefixPtr) + readString(ptr));
+	}
+
+	/**
+	 * Stores a value at the specified field of the record. A key must be in
+	 * the key range of the page.
+	 */
+	@Override
+	public void setVal(int slot, String fldName, Constant val) {
+		beforeChange();
+		Constant v = val.castTo(ti.schema().type(fldName));
+		if (!fldName.equals(BTreeLeaf.SCH_KEY)) {
+			write(recordPosition(slot) + ti.offset(fldName), v);
+			return;
+		}
+		String key = (String) v.asJavaVal();
+		String prefix = readString(readInt(header + PREFIX));
+		if (!key.startsWith(prefix))
+			throw new IllegalArgumentException("key '" + key
+					+ "' is out of the range of the page");
+		byte[] bytes = new VarcharConstant(key.substring(prefix.length()))
+				.asBytes();
+		int space = valueSpace(bytes.length);
+		int ptrPos = recordPosition(slot) + keyOffset;
+		int oldPtr = readInt(ptrPos);
+		int oldSpace = oldPtr == 0 ? 0 : valueSpace(readInt(oldPtr));
+		if (space > 0 && space <= oldSpace) {
+			writeValue(oldPtr, bytes, space);
+			addDeadBytes(oldSpace - space);
+			return;
+		}
+		int ptr = 0;
+		if (space > 0) {
+			ptr = allocate(space);
+			writeValue(ptr, bytes, space);
+			// the allocation may have moved the record
+			ptrPos = recordPosition(slot) + keyOffset;
+		}
+		write(ptrPos, new IntegerConstant(ptr));
+		addDeadBytes(oldSpace);
+	}
+
+	/**
+	 * Inserts a blank record at the specified slot, whose key is the prefix
+	 * of the page until it is set.
+	 */
+	@Override
+	public void insert(int slot) {
+		beforeChange();
+		int recordSize = ti.recordSize();
+		// the slot directory grows as well
+		if (contiguousSpace() < SLOT_SIZE + recordSize)
+			rebuild(getLowKey(), getHighKey());
+		int pos = allocate(recordSize);
+		writeWords(pos, new byte[recordSize]);
+		int numRecs = getNumRecords();
+		ByteBuffer slots = ByteBuffer.allocate((numRecs - slot + 1)
+				* SLOT_SIZE);
+		slots.putInt(pos);
+		for (int i = slot; i < numRecs; i++)
+			slots.putInt(readInt(slotPosition(numFlags, i)));
+		writeWords(slotPosition(numFlags, slot), slots.array());
+		write(0, new IntegerConstant(numRecs + 1));
+	}
+
+	@Override
+	public void delete(int slot) {
+		deleteRecords(slot, 1);
+	}
+
+	/**
+	 * Returns true if a record of the longest key may not fit in the page
+	 * after its key range is replaced.
+	 */
+	@Override
+	public boolean isFull() {
+		return freeSpace() < maxRecordSpace + reservedSpace;
+	}
+
+	@Override
+	public boolean isGettingFull() {
+		return freeSpace() < 2 * maxRecordSpace + reservedSpace;
+	}
+
+	/**
+	 * Transfers the records to the specified page, and removes them from this
+	 * page at once.
+	 */
+	@Override
+	public void transferRecords(int start, BTreePage dest, int destStart,
+			int num) {
+		int numToTransfer = Math.min(getNumRecords() - start, num);
+		for (int i = 0; i < numToTransfer; i++) {
+			dest.insert(destStart + i);
+			for (String fldname : ti.schema().fields())
+				dest.setVal(destStart + i, fldname, getVal(start + i,
+						fldname));
+		}
+		deleteRecords(start, numToTransfer);
+	}
+
+	@Override
+	public int getNumRecords() {
+		return readInt(0);
+	}
+
+	private void deleteRecords(int start, int num) {
+		beforeChange();
+		int numRecs = getNumRecords();
+		int deadBytes = 0;
+		for (int i = start; i < start + num; i++) {
+			int ptr = readInt(recordPosition(i) + keyOffset);
+			deadBytes += ti.recordSize()
+					+ (ptr == 0 ? 0 : valueSpace(readInt(ptr)));
+		}
+		if (start + num < numRecs) {
+			ByteBuffer slots = ByteBuffer.allocate((numRecs - start - num)
+					* SLOT_SIZE);
+			for (int i = start + num; i < numRecs; i++)
+				slots.putInt(readInt(slotPosition(numFlags, i)));
+			writeWords(slotPosition(numFlags, start), slots.array());
+		}
+		write(0, new IntegerConstant(numRecs - num));
+		addDeadBytes(deadBytes);
+	}
+
+	/**
+	 * Allocates the specified number of bytes of data, rebuilding the page if
+	 * needed. The caller must have checked that the page has enough free
+	 * space.
+	 */
+	private int allocate(int size) {
+		if (contiguousSpace() < size)
+			rebuild(getLowKey(), getHighKey());
+		int pos = readInt(header + DATA_START) - size;
+		write(header + DATA_START, new IntegerConstant(pos));
+		return pos;
+	}
+
+	/**
+	 * Lays out the records of the page anew in the specified key range, and
+	 * writes the words that have changed.
+	 */
+	private void rebuild(Constant lowKey, Constant highKey) {
+		String[] fields = ti.schema().fields().toArray(new String[0]);
+		Constant[][] recs = new Constant[getNumRecords()][fields.length];
+		for (int i = 0; i < recs.length; i++)
+			for (int j = 0; j < fields.length; j++)
+				recs[i][j] = getVal(i, fields[j]);
+		Page newPage = buff.copyPage();
+		layout(newPage, ti, numFlags, lowKey, highKey, fields, recs);
+		for (int pos = 0; pos + INT_SIZE <= top; pos += INT_SIZE) {
+			int val = newPage.getInt(pos);
+			if (val == buff.getInt(pos))
+				continue;
+			if (pos + LONG_SIZE <= top
+					&& newPage.getInt(pos + INT_SIZE) != buff.getInt(pos
+							+ INT_SIZE)) {
+				write(pos, new BigIntConstant(newPage.getLong(pos)));
+				pos += INT_SIZE;
+			} else
+				write(pos, new IntegerConstant(val));
+		}
+	}
+
+	/**
+	 * Writes the specified value into the allocated space, padded with zeros.
+	 */
+	private void writeValue(int pos, byte[] bytes, int space) {
+		ByteBuffer value = ByteBuffer.allocate(space);
+		value.putInt(bytes.length);
+		value.put(bytes);
+		writeWords(pos, value.array());
+	}
+
+	/**
+	 * Writes the specified bytes as big integers, and as an integer for the
+	 * last bytes which do not make a big integer. The number of bytes must be
+	 * a multiple of the size of an integer.
+	 */
+	private void writeWords(int pos, byte[] bytes) {
+		ByteBuffer words = ByteBuffer.wrap(bytes);
+		int off = 0;
+		for (; off + LONG_SIZE <= bytes.length; off += LONG_SIZE)
+			write(pos + off, new BigIntConstant(words.getLong(off)));
+		if (off < bytes.length)
+			write(pos + off, new IntegerConstant(words.getInt(off)));
+	}
+
+	private void addDeadBytes(int size) {
+		if (size > 0)
+			write(header + DEAD_BYTES, new IntegerConstant(readInt(header
+					+ DEAD_BYTES)
+					+ size));
+	}
+
+	private int contiguousSpace() {
+		return readInt(header + DATA_START)
+				- slotPosition(numFlags, getNumRecords());
+	}
+
+	private int freeSpace() {
+		return contiguousSpace() + readInt(header + DEAD_BYTES);
+	}
+
+	private int recordPosition(int slot) {
+		return readInt(slotPosition(numFlags, slot));
+	}
+
+	/**
+	 * Returns the key stored at the specified offset.
+	 */
+	private Constant readValue(int ptr) {
+		if (ptr == 0)
+			return Constant.defaultInstance(keyType);
+		checkValue(ptr);
+		return readVal(ptr, keyType);
+	}
+
+	private String readString(int ptr) {
+		return (String) readValue(ptr).asJavaVal();
+	}
+
+	/**
+	 * Checks the bounds of a value before reading it, since a page being
+	 * modified may be read without a latch (see {@link BTreeDir}).
+	 */
+	private void checkValue(int ptr) {
+		int size = readInt(ptr);
+		if (ptr < header + HEADER_SIZE || size < 0
+				|| ptr + INT_SIZE + size > top)
+			throw new IllegalStateException("bad value at offset " + ptr);
+	}
+
+	/**
+	 * Xlocks the block before changing the page, and keeps the image of the
+	 * page before the first change of the transaction for the snapshot
+	 * transactions.
+	 */
+	private void beforeChange() {
+		xLockCurrentBlk();
+		ConcurrencyMgr.versionStore().keepOldImage(tx.getTransactionNumber(),
+				buff);
+	}
+
+	private void write(int pos, Constant val) {
+		long lsn = tx.recoveryMgr().setVal(buff, pos, val);
+		buff.setVal(pos, val, tx.getTransactionNumber(), lsn);
+	}
+
+	private int readInt(int pos) {
+		return image != null ? image.getInt(pos) : buff.getInt(pos);
+	}
+
+	private long readLong(int pos) {
+		return image != null ? image.getLong(pos) : buff.getLong(pos);
+	}
+
+	private Constant readVal(int pos, Type type) {
+		return image != null ? image.getVal(pos, type) : buff.getVal(pos,
+				type);
+	}
+
+	/**
+	 * Writes the specified value below the data starting at the specified
+	 * offset, and its offset at the specified position. Returns the new start
+	 * of the data.
+	 */
+	private static int putValue(Page page, int dataStart, int ptrPos,
+			String val) {
+		int ptr = 0;
+		if (!val.isEmpty()) {
+			Constant v = new VarcharConstant(val);
+			dataStart -= valueSpace(v.size());
+			ptr = dataStart;
+			page.setVal(ptr, v);
+		}
+		page.setVal(ptrPos, new IntegerConstant(ptr));
+		return dataStart;
+	}
+
+	/**
+	 * Returns the length of the longest common prefix of the specified
+	 * strings, which does not break a surrogate pair.
+	 */
+	private static int commonPrefixLength(String s1, String s2) {
+		int len = 0;
+		while (len < s1.length() && len < s2.length()
+				&& s1.charAt(len) == s2.charAt(len))
+			len++;
+		if (len > 0 && Character.isHighSurrogate(s1.charAt(len - 1)))
+			len--;
+		return len;
+	}
+
+	private static int headerPosition(int numFlags) {
+		return INT_SIZE + LONG_SIZE * numFlags;
+	}
+
+	private static int slotPosition(int numFlags, int slot) {
+		return headerPosition(numFlags) + HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	/**
+	 * Returns the end of the data of a page of the specified size, where a
+	 * word ends.
+	 */
+	private static int top(int blockSize) {
+		return blockSize - blockSize % INT_SIZE;
+	}
+
+	/**
+	 * Returns the space taken by a value of the specified number of bytes.
+	 */
+	private static int valueSpace(int size) {
+		return size == 0 ? 0 : (2 * INT_SIZE + size - 1) / INT_SIZE
+				* INT_SIZE;
+	}
+
+	private static int maxRecordSpace(TableInfo ti) {
+		return SLOT_SIZE + ti.recordSize()
+				+ valueSpace(keyType(ti).maxSize());
+	}
+}
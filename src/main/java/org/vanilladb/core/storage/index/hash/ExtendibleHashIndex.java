@@ -0,0 +1,422 @@
+package org.vanilladb.core.storage.index.hash;
+
+import static org.vanilladb.core.storage.file.Page.INDEX_BLOCK_SIZE;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+
+/**
+ * An extendible hash implementation of {@link Index}. Unlike
+ * {@link HashIndex}, the number of buckets grows with the index, so an
+ * equality search reads a directory block and a bucket block whatever the
+ * size of the index is.
+ * <p>
+ * The index consists of a {@link HashDirectory directory} file and a bucket
+ * file, each bucket of which is a block (see {@link HashBucketPage}). A bucket
+ * of local depth d holds the records whose hash values end with the same d
+ * bits. When a full bucket receives a record, it splits into two buckets of
+ * local depth d + 1, and the directory doubles first if its global depth is d.
+ * A bucket whose records all have the same hash value cannot be split, so its
+ * records go to a chain of overflow blocks instead.
+ * </p>
+ * <p>
+ * The buckets are locked by the transactions, while the directory is read
+ * without locks. After locking a bucket, a transaction reads the directory
+ * again, and moves to another bucket if the bucket has been split in the
+ * meantime. A split xlocks the directory file, and is undone with the
+ * transaction.
+ * </p>
+ */
+public class ExtendibleHashIndex extends Index {
+	/**
+	 * Estimates the number of block accesses required to find the index
+	 * records of a search key, which are the accesses of a directory block
+	 * and the blocks of a bucket.
+	 * 
+	 * @see Index#searchCost(int, Type, long, long)
+	 */
+	public static long searchCost(Type fldType, long totRecs, long matchRecs) {
+		TableInfo ti = new TableInfo("", HashBucketPage.schema(fldType));
+		int rpb = HashBucketPage.maxNumRecords(ti, INDEX_BLOCK_SIZE);
+		return 2 + matchRecs / rpb;
+	}
+
+	private Type fldType;
+	private String dataFileName, dirFileName;
+	private TableInfo ti;
+	private Transaction tx;
+	private BufferMgr bufferMgr = VanillaDB.bufferMgr();
+	private Constant searchKey;
+	private HashBucketPage page;
+	private int currentSlot;
+
+	/**
+	 * Opens an extendible hash index for the specified index. The files of
+	 * the index are created if they do not exist.
+	 * 
+	 * @param dataFileName
+	 *            the name of data file
+	 * @param idxName
+	 *            the name of the index
+	 * @param fldType
+	 *            the type of the indexed field
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public ExtendibleHashIndex(String dataFileName, String idxName,
+			Type fldType, Transaction tx) {
+		this.dataFileName = dataFileName;
+		this.fldType = fldType;
+		this.tx = tx;
+		String bucketTbl = idxName + "bucket";
+		ti = new TableInfo(bucketTbl, HashBucketPage.schema(fldType),
+				bucketTbl + FileMgr.INDEX_FILE_EXTENSION);
+		dirFileName = idxName + "hashdir" + FileMgr.INDEX_FILE_EXTENSION;
+		if (VanillaDB.fileMgr().size(dirFileName) == 0) {
+			xLockDirectory();
+			if (VanillaDB.fileMgr().size(dirFileName) == 0) {
+				// the first bucket, and a directory pointing to it
+				Buffer buff = bufferMgr.pinNew(ti.fileName(), HashBucketPage
+						.formatter(ti, 0, -1), tx.getTransactionNumber());
+				bufferMgr.unpin(tx.getTransactionNumber(), buff);
+				buff = bufferMgr.pinNew(dirFileName,
+						HashDirectory.formatter(), tx.getTransactionNumber());
+				bufferMgr.unpin(tx.getTransactionNumber(), buff);
+			}
+		}
+	}
+
+	/**
+	 * Positions the index before the first index record having the specified
+	 * search key. The method locks the bucket of the search key, and opens its
+	 * first block.
+	 * 
+	 * @see Index#beforeFirst(ConstantRange)
+	 */
+	@Override
+	public void beforeFirst(ConstantRange searchRange) {
+		close();
+		if (!searchRange.isConstant())
+			throw new UnsupportedOperationException();
+
+		searchKey = searchRange.asConstant();
+		page = new HashBucketPage(lockBucket(hash(searchKey), false), ti, tx);
+		currentSlot = -1;
+	}
+
+	/**
+	 * Moves to the next index record having the search key, following the
+	 * overflow blocks of the bucket.
+	 * 
+	 * @see Index#next()
+	 */
+	@Override
+	public boolean next() {
+		if (page == null)
+			return false;
+		while (true) {
+			currentSlot++;
+			if (currentSlot < page.getNumRecords()) {
+				if (page.getKey(currentSlot).compareTo(searchKey) == 0)
+					return true;
+				continue;
+			}
+			long overflow = page.getOverflow();
+			if (overflow == -1)
+				return false;
+			page.close();
+			page = new HashBucketPage(new BlockId(ti.fileName(), overflow),
+					ti, tx);
+			currentSlot = -1;
+		}
+	}
+
+	/**
+	 * Retrieves the data record ID from the current index record.
+	 * 
+	 * @see Index#getDataRecordId()
+	 */
+	@Override
+	public RecordId getDataRecordId() {
+		return new RecordId(new BlockId(dataFileName, page
+				.getRidBlockNumber(currentSlot)), page.getRidId(currentSlot));
+	}
+
+	/**
+	 * Inserts a new index record into the bucket of its key. If every block
+	 * of the bucket is full, the bucket splits, and the insertion is retried;
+	 * if the bucket cannot be split, a new overflow block is added to it.
+	 * 
+	 * @see Index#insert(Constant, RecordId)
+	 */
+	@Override
+	public void insert(Constant key, RecordId dataRecordId) {
+		close();
+		int hash = hash(key);
+		long ridBlkNum = dataRecordId.block().number();
+		int ridId = dataRecordId.id();
+		while (true) {
+			HashBucketPage bucket = new HashBucketPage(lockBucket(hash, true),
+					ti, tx);
+			try {
+				if (insertIntoChain(bucket, key, ridBlkNum, ridId))
+					return;
+				if (!split(bucket, hash)) {
+					appendOverflow(bucket, key, ridBlkNum, ridId);
+					return;
+				}
+			} finally {
+				bucket.close();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the specified index record.
+	 * 
+	 * @see Index#delete(Constant, RecordId)
+	 */
+	@Override
+	public void delete(Constant key, RecordId dataRecordId) {
+		close();
+		page = new HashBucketPage(lockBucket(hash(key), true), ti, tx);
+		searchKey = key;
+		currentSlot = -1;
+		while (next())
+			if (getDataRecordId().equals(dataRecordId)) {
+				page.delete(currentSlot);
+				break;
+			}
+		close();
+	}
+
+	/**
+	 * Closes the index by closing its open bucket block, if any.
+	 * 
+	 * @see Index#close()
+	 */
+	@Override
+	public void close() {
+		if (page != null) {
+			page.close();
+			page = null;
+		}
+	}
+
+	/**
+	 * Splits the specified bucket, which must be full, unless all of its
+	 * records and the new one have the same hash value. Returns false if the
+	 * bucket is not split.
+	 */
+	private boolean split(HashBucketPage bucket, int hash) {
+		int depth = bucket.getLocalDepth();
+		if (depth == HashDirectory.MAX_DEPTH || !separable(bucket, hash))
+			return false;
+		xLockDirectory();
+		HashDirectory dir = new HashDirectory(dirFileName, tx);
+		long newBlkNum;
+		try {
+			if (dir.globalDepth() == depth)
+				dir.doubleSize();
+			newBlkNum = appendNew(depth + 1, -1);
+			bucket.setLocalDepth(depth + 1);
+			// the entries of the hash values having 1 at bit depth
+			int first = (hash & HashDirectory.mask(depth)) | (1 << depth);
+			int size = 1 << dir.globalDepth();
+			for (int i = first; i < size; i += 1 << (depth + 1))
+				dir.setEntry(i, newBlkNum);
+		} finally {
+			dir.close();
+		}
+		HashBucketPage newBucket = new HashBucketPage(new BlockId(
+				ti.fileName(), newBlkNum), ti, tx);
+		try {
+			moveRecords(bucket, newBucket, depth);
+		} finally {
+			newBucket.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the records of the blocks of the specified bucket having 1 at the
+	 * specified bit of their hash values to the new bucket.
+	 */
+	private void moveRecords(HashBucketPage bucket, HashBucketPage newBucket,
+			int bit) {
+		HashBucketPage p = bucket;
+		while (true) {
+			int slot = 0;
+			while (slot < p.getNumRecords()) {
+				Constant key = p.getKey(slot);
+				if ((hash(key) >>> bit & 1) == 0) {
+					slot++;
+					continue;
+				}
+				long ridBlkNum = p.getRidBlockNumber(slot);
+				int ridId = p.getRidId(slot);
+				if (!insertIntoChain(newBucket, key, ridBlkNum, ridId))
+					appendOverflow(newBucket, key, ridBlkNum, ridId);
+				// the last record of the page fills the slot
+				p.delete(slot);
+			}
+			long overflow = p.getOverflow();
+			if (p != bucket)
+				p.close();
+			if (overflow == -1)
+				return;
+			p = new HashBucketPage(new BlockId(ti.fileName(), overflow), ti,
+					tx);
+		}
+	}
+
+	/**
+	 * Returns true if some records of the specified bucket or the new record
+	 * differ in their hash values, so that a split can tell them apart.
+	 */
+	private boolean separable(HashBucketPage bucket, int hash) {
+		int mask = HashDirectory.mask(HashDirectory.MAX_DEPTH);
+		HashBucketPage p = bucket;
+		try {
+			while (true) {
+				for (int slot = 0; slot < p.getNumRecords(); slot++)
+					if ((hash(p.getKey(slot)) & mask) != (hash & mask))
+						return true;
+				long overflow = p.getOverflow();
+				if (overflow == -1)
+					return false;
+				if (p != bucket)
+					p.close();
+				p = new HashBucketPage(new BlockId(ti.fileName(), overflow),
+						ti, tx);
+			}
+		} finally {
+			if (p != bucket)
+				p.close();
+		}
+	}
+
+	/**
+	 * Inserts the record into the first block of the specified bucket that
+	 * has room. Returns false if every block is full.
+	 */
+	private boolean insertIntoChain(HashBucketPage bucket, Constant key,
+			long ridBlkNum, int ridId) {
+		HashBucketPage p = bucket;
+		try {
+			while (p.isFull()) {
+				long overflow = p.getOverflow();
+				if (overflow == -1)
+					return false;
+				if (p != bucket)
+					p.close();
+				p = new HashBucketPage(new BlockId(ti.fileName(), overflow),
+						ti, tx);
+			}
+			p.insert(key, ridBlkNum, ridId);
+			return true;
+		} finally {
+			if (p != bucket)
+				p.close();
+		}
+	}
+
+	/**
+	 * Adds a new overflow block holding the record right after the first
+	 * block of the specified bucket.
+	 */
+	private void appendOverflow(HashBucketPage bucket, Constant key,
+			long ridBlkNum, int ridId) {
+		long blkNum = appendNew(bucket.getLocalDepth(), bucket.getOverflow());
+		bucket.setOverflow(blkNum);
+		HashBucketPage p = new HashBucketPage(new BlockId(ti.fileName(),
+				blkNum), ti, tx);
+		p.insert(key, ridBlkNum, ridId);
+		p.close();
+	}
+
+	/**
+	 * Appends a new block to the bucket file, and xlocks it. The file is not
+	 * xlocked, since no other transaction knows the new block. The block is
+	 * xlocked before it is made reachable, through the directory for a new
+	 * bucket or through the bucket being modified for an overflow block, so
+	 * that no other transaction reads or modifies it until this one ends.
+	 */
+	private long appendNew(int localDepth, long overflow) {
+		Buffer buff = bufferMgr.pinNew(ti.fileName(), HashBucketPage
+				.formatter(ti, localDepth, overflow),
+				tx.getTransactionNumber());
+		BlockId blk = buff.block();
+		bufferMgr.unpin(tx.getTransactionNumber(), buff);
+		try {
+			tx.concurrencyMgr().xLockIndexBlock(blk);
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+		return blk.number();
+	}
+
+	/**
+	 * Locks the bucket of the specified hash value, and returns its first
+	 * block. The directory is read again after the bucket is locked, since
+	 * the bucket may have been split in the meantime.
+	 */
+	private BlockId lockBucket(int hash, boolean exclusive) {
+		HashDirectory dir = new HashDirectory(dirFileName, tx);
+		try {
+			while (true) {
+				BlockId blk = new BlockId(ti.fileName(), dir
+						.bucketNumber(hash));
+				try {
+					if (exclusive)
+						tx.concurrencyMgr().xLockIndexBlock(blk);
+					else
+						tx.concurrencyMgr().sLockIndexBlock(blk);
+				} catch (LockAbortException e) {
+					tx.rollback();
+					throw e;
+				}
+				if (dir.bucketNumber(hash) == blk.number())
+					return blk;
+			}
+		} finally {
+			dir.close();
+		}
+	}
+
+	private void xLockDirectory() {
+		try {
+			tx.concurrencyMgr().xLock(dirFileName);
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the hash value of the specified key. A numeric key is hashed as
+	 * a value of the indexed type, so that equal numbers of different types
+	 * have the same hash value. The bits are mixed, since the directory uses
+	 * only the last bits of the value.
+	 */
+	private int hash(Constant key) {
+		int h = (fldType.isNumeric() ? key.castTo(fldType) : key).hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		return h ^ h >>> 16;
+	}
+}
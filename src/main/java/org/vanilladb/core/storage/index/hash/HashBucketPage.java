@@ -0,0 +1,215 @@
+package org.vanilladb.core.storage.index.hash;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.buffer.PageFormatter;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+
+/**
+ * A page corresponding to a single block of the bucket file of an
+ * {@link ExtendibleHashIndex}.
+ * <p>
+ * The content of each block begins with an integer storing the number of index
+ * records in the page, the local depth of the bucket, and the number of the
+ * next overflow block of the bucket, or -1 if there is none. A series of slots
+ * holding the index records follows. The records are kept in no particular
+ * order, so a record is appended to the page, and the last record fills the
+ * slot of a deleted one.
+ * </p>
+ */
+class HashBucketPage {
+	/**
+	 * A field name of the schema of index records.
+	 */
+	static final String SCH_KEY = "key", SCH_RID_BLOCK = "block",
+			SCH_RID_ID = "id";
+
+	private static final int LOCAL_DEPTH = Page.maxSize(INTEGER),
+			OVERFLOW = 2 * Page.maxSize(INTEGER),
+			HEADER_SIZE = OVERFLOW + Page.maxSize(BIGINT);
+
+	/**
+	 * Returns the schema of the index records.
+	 * 
+	 * @param fldType
+	 *            the type of the indexed field
+	 * 
+	 * @return the schema of the index records
+	 */
+	static Schema schema(Type fldType) {
+		Schema sch = new Schema();
+		sch.addField(SCH_KEY, fldType);
+		sch.addField(SCH_RID_BLOCK, BIGINT);
+		sch.addField(SCH_RID_ID, INTEGER);
+		return sch;
+	}
+
+	/**
+	 * Returns the largest number of records that a page of the specified
+	 * bucket file holds.
+	 */
+	static int maxNumRecords(TableInfo ti, int blockSize) {
+		return (blockSize - HEADER_SIZE) / ti.recordSize();
+	}
+
+	/**
+	 * Returns a formatter of empty bucket pages of the specified local depth
+	 * and overflow block. As in a B-tree page, every slot is initialized to
+	 * have default values.
+	 */
+	static PageFormatter formatter(final TableInfo ti, final int localDepth,
+			final long overflow) {
+		return new PageFormatter() {
+			@Override
+			public void format(Page page) {
+				page.setVal(0, new IntegerConstant(0));
+				page.setVal(LOCAL_DEPTH, new IntegerConstant(localDepth));
+				page.setVal(OVERFLOW, new BigIntConstant(overflow));
+				int recSize = ti.recordSize();
+				int blockSize = page.blockSize();
+				for (int pos = HEADER_SIZE; pos + recSize <= blockSize; pos
+						+= recSize)
+					for (String fldname : ti.schema().fields())
+						page.setVal(pos + ti.offset(fldname), Constant
+								.defaultInstance(ti.schema().type(fldname)));
+			}
+		};
+	}
+
+	private TableInfo ti;
+	private BlockId blk;
+	private Transaction tx;
+	private Buffer buff;
+	private int blockSize;
+	private BufferMgr bufferMgr = VanillaDB.bufferMgr();
+
+	/**
+	 * Opens a page for the specified bucket block.
+	 * 
+	 * @param blk
+	 *            a block ID refers to the bucket block
+	 * @param ti
+	 *            the metadata of the bucket file
+	 * @param tx
+	 *            the calling transaction
+	 */
+	HashBucketPage(BlockId blk, TableInfo ti, Transaction tx) {
+		this.blk = blk;
+		this.ti = ti;
+		this.tx = tx;
+		blockSize = Page.blockSize(blk.fileName());
+		buff = bufferMgr.pin(blk, tx.getTransactionNumber());
+	}
+
+	/**
+	 * Closes the page by unpinning its buffer.
+	 */
+	void close() {
+		if (blk != null)
+			bufferMgr.unpin(tx.getTransactionNumber(), buff);
+		blk = null;
+	}
+
+	int getNumRecords() {
+		return tx.concurrencyMgr().getInt(buff, 0);
+	}
+
+	int getLocalDepth() {
+		return tx.concurrencyMgr().getInt(buff, LOCAL_DEPTH);
+	}
+
+	void setLocalDepth(int depth) {
+		write(LOCAL_DEPTH, new IntegerConstant(depth));
+	}
+
+	long getOverflow() {
+		return tx.concurrencyMgr().getLong(buff, OVERFLOW);
+	}
+
+	void setOverflow(long blkNum) {
+		write(OVERFLOW, new BigIntConstant(blkNum));
+	}
+
+	Constant getKey(int slot) {
+		return getVal(slot, SCH_KEY);
+	}
+
+	long getRidBlockNumber(int slot) {
+		return tx.concurrencyMgr().getLong(buff, fieldPosition(slot,
+				SCH_RID_BLOCK));
+	}
+
+	int getRidId(int slot) {
+		return tx.concurrencyMgr().getInt(buff, fieldPosition(slot,
+				SCH_RID_ID));
+	}
+
+	/**
+	 * Returns true if the page has no room for another record.
+	 */
+	boolean isFull() {
+		return HEADER_SIZE + (getNumRecords() + 1) * ti.recordSize()
+				> blockSize;
+	}
+
+	/**
+	 * Appends an index record to the page, which must not be full.
+	 */
+	void insert(Constant key, long ridBlkNum, int ridId) {
+		int slot = getNumRecords();
+		setVal(slot, SCH_KEY, key);
+		setVal(slot, SCH_RID_BLOCK, new BigIntConstant(ridBlkNum));
+		setVal(slot, SCH_RID_ID, new IntegerConstant(ridId));
+		write(0, new IntegerConstant(slot + 1));
+	}
+
+	/**
+	 * Deletes the record at the specified slot by moving the last record of
+	 * the page into the slot.
+	 */
+	void delete(int slot) {
+		int last = getNumRecords() - 1;
+		if (slot < last)
+			for (String fldname : ti.schema().fields())
+				setVal(slot, fldname, getVal(last, fldname));
+		write(0, new IntegerConstant(last));
+	}
+
+	private Constant getVal(int slot, String fldName) {
+		return tx.concurrencyMgr().getVal(buff, fieldPosition(slot, fldName),
+				ti.schema().type(fldName));
+	}
+
+	private void setVal(int slot, String fldName, Constant val) {
+		write(fieldPosition(slot, fldName), val.castTo(ti.schema().type(
+				fldName)));
+	}
+
+	private void write(int pos, Constant val) {
+		try {
+			tx.concurrencyMgr().xLockIndexBlock(blk);
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+		long lsn = tx.recoveryMgr().setVal(buff, pos, val);
+		buff.setVal(pos, val, tx.getTransactionNumber(), lsn);
+	}
+
+	private int fieldPosition(int slot, String fldName) {
+		return HEADER_SIZE + slot * ti.recordSize() + ti.offset(fldName);
+	}
+}
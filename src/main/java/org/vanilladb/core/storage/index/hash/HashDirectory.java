@@ -0,0 +1,181 @@
+package org.vanilladb.core.storage.index.hash;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.buffer.PageFormatter;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The directory of an {@link ExtendibleHashIndex}, which maps the last
+ * <em>global depth</em> bits of a hash value to the number of a bucket block.
+ * <p>
+ * The directory file is an array of big integers, the i-th of which is the
+ * bucket of the hash values ending with the bits of i. Each block begins with
+ * an integer, which holds the global depth in block 0, followed by as many
+ * entries as the block holds. The directory doubles by copying its entries
+ * into the blocks after them, and then increasing the global depth, so a
+ * reader never sees an entry that has not been written.
+ * </p>
+ * <p>
+ * The directory is read without locks. A reader takes the versions of the
+ * pages read, and reads them again if a writer has latched them in the
+ * meantime. The writers latch the pages they modify, and xlock the directory
+ * file until they commit.
+ * </p>
+ */
+class HashDirectory {
+	/**
+	 * The largest global depth of a directory.
+	 */
+	static final int MAX_DEPTH = 20;
+
+	private static final int ENTRIES = Page.maxSize(INTEGER),
+			ENTRY_SIZE = Page.maxSize(BIGINT);
+
+	/**
+	 * Returns a formatter of the blocks of a directory file. The global depth
+	 * of a new directory is 0, and its only entry is bucket block 0.
+	 */
+	static PageFormatter formatter() {
+		return new PageFormatter() {
+			@Override
+			public void format(Page page) {
+				page.setVal(0, new IntegerConstant(0));
+				int blockSize = page.blockSize();
+				for (int pos = ENTRIES; pos + ENTRY_SIZE <= blockSize; pos
+						+= ENTRY_SIZE)
+					page.setVal(pos, new BigIntConstant(0));
+			}
+		};
+	}
+
+	private String fileName;
+	private Transaction tx;
+	private int entriesPerBlock;
+	private BufferMgr bufferMgr = VanillaDB.bufferMgr();
+	// the buffer of block 0, and that of the block read last, if another one
+	private Buffer root, buff;
+
+	/**
+	 * Opens the directory of the specified file, which must exist.
+	 * 
+	 * @param fileName
+	 *            the name of the directory file
+	 * @param tx
+	 *            the calling transaction
+	 */
+	HashDirectory(String fileName, Transaction tx) {
+		this.fileName = fileName;
+		this.tx = tx;
+		entriesPerBlock = (Page.blockSize(fileName) - ENTRIES) / ENTRY_SIZE;
+		root = bufferMgr.pin(new BlockId(fileName, 0),
+				tx.getTransactionNumber());
+	}
+
+	/**
+	 * Closes the directory by unpinning its buffers.
+	 */
+	void close() {
+		if (buff != null)
+			bufferMgr.unpin(tx.getTransactionNumber(), buff);
+		bufferMgr.unpin(tx.getTransactionNumber(), root);
+		buff = root = null;
+	}
+
+	/**
+	 * Returns the number of the bucket block of the specified hash value. The
+	 * bucket may be split by another transaction right after the directory is
+	 * read, so the result must be read again after the bucket is locked.
+	 * 
+	 * @param hash
+	 *            the hash value
+	 * @return the number of the bucket block
+	 */
+	long bucketNumber(int hash) {
+		while (true) {
+			long rootVersion = root.stableVersion();
+			int i = hash & mask(globalDepth());
+			Buffer b = buffer(i / entriesPerBlock);
+			long version = b.stableVersion();
+			long blkNum = tx.concurrencyMgr().getLong(b, entryPosition(i));
+			if (b.validate(version) && root.validate(rootVersion))
+				return blkNum;
+		}
+	}
+
+	/**
+	 * Returns the global depth of the directory.
+	 */
+	int globalDepth() {
+		return tx.concurrencyMgr().getInt(root, 0);
+	}
+
+	/**
+	 * Doubles the directory, and increases its global depth by one. The
+	 * directory file must have been xlocked.
+	 */
+	void doubleSize() {
+		int depth = globalDepth(), size = 1 << depth;
+		long[] entries = new long[size];
+		for (int i = 0; i < size; i++)
+			entries[i] = tx.concurrencyMgr().getLong(
+					buffer(i / entriesPerBlock), entryPosition(i));
+		for (int i = 0; i < size; i++)
+			setEntry(size + i, entries[i]);
+		write(root, 0, new IntegerConstant(depth + 1));
+	}
+
+	/**
+	 * Sets the bucket block of the specified entry. The directory file must
+	 * have been xlocked.
+	 */
+	void setEntry(int i, long blkNum) {
+		int n = i / entriesPerBlock;
+		while (n >= VanillaDB.fileMgr().size(fileName)) {
+			Buffer b = bufferMgr.pinNew(fileName, formatter(),
+					tx.getTransactionNumber());
+			bufferMgr.unpin(tx.getTransactionNumber(), b);
+		}
+		write(buffer(n), entryPosition(i), new BigIntConstant(blkNum));
+	}
+
+	static int mask(int depth) {
+		return (1 << depth) - 1;
+	}
+
+	private Buffer buffer(int n) {
+		if (n == 0)
+			return root;
+		if (buff != null && buff.block().number() != n) {
+			bufferMgr.unpin(tx.getTransactionNumber(), buff);
+			buff = null;
+		}
+		if (buff == null)
+			buff = bufferMgr.pin(new BlockId(fileName, n),
+					tx.getTransactionNumber());
+		return buff;
+	}
+
+	private int entryPosition(int i) {
+		return ENTRIES + (i % entriesPerBlock) * ENTRY_SIZE;
+	}
+
+	private void write(Buffer b, int pos, Constant val) {
+		b.latch();
+		try {
+			long lsn = tx.recoveryMgr().setVal(b, pos, val);
+			b.setVal(pos, val, tx.getTransactionNumber(), lsn);
+		} finally {
+			b.unlatch();
+		}
+	}
+}
@@ -2,7 +2,7 @@ package org.vanilladb.core.storage.index.hash;
 
 import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.INTEGER;
-import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
+import static org.vanilladb.core.storage.file.Page.INDEX_BLOCK_SIZE;
 
 import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
@@ -11,6 +11,7 @@ import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
 import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.record.RecordFile;
@@ -39,7 +40,7 @@ public class HashIndex extends Index {
 
 	public static long searchCost(Type fldType, long totRecs, long matchRecs) {
 		TableInfo idxti = new TableInfo("", schema(fldType));
-		int rpb = BLOCK_SIZE / idxti.recordSize();
+		int rpb = INDEX_BLOCK_SIZE / idxti.recordSize();
 		return (totRecs / rpb) / NUM_BUCKETS;
 	}
 
@@ -102,7 +103,8 @@ public class HashIndex extends Index {
 		this.searchKey = searchRange.asConstant();
 		int bucket = searchKey.hashCode() % NUM_BUCKETS;
 		String tblname = idxName + bucket;
-		TableInfo ti = new TableInfo(tblname, schema(fldType));
+		TableInfo ti = new TableInfo(tblname, schema(fldType), tblname
+				+ FileMgr.INDEX_FILE_EXTENSION);
 		this.rf = ti.open(tx);
 		rf.beforeFirst();
 	}
@@ -14,6 +14,7 @@ import org.vanilladb.core.storage.file.Page;
 public class BasicLogRecord {
 	private Page pg;
 	private int pos;
+	private long lsn;
 
 	/**
 	 * A log record located at the specified position of the specified page.
@@ -23,10 +24,22 @@ public class BasicLogRecord {
 	 *            the page containing the log record
 	 * @param pos
 	 *            the position of the log record
+	 * @param lsn
+	 *            the LSN of the log record
 	 */
-	public BasicLogRecord(Page pg, int pos) {
+	public BasicLogRecord(Page pg, int pos, long lsn) {
 		this.pg = pg;
 		this.pos = pos;
+		this.lsn = lsn;
+	}
+
+	/**
+	 * Returns the LSN of this log record.
+	 * 
+	 * @return the LSN
+	 */
+	public long getLSN() {
+		return lsn;
 	}
 
 	/**
@@ -49,7 +49,8 @@ class LogIterator implements Iterator<BasicLogRecord> {
 		if (currentRec == 0)
 			moveToNextBlock();
 		currentRec = (Integer) pg.getVal(currentRec, INTEGER).asJavaVal();
-		return new BasicLogRecord(pg, currentRec + Page.maxSize(INTEGER));
+		int pos = currentRec + Page.maxSize(INTEGER);
+		return new BasicLogRecord(pg, pos, LogMgr.lsnOf(blk.number(), pos));
 	}
 
 	@Override
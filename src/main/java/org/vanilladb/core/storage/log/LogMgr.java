@@ -5,6 +5,8 @@ import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
 
 
 import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.Constant;
@@ -18,22 +20,68 @@ import org.vanilladb.core.storage.file.*;
  * values, which are written and read by the
  * {@link org.vanilladb.core.storage.tx.recovery.RecoveryMgr recovery
  * manager}.
+ * 
+ * <p>
+ * The LSN of a log record is its byte offset in the log file. The tail of the
+ * log is kept in a ring of <code>LOG_BUFFER_PAGES</code> pages. Records are
+ * appended to the pages in memory while earlier pages are being written, and
+ * {@link #flush(long)} writes only the pages up to the requested record.
+ * </p>
+ * 
+ * <p>
+ * If the property <code>GROUP_COMMIT</code> is true, the log records of
+ * committing transactions are flushed by a dedicated log writer thread. The
+ * writer collects the commit requests arriving within a short window and
+ * writes them out together, releasing all their transactions at once.
+ * </p>
  */
 public class LogMgr implements Iterable<BasicLogRecord> {
+	private static Logger logger = Logger.getLogger(LogMgr.class.getName());
 	/**
 	 * The location where the pointer to the last integer in the page is. A
 	 * value of 0 means that the pointer is the first value in the page.
 	 */
 	public static final int LAST_POS = 0;
 	public static final String LOG_FILE;
+	private static final int LOG_BUFFER_PAGES;
+	private static final boolean GROUP_COMMIT;
+	static final long BATCH_WINDOW;
+	private static final int MAX_BATCH_SIZE;
 
-	private Page myPage = new Page();
+	private String logFile;
+	// the page holding block n is logPages[n % LOG_BUFFER_PAGES]
+	private Page[] logPages;
+	private Page currentPage;
 	private BlockId currentBlk;
 	private int currentPos;
+	// the LSN of the most recently appended log record
+	private long lastLsn = -1;
+	// all log records up to this LSN are on disk
+	private volatile long flushedLsn = -1;
+	// the earliest block whose page may differ from the disk
+	private long firstUnwrittenBlk;
+	private boolean flushing;
+
+	private boolean groupCommit;
+	// guards the fields below, which describe the group commit requests
+	private Object commitQueue = new Object();
+	private int numPendingCommits;
+	private long startedFlushes, completedFlushes;
 
 	static {
 		String prop = System.getProperty(LogMgr.class.getName() + ".LOG_FILE");
 		LOG_FILE = (prop == null ? "vanilladb.log" : prop.trim());
+		prop = System.getProperty(LogMgr.class.getName()
+				+ ".LOG_BUFFER_PAGES");
+		LOG_BUFFER_PAGES = (prop == null ? 4 : Math.max(1, Integer
+				.parseInt(prop.trim())));
+		prop = System.getProperty(LogMgr.class.getName() + ".GROUP_COMMIT");
+		GROUP_COMMIT = (prop == null ? false : Boolean.parseBoolean(prop
+				.trim()));
+		prop = System.getProperty(LogMgr.class.getName() + ".BATCH_WINDOW");
+		BATCH_WINDOW = (prop == null ? 1 : Long.parseLong(prop.trim()));
+		prop = System.getProperty(LogMgr.class.getName() + ".MAX_BATCH_SIZE");
+		MAX_BATCH_SIZE = (prop == null ? 64 : Integer.parseInt(prop.trim()));
 	}
 
 	/**
@@ -46,26 +94,131 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	 * 
 	 */
 	public LogMgr() {
-		long logsize = VanillaDB.fileMgr().size(LOG_FILE);
-		if (logsize == 0)
-			appendNewBlock();
-		else {
-			currentBlk = new BlockId(LOG_FILE, logsize - 1);
-			myPage.read(currentBlk);
+		this(GROUP_COMMIT);
+	}
+
+	/**
+	 * Creates the manager for the specified log file, with group commit
+	 * enabled or not regardless of the configuration.
+	 * 
+	 * @param groupCommit
+	 *            whether commits are flushed by a log writer thread
+	 */
+	LogMgr(boolean groupCommit) {
+		this(LOG_FILE, groupCommit);
+	}
+
+	/**
+	 * Creates the manager for the specified log file instead of the
+	 * configured one, so that the tests can append their own records without
+	 * touching the system log.
+	 * 
+	 * @param logFile
+	 *            the name of the log file
+	 * @param groupCommit
+	 *            whether commits are flushed by a log writer thread
+	 */
+	LogMgr(String logFile, boolean groupCommit) {
+		this.logFile = logFile;
+		this.groupCommit = groupCommit;
+		logPages = new Page[LOG_BUFFER_PAGES];
+		for (int i = 0; i < LOG_BUFFER_PAGES; i++)
+			logPages[i] = new Page();
+		long logsize = VanillaDB.fileMgr().size(logFile);
+		if (logsize == 0) {
+			currentBlk = new BlockId(logFile, 0);
+			currentPage = logPages[0];
+			setLastRecordPosition(0);
+			currentPos = Page.maxSize(INTEGER);
+			currentPage.write(currentBlk);
+		} else {
+			currentBlk = new BlockId(logFile, logsize - 1);
+			currentPage = pageOf(currentBlk.number());
+			currentPage.read(currentBlk);
 			currentPos = getLastRecordPosition() + Page.maxSize(INTEGER);
 		}
+		firstUnwrittenBlk = currentBlk.number();
+		flushedLsn = lastLsn = lsnOf(currentBlk.number(), currentPos) - 1;
+		if (groupCommit) {
+			Thread thread = new Thread(new LogWriter());
+			thread.setName("LogWriter");
+			thread.setDaemon(true);
+			thread.start();
+			if (logger.isLoggable(Level.INFO))
+				logger.info("group commit enabled, batch window "
+						+ BATCH_WINDOW + " ms, max batch size "
+						+ MAX_BATCH_SIZE);
+		}
 	}
 
 	/**
 	 * Ensures that the log records corresponding to the specified LSN has been
 	 * written to disk. All earlier log records will also be written to disk.
+	 * The pages are written without blocking the threads appending log
+	 * records.
 	 * 
 	 * @param lsn
 	 *            the LSN of a log record
 	 */
-	public synchronized void flush(long lsn) {
-		if (lsn >= currentLSN())
-			flush();
+	public void flush(long lsn) {
+		if (lsn <= flushedLsn)
+			return;
+		long fromBlk, toBlk, targetLsn;
+		synchronized (this) {
+			while (flushing) {
+				waitForFlush();
+				if (lsn <= flushedLsn)
+					return;
+			}
+			flushing = true;
+			fromBlk = firstUnwrittenBlk;
+			toBlk = currentBlk.number();
+			targetLsn = lastLsn;
+		}
+		try {
+			// only the page of toBlk can be modified meanwhile
+			for (long blkNum = fromBlk; blkNum <= toBlk; blkNum++)
+				pageOf(blkNum).write(new BlockId(logFile, blkNum));
+		} finally {
+			synchronized (this) {
+				firstUnwrittenBlk = toBlk;
+				if (targetLsn > flushedLsn)
+					flushedLsn = targetLsn;
+				flushing = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Ensures that the commit (or rollback) record with the specified LSN has
+	 * been written to disk. In the group commit mode, the calling thread waits
+	 * until the log writer has flushed the log on behalf of all the
+	 * transactions committing at about the same time. Otherwise, this method
+	 * is the same as {@link #flush(long)}.
+	 * 
+	 * @param lsn
+	 *            the LSN of a commit record
+	 */
+	public void flushForCommit(long lsn) {
+		if (!groupCommit) {
+			flush(lsn);
+			return;
+		}
+		if (lsn <= flushedLsn)
+			return;
+		synchronized (commitQueue) {
+			// a flush that has started may have missed the record
+			long target = startedFlushes + 1;
+			numPendingCommits++;
+			commitQueue.notifyAll();
+			try {
+				while (completedFlushes < target)
+					commitQueue.wait();
+			} catch (InterruptedException e) {
+				throw new RuntimeException("interrupted while flushing log");
+			}
+		}
 	}
 
 	/**
@@ -75,9 +228,15 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	 * @see java.lang.Iterable#iterator()
 	 */
 	@Override
-	public synchronized Iterator<BasicLogRecord> iterator() {
-		flush();
-		return new LogIterator(currentBlk);
+	public Iterator<BasicLogRecord> iterator() {
+		BlockId blk;
+		long lsn;
+		synchronized (this) {
+			blk = currentBlk;
+			lsn = lastLsn;
+		}
+		flush(lsn);
+		return new LogIterator(blk);
 	}
 
 	/**
@@ -85,65 +244,136 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	 * of values. The method also writes an integer to the end of each log
 	 * record whose value is the offset of the corresponding integer for the
 	 * previous log record. These integers allow log records to be read in
-	 * reverse order.
+	 * reverse order. If the ring of pages is full, the log is flushed first,
+	 * without holding the lock of this log manager.
 	 * 
 	 * @param rec
 	 *            the list of values
 	 * @return the LSN of the log record
 	 */
-	public synchronized long append(Constant[] rec) {
+	public long append(Constant[] rec) {
 		// 4 bytes for the integer that points to the previous log record
 		int recsize = Page.maxSize(INTEGER);
 		for (Constant c : rec)
 			recsize += Page.size(c);
-		// if the log record doesn't fit, move to the next block
-		if (currentPos + recsize >= BLOCK_SIZE) {
-			flush();
-			appendNewBlock();
+		while (true) {
+			long flushLsn;
+			synchronized (this) {
+				// if the log record doesn't fit, move to the next block
+				if (currentPos + recsize < BLOCK_SIZE || moveToNextBlock()) {
+					long lsn = lsnOf(currentBlk.number(), currentPos);
+					for (Constant c : rec)
+						appendVal(c);
+					finalizeRecord();
+					lastLsn = lsn;
+					return lsn;
+				}
+				flushLsn = lastLsn;
+			}
+			flush(flushLsn);
 		}
-		for (Constant c : rec)
-			appendVal(c);
-		finalizeRecord();
-		return currentLSN();
 	}
 
 	/**
-	 * Adds the specified value to the page at the position denoted by
-	 * currentPos. Then increments currentPos by the size of the value.
+	 * Reads the log record having the specified LSN. The log is flushed up to
+	 * the record first if necessary, and then the block containing the record
+	 * is read from disk, so only that block is touched no matter how far the
+	 * record is from the end of the log.
 	 * 
-	 * @param val
-	 *            the value to be added to the page
+	 * @param lsn
+	 *            the LSN of a log record
+	 * @return the log record
 	 */
-	private void appendVal(Constant val) {
-		myPage.setVal(currentPos, val);
-		currentPos += Page.size(val);
+	public BasicLogRecord read(long lsn) {
+		flush(lsn);
+		Page pg = new Page();
+		pg.read(new BlockId(logFile, blockNumberOf(lsn)));
+		return new BasicLogRecord(pg, (int) (lsn % BLOCK_SIZE), lsn);
+	}
+
+	/**
+	 * Returns the LSN of the most recently appended log record.
+	 * 
+	 * @return the LSN of the last log record
+	 */
+	public synchronized long lastLSN() {
+		return lastLsn;
 	}
 
 	/**
-	 * Returns the LSN of the most recent log record. As implemented, the LSN is
-	 * the block number where the record is stored. Thus every log record in a
-	 * block has the same LSN.
+	 * Returns the LSN of the last log record known to be on disk.
 	 * 
-	 * @return the LSN of the most recent log record
+	 * @return the LSN of the last flushed log record
+	 */
+	public long flushedLSN() {
+		return flushedLsn;
+	}
+
+	/**
+	 * Returns the block number of the log record having the specified LSN.
+	 * 
+	 * @param lsn
+	 *            the LSN of a log record
+	 * @return the block number
 	 */
-	private long currentLSN() {
-		return currentBlk.number();
+	static long blockNumberOf(long lsn) {
+		return lsn / BLOCK_SIZE;
 	}
 
 	/**
-	 * Writes the current page to the log file.
+	 * Returns the LSN of the log record at the specified position of the
+	 * specified block.
+	 * 
+	 * @param blkNum
+	 *            the block number
+	 * @param pos
+	 *            the position of the log record in the block
+	 * @return the LSN
 	 */
-	private void flush() {
-		myPage.write(currentBlk);
+	static long lsnOf(long blkNum, int pos) {
+		return blkNum * BLOCK_SIZE + pos;
 	}
 
 	/**
-	 * Clear the current page, and append it to the log file.
+	 * Adds the specified value to the page at the position denoted by
+	 * currentPos. Then increments currentPos by the size of the value.
+	 * 
+	 * @param val
+	 *            the value to be added to the page
 	 */
-	private void appendNewBlock() {
+	private void appendVal(Constant val) {
+		currentPage.setVal(currentPos, val);
+		currentPos += Page.size(val);
+	}
+
+	/**
+	 * Clears the next page of the ring and makes it the current page. Returns
+	 * false without moving if the next page still holds a block which has not
+	 * been written, in which case the log must be flushed first.
+	 * 
+	 * @return true if the current page is moved
+	 */
+	private boolean moveToNextBlock() {
+		long nextBlkNum = currentBlk.number() + 1;
+		if (nextBlkNum - firstUnwrittenBlk >= LOG_BUFFER_PAGES)
+			return false;
+		currentBlk = new BlockId(logFile, nextBlkNum);
+		currentPage = pageOf(nextBlkNum);
 		setLastRecordPosition(0);
 		currentPos = Page.maxSize(INTEGER);
-		currentBlk = myPage.append(LOG_FILE);
+		return true;
+	}
+
+	private Page pageOf(long blkNum) {
+		return logPages[(int) (blkNum % LOG_BUFFER_PAGES)];
+	}
+
+	private void waitForFlush() {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("interrupted while flushing log");
+		}
 	}
 
 	/**
@@ -154,16 +384,61 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	 * in the page.
 	 */
 	private void finalizeRecord() {
-		myPage.setVal(currentPos, new IntegerConstant(getLastRecordPosition()));
+		currentPage.setVal(currentPos, new IntegerConstant(
+				getLastRecordPosition()));
 		setLastRecordPosition(currentPos);
 		currentPos += Page.maxSize(INTEGER);
 	}
 
 	private int getLastRecordPosition() {
-		return (Integer) myPage.getVal(LAST_POS, INTEGER).asJavaVal();
+		return (Integer) currentPage.getVal(LAST_POS, INTEGER).asJavaVal();
 	}
 
 	private void setLastRecordPosition(int pos) {
-		myPage.setVal(LAST_POS, new IntegerConstant(pos));
+		currentPage.setVal(LAST_POS, new IntegerConstant(pos));
+	}
+
+	/**
+	 * The log writer of the group commit mode. It waits for the first commit
+	 * request, keeps collecting requests until the batch window closes or the
+	 * batch is full, then flushes the log once and wakes up all the committing
+	 * transactions of the batch.
+	 */
+	private class LogWriter implements Runnable {
+
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					long flushNum = waitForBatch();
+					long lsn;
+					synchronized (LogMgr.this) {
+						lsn = lastLsn;
+					}
+					flush(lsn);
+					synchronized (commitQueue) {
+						completedFlushes = flushNum;
+						commitQueue.notifyAll();
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		private long waitForBatch() throws InterruptedException {
+			synchronized (commitQueue) {
+				while (numPendingCommits == 0)
+					commitQueue.wait();
+				long deadline = System.currentTimeMillis() + BATCH_WINDOW;
+				long remaining = BATCH_WINDOW;
+				while (numPendingCommits < MAX_BATCH_SIZE && remaining > 0) {
+					commitQueue.wait(remaining);
+					remaining = deadline - System.currentTimeMillis();
+				}
+				numPendingCommits = 0;
+				return ++startedFlushes;
+			}
+		}
 	}
 }
@@ -1,5 +1,6 @@
 package org.vanilladb.core.storage.metadata;
 
+import java.util.List;
 import java.util.Map;
 
 import org.vanilladb.core.sql.Schema;
@@ -27,6 +28,11 @@ public class MetadataMgr {
 		tblMgr.createTable(tblName, sch, tx);
 	}
 
+	public void createTable(String tblName, Schema sch, int format,
+			Transaction tx) {
+		tblMgr.createTable(tblName, sch, format, tx);
+	}
+
 	public TableInfo getTableInfo(String tblName, Transaction tx) {
 		return tblMgr.getTableInfo(tblName, tx);
 	}
@@ -44,10 +50,21 @@ public class MetadataMgr {
 		idxMgr.createIndex(idxName, tblName, fldName, indexType, tx);
 	}
 
+	public void createIndex(String idxName, String tblName,
+			List<String> fldNames, List<String> inclFlds, int indexType,
+			Transaction tx) {
+		idxMgr.createIndex(idxName, tblName, fldNames, inclFlds, indexType,
+				tx);
+	}
+
 	public Map<String, IndexInfo> getIndexInfo(String tblName, Transaction tx) {
 		return idxMgr.getIndexInfo(tblName, tx);
 	}
 
+	public List<IndexInfo> getAllIndexInfo(String tblName, Transaction tx) {
+		return idxMgr.getAllIndexInfo(tblName, tx);
+	}
+
 	public TableStatInfo getTableStatInfo(TableInfo ti, Transaction tx) {
 		return statMgr.getTableStatInfo(ti, tx);
 	}
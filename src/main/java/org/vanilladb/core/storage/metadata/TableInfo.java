@@ -3,6 +3,7 @@ package org.vanilladb.core.storage.metadata;
 import java.util.*;
 
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.tx.Transaction;
@@ -10,12 +11,28 @@ import org.vanilladb.core.storage.tx.Transaction;
 
 /**
  * The metadata about a table and its records.
+ *
+ * <p>
+ * The records of a table are stored in one of two formats. In the
+ * {@link #FORMAT_FIXED fixed} format, every record takes a slot of the same
+ * size, in which each varchar field reserves the space of its longest value.
+ * In the {@link #FORMAT_SLOTTED slotted} format, a page keeps a directory of
+ * slots pointing to records of variable lengths, and a varchar field holds the
+ * offset of its value stored apart from the fixed-size fields of the record.
+ * </p>
  */
 public class TableInfo {
+	/**
+	 * The record formats of a table.
+	 */
+	public static final int FORMAT_FIXED = 0, FORMAT_SLOTTED = 1;
+
 	private Schema schema;
 	private Map<String, Integer> offsets;
 	private int recSize;
 	private String tblName;
+	private String fileName;
+	private int format;
 
 	/**
 	 * Creates a TableInfo object, given a table name and schema. The
@@ -28,17 +45,78 @@ public class TableInfo {
 	 *            the schema of the table's records
 	 */
 	public TableInfo(String tblName, Schema schema) {
+		this(tblName, schema, FORMAT_FIXED);
+	}
+
+	/**
+	 * Creates a TableInfo object whose records are stored in the specified
+	 * format. This constructor is used when a table is created.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param schema
+	 *            the schema of the table's records
+	 * @param format
+	 *            the record format of the table
+	 */
+	public TableInfo(String tblName, Schema schema, int format) {
+		if (format != FORMAT_FIXED && format != FORMAT_SLOTTED)
+			throw new IllegalArgumentException("unsupported record format: "
+					+ format);
 		this.schema = schema;
 		this.tblName = tblName;
+		this.fileName = tblName + ".tbl";
+		this.format = format;
 		offsets = new HashMap<String, Integer>();
 		int pos = 0;
 		for (String fldName : schema.fields()) {
 			offsets.put(fldName, pos);
-			pos += Page.maxSize(schema.type(fldName));
+			Type type = schema.type(fldName);
+			// a slotted record keeps the offset of each varchar value
+			if (format == FORMAT_SLOTTED && !type.isFixedSize())
+				pos += Page.maxSize(Type.INTEGER);
+			else
+				pos += Page.maxSize(type);
 		}
 		recSize = pos;
 	}
 
+	/**
+	 * Creates a TableInfo object stored in the specified file instead of the
+	 * default one. This constructor is used for the records of indices, whose
+	 * files are told from those of the tables by their names.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param schema
+	 *            the schema of the table's records
+	 * @param fileName
+	 *            the name of the file holding the records
+	 */
+	public TableInfo(String tblName, Schema schema, String fileName) {
+		this(tblName, schema, FORMAT_FIXED, fileName);
+	}
+
+	/**
+	 * Creates a TableInfo object whose records are stored in the specified
+	 * format and file. This constructor is used for the records of indices
+	 * whose pages lay out the records as the slotted format does.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param schema
+	 *            the schema of the table's records
+	 * @param format
+	 *            the record format of the table
+	 * @param fileName
+	 *            the name of the file holding the records
+	 */
+	public TableInfo(String tblName, Schema schema, int format,
+			String fileName) {
+		this(tblName, schema, format);
+		this.fileName = fileName;
+	}
+
 	/**
 	 * Creates a TableInfo object from the specified metadata. This constructor
 	 * is used when the metadata is retrieved from the catalog.
@@ -54,20 +132,42 @@ public class TableInfo {
 	 */
 	public TableInfo(String tblName, Schema schema,
 			Map<String, Integer> offsets, int recSize) {
+		this(tblName, schema, offsets, recSize, FORMAT_FIXED);
+	}
+
+	/**
+	 * Creates a TableInfo object from the specified metadata of a table stored
+	 * in the specified record format.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param schema
+	 *            the schema of the table's records
+	 * @param offsets
+	 *            the already-calculated offsets of the fields within a record
+	 * @param recSize
+	 *            the already-calculated length of each record
+	 * @param format
+	 *            the record format of the table
+	 */
+	public TableInfo(String tblName, Schema schema,
+			Map<String, Integer> offsets, int recSize, int format) {
 		this.tblName = tblName;
+		this.fileName = tblName + ".tbl";
 		this.schema = schema;
 		this.offsets = offsets;
 		this.recSize = recSize;
+		this.format = format;
 	}
 
 	/**
-	 * Returns the filename assigned to this table. Currently, the filename is
-	 * the table name followed by ".tbl".
+	 * Returns the filename assigned to this table. Unless specified when
+	 * created, the filename is the table name followed by ".tbl".
 	 * 
 	 * @return the name of the file assigned to the table
 	 */
 	public String fileName() {
-		return tblName + ".tbl";
+		return fileName;
 	}
 
 	/**
@@ -100,7 +200,17 @@ public class TableInfo {
 	}
 
 	/**
-	 * Returns the number of bytes required to store a record in disk.
+	 * Returns the record format of the table.
+	 * 
+	 * @return {@link #FORMAT_FIXED} or {@link #FORMAT_SLOTTED}
+	 */
+	public int format() {
+		return format;
+	}
+
+	/**
+	 * Returns the number of bytes required to store a record in disk. For a
+	 * table in the slotted format, the varchar values are not counted.
 	 * 
 	 * @return the size of a record, in bytes
 	 */
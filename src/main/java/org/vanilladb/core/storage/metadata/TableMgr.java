@@ -26,7 +26,7 @@ public class TableMgr {
 	 * A field name of the table catalog.
 	 */
 	public static final String TCAT_TBLNAME = "tblname",
-			TCAT_RECSIZE = "recsize";
+			TCAT_RECSIZE = "recsize", TCAT_FORMAT = "format";
 
 	/**
 	 * Name of the field catalog.
@@ -67,6 +67,7 @@ public class TableMgr {
 		Schema tcatSchema = new Schema();
 		tcatSchema.addField(TCAT_TBLNAME, VARCHAR(MAX_NAME));
 		tcatSchema.addField(TCAT_RECSIZE, INTEGER);
+		tcatSchema.addField(TCAT_FORMAT, INTEGER);
 		tcatInfo = new TableInfo(TCAT, tcatSchema);
 
 		Schema fcatSchema = new Schema();
@@ -84,7 +85,8 @@ public class TableMgr {
 	}
 
 	/**
-	 * Creates a new table having the specified name and schema.
+	 * Creates a new table having the specified name and schema, whose records
+	 * are stored in the fixed format.
 	 * 
 	 * @param tblName
 	 *            the name of the new table
@@ -94,12 +96,31 @@ public class TableMgr {
 	 *            the transaction creating the table
 	 */
 	public void createTable(String tblName, Schema sch, Transaction tx) {
-		TableInfo ti = new TableInfo(tblName, sch);
+		createTable(tblName, sch, TableInfo.FORMAT_FIXED, tx);
+	}
+
+	/**
+	 * Creates a new table having the specified name, schema, and record
+	 * format.
+	 * 
+	 * @param tblName
+	 *            the name of the new table
+	 * @param sch
+	 *            the table's schema
+	 * @param format
+	 *            the record format of the table
+	 * @param tx
+	 *            the transaction creating the table
+	 */
+	public void createTable(String tblName, Schema sch, int format,
+			Transaction tx) {
+		TableInfo ti = new TableInfo(tblName, sch, format);
 		// insert one record into tblcat
 		RecordFile tcatfile = tcatInfo.open(tx);
 		tcatfile.insert();
 		tcatfile.setVal(TCAT_TBLNAME, new VarcharConstant(tblName));
 		tcatfile.setVal(TCAT_RECSIZE, new IntegerConstant(ti.recordSize()));
+		tcatfile.setVal(TCAT_FORMAT, new IntegerConstant(format));
 		tcatfile.close();
 
 		// insert a record into fldcat for each field
@@ -129,11 +150,12 @@ public class TableMgr {
 	public TableInfo getTableInfo(String tblName, Transaction tx) {
 		RecordFile tcatfile = tcatInfo.open(tx);
 		tcatfile.beforeFirst();
-		int recsize = -1;
+		int recsize = -1, format = TableInfo.FORMAT_FIXED;
 		while (tcatfile.next()) {
 			String t = (String) tcatfile.getVal(TCAT_TBLNAME).asJavaVal();
 			if (t.equals(tblName)) {
 				recsize = (Integer) tcatfile.getVal(TCAT_RECSIZE).asJavaVal();
+				format = (Integer) tcatfile.getVal(TCAT_FORMAT).asJavaVal();
 				break;
 			}
 		}
@@ -158,6 +180,6 @@ public class TableMgr {
 		fcatfile.close();
 		if (recsize == -1)
 			return null;
-		return new TableInfo(tblName, sch, offsets, recsize);
+		return new TableInfo(tblName, sch, offsets, recsize, format);
 	}
 }
\ No newline at end of file
@@ -1,9 +1,20 @@
 package org.vanilladb.core.storage.metadata.index;
 
 import static org.vanilladb.core.storage.index.Index.IDX_BTREE;
+import static org.vanilladb.core.storage.index.Index.IDX_EXT_HASH;
 import static org.vanilladb.core.storage.index.Index.IDX_HASH;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.CompositeConstant;
+import org.vanilladb.core.sql.CompositeType;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Record;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.TableNotFoundException;
@@ -14,9 +25,16 @@ import org.vanilladb.core.storage.tx.Transaction;
  * The information about an index. This information is used by the query planner
  * in order to estimate the costs of using the index, and to obtain the schema
  * of the index records. Its methods are essentially the same as those of Plan.
+ * <p>
+ * A B-tree index may be on several fields, whose values make up a
+ * {@link CompositeConstant composite} key, and may include the values of
+ * other fields in its records, so that a query reading only those fields is
+ * answered from the index alone.
+ * </p>
  */
 public class IndexInfo {
-	private String idxName, fldName, tblName;
+	private String idxName, tblName;
+	private List<String> fldNames, inclFlds;
 	private int idxType;
 
 	/**
@@ -34,11 +52,40 @@ public class IndexInfo {
 	 *            the calling transaction
 	 */
 	public IndexInfo(String idxName, String tblName, String fldName, int idxType) {
-		if (idxType != IDX_HASH && idxType != IDX_BTREE)
+		this(idxName, tblName, Collections.singletonList(fldName), Collections
+				.<String> emptyList(), idxType);
+	}
+
+	/**
+	 * Creates an IndexInfo object for the specified index on several fields,
+	 * which includes the values of the specified fields.
+	 * 
+	 * @param idxName
+	 *            the name of the index
+	 * @param tblName
+	 *            the name of the table
+	 * @param fldNames
+	 *            the names of the indexed fields, in the order of the
+	 *            components of the keys
+	 * @param inclFlds
+	 *            the names of the included fields
+	 * @param idxType
+	 *            the type of the index
+	 */
+	public IndexInfo(String idxName, String tblName, List<String> fldNames,
+			List<String> inclFlds, int idxType) {
+		if (idxType != IDX_HASH && idxType != IDX_BTREE
+				&& idxType != IDX_EXT_HASH)
 			throw new IllegalArgumentException();
+		if (fldNames.isEmpty()
+				|| (idxType != IDX_BTREE && (fldNames.size() > 1 || !inclFlds
+						.isEmpty())))
+			throw new IllegalArgumentException(
+					"only a B-tree index has several fields");
 		this.tblName = tblName;
 		this.idxName = idxName;
-		this.fldName = fldName;
+		this.fldNames = new ArrayList<String>(fldNames);
+		this.inclFlds = new ArrayList<String>(inclFlds);
 		this.idxType = idxType;
 	}
 
@@ -52,17 +99,109 @@ public class IndexInfo {
 		if (ti == null)
 			throw new TableNotFoundException("table '" + tblName
 					+ "' is not defined in catalog.");
-		return Index.newInstance(tblName + ".tbl", idxName, idxType, ti
-				.schema().type(fldName), tx);
+		return Index.newInstance(tblName + ".tbl", idxName, idxType,
+				keyType(ti.schema()), includedType(ti.schema()), tx);
 	}
 
 	/**
-	 * Returns the field name of this IndexInfo
+	 * Returns the field name of this IndexInfo, which is the first indexed
+	 * field if the index is on several fields.
 	 * 
 	 * @return the name of the indexed filed
 	 */
 	public String fieldName() {
-		return fldName;
+		return fldNames.get(0);
+	}
+
+	/**
+	 * Returns the names of the indexed fields, in the order of the
+	 * components of the keys.
+	 * 
+	 * @return the names of the indexed fields
+	 */
+	public List<String> fieldNames() {
+		return Collections.unmodifiableList(fldNames);
+	}
+
+	/**
+	 * Returns the names of the fields included in the index records.
+	 * 
+	 * @return the names of the included fields
+	 */
+	public List<String> includedFields() {
+		return Collections.unmodifiableList(inclFlds);
+	}
+
+	/**
+	 * Returns the type of the keys of the index on a table of the specified
+	 * schema, which is composite if the index is on several fields.
+	 * 
+	 * @param sch
+	 *            the schema of the indexed table
+	 * @return the type of the keys
+	 */
+	public Type keyType(Schema sch) {
+		if (fldNames.size() == 1)
+			return sch.type(fldNames.get(0));
+		List<Type> types = new ArrayList<Type>(fldNames.size());
+		for (String fld : fldNames)
+			types.add(sch.type(fld));
+		return new CompositeType(types);
+	}
+
+	/**
+	 * Returns the type of the values of the included fields on a table of the
+	 * specified schema, or null if the index includes no field.
+	 * 
+	 * @param sch
+	 *            the schema of the indexed table
+	 * @return the type of the values of the included fields
+	 */
+	public Type includedType(Schema sch) {
+		if (inclFlds.isEmpty())
+			return null;
+		List<Type> types = new ArrayList<Type>(inclFlds.size());
+		for (String fld : inclFlds)
+			types.add(sch.type(fld));
+		return new CompositeType(types);
+	}
+
+	/**
+	 * Returns the key of the index record of the specified data record.
+	 * 
+	 * @param rec
+	 *            the data record
+	 * @return the key of the index record
+	 */
+	public Constant key(Record rec) {
+		if (fldNames.size() == 1)
+			return rec.getVal(fldNames.get(0));
+		return values(rec, fldNames);
+	}
+
+	/**
+	 * Returns the values of the included fields of the specified data record,
+	 * or null if the index includes no field.
+	 * 
+	 * @param rec
+	 *            the data record
+	 * @return the values of the included fields
+	 */
+	public Constant includedValues(Record rec) {
+		return inclFlds.isEmpty() ? null : values(rec, inclFlds);
+	}
+
+	/**
+	 * Returns true if the index records hold the value of the specified
+	 * field, as a key component or an included field.
+	 * 
+	 * @param fldName
+	 *            the name of the field
+	 * @return true if the index records hold the value of the field
+	 */
+	public boolean covers(String fldName) {
+		return idxType == IDX_BTREE
+				&& (fldNames.contains(fldName) || inclFlds.contains(fldName));
 	}
 
 	/**
@@ -91,4 +230,11 @@ public class IndexInfo {
 	public String indexName() {
 		return idxName;
 	}
+
+	private static Constant values(Record rec, List<String> flds) {
+		List<Constant> vals = new ArrayList<Constant>(flds.size());
+		for (String fld : flds)
+			vals.add(rec.getVal(fld));
+		return new CompositeConstant(vals);
+	}
 }
@@ -24,11 +24,13 @@ public class IndexMgr {
 	public static final String ICAT = "idxcat";
 
 	/**
-	 * A field name of the index catalog.
+	 * A field name of the index catalog. The catalog has a record for each
+	 * field of an index, whose key position is the position of the field in
+	 * the keys, or -1 if the field is included in the index records.
 	 */
 	public static final String ICAT_IDXNAME = "idxname",
 			ICAT_TBLNAME = "tblname", ICAT_FLDNAME = "fldname",
-			ICAT_IDXTYPE = "idxtype";
+			ICAT_IDXTYPE = "idxtype", ICAT_KEYPOS = "keypos";
 
 	private TableInfo ti;
 
@@ -49,6 +51,7 @@ public class IndexMgr {
 			sch.addField(ICAT_TBLNAME, VARCHAR(MAX_NAME));
 			sch.addField(ICAT_FLDNAME, VARCHAR(MAX_NAME));
 			sch.addField(ICAT_IDXTYPE, INTEGER);
+			sch.addField(ICAT_KEYPOS, INTEGER);
 			tblMgr.createTable(ICAT, sch, tx);
 		}
 		ti = tblMgr.getTableInfo(ICAT, tx);
@@ -72,13 +75,49 @@ public class IndexMgr {
 	 */
 	public void createIndex(String idxName, String tblName, String fldName,
 			int idxType, Transaction tx) {
+		createIndex(idxName, tblName, Collections.singletonList(fldName),
+				Collections.<String> emptyList(), idxType, tx);
+	}
+
+	/**
+	 * Creates an index of the specified type on the specified fields, which
+	 * includes the values of other fields in its records.
+	 * 
+	 * @param idxName
+	 *            the name of the index
+	 * @param tblName
+	 *            the name of the indexed table
+	 * @param fldNames
+	 *            the names of the indexed fields, in the order of the
+	 *            components of the keys
+	 * @param inclFlds
+	 *            the names of the included fields
+	 * @param idxType
+	 *            the index type of the indexed field
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public void createIndex(String idxName, String tblName,
+			List<String> fldNames, List<String> inclFlds, int idxType,
+			Transaction tx) {
+		// checks the fields against the index type
+		new IndexInfo(idxName, tblName, fldNames, inclFlds, idxType);
 		RecordFile rf = ti.open(tx);
+		for (int i = 0; i < fldNames.size(); i++)
+			insertField(rf, idxName, tblName, fldNames.get(i), idxType, i);
+		for (String fld : inclFlds)
+			insertField(rf, idxName, tblName, fld, idxType, -1);
+		rf.close();
+	}
+
+	private void insertField(RecordFile rf, String idxName, String tblName,
+			String fldName, int idxType, int keyPos) {
 		rf.insert();
 		rf.setVal(ICAT_IDXNAME, new VarcharConstant(idxName));
 		rf.setVal(ICAT_TBLNAME, new VarcharConstant(tblName));
 		rf.setVal(ICAT_FLDNAME, new VarcharConstant(fldName));
 		rf.setVal(ICAT_IDXTYPE, new IntegerConstant(idxType));
-		rf.close();
+		rf.setVal(ICAT_KEYPOS, new IntegerConstant(keyPos));
 	}
 
 	/**
@@ -93,6 +132,32 @@ public class IndexMgr {
 	 */
 	public Map<String, IndexInfo> getIndexInfo(String tblName, Transaction tx) {
 		Map<String, IndexInfo> result = new HashMap<String, IndexInfo>();
+		for (IndexInfo ii : getAllIndexInfo(tblName, tx)) {
+			// an index on the field alone is preferred
+			IndexInfo other = result.get(ii.fieldName());
+			if (other == null || (other.fieldNames().size() > 1
+					&& ii.fieldNames().size() == 1))
+				result.put(ii.fieldName(), ii);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index info for all indexes on the specified table,
+	 * including the indexes on several fields, in the order of their
+	 * creation.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param tx
+	 *            the calling transaction
+	 * @return a list of IndexInfo objects
+	 */
+	public List<IndexInfo> getAllIndexInfo(String tblName, Transaction tx) {
+		Map<String, SortedMap<Integer, String>> flds =
+				new LinkedHashMap<String, SortedMap<Integer, String>>();
+		Map<String, List<String>> incls = new HashMap<String, List<String>>();
+		Map<String, Integer> types = new HashMap<String, Integer>();
 		RecordFile rf = ti.open(tx);
 		rf.beforeFirst();
 		while (rf.next())
@@ -100,10 +165,23 @@ public class IndexMgr {
 				String idxname = (String) rf.getVal(ICAT_IDXNAME).asJavaVal();
 				String fldname = (String) rf.getVal(ICAT_FLDNAME).asJavaVal();
 				int idxtype = (Integer) rf.getVal(ICAT_IDXTYPE).asJavaVal();
-				IndexInfo ii = new IndexInfo(idxname, tblName, fldname, idxtype);
-				result.put(fldname, ii);
+				int keypos = (Integer) rf.getVal(ICAT_KEYPOS).asJavaVal();
+				if (!flds.containsKey(idxname)) {
+					flds.put(idxname, new TreeMap<Integer, String>());
+					incls.put(idxname, new ArrayList<String>());
+					types.put(idxname, idxtype);
+				}
+				if (keypos >= 0)
+					flds.get(idxname).put(keypos, fldname);
+				else
+					incls.get(idxname).add(fldname);
 			}
 		rf.close();
+		List<IndexInfo> result = new ArrayList<IndexInfo>(flds.size());
+		for (String idxname : flds.keySet())
+			result.add(new IndexInfo(idxname, tblName, new ArrayList<String>(
+					flds.get(idxname).values()), incls.get(idxname), types
+					.get(idxname)));
 		return result;
 	}
 }
@@ -0,0 +1,274 @@
+package org.vanilladb.core.storage.record;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.buffer.PageFormatter;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
+
+/**
+ * Marks the blocks of a record file which have no room for another record, so
+ * that {@link RecordFile#insert()} goes straight to a block with room instead
+ * of visiting the blocks from the first one. The marks are kept as a bitmap in
+ * a file of its own, named after the record file with the
+ * {@link #FILE_EXTENSION} extension, one bit per block of the record file. A
+ * block without a bit in the file, like those of a table created before the
+ * map existed, is not marked.
+ *
+ * <p>
+ * A block is marked when an insertion fails on it, and unmarked when a record
+ * in it is deleted. The map takes no lock and the marks are not logged: the
+ * marks are hints, and a stale mark only costs a visit to a full block, or
+ * leaves the room of a block unused until a record in it is deleted. Since a
+ * word of the map holds the marks of many blocks changed by different
+ * transactions, a rolled back transaction does not restore whole words.
+ * Instead, the map remembers the bits the transaction changed, and puts back
+ * the old values of only those bits after the transaction has rolled back.
+ * </p>
+ */
+class FreeSpaceMap {
+	/**
+	 * The extension of the names of the free-space map files.
+	 */
+	static final String FILE_EXTENSION = ".fsm";
+
+	private static final int WORD_SIZE = Page.maxSize(BIGINT);
+	private static final int WORD_BITS = 64;
+
+	/**
+	 * Formats a page of a map, in which no block is marked.
+	 */
+	private static class MapFormatter implements PageFormatter {
+		@Override
+		public void format(Page page) {
+			Constant zero = new BigIntConstant(0);
+			int blockSize = page.blockSize();
+			for (int pos = 0; pos + WORD_SIZE <= blockSize; pos += WORD_SIZE)
+				page.setVal(pos, zero);
+		}
+	}
+
+	private Transaction tx;
+	private String fileName;
+	private int wordsPerBlock;
+	private long bitsPerBlock;
+	private BufferMgr bufferMgr = VanillaDB.bufferMgr();
+	private FileMgr fileMgr = VanillaDB.fileMgr();
+	/*
+	 * The bits changed by the transaction, by the number of their word in the
+	 * map: the mask of the changed bits, and their values before the changes.
+	 */
+	private Map<Long, long[]> changes;
+
+	/**
+	 * Opens the free-space map of the specified record file.
+	 *
+	 * @param dataFileName
+	 *            the name of the record file
+	 * @param tx
+	 *            the transaction
+	 */
+	FreeSpaceMap(String dataFileName, Transaction tx) {
+		this.tx = tx;
+		fileName = dataFileName + FILE_EXTENSION;
+		wordsPerBlock = Page.blockSize(fileName) / WORD_SIZE;
+		bitsPerBlock = (long) wordsPerBlock * WORD_BITS;
+	}
+
+	/**
+	 * Returns the number of the first block, at or after the specified one,
+	 * which is not marked full. Returns the number of blocks of the record
+	 * file if all those blocks are marked.
+	 *
+	 * @param blkNum
+	 *            the number of the block to start with
+	 * @param numBlocks
+	 *            the number of blocks of the record file
+	 * @return the number of a block which may have room, or
+	 *         <code>numBlocks</code>
+	 */
+	long nextFree(long blkNum, long numBlocks) {
+		long mapSize = fileMgr.size(fileName);
+		while (blkNum < numBlocks) {
+			long mapBlkNum = blkNum / bitsPerBlock;
+			// the blocks beyond the map are not marked
+			if (mapBlkNum >= mapSize)
+				return blkNum;
+			long base = mapBlkNum * bitsPerBlock;
+			Buffer buff = bufferMgr.pin(new BlockId(fileName, mapBlkNum),
+					tx.getTransactionNumber());
+			try {
+				int bit = (int) (blkNum - base);
+				for (int w = bit / WORD_BITS; w < wordsPerBlock; w++) {
+					long free = ~buff.getLong(w * WORD_SIZE);
+					if (w == bit / WORD_BITS)
+						free &= -1L << (bit % WORD_BITS);
+					if (free != 0)
+						return Math.min(base + (long) w * WORD_BITS
+								+ Long.numberOfTrailingZeros(free), numBlocks);
+				}
+			} finally {
+				bufferMgr.unpin(tx.getTransactionNumber(), buff);
+			}
+			blkNum = base + bitsPerBlock;
+		}
+		return numBlocks;
+	}
+
+	/**
+	 * Marks the specified block as having no room for another record.
+	 *
+	 * @param blkNum
+	 *            the number of the block
+	 */
+	void markFull(long blkNum) {
+		long mapBlkNum = blkNum / bitsPerBlock;
+		if (mapBlkNum >= fileMgr.size(fileName))
+			extendTo(mapBlkNum);
+		setBits(blkNum, 1L << (blkNum % WORD_BITS), true);
+	}
+
+	/**
+	 * Marks the blocks in the specified range as having no room for another
+	 * record, a word of the map at a time.
+	 *
+	 * @param fromBlkNum
+	 *            the number of the first block
+	 * @param toBlkNum
+	 *            the number of the block after the last one
+	 */
+	void markFull(long fromBlkNum, long toBlkNum) {
+		if (fromBlkNum >= toBlkNum)
+			return;
+		long lastMapBlkNum = (toBlkNum - 1) / bitsPerBlock;
+		if (lastMapBlkNum >= fileMgr.size(fileName))
+			extendTo(lastMapBlkNum);
+		long blkNum = fromBlkNum;
+		while (blkNum < toBlkNum) {
+			int bit = (int) (blkNum % WORD_BITS);
+			int n = (int) Math.min(WORD_BITS - bit, toBlkNum - blkNum);
+			long mask = (n == WORD_BITS ? -1L : (1L << n) - 1) << bit;
+			setBits(blkNum, mask, true);
+			blkNum += n;
+		}
+	}
+
+	/**
+	 * Removes the mark of the specified block, after a record in it has been
+	 * deleted.
+	 *
+	 * @param blkNum
+	 *            the number of the block
+	 */
+	void markFree(long blkNum) {
+		if (blkNum / bitsPerBlock < fileMgr.size(fileName))
+			setBits(blkNum, 1L << (blkNum % WORD_BITS), false);
+	}
+
+	/**
+	 * Sets or clears the masked bits of the word holding the bit of the
+	 * specified block, and remembers the old values of the changed bits.
+	 */
+	private void setBits(long blkNum, long mask, boolean full) {
+		long wordNum = blkNum / WORD_BITS;
+		long bits = full ? mask : 0;
+		long word = writeBits(tx, wordNum, mask, bits);
+		long changed = (word ^ bits) & mask;
+		if (changed == 0)
+			return;
+		if (changes == null) {
+			changes = new HashMap<Long, long[]>();
+			listenToTxEnd();
+		}
+		long[] change = changes.get(wordNum);
+		if (change == null) {
+			change = new long[2];
+			changes.put(wordNum, change);
+		}
+		// only the value before the first change of a bit is kept
+		long first = changed & ~change[0];
+		change[0] |= first;
+		change[1] |= word & first;
+	}
+
+	/**
+	 * Sets the masked bits of the specified word of the map to the specified
+	 * bits, and returns the old word.
+	 */
+	private long writeBits(Transaction tx, long wordNum, long mask, long bits) {
+		long mapBlkNum = wordNum / wordsPerBlock;
+		int pos = (int) (wordNum % wordsPerBlock) * WORD_SIZE;
+		Buffer buff = bufferMgr.pin(new BlockId(fileName, mapBlkNum),
+				tx.getTransactionNumber());
+		try {
+			// the word is read and written as a whole
+			synchronized (buff) {
+				long word = buff.getLong(pos);
+				long newWord = (word & ~mask) | (bits & mask);
+				if (newWord != word)
+					buff.setVal(pos, new BigIntConstant(newWord),
+							tx.getTransactionNumber(), -1);
+				return word;
+			}
+		} finally {
+			bufferMgr.unpin(tx.getTransactionNumber(), buff);
+		}
+	}
+
+	/**
+	 * Puts back the old values of the bits changed by the transaction after
+	 * it rolls back. The buffers of the transaction have been unpinned by
+	 * then, so the bits are written by a transaction of their own.
+	 */
+	private void listenToTxEnd() {
+		tx.addLifecycleListener(new TransactionLifecycleListener() {
+			@Override
+			public void onTxCommit(Transaction tx) {
+				changes = null;
+			}
+
+			@Override
+			public void onTxRollback(Transaction tx) {
+				Transaction restoreTx = VanillaDB.transaction(
+						Connection.TRANSACTION_SERIALIZABLE, false);
+				for (Map.Entry<Long, long[]> e : changes.entrySet())
+					writeBits(restoreTx, e.getKey(), e.getValue()[0],
+							e.getValue()[1]);
+				restoreTx.commit();
+				changes = null;
+			}
+
+			@Override
+			public void onTxEndStatement(Transaction tx) {
+				// do nothing
+			}
+		});
+	}
+
+	/**
+	 * Appends blocks to the map until it covers the specified block of the
+	 * map. The appending is serialized over the maps of all files, since it is
+	 * rare.
+	 */
+	private void extendTo(long mapBlkNum) {
+		synchronized (FreeSpaceMap.class) {
+			while (fileMgr.size(fileName) <= mapBlkNum) {
+				Buffer buff = bufferMgr.pinNew(fileName, new MapFormatter(),
+						tx.getTransactionNumber());
+				bufferMgr.unpin(tx.getTransactionNumber(), buff);
+			}
+		}
+	}
+}
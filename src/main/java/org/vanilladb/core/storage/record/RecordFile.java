@@ -1,13 +1,17 @@
 package org.vanilladb.core.storage.record;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.Record;
+import org.vanilladb.core.sql.PrimitiveRecord;
 import org.vanilladb.core.sql.SchemaIncompatibleException;
+import org.vanilladb.core.sql.VarcharView;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.buffer.ReadAhead;
 import org.vanilladb.core.storage.file.BlockId;
-import org.vanilladb.core.storage.file.FileMgr;
 import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.tx.Transaction;
@@ -25,15 +29,36 @@ import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
  * <p>
  * The {@link #beforeFirst()} method must be called before {@link #next()}.
  * </p>
+ * 
+ * <p>
+ * The blocks are visited through a {@link ReadAhead}, which prefetches the
+ * blocks ahead of sequential scans.
+ * </p>
+ * 
+ * <p>
+ * The blocks having no room for another record are marked in a
+ * {@link FreeSpaceMap}, which the insertions consult to skip them.
+ * </p>
+ * 
+ * <p>
+ * A record of a slotted table (see {@link TableInfo#FORMAT_SLOTTED}) growing
+ * out of its page is moved to the last block of the file, leaving a stub
+ * which forwards to the moved record. The record is still accessed by the ID
+ * of the stub, and the values are read and written through the page holding
+ * the moved record.
+ * </p>
  */
-public class RecordFile implements Record {
+public class RecordFile implements PrimitiveRecord {
 	private TableInfo ti;
 	private Transaction tx;
 	private String fileName;
 	private RecordPage rp;
+	// the page holding the moved record of the current stub, if any
+	private RecordPage movedRp;
 	private long currentBlkNum;
 	private BufferMgr bufferMgr = VanillaDB.bufferMgr();
-	private FileMgr fileMgr = VanillaDB.fileMgr();
+	private ReadAhead readAhead;
+	private FreeSpaceMap fsm;
 
 	/**
 	 * Constructs an object to manage a file of records. If the file does not
@@ -50,12 +75,15 @@ public class RecordFile implements Record {
 		this.ti = ti;
 		this.tx = tx;
 		fileName = ti.fileName();
+		readAhead = new ReadAhead(fileName);
+		fsm = new FreeSpaceMap(fileName, tx);
 	}
 
 	/**
 	 * Closes the record file.
 	 */
 	public void close() {
+		closeMoved();
 		if (rp != null)
 			rp.close();
 	}
@@ -80,8 +108,10 @@ public class RecordFile implements Record {
 		if (currentBlkNum == -1)
 			moveTo(0);
 		while (true) {
-			if (rp.next())
+			if (rp.next()) {
+				follow();
 				return true;
+			}
 			if (atLastBlock())
 				return false;
 			moveTo(currentBlkNum + 1);
@@ -98,12 +128,34 @@ public class RecordFile implements Record {
 	 * @return the value at that field
 	 */
 	public Constant getVal(String fldName) {
-		return rp.getVal(fldName);
+		return current().getVal(fldName);
+	}
+
+	@Override
+	public int getInt(String fldName) {
+		return current().getInt(fldName);
+	}
+
+	@Override
+	public long getLong(String fldName) {
+		return current().getLong(fldName);
+	}
+
+	@Override
+	public double getDouble(String fldName) {
+		return current().getDouble(fldName);
+	}
+
+	@Override
+	public void getVarchar(String fldName, VarcharView view) {
+		current().getVarchar(fldName, view);
 	}
 
 	/**
 	 * Sets a value of the specified field in the current record. The type of
-	 * the value must be equal to that of the specified field.
+	 * the value must be equal to that of the specified field. A record of a
+	 * slotted table is moved to another page if the value does not fit into
+	 * its page.
 	 * 
 	 * @param fldName
 	 *            the name of the field
@@ -122,7 +174,11 @@ public class RecordFile implements Record {
 			tx.rollback();
 			throw e;
 		}
-		rp.setVal(fldName, v);
+		RecordPage page = current();
+		if (page.fits(fldName, v))
+			page.setVal(fldName, v);
+		else
+			moveRecord(fldName, v);
 	}
 
 	/**
@@ -140,13 +196,20 @@ public class RecordFile implements Record {
 			tx.rollback();
 			throw e;
 		}
+		if (movedRp != null) {
+			movedRp.delete();
+			fsm.markFree(movedRp.currentBlk().number());
+		}
+		closeMoved();
 		rp.delete();
+		fsm.markFree(currentBlkNum);
 	}
 
 	/**
-	 * Inserts a new, blank record somewhere in the file beginning at the
-	 * current record. If the new record does not fit into an existing block,
-	 * then a new block is appended to the file.
+	 * Inserts a new, blank record into the first block which is not marked
+	 * full by the free-space map. A block on which the insertion fails is
+	 * marked. If the new record does not fit into an existing block, then a
+	 * new block is appended to the file.
 	 */
 	public void insert() {
 		if (tx.isReadOnly() && !isTempTable())
@@ -157,19 +220,28 @@ public class RecordFile implements Record {
 			tx.rollback();
 			throw e;
 		}
-		if (fileSize() == 0)
-			appendBlock();
-		moveTo(0);
-		// if blank record is found, rp will xlock this record and set the flag
-		while (!rp.insert()) {
-			if (atLastBlock())
+		closeMoved();
+		long size = fileSize();
+		long blkNum = fsm.nextFree(0, size);
+		while (true) {
+			if (blkNum == size) {
 				appendBlock();
-			moveTo(currentBlkNum + 1);
+				size = fileSize();
+			}
+			moveTo(blkNum);
+			// if blank record is found, rp will xlock it and set the flag
+			if (rp.insert())
+				return;
+			fsm.markFull(blkNum);
+			blkNum = fsm.nextFree(blkNum + 1, size);
 		}
 	}
 
 	/**
 	 * Positions the current record as indicated by the specified record ID .
+	 * The page of the current block stays pinned if the record is in it, so
+	 * moving to the record IDs in the order of their blocks reads each block
+	 * once.
 	 * 
 	 * @param rid
 	 *            a record ID
@@ -181,8 +253,11 @@ public class RecordFile implements Record {
 			tx.rollback();
 			throw e;
 		}
-		moveTo(rid.block().number());
+		if (rp == null || rp.currentBlk() == null
+				|| currentBlkNum != rid.block().number())
+			moveTo(rid.block().number());
 		rp.moveToId(rid.id());
+		follow();
 	}
 
 	/**
@@ -198,7 +273,7 @@ public class RecordFile implements Record {
 	/**
 	 * Returns the number of blocks in the specified file. This method first
 	 * calls corresponding concurrency manager to guarantee the isolation
-	 * property, before asking the file manager to return the file size.
+	 * property, before asking it for the file size seen by the transaction.
 	 * 
 	 * @return the number of blocks in the file
 	 */
@@ -209,10 +284,11 @@ public class RecordFile implements Record {
 			tx.rollback();
 			throw e;
 		}
-		return fileMgr.size(fileName);
+		return tx.concurrencyMgr().fileSize(fileName);
 	}
 
 	private void moveTo(long b) {
+		closeMoved();
 		if (rp != null)
 			rp.close();
 		currentBlkNum = b;
@@ -223,7 +299,85 @@ public class RecordFile implements Record {
 			tx.rollback();
 			throw e;
 		}
-		rp = new RecordPage(blk, ti, tx, false);
+		readAhead.blockAccessed(currentBlkNum);
+		rp = RecordPage.newInstance(blk, ti, tx, false);
+	}
+
+	private RecordPage current() {
+		return movedRp != null ? movedRp : rp;
+	}
+
+	/**
+	 * Opens the page holding the moved record if the current record is a stub.
+	 */
+	private void follow() {
+		closeMoved();
+		RecordId to = rp.forwardedTo();
+		if (to == null)
+			return;
+		try {
+			tx.concurrencyMgr().sLock(to.block());
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+		movedRp = RecordPage.newInstance(to.block(), ti, tx, false);
+		movedRp.moveToId(to.id());
+	}
+
+	private void closeMoved() {
+		if (movedRp != null) {
+			movedRp.close();
+			movedRp = null;
+		}
+	}
+
+	/**
+	 * Moves the current record, with the specified new value, to the last
+	 * block of the file or to a new block. The stub of the record forwards to
+	 * the new place, so a record is never more than one hop away from its ID.
+	 */
+	private void moveRecord(String fldName, Constant val) {
+		Map<String, Constant> vals = new HashMap<String, Constant>();
+		for (String fld : ti.schema().fields())
+			vals.put(fld, fld.equals(fldName) ? val : current().getVal(fld));
+		long lastBlkNum = fileSize() - 1;
+		SlottedRecordPage to = openMoveTarget(lastBlkNum, vals);
+		if (to == null) {
+			appendBlock();
+			to = openMoveTarget(lastBlkNum + 1, vals);
+			if (to == null)
+				throw new SchemaIncompatibleException();
+		}
+		if (movedRp != null) {
+			movedRp.delete();
+			fsm.markFree(movedRp.currentBlk().number());
+		}
+		closeMoved();
+		((SlottedRecordPage) rp).forward(new RecordId(to.currentBlk(), to
+				.currentId()));
+		movedRp = to;
+	}
+
+	/**
+	 * Inserts a moved record with the specified values into the specified
+	 * block, or returns null if the block has no room for the record and its
+	 * values.
+	 */
+	private SlottedRecordPage openMoveTarget(long blkNum,
+			Map<String, Constant> vals) {
+		BlockId blk = new BlockId(fileName, blkNum);
+		try {
+			tx.concurrencyMgr().sLock(blk);
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+		SlottedRecordPage page = new SlottedRecordPage(blk, ti, tx, false);
+		if (page.insertMoved(vals))
+			return page;
+		page.close();
+		return null;
 	}
 
 	private boolean atLastBlock() {
@@ -4,6 +4,7 @@ import static org.vanilladb.core.sql.Type.*;
 import static org.vanilladb.core.storage.file.Page.*;
 import static org.vanilladb.core.storage.record.RecordPage.EMPTY;
 
+import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.storage.buffer.PageFormatter;
@@ -12,10 +13,12 @@ import org.vanilladb.core.storage.metadata.TableInfo;
 
 
 /**
- * An object that can format a page to look like a block of empty records.
+ * An object that can format a page to look like a block of empty records, in
+ * the record format of the table.
  */
 public class RecordFormatter implements PageFormatter {
 	private TableInfo ti;
+	private int format;
 
 	/**
 	 * Creates a formatter for a new page of a table.
@@ -25,21 +28,55 @@ public class RecordFormatter implements PageFormatter {
 	 */
 	public RecordFormatter(TableInfo ti) {
 		this.ti = ti;
+		format = ti.format();
+	}
+
+	/**
+	 * Creates a formatter emptying a page of a table in the specified record
+	 * format, without knowing the layout of the records. A page of the fixed
+	 * format is filled with zeros, which make every slot EMPTY.
+	 * 
+	 * @param format
+	 *            the record format of the table
+	 */
+	public RecordFormatter(int format) {
+		this.format = format;
 	}
 
 	/**
 	 * Formats the page by allocating as many record slots as possible, given
 	 * the record size. Each record slot is assigned a flag of EMPTY. Each
 	 * integer field is given a value of 0, and each string field is given a
-	 * value of "".
+	 * value of "". A page of a slotted table is given an empty slot directory
+	 * instead, with all the space after the header free.
 	 * 
 	 * @see org.vanilladb.core.storage.buffer.PageFormatter#format(org.vanilladb.core.storage.file.Page)
 	 */
 	@Override
 	public void format(Page page) {
+		if (format == TableInfo.FORMAT_SLOTTED) {
+			page.setVal(SlottedRecordPage.NUM_SLOTS_POS, new IntegerConstant(0));
+			page.setVal(SlottedRecordPage.DATA_START_POS, new IntegerConstant(
+					page.blockSize()));
+			page.setVal(SlottedRecordPage.DEAD_BYTES_POS,
+					new IntegerConstant(0));
+			return;
+		}
+		if (ti == null) {
+			Constant zero = new BigIntConstant(0);
+			int size = Page.maxSize(BIGINT);
+			int blockSize = page.blockSize();
+			for (int pos = 0; pos + size <= blockSize; pos += size)
+				page.setVal(pos, zero);
+			if (blockSize % size != 0)
+				page.setVal(blockSize - Page.maxSize(INTEGER),
+						new IntegerConstant(0));
+			return;
+		}
 		int recsize = ti.recordSize() + Page.maxSize(INTEGER);
 		Constant emptyFlag = new IntegerConstant(EMPTY);
-		for (int pos = 0; pos + recsize <= BLOCK_SIZE; pos += recsize) {
+		int blockSize = page.blockSize();
+		for (int pos = 0; pos + recsize <= blockSize; pos += recsize) {
 			page.setVal(pos, emptyFlag);
 			makeDefaultRecord(page, pos);
 		}
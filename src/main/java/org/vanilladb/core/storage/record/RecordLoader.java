@@ -0,0 +1,269 @@
+package org.vanilladb.core.storage.record;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.storage.record.RecordPage.FLAG_SIZE;
+import static org.vanilladb.core.storage.record.RecordPage.INUSE;
+import static org.vanilladb.core.storage.record.SlottedRecordPage.DATA_START_POS;
+import static org.vanilladb.core.storage.record.SlottedRecordPage.HEADER_SIZE;
+import static org.vanilladb.core.storage.record.SlottedRecordPage.NUM_SLOTS_POS;
+import static org.vanilladb.core.storage.record.SlottedRecordPage.SLOT_SIZE;
+
+import java.util.Arrays;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.SchemaIncompatibleException;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+
+/**
+ * Loads records into a table in bulk. The records are placed into full pages
+ * in memory, in the record format of the table, and the pages are appended to
+ * the end of the file <code>BATCH_SIZE</code> at a time by a single write,
+ * without going through the buffer pool.
+ *
+ * <p>
+ * Instead of logging each value, the loader logs a single bulk load record
+ * before the first page is written, and undoing it empties the loaded pages.
+ * The loader xlocks the whole file instead of each record, so the loading
+ * transaction must not be a snapshot one. The loaded pages are written
+ * synchronously, and so are on disk when the transaction commits.
+ * </p>
+ *
+ * <p>
+ * Like {@link RecordFile}, the {@link #insert()} method must be called before
+ * setters. The values of a record of a slotted table are placed when the next
+ * record is inserted, the loader is closed, or the ID of the record is read,
+ * so they cannot be set after {@link #currentRecordId()}.
+ * </p>
+ */
+public class RecordLoader {
+	private static final int BATCH_SIZE;
+
+	static {
+		String prop = System.getProperty(RecordLoader.class.getName()
+				+ ".BATCH_SIZE");
+		BATCH_SIZE = (prop == null ? 64 : Integer.parseInt(prop.trim()));
+	}
+
+	private static final int INT_SIZE = Page.maxSize(INTEGER);
+
+	private TableInfo ti;
+	private Transaction tx;
+	private String fileName;
+	private int blockSize;
+	private Page[] pages;
+	// the index of the current page in the batch, or -1 before the first one
+	private int pageIdx = -1;
+	// the number of the block of the first page in the batch
+	private long batchBlkNum;
+	private long startBlkNum;
+	private RecordFormatter fmtr;
+	private FreeSpaceMap fsm;
+	private boolean closed;
+
+	// the current slot of a fixed page
+	private int currentSlot = -1;
+	private int slotSize;
+
+	// the number of slots and the start of the data of a slotted page
+	private int numSlots, dataStart;
+	private int recordSize;
+	// the values of the record to be placed on a slotted page, if any
+	private Constant[] pending;
+	private String[] fields;
+
+	/**
+	 * Starts a bulk load of the specified table. The file of the table is
+	 * xlocked, and the load is logged.
+	 *
+	 * @param ti
+	 *            the table metadata
+	 * @param tx
+	 *            the loading transaction
+	 */
+	public RecordLoader(TableInfo ti, Transaction tx) {
+		if (tx.isReadOnly())
+			throw new UnsupportedOperationException();
+		this.ti = ti;
+		this.tx = tx;
+		fileName = ti.fileName();
+		try {
+			tx.concurrencyMgr().xLock(fileName);
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+		blockSize = Page.blockSize(fileName);
+		pages = new Page[BATCH_SIZE];
+		for (int i = 0; i < pages.length; i++)
+			pages[i] = new Page(blockSize);
+		startBlkNum = VanillaDB.fileMgr().size(fileName);
+		batchBlkNum = startBlkNum;
+		fmtr = new RecordFormatter(ti);
+		fsm = new FreeSpaceMap(fileName, tx);
+		slotSize = ti.recordSize() + FLAG_SIZE;
+		recordSize = SlottedRecordPage.recordSize(ti);
+		fields = ti.schema().fields().toArray(new String[0]);
+		tx.recoveryMgr().logBulkLoad(fileName, startBlkNum, ti.format());
+	}
+
+	/**
+	 * Inserts a new, blank record into the current page, or into a new page if
+	 * the current one is full.
+	 */
+	public void insert() {
+		if (ti.format() == TableInfo.FORMAT_SLOTTED) {
+			place();
+			pending = new Constant[fields.length];
+			Schema sch = ti.schema();
+			for (int i = 0; i < fields.length; i++)
+				pending[i] = Constant.defaultInstance(sch.type(fields[i]));
+			return;
+		}
+		currentSlot++;
+		if (pageIdx < 0 || (currentSlot + 1) * slotSize > blockSize) {
+			nextPage();
+			currentSlot = 0;
+		}
+		pages[pageIdx].setVal(currentSlot * slotSize, new IntegerConstant(
+				INUSE));
+	}
+
+	/**
+	 * Sets a value of the specified field in the current record. The value is
+	 * cast to the type of the field.
+	 *
+	 * @param fldName
+	 *            the name of the field
+	 * @param val
+	 *            the new value for the field
+	 */
+	public void setVal(String fldName, Constant val) {
+		Constant v = val.castTo(ti.schema().type(fldName));
+		if (Page.size(v) > Page.maxSize(v.getType()))
+			throw new SchemaIncompatibleException();
+		if (ti.format() == TableInfo.FORMAT_SLOTTED) {
+			if (pending == null)
+				throw new IllegalStateException("the record has been placed");
+			pending[Arrays.asList(fields).indexOf(fldName)] = v;
+			return;
+		}
+		pages[pageIdx].setVal(currentSlot * slotSize + FLAG_SIZE
+				+ ti.offset(fldName), v);
+	}
+
+	/**
+	 * Returns the ID of the current record.
+	 *
+	 * @return a record ID
+	 */
+	public RecordId currentRecordId() {
+		place();
+		int id = ti.format() == TableInfo.FORMAT_SLOTTED ? numSlots - 1
+				: currentSlot;
+		return new RecordId(new BlockId(fileName, batchBlkNum + pageIdx), id);
+	}
+
+	/**
+	 * Writes the remaining pages, and marks the loaded pages but the last one
+	 * full in the free-space map. The loader cannot be used afterwards.
+	 */
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		place();
+		if (pageIdx < 0)
+			return;
+		finishPage();
+		writeBatch(pageIdx + 1);
+		fsm.markFull(startBlkNum, batchBlkNum + pageIdx);
+	}
+
+	/**
+	 * Places the pending record of a slotted table on the current page, or on
+	 * a new page if the record does not fit.
+	 */
+	private void place() {
+		if (pending == null)
+			return;
+		int size = SLOT_SIZE + recordSize;
+		for (Constant v : pending)
+			if (!v.getType().isFixedSize() && v.size() > 0)
+				size += INT_SIZE + v.size();
+		if (size > blockSize - HEADER_SIZE)
+			throw new SchemaIncompatibleException();
+		if (pageIdx < 0 || size > dataStart - slotPos(numSlots))
+			nextPage();
+		Page page = pages[pageIdx];
+		dataStart -= recordSize;
+		int pos = dataStart;
+		page.setVal(pos, new IntegerConstant(INUSE));
+		for (int i = 0; i < fields.length; i++) {
+			Constant v = pending[i];
+			int fldPos = pos + FLAG_SIZE + ti.offset(fields[i]);
+			if (v.getType().isFixedSize())
+				page.setVal(fldPos, v);
+			else if (v.size() == 0)
+				page.setVal(fldPos, new IntegerConstant(0));
+			else {
+				dataStart -= INT_SIZE + v.size();
+				page.setVal(dataStart, v);
+				page.setVal(fldPos, new IntegerConstant(dataStart));
+			}
+		}
+		page.setVal(slotPos(numSlots), new IntegerConstant(pos));
+		numSlots++;
+		pending = null;
+	}
+
+	private int slotPos(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	/**
+	 * Finishes the current page, if any, and moves to a new page formatted
+	 * for the table, writing the batch first if it is full.
+	 */
+	private void nextPage() {
+		if (pageIdx >= 0)
+			finishPage();
+		pageIdx++;
+		if (pageIdx == pages.length) {
+			writeBatch(pages.length);
+			batchBlkNum += pages.length;
+			pageIdx = 0;
+		}
+		Page page = pages[pageIdx];
+		if (ti.format() == TableInfo.FORMAT_SLOTTED) {
+			// clears the bytes left by the previous batch
+			new RecordFormatter(TableInfo.FORMAT_FIXED).format(page);
+			numSlots = 0;
+			dataStart = blockSize;
+		}
+		fmtr.format(page);
+	}
+
+	private void finishPage() {
+		if (ti.format() != TableInfo.FORMAT_SLOTTED)
+			return;
+		Page page = pages[pageIdx];
+		page.setVal(NUM_SLOTS_POS, new IntegerConstant(numSlots));
+		page.setVal(DATA_START_POS, new IntegerConstant(dataStart));
+	}
+
+	private void writeBatch(int numPages) {
+		Page[] batch = numPages == pages.length ? pages : Arrays.copyOf(
+				pages, numPages);
+		BlockId blk = Page.append(fileName, batch);
+		// the file is xlocked, so no other transaction appends to it
+		if (blk.number() != batchBlkNum)
+			throw new RuntimeException("cannot bulk load " + fileName);
+	}
+}
@@ -1,12 +1,13 @@
 package org.vanilladb.core.storage.record;
 
 import static org.vanilladb.core.sql.Type.INTEGER;
-import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
 
 import org.vanilladb.core.server.VanillaDB;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.PrimitiveRecord;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharView;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.buffer.BufferMgr;
 import org.vanilladb.core.storage.file.BlockId;
@@ -17,19 +18,44 @@ import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
 
 
 /**
- * Manages the placement and access of records in a block.
+ * Manages the placement and access of records in a block. This class stores
+ * the records in the fixed format of {@link TableInfo#FORMAT_FIXED}; see
+ * {@link SlottedRecordPage} for the slotted one.
  */
-public class RecordPage {
+public class RecordPage implements PrimitiveRecord {
 	public static final int EMPTY = 0, INUSE = 1;
+	static final int FLAG_SIZE = Page.maxSize(INTEGER);
 
-	private BlockId blk;
-	private Buffer currentBuff;
-	private TableInfo ti;
-	private Transaction tx;
+	BlockId blk;
+	Buffer currentBuff;
+	TableInfo ti;
+	Transaction tx;
 	private BufferMgr bufferMgr = VanillaDB.bufferMgr();
 	private int slotSize;
-	private int currentSlot = -1;
-	private boolean controlConcurrency;
+	int blockSize;
+	int currentSlot = -1;
+	// the slot whose record has been slocked by this page
+	private int sLockedSlot = -1;
+	boolean controlConcurrency;
+
+	/**
+	 * Creates the record manager for the specified block, which stores the
+	 * records in the record format of the table.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @param ti
+	 *            the table's metadata
+	 * @param controlConcurrency
+	 *            true if the record page needs to control concurrency itself
+	 * @return the record manager
+	 */
+	public static RecordPage newInstance(BlockId blk, TableInfo ti,
+			Transaction tx, boolean controlConcurrency) {
+		if (ti.format() == TableInfo.FORMAT_SLOTTED)
+			return new SlottedRecordPage(blk, ti, tx, controlConcurrency);
+		return new RecordPage(blk, ti, tx, controlConcurrency);
+	}
 
 	/**
 	 * Creates the record manager for the specified block. The current record is
@@ -48,7 +74,8 @@ public class RecordPage {
 		this.ti = ti;
 		this.tx = tx;
 		this.controlConcurrency = controlConcurrency;
-		slotSize = ti.recordSize() + Page.maxSize(INTEGER);
+		slotSize = ti.recordSize() + FLAG_SIZE;
+		blockSize = Page.blockSize(blk.fileName());
 		currentBuff = bufferMgr.pin(blk, tx.getTransactionNumber());
 	}
 
@@ -81,16 +108,72 @@ public class RecordPage {
 	 * @return the constant stored in that field
 	 */
 	public Constant getVal(String fldName) {
-		if (controlConcurrency)
-			try {
-				tx.concurrencyMgr().sLock(new RecordId(blk, currentSlot));
-			} catch (LockAbortException e) {
-				tx.rollback();
-				throw e;
-			}
+		sLockCurrent();
 		Type type = ti.schema().type(fldName);
 		int position = fieldPos(fldName);
-		return currentBuff.getVal(position, type);
+		return tx.concurrencyMgr().getVal(currentBuff, position, type);
+	}
+
+	/**
+	 * Returns the value stored in the specified integer field of this record.
+	 * 
+	 * @param fldName
+	 *            the name of the field
+	 * @return the integer stored in that field
+	 */
+	public int getInt(String fldName) {
+		sLockCurrent();
+		return tx.concurrencyMgr().getInt(currentBuff, fieldPos(fldName));
+	}
+
+	/**
+	 * Returns the value stored in the specified integer or big integer field of
+	 * this record.
+	 * 
+	 * @param fldName
+	 *            the name of the field
+	 * @return the value stored in that field, widened to a long
+	 */
+	public long getLong(String fldName) {
+		sLockCurrent();
+		int position = fieldPos(fldName);
+		if (ti.schema().type(fldName).getSqlType() == java.sql.Types.INTEGER)
+			return tx.concurrencyMgr().getInt(currentBuff, position);
+		return tx.concurrencyMgr().getLong(currentBuff, position);
+	}
+
+	/**
+	 * Returns the value stored in the specified numeric field of this record.
+	 * 
+	 * @param fldName
+	 *            the name of the field
+	 * @return the value stored in that field, widened to a double
+	 */
+	public double getDouble(String fldName) {
+		sLockCurrent();
+		int position = fieldPos(fldName);
+		switch (ti.schema().type(fldName).getSqlType()) {
+		case java.sql.Types.INTEGER:
+			return tx.concurrencyMgr().getInt(currentBuff, position);
+		case java.sql.Types.BIGINT:
+			return tx.concurrencyMgr().getLong(currentBuff, position);
+		default:
+			return tx.concurrencyMgr().getDouble(currentBuff, position);
+		}
+	}
+
+	/**
+	 * Reads the value stored in the specified varchar field of this record
+	 * into the specified view.
+	 * 
+	 * @param fldName
+	 *            the name of the field
+	 * @param view
+	 *            the view to hold the value
+	 */
+	public void getVarchar(String fldName, VarcharView view) {
+		sLockCurrent();
+		tx.concurrencyMgr().getVarchar(currentBuff, fieldPos(fldName), view);
 	}
 
 	/**
@@ -204,31 +287,74 @@ public class RecordPage {
 		return blk;
 	}
 
+	/**
+	 * Returns the ID of the record which the current record has been moved to,
+	 * or null if the current record is stored in this page. Only the records
+	 * of a slotted page may be moved.
+	 * 
+	 * @return the ID of the moved record, or null
+	 */
+	RecordId forwardedTo() {
+		return null;
+	}
+
+	/**
+	 * Returns true if the specified value can be stored at the specified field
+	 * of the current record without moving the record out of this page. A
+	 * record in the fixed format always has room for its values.
+	 * 
+	 * @param fldName
+	 *            the name of the field
+	 * @param val
+	 *            the value to be stored
+	 * @return true if the value fits into this page
+	 */
+	boolean fits(String fldName, Constant val) {
+		return true;
+	}
+
 	private int currentPos() {
 		return currentSlot * slotSize;
 	}
 
 	private int fieldPos(String fldName) {
-		int offset = Page.maxSize(INTEGER) + ti.offset(fldName);
-		return currentPos() + offset;
+		return currentPos() + FLAG_SIZE + ti.offset(fldName);
+	}
+
+	/**
+	 * Slocks the current record, once for each record the page moves to.
+	 */
+	void sLockCurrent() {
+		if (!controlConcurrency || sLockedSlot == currentSlot)
+			return;
+		try {
+			tx.concurrencyMgr().sLock(new RecordId(blk, currentSlot));
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+		sLockedSlot = currentSlot;
 	}
 
 	private boolean isValidSlot() {
-		return currentPos() + slotSize <= BLOCK_SIZE;
+		return currentPos() + slotSize <= blockSize;
 	}
 
 	private boolean searchFor(int flag) {
 		currentSlot++;
 		while (isValidSlot()) {
+			// no record lock protects a slot being passed over, so read its
+			// flag under the buffer lock rather than with getInt
 			int position = currentPos();
-			if ((Integer) currentBuff.getVal(position, INTEGER).asJavaVal() == flag)
+			if ((Integer) tx.concurrencyMgr().getVal(currentBuff, position,
+					INTEGER).asJavaVal() == flag)
 				return true;
 			currentSlot++;
 		}
 		return false;
 	}
 
-	private boolean isTempTable() {
+	boolean isTempTable() {
 		return ti.fileName().startsWith("_temp");
 	}
 }
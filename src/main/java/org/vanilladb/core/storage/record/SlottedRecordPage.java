@@ -0,0 +1,567 @@
+package org.vanilladb.core.storage.record;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharView;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.ConcurrencyMgr;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+
+/**
+ * Manages the records of a block in the slotted format of
+ * {@link TableInfo#FORMAT_SLOTTED}.
+ *
+ * <p>
+ * The page begins with a header holding the number of slots, the offset of
+ * the lowest record data, and the number of dead bytes among the record data.
+ * The slot directory follows the header and grows towards the end of the page,
+ * while the record data are allocated from the end of the page backwards. A
+ * slot holds the offset of its record, or {@link #EMPTY} if the slot is free,
+ * so the ID of a record stays the same while the record is moved within the
+ * page.
+ * </p>
+ *
+ * <p>
+ * A record starts with a flag followed by the fixed-size fields of the table,
+ * where a varchar field holds the offset of its value, or 0 for an empty
+ * string. A varchar value is rewritten in place if the new value is not
+ * longer, or else at newly allocated space. The space of deleted records and
+ * replaced values is dead until the page is compacted, which happens when an
+ * allocation does not fit between the slot directory and the record data but
+ * fits after the dead bytes are reclaimed.
+ * </p>
+ *
+ * <p>
+ * A record is inserted only if the page has room for a record of the longest
+ * values. A record growing out of the page by a later update is moved to
+ * another page by {@link RecordFile}, which leaves a stub forwarding to the
+ * moved record, so that the ID of the record does not change. The moved record
+ * is flagged and skipped by the scans of its new page.
+ * </p>
+ *
+ * <p>
+ * Since a change may move the records of other transactions within the page,
+ * each change xlocks the whole block, and the page is versioned as a whole for
+ * the snapshot transactions. A compaction is logged as the old and new images
+ * of the changed bytes, so that undoing it restores the page byte by byte.
+ * </p>
+ */
+public class SlottedRecordPage extends RecordPage {
+	/**
+	 * The flag of a record moved in from another page, and that of a stub
+	 * forwarding to a moved record.
+	 */
+	static final int MOVED = 2, FORWARDED = 3;
+
+	private static final int INT_SIZE = Page.maxSize(INTEGER),
+			LONG_SIZE = Page.maxSize(BIGINT);
+
+	/**
+	 * The offsets of the fields of the page header.
+	 */
+	static final int NUM_SLOTS_POS = 0, DATA_START_POS = INT_SIZE,
+			DEAD_BYTES_POS = 2 * INT_SIZE;
+
+	/**
+	 * The sizes of the page header and of a slot.
+	 */
+	static final int HEADER_SIZE = 3 * INT_SIZE, SLOT_SIZE = INT_SIZE;
+
+	// a stub keeps the block number and slot of the moved record
+	private static final int STUB_SIZE = FLAG_SIZE + LONG_SIZE + INT_SIZE;
+
+	private static class Item {
+		int pos, size, newPos;
+		// the slot of the record, or of the record holding the value
+		int slot;
+		// the field of the value, or null for a record
+		String fldName;
+
+		Item(int pos, int size, int slot, String fldName) {
+			this.pos = pos;
+			this.size = size;
+			this.slot = slot;
+			this.fldName = fldName;
+		}
+	}
+
+	private List<String> varcharFlds = new ArrayList<String>();
+	// the size of a record without its varchar values
+	private int recordSize;
+	// the space required to insert a record
+	private int insertSize;
+	// the page seen by a snapshot transaction, or null for the buffer
+	private Page image;
+
+	/**
+	 * Creates the record manager for the specified block of a slotted table.
+	 * The current record is set to be prior to the first one.
+	 *
+	 * @param blk
+	 *            a block ID
+	 * @param ti
+	 *            the table's metadata
+	 * @param controlConcurrency
+	 *            true if the record page needs to control concurrency itself
+	 */
+	public SlottedRecordPage(BlockId blk, TableInfo ti, Transaction tx,
+			boolean controlConcurrency) {
+		super(blk, ti, tx, controlConcurrency);
+		recordSize = recordSize(ti);
+		int size = recordSize;
+		for (String fldName : ti.schema().fields()) {
+			Type type = ti.schema().type(fldName);
+			if (!type.isFixedSize()) {
+				varcharFlds.add(fldName);
+				size += Page.maxSize(type);
+			}
+		}
+		insertSize = Math.min(size, blockSize - HEADER_SIZE - SLOT_SIZE);
+		image = tx.concurrencyMgr().readPage(currentBuff);
+	}
+
+	/**
+	 * Returns the size of a record of the specified table without its varchar
+	 * values, which is large enough for a stub as well.
+	 *
+	 * @param ti
+	 *            the table's metadata
+	 * @return the size of a record
+	 */
+	static int recordSize(TableInfo ti) {
+		return Math.max(FLAG_SIZE + ti.recordSize(), STUB_SIZE);
+	}
+
+	@Override
+	public boolean next() {
+		int numSlots = readSlotInt(NUM_SLOTS_POS);
+		for (currentSlot++; currentSlot < numSlots; currentSlot++) {
+			int pos = readSlotInt(slotPos(currentSlot));
+			if (pos != EMPTY && readSlotInt(pos) != MOVED)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Constant getVal(String fldName) {
+		sLockCurrent();
+		Type type = ti.schema().type(fldName);
+		int position = fieldPos(recordPos(), fldName);
+		if (type.isFixedSize())
+			return readVal(position, type);
+		int valPos = readInt(position);
+		if (valPos == 0)
+			return Constant.defaultInstance(type);
+		return readVal(valPos, type);
+	}
+
+	@Override
+	public int getInt(String fldName) {
+		sLockCurrent();
+		return readInt(fieldPos(recordPos(), fldName));
+	}
+
+	@Override
+	public long getLong(String fldName) {
+		sLockCurrent();
+		int position = fieldPos(recordPos(), fldName);
+		if (ti.schema().type(fldName).getSqlType() == java.sql.Types.INTEGER)
+			return readInt(position);
+		return readLong(position);
+	}
+
+	@Override
+	public double getDouble(String fldName) {
+		sLockCurrent();
+		int position = fieldPos(recordPos(), fldName);
+		switch (ti.schema().type(fldName).getSqlType()) {
+		case java.sql.Types.INTEGER:
+			return readInt(position);
+		case java.sql.Types.BIGINT:
+			return readLong(position);
+		default:
+			return readDouble(position);
+		}
+	}
+
+	@Override
+	public void getVarchar(String fldName, VarcharView view) {
+		sLockCurrent();
+		int valPos = readInt(fieldPos(recordPos(), fldName));
+		if (valPos == 0)
+			view.set("");
+		else if (image != null)
+			image.getVarchar(valPos, view);
+		else
+			currentBuff.getVarchar(valPos, view);
+	}
+
+	/**
+	 * Stores a value at the specified field of this record. The caller must
+	 * have checked that the value fits into this page by
+	 * {@link #fits(String, Constant)}.
+	 *
+	 * @param fldName
+	 *            the name of the field
+	 * @param val
+	 *            the constant value stored in that field
+	 */
+	@Override
+	public void setVal(String fldName, Constant val) {
+		if (tx.isReadOnly() && !isTempTable())
+			throw new UnsupportedOperationException();
+		if (controlConcurrency)
+			xLockCurrent();
+		beforeChange();
+		int position = fieldPos(recordPos(), fldName);
+		if (ti.schema().type(fldName).isFixedSize()) {
+			write(position, val);
+			return;
+		}
+		int size = val.size();
+		int valPos = readInt(position);
+		int oldSize = (valPos == 0 ? 0 : readInt(valPos));
+		if (valPos != 0 && size > 0 && size <= oldSize) {
+			write(valPos, val);
+			addDeadBytes(oldSize - size);
+			return;
+		}
+		int newPos = 0;
+		if (size > 0) {
+			newPos = allocate(INT_SIZE + size);
+			// the allocation may have moved the record
+			position = fieldPos(recordPos(), fldName);
+			valPos = readInt(position);
+			// the old bytes are read as a varchar before being overwritten
+			write(newPos, new IntegerConstant(0));
+			write(newPos, val);
+		}
+		write(position, new IntegerConstant(newPos));
+		if (valPos != 0)
+			addDeadBytes(INT_SIZE + oldSize);
+	}
+
+	/**
+	 * Deletes the current record. The slot of the record becomes free, and the
+	 * space of the record is reclaimed by a later compaction.
+	 */
+	@Override
+	public void delete() {
+		if (tx.isReadOnly() && !isTempTable())
+			throw new UnsupportedOperationException();
+		if (controlConcurrency)
+			xLockCurrent();
+		beforeChange();
+		int pos = recordPos();
+		addDeadBytes(recordSize + valuesSize(pos));
+		write(slotPos(currentSlot), new IntegerConstant(EMPTY));
+	}
+
+	/**
+	 * Inserts a new, blank record into a free slot of the page, or into a new
+	 * slot. Returns false if the page does not have room for a record of the
+	 * longest values.
+	 *
+	 * @return false if the insertion was not possible
+	 */
+	@Override
+	public boolean insert() {
+		return insert(INUSE, insertSize);
+	}
+
+	/**
+	 * Inserts a record with the specified values, which is moved in from
+	 * another page and thus skipped by {@link #next()}. Returns false, without
+	 * changing the page, if the page does not have room for the record and
+	 * all its values.
+	 *
+	 * @param vals
+	 *            the values of the record, keyed by field name
+	 * @return false if the insertion was not possible
+	 */
+	boolean insertMoved(Map<String, Constant> vals) {
+		int size = recordSize;
+		for (String fldName : varcharFlds) {
+			int valSize = vals.get(fldName).size();
+			if (valSize > 0)
+				size += INT_SIZE + valSize;
+		}
+		if (!insert(MOVED, size))
+			return false;
+		for (String fldName : ti.schema().fields())
+			setVal(fldName, vals.get(fldName));
+		return true;
+	}
+
+	/**
+	 * Turns the current record into a stub forwarding to the specified record,
+	 * which holds the values of the current record from now on. The varchar
+	 * values of the current record become dead.
+	 *
+	 * @param rid
+	 *            the ID of the moved record
+	 */
+	void forward(RecordId rid) {
+		beforeChange();
+		int pos = recordPos();
+		addDeadBytes(valuesSize(pos));
+		write(pos, new IntegerConstant(FORWARDED));
+		write(pos + FLAG_SIZE, new BigIntConstant(rid.block().number()));
+		write(pos + FLAG_SIZE + LONG_SIZE, new IntegerConstant(rid.id()));
+	}
+
+	@Override
+	RecordId forwardedTo() {
+		int pos = recordPos();
+		if (readInt(pos) != FORWARDED)
+			return null;
+		BlockId to = new BlockId(blk.fileName(), readLong(pos + FLAG_SIZE));
+		return new RecordId(to, readInt(pos + FLAG_SIZE + LONG_SIZE));
+	}
+
+	@Override
+	boolean fits(String fldName, Constant val) {
+		if (ti.schema().type(fldName).isFixedSize())
+			return true;
+		int size = val.size();
+		int valPos = readInt(fieldPos(recordPos(), fldName));
+		if (size == 0 || (valPos != 0 && size <= readInt(valPos)))
+			return true;
+		return freeSpace() >= INT_SIZE + size;
+	}
+
+	private boolean insert(int flag, int size) {
+		if (tx.isReadOnly() && !isTempTable())
+			throw new UnsupportedOperationException();
+		int numSlots = readSlotInt(NUM_SLOTS_POS);
+		int slot = 0;
+		while (slot < numSlots && readSlotInt(slotPos(slot)) != EMPTY)
+			slot++;
+		boolean newSlot = (slot == numSlots);
+		if (freeSpace() < size + (newSlot ? SLOT_SIZE : 0))
+			return false;
+		currentSlot = slot;
+		// xlock on this record before setting the slot
+		xLockCurrent();
+		beforeChange();
+		if (newSlot) {
+			if (contiguousSpace() < SLOT_SIZE + recordSize)
+				compact();
+			write(NUM_SLOTS_POS, new IntegerConstant(numSlots + 1));
+		}
+		int pos = allocate(recordSize);
+		write(pos, new IntegerConstant(flag));
+		for (String fldName : ti.schema().fields()) {
+			Type type = ti.schema().type(fldName);
+			if (type.isFixedSize())
+				write(fieldPos(pos, fldName), Constant.defaultInstance(type));
+			else
+				write(fieldPos(pos, fldName), new IntegerConstant(0));
+		}
+		write(slotPos(slot), new IntegerConstant(pos));
+		return true;
+	}
+
+	/**
+	 * Allocates the specified number of bytes for record data, compacting the
+	 * page if needed. The caller must have checked that the page has enough
+	 * free space.
+	 */
+	private int allocate(int size) {
+		if (contiguousSpace() < size)
+			compact();
+		int pos = readInt(DATA_START_POS) - size;
+		write(DATA_START_POS, new IntegerConstant(pos));
+		return pos;
+	}
+
+	/**
+	 * Moves the records and values to the end of the page, in the order of
+	 * their offsets, so that the dead bytes join the free space. The new page
+	 * is built aside, with the freed bytes zeroed, and only the range of
+	 * changed bytes is written and logged.
+	 */
+	private void compact() {
+		List<Item> items = new ArrayList<Item>();
+		int numSlots = readInt(NUM_SLOTS_POS);
+		int[] recordPos = new int[numSlots];
+		for (int slot = 0; slot < numSlots; slot++) {
+			int pos = readInt(slotPos(slot));
+			if (pos == EMPTY)
+				continue;
+			items.add(new Item(pos, recordSize, slot, null));
+			if (readInt(pos) == FORWARDED)
+				continue;
+			for (String fldName : varcharFlds) {
+				int valPos = readInt(fieldPos(pos, fldName));
+				if (valPos != 0)
+					items.add(new Item(valPos, INT_SIZE + readInt(valPos),
+							slot, fldName));
+			}
+		}
+		Collections.sort(items, new Comparator<Item>() {
+			@Override
+			public int compare(Item i1, Item i2) {
+				return i2.pos - i1.pos;
+			}
+		});
+
+		int top = blockSize;
+		for (Item item : items) {
+			top -= item.size;
+			item.newPos = top;
+			if (item.fldName == null)
+				recordPos[item.slot] = top;
+		}
+		byte[] oldBytes = currentBuff.getBytes(0, blockSize);
+		byte[] newBytes = oldBytes.clone();
+		Arrays.fill(newBytes, readInt(DATA_START_POS), top, (byte) 0);
+		for (Item item : items)
+			System.arraycopy(oldBytes, item.pos, newBytes, item.newPos,
+					item.size);
+		ByteBuffer newPage = ByteBuffer.wrap(newBytes);
+		for (Item item : items) {
+			if (item.newPos == item.pos)
+				continue;
+			if (item.fldName == null)
+				newPage.putInt(slotPos(item.slot), item.newPos);
+			else
+				newPage.putInt(fieldPos(recordPos[item.slot], item.fldName),
+						item.newPos);
+		}
+		newPage.putInt(DATA_START_POS, top);
+		newPage.putInt(DEAD_BYTES_POS, 0);
+
+		int from = 0, to = blockSize;
+		while (from < to && oldBytes[from] == newBytes[from])
+			from++;
+		while (to > from && oldBytes[to - 1] == newBytes[to - 1])
+			to--;
+		if (from < to)
+			writeBytes(from, Arrays.copyOfRange(newBytes, from, to));
+	}
+
+	/**
+	 * Returns the total size of the varchar values of the record at the
+	 * specified offset.
+	 */
+	private int valuesSize(int pos) {
+		if (readInt(pos) == FORWARDED)
+			return 0;
+		int size = 0;
+		for (String fldName : varcharFlds) {
+			int valPos = readInt(fieldPos(pos, fldName));
+			if (valPos != 0)
+				size += INT_SIZE + readInt(valPos);
+		}
+		return size;
+	}
+
+	private void addDeadBytes(int size) {
+		if (size > 0)
+			write(DEAD_BYTES_POS, new IntegerConstant(readInt(DEAD_BYTES_POS)
+					+ size));
+	}
+
+	private int contiguousSpace() {
+		return readInt(DATA_START_POS) - slotPos(readInt(NUM_SLOTS_POS));
+	}
+
+	private int freeSpace() {
+		return contiguousSpace() + readInt(DEAD_BYTES_POS);
+	}
+
+	private int slotPos(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	private int recordPos() {
+		return readInt(slotPos(currentSlot));
+	}
+
+	private int fieldPos(int recordPos, String fldName) {
+		return recordPos + FLAG_SIZE + ti.offset(fldName);
+	}
+
+	/**
+	 * Xlocks the block before changing the page, and keeps the image of the
+	 * page before the first change of the transaction for the snapshot
+	 * transactions.
+	 */
+	private void beforeChange() {
+		try {
+			tx.concurrencyMgr().xLock(blk);
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+		if (!isTempTable())
+			ConcurrencyMgr.versionStore().keepOldImage(
+					tx.getTransactionNumber(), currentBuff);
+	}
+
+	private void xLockCurrent() {
+		try {
+			tx.concurrencyMgr().xLock(new RecordId(blk, currentSlot));
+		} catch (LockAbortException e) {
+			tx.rollback();
+			throw e;
+		}
+	}
+
+	private void write(int pos, Constant val) {
+		long lsn = tx.recoveryMgr().setVal(currentBuff, pos, val);
+		currentBuff.setVal(pos, val, tx.getTransactionNumber(), lsn);
+	}
+
+	private void writeBytes(int pos, byte[] bytes) {
+		long lsn = tx.recoveryMgr().setBytes(currentBuff, pos, bytes);
+		currentBuff.setBytes(pos, bytes, tx.getTransactionNumber(), lsn);
+	}
+
+	private int readInt(int pos) {
+		return image != null ? image.getInt(pos) : currentBuff.getInt(pos);
+	}
+
+	/**
+	 * Reads an integer of the slot directory, or the flag of a record, that
+	 * no record lock of this transaction protects. The read takes the buffer
+	 * lock, which orders it after the writes of other transactions.
+	 */
+	private int readSlotInt(int pos) {
+		if (image != null)
+			return image.getInt(pos);
+		return (Integer) currentBuff.getVal(pos, INTEGER).asJavaVal();
+	}
+
+	private long readLong(int pos) {
+		return image != null ? image.getLong(pos) : currentBuff.getLong(pos);
+	}
+
+	private double readDouble(int pos) {
+		return image != null ? image.getDouble(pos) : currentBuff
+				.getDouble(pos);
+	}
+
+	private Constant readVal(int pos, Type type) {
+		return image != null ? image.getVal(pos, type) : currentBuff.getVal(
+				pos, type);
+	}
+}
@@ -1,6 +1,12 @@
 package org.vanilladb.core.storage.tx.concurrency;
 
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharView;
+import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
@@ -17,6 +23,18 @@ public abstract class ConcurrencyMgr implements TransactionLifecycleListener {
 
 	protected static LockTable lockTbl = new LockTable();
 
+	protected static VersionStore versionStore = new VersionStore();
+
+	/**
+	 * Returns the store keeping the values overwritten by transactions for the
+	 * snapshot transactions.
+	 * 
+	 * @return the version store
+	 */
+	public static VersionStore versionStore() {
+		return versionStore;
+	}
+
 	public abstract void sLock(String fileName);
 
 	public abstract void sLock(BlockId blk);
@@ -43,4 +61,126 @@ public abstract class ConcurrencyMgr implements TransactionLifecycleListener {
 
 	public abstract void releaseIndexBlocks(BlockId... blks);
 
+	/**
+	 * Returns the value at the specified offset of a pinned buffer as seen by
+	 * the transaction. The locks protecting the value must have been obtained.
+	 * 
+	 * @param buff
+	 *            the pinned buffer
+	 * @param offset
+	 *            the offset of the value in the page
+	 * @param type
+	 *            the type of the value
+	 * @return the value seen by the transaction
+	 */
+	public Constant getVal(Buffer buff, int offset, Type type) {
+		return buff.getVal(offset, type);
+	}
+
+	/**
+	 * Returns the integer at the specified offset of a pinned buffer as seen
+	 * by the transaction. See {@link #getVal(Buffer, int, Type)}.
+	 * 
+	 * @param buff
+	 *            the pinned buffer
+	 * @param offset
+	 *            the offset of the value in the page
+	 * @return the integer seen by the transaction
+	 */
+	public int getInt(Buffer buff, int offset) {
+		return buff.getInt(offset);
+	}
+
+	/**
+	 * Returns the long integer at the specified offset of a pinned buffer as
+	 * seen by the transaction. See {@link #getVal(Buffer, int, Type)}.
+	 * 
+	 * @param buff
+	 *            the pinned buffer
+	 * @param offset
+	 *            the offset of the value in the page
+	 * @return the long integer seen by the transaction
+	 */
+	public long getLong(Buffer buff, int offset) {
+		return buff.getLong(offset);
+	}
+
+	/**
+	 * Returns the double at the specified offset of a pinned buffer as seen by
+	 * the transaction. See {@link #getVal(Buffer, int, Type)}.
+	 * 
+	 * @param buff
+	 *            the pinned buffer
+	 * @param offset
+	 *            the offset of the value in the page
+	 * @return the double seen by the transaction
+	 */
+	public double getDouble(Buffer buff, int offset) {
+		return buff.getDouble(offset);
+	}
+
+	/**
+	 * Reads the varchar at the specified offset of a pinned buffer as seen by
+	 * the transaction into the specified view. See
+	 * {@link #getVal(Buffer, int, Type)}.
+	 * 
+	 * @param buff
+	 *            the pinned buffer
+	 * @param offset
+	 *            the offset of the value in the page
+	 * @param view
+	 *            the view to hold the value
+	 */
+	public void getVarchar(Buffer buff, int offset, VarcharView view) {
+		buff.getVarchar(offset, view);
+	}
+
+	/**
+	 * Returns the page of a pinned buffer as seen by the transaction, or null
+	 * if the transaction sees the page in the buffer. The values of a page
+	 * versioned as a whole (see {@link VersionStore#keepOldImage}) must be
+	 * read from the returned page, if any, rather than by the methods above.
+	 * The locks protecting the page must have been obtained.
+	 * 
+	 * @param buff
+	 *            the pinned buffer
+	 * @return the page seen by the transaction, or null
+	 */
+	public Page readPage(Buffer buff) {
+		return null;
+	}
+
+	/**
+	 * Returns the number of blocks of the specified file seen by the
+	 * transaction. The locks protecting the end of the file must have been
+	 * obtained.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return the number of blocks of the file
+	 */
+	public long fileSize(String fileName) {
+		return VanillaDB.fileMgr().size(fileName);
+	}
+
+	/**
+	 * Returns the number of transactions aborted as the victims of deadlocks
+	 * found in the waits-for graph.
+	 * 
+	 * @return the number of deadlocks
+	 */
+	public static long numDeadlocks() {
+		return lockTbl.numDeadlocks();
+	}
+
+	/**
+	 * Returns the number of transactions aborted because they waited longer
+	 * than the maximal waiting time for a lock.
+	 * 
+	 * @return the number of lock timeouts
+	 */
+	public static long numLockTimeouts() {
+		return lockTbl.numTimeouts();
+	}
+
 }
@@ -1,6 +1,11 @@
 package org.vanilladb.core.storage.tx.concurrency;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Checks the compatibility of locking requests on a single item (e.g., file,
@@ -9,17 +14,43 @@ import java.util.*;
  * granularity.
  * 
  * <p>
+ * The items are hash-partitioned over <code>NUM_PARTITIONS</code> partitions,
+ * each guarded by its own latch, so requests on items in different partitions
+ * never contend with each other.
+ * </p>
+ * 
+ * <p>
  * If a transaction requests to lock an item that causes a conflict with an
- * existing lock on that item, then the transaction is placed into a wait list
- * and will be notified (awaked) to compete for the lock whenever the conflict
- * is resolved. Currently, there is only one wait list for all items.
+ * existing lock on that item, then the transaction is placed into the wait
+ * queue of that item. When a lock on the item is released, only the waiting
+ * transactions of that item whose requests have become compatible are
+ * awaked, in FIFO order, to compete for the lock.
+ * </p>
+ * 
+ * <p>
+ * Deadlocks are detected by a waits-for graph which has an edge from each
+ * waiting transaction to every transaction holding a conflicting lock on the
+ * item it waits for. The edges of the waiters of an item are refreshed each
+ * time the locks on that item change. Once a cycle is closed, the transaction
+ * on it that has waited the longest is chosen as the victim and aborted
+ * immediately. A transaction that waits longer than <code>MAX_TIME</code>
+ * without being part of a deadlock is still aborted, as a safety net for
+ * waits the graph cannot see.
  * </p>
  */
 class LockTable {
 	private static final long MAX_TIME;
 	private static final long EPSILON;
+	private static final int NUM_PARTITIONS;
 	final static int IS_LOCK = 0, IX_LOCK = 1, S_LOCK = 2, SIX_LOCK = 3,
 			X_LOCK = 4;
+	// the compatibility matrix indexed by the held and the requested lock type
+	private static final boolean[][] COMPATIBLE = {
+			{ true, true, true, true, false },
+			{ true, true, false, false, false },
+			{ true, false, true, false, false },
+			{ true, false, false, false, false },
+			{ false, false, false, false, false } };
 
 	static {
 		String prop = System.getProperty(LockTable.class.getName()
@@ -27,12 +58,18 @@ class LockTable {
 		MAX_TIME = (prop == null ? 10000 : Long.parseLong(prop.trim()));
 		prop = System.getProperty(LockTable.class.getName() + ".EPSILON");
 		EPSILON = (prop == null ? 50 : Long.parseLong(prop.trim()));
+		prop = System.getProperty(LockTable.class.getName()
+				+ ".NUM_PARTITIONS");
+		NUM_PARTITIONS = (prop == null ? 64 : Math.max(1, Integer
+				.parseInt(prop.trim())));
 	}
 
 	class Lockers {
 		List<Long> sLockers, ixLockers, isLockers;
 		// only one tx can hold xLock(sixLock) on single item
 		long sixLocker, xLocker;
+		// the transactions waiting for a lock on the item, in FIFO order
+		List<Waiter> waiters;
 
 		Lockers() {
 			sLockers = new LinkedList<Long>();
@@ -40,16 +77,53 @@ class LockTable {
 			isLockers = new LinkedList<Long>();
 			sixLocker = -1; // -1 means none
 			xLocker = -1;
+			waiters = new LinkedList<Waiter>();
 		}
 	}
 
-	private Map<Object, Lockers> lockerMap = new HashMap<Object, Lockers>();
+	class Waiter {
+		long txNum;
+		int lockType;
+		Thread thread;
+		long timestamp;
+		// the edges of the waits-for graph, guarded by the graph
+		Set<Long> blockers = Collections.emptySet();
+		// set if the transaction is chosen as the victim of a deadlock
+		volatile boolean victim;
+
+		Waiter(long txNum, int lockType) {
+			this.txNum = txNum;
+			this.lockType = lockType;
+			thread = Thread.currentThread();
+			timestamp = System.currentTimeMillis();
+		}
+	}
+
+	private class Partition {
+		ReentrantLock latch = new ReentrantLock();
+		Map<Object, Lockers> lockerMap = new HashMap<Object, Lockers>();
+	}
+
+	private Partition[] partitions;
+	// the items on which each transaction holds locks
+	private Map<Long, Set<Object>> lockedItems = new ConcurrentHashMap<Long, Set<Object>>();
+	// the waiting transactions forming the waits-for graph
+	private Map<Long, Waiter> waitsFor = new HashMap<Long, Waiter>();
+	private AtomicLong numDeadlocks = new AtomicLong();
+	private AtomicLong numTimeouts = new AtomicLong();
+
+	LockTable() {
+		partitions = new Partition[NUM_PARTITIONS];
+		for (int i = 0; i < NUM_PARTITIONS; i++)
+			partitions[i] = new Partition();
+	}
 
 	/**
 	 * Grants an slock on the specified item. If any conflict lock exists when
-	 * the method is called, then the calling thread will be placed on a wait
-	 * list until the lock is released. If the thread remains on the wait list
-	 * for a certain amount of time, then an exception is thrown.
+	 * the method is called, then the calling thread will be placed on the wait
+	 * queue of the item until the lock is released. If the thread remains on
+	 * the wait queue for a certain amount of time, then an exception is
+	 * thrown.
 	 * 
 	 * @param obj
 	 *            a lockable item
@@ -57,27 +131,16 @@ class LockTable {
 	 *            a transaction number
 	 * 
 	 */
-	synchronized void sLock(Object obj, long txNum) {
-		if (hasSLock(obj, txNum))
-			return;
-
-		try {
-			long timestamp = System.currentTimeMillis();
-			while (!sLockable(obj, txNum) && !waitingTooLong(timestamp))
-				wait(MAX_TIME);
-			if (!sLockable(obj, txNum))
-				throw new LockAbortException();
-			prepareLockers(obj).sLockers.add(txNum);
-		} catch (InterruptedException e) {
-			throw new LockAbortException();
-		}
+	void sLock(Object obj, long txNum) {
+		lock(obj, txNum, S_LOCK);
 	}
 
 	/**
 	 * Grants an xlock on the specified item. If any conflict lock exists when
-	 * the method is called, then the calling thread will be placed on a wait
-	 * list until the lock is released. If the thread remains on the wait list
-	 * for a certain amount of time, then an exception is thrown.
+	 * the method is called, then the calling thread will be placed on the wait
+	 * queue of the item until the lock is released. If the thread remains on
+	 * the wait queue for a certain amount of time, then an exception is
+	 * thrown.
 	 * 
 	 * @param obj
 	 *            a lockable item
@@ -85,27 +148,16 @@ class LockTable {
 	 *            a transaction number
 	 * 
 	 */
-	synchronized void xLock(Object obj, long txNum) {
-		if (hasXLock(obj, txNum))
-			return;
-
-		try {
-			long timestamp = System.currentTimeMillis();
-			while (!xLockable(obj, txNum) && !waitingTooLong(timestamp))
-				wait(MAX_TIME);
-			if (!xLockable(obj, txNum))
-				throw new LockAbortException();
-			prepareLockers(obj).xLocker = txNum;
-		} catch (InterruptedException e) {
-			throw new LockAbortException();
-		}
+	void xLock(Object obj, long txNum) {
+		lock(obj, txNum, X_LOCK);
 	}
 
 	/**
 	 * Grants an sixlock on the specified item. If any conflict lock exists when
-	 * the method is called, then the calling thread will be placed on a wait
-	 * list until the lock is released. If the thread remains on the wait list
-	 * for a certain amount of time, then an exception is thrown.
+	 * the method is called, then the calling thread will be placed on the wait
+	 * queue of the item until the lock is released. If the thread remains on
+	 * the wait queue for a certain amount of time, then an exception is
+	 * thrown.
 	 * 
 	 * @param obj
 	 *            a lockable item
@@ -113,75 +165,45 @@ class LockTable {
 	 *            a transaction number
 	 * 
 	 */
-	synchronized void sixLock(Object obj, long txNum) {
-		if (hasSixLock(obj, txNum))
-			return;
-
-		try {
-			long timestamp = System.currentTimeMillis();
-			while (!sixLockable(obj, txNum) && !waitingTooLong(timestamp))
-				wait(MAX_TIME);
-			if (!sixLockable(obj, txNum))
-				throw new LockAbortException();
-			prepareLockers(obj).sixLocker = txNum;
-		} catch (InterruptedException e) {
-			throw new LockAbortException();
-		}
-
+	void sixLock(Object obj, long txNum) {
+		lock(obj, txNum, SIX_LOCK);
 	}
 
 	/**
 	 * Grants an islock on the specified item. If any conflict lock exists when
-	 * the method is called, then the calling thread will be placed on a wait
-	 * list until the lock is released. If the thread remains on the wait list
-	 * for a certain amount of time, then an exception is thrown.
+	 * the method is called, then the calling thread will be placed on the wait
+	 * queue of the item until the lock is released. If the thread remains on
+	 * the wait queue for a certain amount of time, then an exception is
+	 * thrown.
 	 * 
 	 * @param obj
 	 *            a lockable item
 	 * @param txNum
 	 *            a transaction number
 	 */
-	synchronized void isLock(Object obj, long txNum) {
-		try {
-			long timestamp = System.currentTimeMillis();
-			while (!isLockable(obj, txNum) && !waitingTooLong(timestamp))
-				wait(MAX_TIME);
-			if (!isLockable(obj, txNum))
-				throw new LockAbortException();
-			prepareLockers(obj).isLockers.add(txNum);
-		} catch (InterruptedException e) {
-			throw new LockAbortException();
-		}
+	void isLock(Object obj, long txNum) {
+		lock(obj, txNum, IS_LOCK);
 	}
 
 	/**
 	 * Grants an ixlock on the specified item. If any conflict lock exists when
-	 * the method is called, then the calling thread will be placed on a wait
-	 * list until the lock is released. If the thread remains on the wait list
-	 * for a certain amount of time, then an exception is thrown.
+	 * the method is called, then the calling thread will be placed on the wait
+	 * queue of the item until the lock is released. If the thread remains on
+	 * the wait queue for a certain amount of time, then an exception is
+	 * thrown.
 	 * 
 	 * @param obj
 	 *            a lockable item
 	 * @param txNum
 	 *            a transaction number
 	 */
-	synchronized void ixLock(Object obj, long txNum) {
-		try {
-			long timestamp = System.currentTimeMillis();
-			while (!ixLockable(obj, txNum) && !waitingTooLong(timestamp))
-				wait(MAX_TIME);
-			if (!ixLockable(obj, txNum))
-				throw new LockAbortException();
-			prepareLockers(obj).ixLockers.add(txNum);
-		} catch (InterruptedException e) {
-			throw new LockAbortException();
-		}
+	void ixLock(Object obj, long txNum) {
+		lock(obj, txNum, IX_LOCK);
 	}
 
 	/**
 	 * Releases the specified type of lock on an item holding by a transaction.
-	 * If a lock is the last lock on that block, then the waiting transactions
-	 * are notified.
+	 * The waiting transactions that can get their locks now are notified.
 	 * 
 	 * @param obj
 	 *            a lockable item
@@ -190,196 +212,429 @@ class LockTable {
 	 * @param lockType
 	 *            the type of lock
 	 */
-	synchronized void release(Object obj, long txNum, int lockType) {
-		Lockers lks = lockerMap.get(obj);
+	void release(Object obj, long txNum, int lockType) {
+		Partition p = partitionOf(obj);
+		p.latch.lock();
+		try {
+			Lockers lks = p.lockerMap.get(obj);
+			if (lks == null)
+				return;
+			switch (lockType) {
+			case X_LOCK:
+				if (lks.xLocker == txNum)
+					lks.xLocker = -1;
+				break;
+			case SIX_LOCK:
+				if (lks.sixLocker == txNum)
+					lks.sixLocker = -1;
+				break;
+			case S_LOCK:
+				lks.sLockers.remove((Long) txNum);
+				break;
+			case IS_LOCK:
+				lks.isLockers.remove((Long) txNum);
+				break;
+			case IX_LOCK:
+				lks.ixLockers.remove((Long) txNum);
+				break;
+			default:
+				throw new IllegalArgumentException();
+			}
+			lockReleased(p, obj, lks, txNum);
+		} finally {
+			p.latch.unlock();
+		}
+	}
 
+	/**
+	 * Releases all locks held by a transaction. For each item, the waiting
+	 * transactions that can get their locks now are notified.
+	 * 
+	 * @param txNum
+	 *            a transaction number
+	 * 
+	 * @param sLockOnly
+	 *            release slocks only
+	 */
+	void releaseAll(long txNum, boolean sLockOnly) {
+		Set<Object> items = lockedItems.get(txNum);
+		if (items == null)
+			return;
+		for (Object obj : items.toArray()) {
+			Partition p = partitionOf(obj);
+			p.latch.lock();
+			try {
+				Lockers lks = p.lockerMap.get(obj);
+				if (lks == null) {
+					items.remove(obj);
+					continue;
+				}
+				Collection<Long> tx = Collections.singleton(txNum);
+				lks.sLockers.removeAll(tx);
+				if (lks.sixLocker == txNum)
+					lks.sixLocker = -1;
+				lks.isLockers.removeAll(tx);
+				if (!sLockOnly) {
+					if (lks.xLocker == txNum)
+						lks.xLocker = -1;
+					lks.ixLockers.removeAll(tx);
+				}
+				lockReleased(p, obj, lks, txNum);
+			} finally {
+				p.latch.unlock();
+			}
+		}
+		if (items.isEmpty())
+			lockedItems.remove(txNum);
+	}
+
+	/**
+	 * Grants the specified type of lock, waiting in the queue of the item if
+	 * the lock cannot be granted immediately. The caller must not hold the
+	 * latch of any partition.
+	 */
+	private void lock(Object obj, long txNum, int lockType) {
+		Partition p = partitionOf(obj);
+		p.latch.lock();
+		try {
+			Lockers lks = prepareLockers(p, obj);
+			if (hasLock(lks, txNum, lockType))
+				return;
+			if (lockable(lks, txNum, lockType)) {
+				grant(lks, obj, txNum, lockType);
+				// the waiters of the item may now wait for this transaction
+				if (!lks.waiters.isEmpty())
+					refreshWaitsFor(lks);
+				return;
+			}
+
+			Waiter waiter = new Waiter(txNum, lockType);
+			lks.waiters.add(waiter);
+			synchronized (waitsFor) {
+				waitsFor.put(txNum, waiter);
+			}
+			try {
+				refreshWaitsFor(lks);
+				while (!lockable(lks, txNum, lockType)) {
+					if (waiter.victim) {
+						numDeadlocks.incrementAndGet();
+						throw new LockAbortException();
+					}
+					long waitTime = MAX_TIME - EPSILON
+							- (System.currentTimeMillis() - waiter.timestamp);
+					if (waitTime <= 0) {
+						numTimeouts.incrementAndGet();
+						throw new LockAbortException();
+					}
+					/*
+					 * Parking instead of awaiting a condition lets a victim be
+					 * awaked without the latch of its partition.
+					 */
+					p.latch.unlock();
+					try {
+						LockSupport.parkNanos(this,
+								TimeUnit.MILLISECONDS.toNanos(waitTime));
+					} finally {
+						p.latch.lock();
+					}
+					if (Thread.interrupted())
+						throw new LockAbortException();
+				}
+				grant(lks, obj, txNum, lockType);
+			} finally {
+				lks.waiters.remove(waiter);
+				synchronized (waitsFor) {
+					waitsFor.remove(txNum);
+				}
+				lockReleased(p, obj, lks, txNum);
+			}
+		} finally {
+			p.latch.unlock();
+		}
+	}
+
+	private void grant(Lockers lks, Object obj, long txNum, int lockType) {
 		switch (lockType) {
 		case X_LOCK:
-			if (lks.xLocker == txNum) {
-				lks.xLocker = -1;
-				notifyAll();
-			}
-			return;
+			lks.xLocker = txNum;
+			break;
 		case SIX_LOCK:
-			if (lks.sixLocker == txNum) {
-				lks.sixLocker = -1;
-				notifyAll();
-			}
-			return;
+			lks.sixLocker = txNum;
+			break;
 		case S_LOCK:
-			List<Long> sl = lks.sLockers;
-			if (sl != null && sl.contains(txNum)) {
-				sl.remove((Long) txNum);
-				if (sl.isEmpty())
-					notifyAll();
-			}
-			return;
+			lks.sLockers.add(txNum);
+			break;
 		case IS_LOCK:
-			List<Long> isl = lks.isLockers;
-			if (isl != null && isl.contains(txNum)) {
-				isl.remove((Long) txNum);
-				if (isl.isEmpty())
-					notifyAll();
-			}
-			return;
+			lks.isLockers.add(txNum);
+			break;
 		case IX_LOCK:
-			List<Long> ixl = lks.ixLockers;
-			if (ixl != null && ixl.contains(txNum)) {
-				ixl.remove((Long) txNum);
-				if (ixl.isEmpty())
-					notifyAll();
-			}
-			return;
+			lks.ixLockers.add(txNum);
+			break;
 		default:
 			throw new IllegalArgumentException();
 		}
+		Set<Object> items = lockedItems.get(txNum);
+		if (items == null) {
+			items = Collections
+					.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+			lockedItems.put(txNum, items);
+		}
+		items.add(obj);
 	}
 
 	/**
-	 * Releases all locks held by a transaction. If a lock is the last lock on
-	 * that block, then the waiting transactions are notified.
-	 * 
-	 * @param txNum
-	 *            a transaction number
-	 * 
-	 * @param sLockOnly
-	 *            release slocks only
+	 * Updates the bookkeeping of an item after some locks on it may have been
+	 * released or a waiting transaction has left its queue. The waiting
+	 * transactions that can get their locks now are notified. The caller must
+	 * hold the latch of the partition.
 	 */
-	synchronized void releaseAll(long txNum, boolean sLockOnly) {
-		List<Object> released = new LinkedList<Object>();
-		for (Object obj : lockerMap.keySet()) {
-			if (hasSLock(obj, txNum))
-				release(obj, txNum, S_LOCK);
+	private void lockReleased(Partition p, Object obj, Lockers lks, long txNum) {
+		if (!holdsAny(lks, txNum)) {
+			Set<Object> items = lockedItems.get(txNum);
+			if (items != null)
+				items.remove(obj);
+		}
+		if (!lks.waiters.isEmpty()) {
+			refreshWaitsFor(lks);
+			for (Waiter waiter : lks.waiters)
+				if (lockable(lks, waiter.txNum, waiter.lockType))
+					LockSupport.unpark(waiter.thread);
+		} else if (!sLocked(lks) && !xLocked(lks) && !sixLocked(lks)
+				&& !isLocked(lks) && !ixLocked(lks))
+			p.lockerMap.remove(obj);
+	}
 
-			if (hasXLock(obj, txNum) && !sLockOnly)
-				release(obj, txNum, X_LOCK);
+	/**
+	 * Returns the number of transactions aborted as the victims of deadlocks.
+	 * 
+	 * @return the number of deadlocks
+	 */
+	long numDeadlocks() {
+		return numDeadlocks.get();
+	}
 
-			if (hasSixLock(obj, txNum))
-				release(obj, txNum, SIX_LOCK);
+	/**
+	 * Returns the number of transactions aborted because they waited too long
+	 * for a lock.
+	 * 
+	 * @return the number of timeouts
+	 */
+	long numTimeouts() {
+		return numTimeouts.get();
+	}
 
-			while (hasIsLock(obj, txNum))
-				release(obj, txNum, IS_LOCK);
+	/**
+	 * Replaces the edges of each waiter of an item by the transactions holding
+	 * a lock on the item that conflicts with its request. If the edges of a
+	 * waiter close a cycle, the longest waiting transaction on the cycle is
+	 * chosen as the victim and awaked. The caller must hold the latch of the
+	 * partition.
+	 */
+	private void refreshWaitsFor(Lockers lks) {
+		for (Waiter waiter : lks.waiters) {
+			if (waiter.victim)
+				continue;
+			Set<Long> blockers = blockersOf(lks, waiter);
+			synchronized (waitsFor) {
+				waiter.blockers = blockers;
+				List<Waiter> cycle = findCycle(waiter);
+				if (cycle != null) {
+					Waiter victim = waiter;
+					for (Waiter w : cycle)
+						if (w.timestamp < victim.timestamp)
+							victim = w;
+					victim.victim = true;
+					// the victim is going to abort, so it blocks nobody
+					victim.blockers = Collections.emptySet();
+					LockSupport.unpark(victim.thread);
+				}
+			}
+		}
+	}
 
-			while (hasIxLock(obj, txNum) && !sLockOnly)
-				release(obj, txNum, IX_LOCK);
+	private Set<Long> blockersOf(Lockers lks, Waiter waiter) {
+		Set<Long> blockers = new HashSet<Long>();
+		int type = waiter.lockType;
+		if (!COMPATIBLE[IS_LOCK][type])
+			blockers.addAll(lks.isLockers);
+		if (!COMPATIBLE[IX_LOCK][type])
+			blockers.addAll(lks.ixLockers);
+		if (!COMPATIBLE[S_LOCK][type])
+			blockers.addAll(lks.sLockers);
+		if (!COMPATIBLE[SIX_LOCK][type] && sixLocked(lks))
+			blockers.add(lks.sixLocker);
+		if (!COMPATIBLE[X_LOCK][type] && xLocked(lks))
+			blockers.add(lks.xLocker);
+		blockers.remove(waiter.txNum);
+		return blockers;
+	}
 
-			if (!sLocked(obj) && !xLocked(obj) && !sixLocked(obj)
-					&& !isLocked(obj) && !ixLocked(obj))
-				released.add(obj);
-		}
-		for (Object obj : released) {
-			lockerMap.remove(obj);
+	/**
+	 * Returns the waiters on a cycle of the waits-for graph passing through
+	 * the specified waiter, or null if there is no such cycle. The caller must
+	 * hold the monitor of the graph.
+	 */
+	private List<Waiter> findCycle(Waiter start) {
+		// the transaction from which each visited one is reached
+		Map<Long, Long> parents = new HashMap<Long, Long>();
+		Deque<Long> stack = new ArrayDeque<Long>();
+		stack.push(start.txNum);
+		while (!stack.isEmpty()) {
+			Waiter waiter = waitsFor.get(stack.pop());
+			if (waiter == null)
+				continue;
+			for (Long next : waiter.blockers) {
+				if (parents.containsKey(next))
+					continue;
+				parents.put(next, waiter.txNum);
+				if (next == start.txNum) {
+					List<Waiter> cycle = new ArrayList<Waiter>();
+					for (long tx = waiter.txNum; tx != start.txNum; tx = parents
+							.get(tx))
+						cycle.add(waitsFor.get(tx));
+					cycle.add(start);
+					return cycle;
+				}
+				stack.push(next);
+			}
 		}
+		return null;
 	}
 
-	private Lockers prepareLockers(Object obj) {
-		Lockers lockers = lockerMap.get(obj);
+	private Lockers prepareLockers(Partition p, Object obj) {
+		Lockers lockers = p.lockerMap.get(obj);
 		if (lockers == null) {
 			lockers = new Lockers();
-			lockerMap.put(obj, lockers);
+			p.lockerMap.put(obj, lockers);
 		}
 		return lockers;
 	}
 
-	private boolean waitingTooLong(long starttime) {
-		return System.currentTimeMillis() - starttime + EPSILON > MAX_TIME;
+	private Partition partitionOf(Object obj) {
+		return partitions[(obj.hashCode() & Integer.MAX_VALUE)
+				% partitions.length];
 	}
 
 	/*
 	 * Verify if an item is locked.
 	 */
 
-	private boolean sLocked(Object obj) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.sLockers.size() > 0;
+	private boolean sLocked(Lockers lks) {
+		return lks.sLockers.size() > 0;
 	}
 
-	private boolean xLocked(Object obj) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.xLocker != -1;
+	private boolean xLocked(Lockers lks) {
+		return lks.xLocker != -1;
 	}
 
-	private boolean sixLocked(Object obj) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.sixLocker != -1;
+	private boolean sixLocked(Lockers lks) {
+		return lks.sixLocker != -1;
 	}
 
-	private boolean isLocked(Object obj) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.isLockers.size() > 0;
+	private boolean isLocked(Lockers lks) {
+		return lks.isLockers.size() > 0;
 	}
 
-	private boolean ixLocked(Object obj) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.ixLockers.size() > 0;
-	}
-
-	private int numberOfSLocker(Object obj) {
-		Lockers lks = lockerMap.get(obj);
-		return lks.sLockers.size();
+	private boolean ixLocked(Lockers lks) {
+		return lks.ixLockers.size() > 0;
 	}
 
 	/*
 	 * Verify if an item is held by a tx.
 	 */
 
-	private boolean hasSLock(Object obj, long txNum) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.sLockers.contains(txNum);
+	private boolean hasSLock(Lockers lks, long txNum) {
+		return lks.sLockers.contains(txNum);
+	}
+
+	private boolean hasXLock(Lockers lks, long txNum) {
+		return lks.xLocker == txNum;
 	}
 
-	private boolean hasXLock(Object obj, long txNUm) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.xLocker == txNUm;
+	private boolean hasSixLock(Lockers lks, long txNum) {
+		return lks.sixLocker == txNum;
 	}
 
-	private boolean hasSixLock(Object obj, long txNum) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.sixLocker == txNum;
+	private boolean hasIsLock(Lockers lks, long txNum) {
+		return lks.isLockers.contains(txNum);
 	}
 
-	private boolean hasIsLock(Object obj, long txNum) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.isLockers.contains(txNum);
+	private boolean hasIxLock(Lockers lks, long txNum) {
+		return lks.ixLockers.contains(txNum);
 	}
 
-	private boolean hasIxLock(Object obj, long txNum) {
-		Lockers lks = lockerMap.get(obj);
-		return lks != null && lks.ixLockers.contains(txNum);
+	private boolean holdsAny(Lockers lks, long txNum) {
+		return hasSLock(lks, txNum) || hasXLock(lks, txNum)
+				|| hasSixLock(lks, txNum) || hasIsLock(lks, txNum)
+				|| hasIxLock(lks, txNum);
+	}
+
+	/**
+	 * Returns true if a repeated request of the specified type can be ignored.
+	 * The intention locks are counted, so they are never ignored.
+	 */
+	private boolean hasLock(Lockers lks, long txNum, int lockType) {
+		switch (lockType) {
+		case X_LOCK:
+			return hasXLock(lks, txNum);
+		case SIX_LOCK:
+			return hasSixLock(lks, txNum);
+		case S_LOCK:
+			return hasSLock(lks, txNum);
+		default:
+			return false;
+		}
 	}
 
 	/*
 	 * Verify if an item is lockable to a tx.
 	 */
 
-	private boolean sLockable(Object obj, long txNum) {
-		return (!xLocked(obj) || hasXLock(obj, txNum))
-				&& (!sixLocked(obj) || hasSixLock(obj, txNum))
-				&& (!ixLocked(obj) || hasIxLock(obj, txNum));
+	private boolean lockable(Lockers lks, long txNum, int lockType) {
+		switch (lockType) {
+		case X_LOCK:
+			return xLockable(lks, txNum);
+		case SIX_LOCK:
+			return sixLockable(lks, txNum);
+		case S_LOCK:
+			return sLockable(lks, txNum);
+		case IS_LOCK:
+			return isLockable(lks, txNum);
+		case IX_LOCK:
+			return ixLockable(lks, txNum);
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
+
+	private boolean sLockable(Lockers lks, long txNum) {
+		return (!xLocked(lks) || hasXLock(lks, txNum))
+				&& (!sixLocked(lks) || hasSixLock(lks, txNum))
+				&& (!ixLocked(lks) || hasIxLock(lks, txNum));
 	}
 
-	private boolean xLockable(Object obj, long txNum) {
-		return (!sLocked(obj) || (hasSLock(obj, txNum) && numberOfSLocker(obj) == 1))
-				&& (!sixLocked(obj) || hasSixLock(obj, txNum))
-				&& (!ixLocked(obj) || hasIxLock(obj, txNum))
-				&& (!isLocked(obj) || hasIsLock(obj, txNum))
-				&& (!xLocked(obj) || hasXLock(obj, txNum));
+	private boolean xLockable(Lockers lks, long txNum) {
+		return (!sLocked(lks) || (hasSLock(lks, txNum) && lks.sLockers.size() == 1))
+				&& (!sixLocked(lks) || hasSixLock(lks, txNum))
+				&& (!ixLocked(lks) || hasIxLock(lks, txNum))
+				&& (!isLocked(lks) || hasIsLock(lks, txNum))
+				&& (!xLocked(lks) || hasXLock(lks, txNum));
 	}
 
-	private boolean sixLockable(Object obj, long txNum) {
-		return (!sixLocked(obj) || hasSixLock(obj, txNum))
-				&& (!ixLocked(obj) || hasIxLock(obj, txNum))
-				&& (!sLocked(obj) || (hasSLock(obj, txNum) && numberOfSLocker(obj) == 1))
-				&& (!xLocked(obj) || hasXLock(obj, txNum));
+	private boolean sixLockable(Lockers lks, long txNum) {
+		return (!sixLocked(lks) || hasSixLock(lks, txNum))
+				&& (!ixLocked(lks) || hasIxLock(lks, txNum))
+				&& (!sLocked(lks) || (hasSLock(lks, txNum) && lks.sLockers.size() == 1))
+				&& (!xLocked(lks) || hasXLock(lks, txNum));
 	}
 
-	private boolean ixLockable(Object obj, long txNum) {
-		return (!sLocked(obj) || (hasSLock(obj, txNum) && numberOfSLocker(obj) == 1))
-				&& (!sixLocked(obj) || hasSixLock(obj, txNum))
-				&& (!xLocked(obj) || hasXLock(obj, txNum));
+	private boolean ixLockable(Lockers lks, long txNum) {
+		return (!sLocked(lks) || (hasSLock(lks, txNum) && lks.sLockers.size() == 1))
+				&& (!sixLocked(lks) || hasSixLock(lks, txNum))
+				&& (!xLocked(lks) || hasXLock(lks, txNum));
 	}
 
-	private boolean isLockable(Object obj, long txNum) {
-		return (!xLocked(obj) || hasXLock(obj, txNum));
+	private boolean isLockable(Lockers lks, long txNum) {
+		return (!xLocked(lks) || hasXLock(lks, txNum));
 	}
 }
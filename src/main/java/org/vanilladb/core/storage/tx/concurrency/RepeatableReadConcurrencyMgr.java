@@ -13,11 +13,13 @@ public class RepeatableReadConcurrencyMgr extends ConcurrencyMgr {
 
 	@Override
 	public void onTxCommit(Transaction tx) {
+		versionStore.commit(txNum);
 		lockTbl.releaseAll(txNum, false);
 	}
 
 	@Override
 	public void onTxRollback(Transaction tx) {
+		versionStore.rollback(txNum);
 		lockTbl.releaseAll(txNum, false);
 	}
 
@@ -0,0 +1,168 @@
+package org.vanilladb.core.storage.tx.concurrency;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.DOUBLE;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharView;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The concurrency manager of a read-only transaction running under snapshot
+ * isolation. The transaction takes no lock, since it writes nothing but its
+ * own temporary tables. Each value it reads is the one committed before the
+ * transaction started, rebuilt from the {@link VersionStore} if it has been
+ * overwritten since.
+ */
+public class SnapshotConcurrencyMgr extends ConcurrencyMgr {
+	private long snapshotTs;
+
+	public SnapshotConcurrencyMgr(long txNumber) {
+		txNum = txNumber;
+		snapshotTs = versionStore.beginSnapshot();
+	}
+
+	@Override
+	public void onTxCommit(Transaction tx) {
+		versionStore.endSnapshot(snapshotTs);
+	}
+
+	@Override
+	public void onTxRollback(Transaction tx) {
+		versionStore.endSnapshot(snapshotTs);
+	}
+
+	@Override
+	public void onTxEndStatement(Transaction tx) {
+		// do nothing
+	}
+
+	@Override
+	public void sLock(String fileName) {
+		// do nothing
+	}
+
+	@Override
+	public void sLock(BlockId blk) {
+		// do nothing
+	}
+
+	@Override
+	public void sLock(RecordId rid) {
+		// do nothing
+	}
+
+	@Override
+	public void xLock(String fileName) {
+		// do nothing
+	}
+
+	@Override
+	public void xLock(BlockId blk) {
+		// do nothing
+	}
+
+	@Override
+	public void xLock(RecordId rid) {
+		// do nothing
+	}
+
+	@Override
+	public void sixLock(String fileName) {
+		// do nothing
+	}
+
+	@Override
+	public void sixLock(BlockId blk) {
+		// do nothing
+	}
+
+	@Override
+	public void rangeLock(Object obj) {
+		// do nothing
+	}
+
+	@Override
+	public void sLockIndexBlock(BlockId blk) {
+		// do nothing
+	}
+
+	@Override
+	public void xLockIndexBlock(BlockId blk) {
+		// do nothing
+	}
+
+	@Override
+	public void releaseIndexBlocks(BlockId... blks) {
+		// do nothing
+	}
+
+	/**
+	 * Returns the value at the specified offset of a pinned buffer as of the
+	 * snapshot of this transaction.
+	 */
+	@Override
+	public Constant getVal(Buffer buff, int offset, Type type) {
+		// the buffer must be read before the versions
+		Constant val = buff.getVal(offset, type);
+		return versionStore.read(buff.block(), offset, val, snapshotTs);
+	}
+
+	/*
+	 * The primitive reads go through the versions, and so allocate as
+	 * getVal() does.
+	 */
+
+	@Override
+	public int getInt(Buffer buff, int offset) {
+		return (Integer) getVal(buff, offset, INTEGER).asJavaVal();
+	}
+
+	@Override
+	public long getLong(Buffer buff, int offset) {
+		return (Long) getVal(buff, offset, BIGINT).asJavaVal();
+	}
+
+	@Override
+	public double getDouble(Buffer buff, int offset) {
+		return (Double) getVal(buff, offset, DOUBLE).asJavaVal();
+	}
+
+	@Override
+	public void getVarchar(Buffer buff, int offset, VarcharView view) {
+		view.set((String) getVal(buff, offset, VARCHAR).asJavaVal());
+	}
+
+	/**
+	 * Returns the page of a pinned buffer as of the snapshot of this
+	 * transaction. The page is always a copy, since a writer may change the
+	 * buffer while the transaction is reading it.
+	 */
+	@Override
+	public Page readPage(Buffer buff) {
+		// the buffer must be read before the versions
+		Page page = buff.copyPage();
+		Page image = versionStore.readImage(buff.block(), snapshotTs);
+		return image == null ? page : image;
+	}
+
+	/**
+	 * Returns the number of blocks of the specified file as of the snapshot
+	 * of this transaction, which excludes the pages bulk loaded after it
+	 * started.
+	 */
+	@Override
+	public long fileSize(String fileName) {
+		// the size must be read before the versions
+		long size = VanillaDB.fileMgr().size(fileName);
+		return versionStore.readSize(fileName, size, snapshotTs);
+	}
+}
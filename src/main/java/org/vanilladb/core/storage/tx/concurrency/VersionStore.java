@@ -0,0 +1,428 @@
+package org.vanilladb.core.storage.tx.concurrency;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+
+/**
+ * Keeps the old versions of the values overwritten by transactions, so that a
+ * snapshot transaction can read the values committed before it started
+ * without taking any lock.
+ *
+ * <p>
+ * Before a transaction overwrites a value in a block, the old value is pushed
+ * onto the version chain of that position, newest first. The version is
+ * stamped with the commit timestamp of the writer when the writer commits. To
+ * read a value as of a snapshot, a reader starts from the current value in
+ * the buffer and undoes every version whose writer has not committed before
+ * the snapshot. Since the writers of a position are serialized by their
+ * xlocks, the versions behind the first one committed before the snapshot are
+ * never needed.
+ * </p>
+ *
+ * <p>
+ * The versions committed before the oldest active snapshot are needed by no
+ * reader, so they are removed from the chains whenever a writer commits or a
+ * snapshot ends. The versions of a rolled back writer are unlinked once its
+ * changes have been undone.
+ * </p>
+ *
+ * <p>
+ * A page whose values are moved around, like a slotted record page, cannot be
+ * rebuilt value by value, since an offset may hold values of different types
+ * over time. Such a page is versioned as a whole: the image of the page is
+ * kept before the first change of each writer, which holds an xlock on the
+ * block until it ends.
+ * </p>
+ *
+ * <p>
+ * The versions are kept even while no snapshot is active, so a new snapshot
+ * never waits for the writers in progress: every value it rebuilds is either
+ * committed before it or versioned. Such versions are needed by no reader and
+ * are dropped as soon as their writers commit.
+ * </p>
+ *
+ * <p>
+ * The pages appended by a bulk load are written without logging their
+ * values, so they are hidden from the snapshots by a version of the size of
+ * the file instead, kept before the load.
+ * </p>
+ */
+public class VersionStore {
+	// the commit timestamp of a writer that has not committed yet
+	private static final long UNCOMMITTED = Long.MAX_VALUE;
+	// the offset in the position of the images of a whole page
+	private static final int WHOLE_PAGE = -1;
+	// the block number in the position of the sizes of a file
+	private static final long FILE_SIZE = -1;
+
+	private static class Position {
+		BlockId blk;
+		int offset;
+
+		Position(BlockId blk, int offset) {
+			this.blk = blk;
+			this.offset = offset;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (obj == null || !(obj instanceof Position))
+				return false;
+			Position p = (Position) obj;
+			return offset == p.offset && blk.equals(p.blk);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * blk.hashCode() + offset;
+		}
+	}
+
+	private static class Writer {
+		volatile long commitTs = UNCOMMITTED;
+		List<Position> positions = new LinkedList<Position>();
+	}
+
+	private static class Version {
+		// a constant, a page for the images of a whole page, or a file size
+		Object oldVal;
+		Writer writer;
+		volatile Version older;
+
+		Version(Object oldVal, Writer writer, Version older) {
+			this.oldVal = oldVal;
+			this.writer = writer;
+			this.older = older;
+		}
+	}
+
+	private ConcurrentMap<Position, Version> chains = new ConcurrentHashMap<Position, Version>();
+	private Map<Long, Writer> writers = new ConcurrentHashMap<Long, Writer>();
+	private Queue<Writer> finished = new ConcurrentLinkedQueue<Writer>();
+	private AtomicLong clock = new AtomicLong();
+	// the timestamps of the active snapshots and their counts
+	private TreeMap<Long, Integer> snapshots = new TreeMap<Long, Integer>();
+	private ReentrantLock gcLatch = new ReentrantLock();
+
+	VersionStore() {
+	}
+
+	/**
+	 * Keeps the value at the specified position before the specified
+	 * transaction overwrites it. This method must be called before the value
+	 * in the buffer is changed.
+	 *
+	 * @param txNum
+	 *            the number of the writing transaction
+	 * @param blk
+	 *            the block containing the value
+	 * @param offset
+	 *            the offset of the value in the block
+	 * @param oldVal
+	 *            the value to be overwritten
+	 */
+	public void keepOldVersion(long txNum, BlockId blk, int offset,
+			Constant oldVal) {
+		keep(writer(txNum), new Position(blk, offset), oldVal);
+	}
+
+	/**
+	 * Keeps the image of the page in the specified buffer before the specified
+	 * transaction changes it for the first time. This method must be called
+	 * before any value in the buffer is changed, and the transaction must hold
+	 * the xlock of the block.
+	 *
+	 * @param txNum
+	 *            the number of the writing transaction
+	 * @param buff
+	 *            the buffer holding the page
+	 */
+	public void keepOldImage(long txNum, Buffer buff) {
+		Writer writer = writer(txNum);
+		Position pos = new Position(buff.block(), WHOLE_PAGE);
+		Version head = chains.get(pos);
+		// copies the page only before the first change of the writer
+		if (head != null && head.writer == writer)
+			return;
+		keep(writer, pos, buff.copyPage());
+	}
+
+	/**
+	 * Keeps the size of the specified file before the specified transaction
+	 * appends pages to it without keeping the versions of their values. The
+	 * transaction must hold the xlock of the file.
+	 *
+	 * @param txNum
+	 *            the number of the appending transaction
+	 * @param fileName
+	 *            the name of the file
+	 * @param size
+	 *            the number of blocks of the file before the appending
+	 */
+	public void keepOldSize(long txNum, String fileName, long size) {
+		keep(writer(txNum), new Position(new BlockId(fileName, FILE_SIZE), 0),
+				size);
+	}
+
+	private Writer writer(long txNum) {
+		Writer writer = writers.get(txNum);
+		if (writer == null) {
+			writer = new Writer();
+			writers.put(txNum, writer);
+		}
+		return writer;
+	}
+
+	private void keep(Writer writer, Position pos, Object oldVal) {
+		while (true) {
+			Version head = chains.get(pos);
+			// only the value before the first write of a writer is needed
+			if (head != null && head.writer == writer)
+				return;
+			Version v = new Version(oldVal, writer, head);
+			if (head == null ? chains.putIfAbsent(pos, v) == null : chains
+					.replace(pos, head, v))
+				break;
+		}
+		writer.positions.add(pos);
+	}
+
+	/**
+	 * Returns the value at the specified position as of the specified
+	 * snapshot.
+	 *
+	 * @param blk
+	 *            the block containing the value
+	 * @param offset
+	 *            the offset of the value in the block
+	 * @param currentVal
+	 *            the current value, read from the buffer before calling this
+	 *            method
+	 * @param snapshotTs
+	 *            the timestamp of the snapshot
+	 * @return the value seen by the snapshot
+	 */
+	public Constant read(BlockId blk, int offset, Constant currentVal,
+			long snapshotTs) {
+		Constant val = currentVal;
+		Version v = chains.get(new Position(blk, offset));
+		while (v != null && v.writer.commitTs > snapshotTs) {
+			val = (Constant) v.oldVal;
+			v = v.older;
+		}
+		return val;
+	}
+
+	/**
+	 * Returns the image of the specified block as of the specified snapshot,
+	 * or null if the snapshot sees the current page. The page must have been
+	 * copied from its buffer before calling this method, to be used if a null
+	 * value is returned.
+	 *
+	 * @param blk
+	 *            the block
+	 * @param snapshotTs
+	 *            the timestamp of the snapshot
+	 * @return the image seen by the snapshot, or null
+	 */
+	public Page readImage(BlockId blk, long snapshotTs) {
+		Page image = null;
+		Version v = chains.get(new Position(blk, WHOLE_PAGE));
+		while (v != null && v.writer.commitTs > snapshotTs) {
+			image = (Page) v.oldVal;
+			v = v.older;
+		}
+		return image;
+	}
+
+	/**
+	 * Returns the number of blocks of the specified file as of the specified
+	 * snapshot.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @param currentSize
+	 *            the current number of blocks, read before calling this
+	 *            method
+	 * @param snapshotTs
+	 *            the timestamp of the snapshot
+	 * @return the number of blocks seen by the snapshot
+	 */
+	public long readSize(String fileName, long currentSize, long snapshotTs) {
+		long size = currentSize;
+		Version v = chains.get(new Position(new BlockId(fileName, FILE_SIZE),
+				0));
+		while (v != null && v.writer.commitTs > snapshotTs) {
+			size = (Long) v.oldVal;
+			v = v.older;
+		}
+		return size;
+	}
+
+	/**
+	 * Stamps the versions kept for a committing transaction with a new commit
+	 * timestamp.
+	 *
+	 * @param txNum
+	 *            the number of the committing transaction
+	 */
+	void commit(long txNum) {
+		Writer writer = writers.remove(txNum);
+		if (writer == null)
+			return;
+		/*
+		 * A snapshot must not see the new clock before the writer is stamped
+		 * with it, otherwise it reads the values before the writer first and
+		 * those after it later.
+		 */
+		synchronized (snapshots) {
+			writer.commitTs = clock.incrementAndGet();
+		}
+		finished.add(writer);
+		collectGarbage();
+	}
+
+	/**
+	 * Discards the versions kept for a transaction whose changes have been
+	 * undone.
+	 *
+	 * @param txNum
+	 *            the number of the rolled back transaction
+	 */
+	void rollback(long txNum) {
+		Writer writer = writers.remove(txNum);
+		if (writer == null)
+			return;
+		/*
+		 * The versions stay uncommitted, so a reader still undoing them gets
+		 * the same values as in the buffers.
+		 */
+		gcLatch.lock();
+		try {
+			for (Position pos : writer.positions)
+				unlink(pos, writer);
+		} finally {
+			gcLatch.unlock();
+		}
+	}
+
+	/**
+	 * Starts a snapshot which sees the changes of all transactions committed so
+	 * far. This method does not wait for the writers in progress.
+	 *
+	 * @return the timestamp of the snapshot
+	 */
+	long beginSnapshot() {
+		synchronized (snapshots) {
+			long ts = clock.get();
+			Integer count = snapshots.get(ts);
+			snapshots.put(ts, count == null ? 1 : count + 1);
+			return ts;
+		}
+	}
+
+	/**
+	 * Ends a snapshot started by {@link #beginSnapshot()}.
+	 *
+	 * @param snapshotTs
+	 *            the timestamp of the snapshot
+	 */
+	void endSnapshot(long snapshotTs) {
+		synchronized (snapshots) {
+			Integer count = snapshots.get(snapshotTs);
+			if (count == null)
+				return;
+			if (count == 1)
+				snapshots.remove(snapshotTs);
+			else
+				snapshots.put(snapshotTs, count - 1);
+		}
+		collectGarbage();
+	}
+
+	/**
+	 * Returns the number of positions having old versions.
+	 *
+	 * @return the number of version chains
+	 */
+	int numChains() {
+		return chains.size();
+	}
+
+	/**
+	 * Cuts the chains of the finished writers behind the first version seen by
+	 * every active and future snapshot. Does nothing if another thread is
+	 * already collecting.
+	 */
+	private void collectGarbage() {
+		if (!gcLatch.tryLock())
+			return;
+		try {
+			long horizon;
+			synchronized (snapshots) {
+				horizon = snapshots.isEmpty() ? clock.get() : snapshots
+						.firstKey();
+			}
+			Writer writer = finished.peek();
+			while (writer != null && writer.commitTs <= horizon) {
+				finished.poll();
+				for (Position pos : writer.positions)
+					prune(pos, horizon);
+				writer = finished.peek();
+			}
+		} finally {
+			gcLatch.unlock();
+		}
+	}
+
+	private void unlink(Position pos, Writer writer) {
+		while (true) {
+			Version prev = null;
+			Version v = chains.get(pos);
+			while (v != null && v.writer != writer) {
+				prev = v;
+				v = v.older;
+			}
+			if (v == null)
+				return;
+			if (prev != null) {
+				prev.older = v.older;
+				return;
+			}
+			// retries if another writer has pushed a version meanwhile
+			if (v.older == null ? chains.remove(pos, v) : chains.replace(pos,
+					v, v.older))
+				return;
+		}
+	}
+
+	private void prune(Position pos, long horizon) {
+		Version prev = null;
+		Version v = chains.get(pos);
+		while (v != null && v.writer.commitTs > horizon) {
+			prev = v;
+			v = v.older;
+		}
+		if (v == null)
+			return;
+		if (prev == null)
+			chains.remove(pos, v);
+		else
+			prev.older = null;
+	}
+}
@@ -0,0 +1,247 @@
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * A recovery manager following the ARIES protocol. Pages modified by a
+ * transaction are not forced to disk when the transaction commits (no-force)
+ * and may be written to disk before it commits (steal); a commit only forces
+ * the log. Each buffer remembers the LSN of the first log record that dirtied
+ * its page, and these recovery LSNs form the dirty page table. Every
+ * <code>CHECKPOINT_INTERVAL</code> finished transactions a fuzzy checkpoint is
+ * taken without stopping transactions or flushing pages.
+ * 
+ * <p>
+ * The restart recovery reads the log back to the redo LSN of the last
+ * checkpoint, repeats the history by redoing every update from there, and
+ * then undoes the updates of the unfinished transactions, writing a
+ * {@link CompensationRecord} for each of them. The pages of a bulk load are
+ * written to disk before the loading transaction commits, and are emptied on
+ * disk when it is undone, as described by {@link BulkLoadRecord}.
+ * </p>
+ */
+public class AriesRecoveryMgr extends RecoveryMgr {
+	private static Logger logger = Logger.getLogger(AriesRecoveryMgr.class
+			.getName());
+	private static final int CHECKPOINT_INTERVAL;
+
+	// the active transactions and the LSNs of their start records
+	private static final Map<Long, Long> activeTxs = new HashMap<Long, Long>();
+	private static final AtomicInteger numFinished = new AtomicInteger();
+	private static volatile long lastCheckpointLsn = -1;
+
+	static {
+		String prop = System.getProperty(AriesRecoveryMgr.class.getName()
+				+ ".CHECKPOINT_INTERVAL");
+		CHECKPOINT_INTERVAL = (prop == null ? 1000 : Integer.parseInt(prop
+				.trim()));
+	}
+
+	/**
+	 * Creates a recovery manager for the specified transaction.
+	 * 
+	 * @param txNum
+	 *            the ID of the specified transaction
+	 */
+	public AriesRecoveryMgr(long txNum) {
+		super(txNum);
+		synchronized (activeTxs) {
+			activeTxs.put(txNum, startLsn);
+		}
+	}
+
+	/**
+	 * Writes a commit record to the log, and flushes it to disk. The pages
+	 * modified by the transaction stay in the buffer pool.
+	 */
+	@Override
+	public void onTxCommit(Transaction tx) {
+		long lsn = new CommitRecord(txNum).writeToLog();
+		VanillaDB.logMgr().flushForCommit(lsn);
+		onTxFinished();
+	}
+
+	/**
+	 * Undoes the modifications of the transaction, writes a rollback record to
+	 * the log, and flushes it to disk.
+	 */
+	@Override
+	public void onTxRollback(Transaction tx) {
+		doRollback();
+		long lsn = new RollbackRecord(txNum).writeToLog();
+		VanillaDB.logMgr().flushForCommit(lsn);
+		onTxFinished();
+	}
+
+	/**
+	 * Recovers the database after a crash in three passes. The analysis pass
+	 * reads the log back to the redo LSN of the last checkpoint. The redo pass
+	 * repeats every logged update from the redo LSN on. The undo pass goes
+	 * back through the records, finds the unfinished transactions and
+	 * compensates their updates. Finally, a fuzzy checkpoint is taken. This
+	 * method should be called only during system startup, before user
+	 * transactions begin.
+	 */
+	@Override
+	public void recover() {
+		// analysis
+		LinkedList<LogRecord> recs = new LinkedList<LogRecord>();
+		boolean checkpointFound = false;
+		long redoLsn = -1;
+		Iterator<LogRecord> iter = new LogRecordIterator();
+		while (iter.hasNext()) {
+			LogRecord rec = iter.next();
+			if (checkpointFound && rec.getLSN() < redoLsn)
+				break;
+			recs.addFirst(rec);
+			if (!checkpointFound) {
+				// nothing before a quiescent checkpoint is needed
+				if (rec.op() == OP_CHECKPOINT)
+					break;
+				if (rec.op() == OP_FUZZY_CHECKPOINT) {
+					checkpointFound = true;
+					redoLsn = ((FuzzyCheckpointRecord) rec).redoLsn();
+				}
+			}
+		}
+
+		// redo
+		for (LogRecord rec : recs)
+			rec.redo();
+
+		// undo
+		Map<Long, Long> lastLsns = new HashMap<Long, Long>();
+		Map<Long, Long> undoNextLsns = new HashMap<Long, Long>();
+		Set<Long> finishedTxs = new HashSet<Long>();
+		ListIterator<LogRecord> backIter = recs.listIterator(recs.size());
+		while (backIter.hasPrevious()) {
+			LogRecord rec = backIter.previous();
+			long recTxNum = rec.txNumber();
+			if (rec.op() == OP_COMMIT || rec.op() == OP_ROLLBACK)
+				finishedTxs.add(recTxNum);
+			else if (rec.op() == OP_START)
+				// transaction numbers restart from the same value after a
+				// restart, so older records may belong to another transaction
+				finishedTxs.remove(recTxNum);
+			else if (recTxNum >= 0 && !finishedTxs.contains(recTxNum)
+					&& !lastLsns.containsKey(recTxNum)) {
+				// the last record of an unfinished transaction
+				lastLsns.put(recTxNum, rec.getLSN());
+				undoNextLsns.put(recTxNum,
+						rec.op() == OP_COMPENSATION ? undoNextLsn(rec) : rec
+								.getLSN());
+			}
+		}
+		int numLosers = lastLsns.size();
+		// undo the latest update of all losers first, as ARIES does
+		while (!undoNextLsns.isEmpty()) {
+			long loser = -1, lsn = -1;
+			for (Map.Entry<Long, Long> e : undoNextLsns.entrySet())
+				if (e.getValue() > lsn) {
+					loser = e.getKey();
+					lsn = e.getValue();
+				}
+			LogRecord rec = LogRecordIterator.read(lsn);
+			if (rec.op() == OP_START) {
+				undoNextLsns.remove(loser);
+				new RollbackRecord(loser).writeToLog();
+				continue;
+			}
+			if (rec instanceof SetValueRecord)
+				lastLsns.put(loser, ((SetValueRecord) rec).compensate(txNum,
+						lastLsns.get(loser)));
+			else if (rec instanceof PageImageRecord)
+				lastLsns.put(loser, ((PageImageRecord) rec).compensate(txNum,
+						lastLsns.get(loser)));
+			else if (rec.op() == OP_BULK_LOAD)
+				rec.undo(txNum);
+			undoNextLsns.put(loser, undoNextLsn(rec));
+		}
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("redid " + recs.size() + " log records and rolled back "
+					+ numLosers + " transactions");
+		checkpoint();
+	}
+
+	/**
+	 * Takes a fuzzy checkpoint. The redo LSN of the checkpoint is the smallest
+	 * of the recovery LSNs of the dirty pages, the LSNs of the start records of
+	 * the active transactions, and the LSN of the last log record.
+	 * Transactions keep running, and only the pages dirty since before the
+	 * previous checkpoint are flushed, so that a page that never leaves the
+	 * buffer pool cannot hold the redo LSN back forever.
+	 */
+	public static void checkpoint() {
+		VanillaDB.bufferMgr().flushDirtyBuffers(lastCheckpointLsn);
+		long redoLsn;
+		synchronized (activeTxs) {
+			/*
+			 * The end of the log is read before the active transactions, so a
+			 * transaction missing from the table logs all its updates after
+			 * the redo LSN. An update logged by an active transaction but not
+			 * yet applied to its buffer is covered by the start record.
+			 */
+			redoLsn = VanillaDB.logMgr().lastLSN();
+			for (long lsn : activeTxs.values())
+				redoLsn = Math.min(redoLsn, lsn);
+		}
+		long minRecLsn = VanillaDB.bufferMgr().minRecoveryLsn();
+		if (minRecLsn >= 0)
+			redoLsn = Math.min(redoLsn, minRecLsn);
+		lastCheckpointLsn = new FuzzyCheckpointRecord(redoLsn).writeToLog();
+	}
+
+	private void onTxFinished() {
+		synchronized (activeTxs) {
+			activeTxs.remove(txNum);
+		}
+		if (numFinished.incrementAndGet() % CHECKPOINT_INTERVAL == 0)
+			checkpoint();
+	}
+
+	/**
+	 * Rolls back the transaction. The method follows the chain of the log
+	 * records of the transaction back to its START record, and compensates
+	 * each update of the transaction.
+	 */
+	private void doRollback() {
+		long lsn = lastLsn;
+		while (lsn != startLsn) {
+			LogRecord rec = LogRecordIterator.read(lsn);
+			if (rec instanceof SetValueRecord)
+				lastLsn = ((SetValueRecord) rec).compensate(txNum, lastLsn);
+			else if (rec instanceof PageImageRecord)
+				lastLsn = ((PageImageRecord) rec).compensate(txNum, lastLsn);
+			else if (rec.op() == OP_BULK_LOAD)
+				// the undo needs no compensation, since it can be repeated
+				rec.undo(txNum);
+			lsn = undoNextLsn(rec);
+		}
+	}
+
+	/**
+	 * Returns the LSN of the record to be undone after the specified record of
+	 * the same transaction. A compensation record skips the updates that have
+	 * been undone already.
+	 */
+	private static long undoNextLsn(LogRecord rec) {
+		if (rec.op() == OP_COMPENSATION)
+			return ((CompensationRecord) rec).undoNextLsn();
+		return prevLsn(rec);
+	}
+}
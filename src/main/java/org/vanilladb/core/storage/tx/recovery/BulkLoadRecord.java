@@ -0,0 +1,148 @@
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.record.RecordFormatter;
+
+/**
+ * The bulk load log record. A bulk load appends pages of records to the end of
+ * a file without logging the records; this record is written before the
+ * first page, and notes where the loaded pages begin. The pages are written to
+ * disk before the loading transaction commits, so the record carries no redo
+ * information. Undoing the record empties every page from the first loaded
+ * one to the end of the file, which the loading transaction keeps xlocked
+ * until it ends.
+ */
+class BulkLoadRecord implements LogRecord {
+	private long txNum;
+	private String fileName;
+	private long startBlkNum;
+	private int format;
+	// the LSN of the previous log record of the same transaction
+	private long prevLsn;
+	private long lsn = -1;
+
+	/**
+	 * Creates a new bulk load log record.
+	 *
+	 * @param txNum
+	 *            the ID of the specified transaction
+	 * @param fileName
+	 *            the name of the loaded file
+	 * @param startBlkNum
+	 *            the number of the first loaded block
+	 * @param format
+	 *            the record format of the table
+	 * @param prevLsn
+	 *            the LSN of the previous log record of the transaction
+	 */
+	public BulkLoadRecord(long txNum, String fileName, long startBlkNum,
+			int format, long prevLsn) {
+		this.txNum = txNum;
+		this.fileName = fileName;
+		this.startBlkNum = startBlkNum;
+		this.format = format;
+		this.prevLsn = prevLsn;
+	}
+
+	/**
+	 * Creates a log record by reading five other values from the log.
+	 *
+	 * @param rec
+	 *            the basic log record
+	 */
+	public BulkLoadRecord(BasicLogRecord rec) {
+		this.txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.prevLsn = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.fileName = (String) rec.nextVal(VARCHAR).asJavaVal();
+		this.startBlkNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.format = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		this.lsn = rec.getLSN();
+	}
+
+	/**
+	 * Writes a bulk load record to the log. This log record contains the
+	 * {@link LogRecord#OP_BULK_LOAD} operator ID, followed by the transaction
+	 * ID, the LSN of the previous record of the transaction, the filename,
+	 * the number of the first loaded block, and the record format.
+	 *
+	 * @return the LSN of the log record
+	 */
+	@Override
+	public long writeToLog() {
+		Constant[] rec = new Constant[] { new IntegerConstant(OP_BULK_LOAD),
+				new BigIntConstant(txNum), new BigIntConstant(prevLsn),
+				new VarcharConstant(fileName), new BigIntConstant(startBlkNum),
+				new IntegerConstant(format) };
+		return logMgr.append(rec);
+	}
+
+	@Override
+	public int op() {
+		return OP_BULK_LOAD;
+	}
+
+	@Override
+	public long txNumber() {
+		return txNum;
+	}
+
+	@Override
+	public long getLSN() {
+		return lsn;
+	}
+
+	/**
+	 * Returns the LSN of the previous log record of the same transaction.
+	 *
+	 * @return the LSN of the previous log record
+	 */
+	long prevLsn() {
+		return prevLsn;
+	}
+
+	/**
+	 * Empties the loaded pages, and writes them to disk at once, since no log
+	 * record describes the emptying. Emptying the pages again is harmless, so
+	 * no compensation record is needed either.
+	 *
+	 * @see LogRecord#undo(long)
+	 */
+	@Override
+	public void undo(long txNum) {
+		BufferMgr buffMgr = VanillaDB.bufferMgr();
+		RecordFormatter fmtr = new RecordFormatter(format);
+		long size = VanillaDB.fileMgr().size(fileName);
+		for (long b = startBlkNum; b < size; b++) {
+			Buffer buff = buffMgr.pin(new BlockId(fileName, b), txNumber());
+			buff.format(fmtr, txNum, -1);
+			buffMgr.unpin(txNumber(), buff);
+		}
+		buffMgr.flushAll(txNum);
+	}
+
+	/**
+	 * Does nothing, because the loaded pages have been written to disk before
+	 * the transaction committed.
+	 */
+	@Override
+	public void redo() {
+	}
+
+	@Override
+	public String toString() {
+		return "<BULKLOAD " + txNum + " " + fileName + " " + startBlkNum + " "
+				+ format + ">";
+	}
+}
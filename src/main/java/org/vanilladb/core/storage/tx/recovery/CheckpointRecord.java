@@ -9,6 +9,7 @@ import org.vanilladb.core.storage.log.BasicLogRecord;
  * The checkpoint log record.
  */
 class CheckpointRecord implements LogRecord {
+	private long lsn = -1;
 
 	/**
 	 * Creates a quiescent checkpoint record.
@@ -24,6 +25,7 @@ class CheckpointRecord implements LogRecord {
 	 *            the basic log record
 	 */
 	public CheckpointRecord(BasicLogRecord rec) {
+		this.lsn = rec.getLSN();
 	}
 
 	/**
@@ -52,6 +54,11 @@ class CheckpointRecord implements LogRecord {
 		return -1; // dummy value
 	}
 
+	@Override
+	public long getLSN() {
+		return lsn;
+	}
+
 	/**
 	 * Does nothing, because a checkpoint record contains no undo information.
 	 */
@@ -59,6 +66,13 @@ class CheckpointRecord implements LogRecord {
 	public void undo(long txNum) {
 	}
 
+	/**
+	 * Does nothing, because a checkpoint record contains no redo information.
+	 */
+	@Override
+	public void redo() {
+	}
+
 	@Override
 	public String toString() {
 		return "<CHECKPOINT>";
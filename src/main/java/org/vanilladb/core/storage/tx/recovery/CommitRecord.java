@@ -13,6 +13,7 @@ import org.vanilladb.core.storage.log.BasicLogRecord;
  */
 class CommitRecord implements LogRecord {
 	private long txNum;
+	private long lsn = -1;
 
 	/**
 	 * Creates a new commit log record for the specified transaction.
@@ -32,6 +33,7 @@ class CommitRecord implements LogRecord {
 	 */
 	public CommitRecord(BasicLogRecord rec) {
 		this.txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.lsn = rec.getLSN();
 	}
 
 	/**
@@ -57,6 +59,11 @@ class CommitRecord implements LogRecord {
 		return txNum;
 	}
 
+	@Override
+	public long getLSN() {
+		return lsn;
+	}
+
 	/**
 	 * Does nothing, because a commit record contains no undo information.
 	 */
@@ -64,6 +71,13 @@ class CommitRecord implements LogRecord {
 	public void undo(long txNum) {
 	}
 
+	/**
+	 * Does nothing, because a commit record contains no redo information.
+	 */
+	@Override
+	public void redo() {
+	}
+
 	@Override
 	public String toString() {
 		return "<COMMIT " + txNum + ">";
@@ -0,0 +1,206 @@
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.log.BasicLogRecord;
+
+/**
+ * The compensation log record (CLR). A CLR is written whenever the update of a
+ * {@link SetValueRecord} or a {@link PageImageRecord} is undone, and holds the
+ * restored value or bytes. It can be redone but never undone. It points to
+ * the record to be undone next, which precedes the compensated update, so an
+ * update is never undone twice.
+ */
+class CompensationRecord implements LogRecord {
+	private long txNum;
+	private int offset;
+	// the restored value, or null if the record restores bytes
+	private Constant val;
+	private byte[] bytes;
+	private BlockId blk;
+	private long undoNextLsn, prevLsn;
+	private long lsn = -1;
+
+	/**
+	 * Creates a new compensation log record.
+	 * 
+	 * @param txNum
+	 *            the ID of the specified transaction
+	 * @param blk
+	 *            the block containing the value
+	 * @param offset
+	 *            the offset of the value in the block
+	 * @param val
+	 *            the restored value
+	 * @param undoNextLsn
+	 *            the LSN of the record of the transaction to be undone after
+	 *            the compensated one
+	 * @param prevLsn
+	 *            the LSN of the previous log record of the transaction
+	 */
+	public CompensationRecord(long txNum, BlockId blk, int offset,
+			Constant val, long undoNextLsn, long prevLsn) {
+		this.txNum = txNum;
+		this.blk = blk;
+		this.offset = offset;
+		this.val = val;
+		this.undoNextLsn = undoNextLsn;
+		this.prevLsn = prevLsn;
+	}
+
+	/**
+	 * Creates a new compensation log record restoring the bytes of a page.
+	 * 
+	 * @param txNum
+	 *            the ID of the specified transaction
+	 * @param blk
+	 *            the block containing the bytes
+	 * @param offset
+	 *            the offset of the bytes in the block
+	 * @param bytes
+	 *            the restored bytes
+	 * @param undoNextLsn
+	 *            the LSN of the record of the transaction to be undone after
+	 *            the compensated one
+	 * @param prevLsn
+	 *            the LSN of the previous log record of the transaction
+	 */
+	public CompensationRecord(long txNum, BlockId blk, int offset,
+			byte[] bytes, long undoNextLsn, long prevLsn) {
+		this.txNum = txNum;
+		this.blk = blk;
+		this.offset = offset;
+		this.bytes = bytes;
+		this.undoNextLsn = undoNextLsn;
+		this.prevLsn = prevLsn;
+	}
+
+	/**
+	 * Creates a log record by reading eight other values from the log.
+	 * 
+	 * @param rec
+	 *            the basic log record
+	 */
+	public CompensationRecord(BasicLogRecord rec) {
+		this.txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.blk = new BlockId((String) rec.nextVal(VARCHAR).asJavaVal(),
+				(Long) rec.nextVal(BIGINT).asJavaVal());
+		this.offset = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		int sqlType = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		if (sqlType == OP_PAGE_IMAGE)
+			this.bytes = PageImageRecord.nextBytes(rec);
+		else
+			this.val = rec.nextVal(Type.newInstance(sqlType));
+		this.undoNextLsn = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.prevLsn = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.lsn = rec.getLSN();
+	}
+
+	/**
+	 * Writes a compensation record to the log. This log record contains the
+	 * {@link LogRecord#OP_COMPENSATION} operator ID, followed by the
+	 * transaction ID, the filename, block number, and offset of the modified
+	 * block, the SQL type and the restored value, the LSN of the record to be
+	 * undone next, and the LSN of the previous record of the transaction. The
+	 * restored bytes are written in place of the value, with the
+	 * {@link LogRecord#OP_PAGE_IMAGE} operator ID as their type.
+	 * 
+	 * @return the LSN of the log record
+	 */
+	@Override
+	public long writeToLog() {
+		List<Constant> rec = new ArrayList<Constant>();
+		rec.add(new IntegerConstant(OP_COMPENSATION));
+		rec.add(new BigIntConstant(txNum));
+		rec.add(new VarcharConstant(blk.fileName()));
+		rec.add(new BigIntConstant(blk.number()));
+		rec.add(new IntegerConstant(offset));
+		if (bytes != null) {
+			rec.add(new IntegerConstant(OP_PAGE_IMAGE));
+			PageImageRecord.addBytes(rec, bytes);
+		} else {
+			rec.add(new IntegerConstant(val.getType().getSqlType()));
+			rec.add(val);
+		}
+		rec.add(new BigIntConstant(undoNextLsn));
+		rec.add(new BigIntConstant(prevLsn));
+		return logMgr.append(rec.toArray(new Constant[rec.size()]));
+	}
+
+	@Override
+	public int op() {
+		return OP_COMPENSATION;
+	}
+
+	@Override
+	public long txNumber() {
+		return txNum;
+	}
+
+	@Override
+	public long getLSN() {
+		return lsn;
+	}
+
+	/**
+	 * Returns the LSN of the record of the same transaction to be undone after
+	 * the one compensated by this record.
+	 * 
+	 * @return the LSN of the next record to undo
+	 */
+	long undoNextLsn() {
+		return undoNextLsn;
+	}
+
+	/**
+	 * Returns the LSN of the previous log record of the same transaction.
+	 * 
+	 * @return the LSN of the previous log record
+	 */
+	long prevLsn() {
+		return prevLsn;
+	}
+
+	/**
+	 * Does nothing, because a compensation record is never undone.
+	 */
+	@Override
+	public void undo(long txNum) {
+	}
+
+	/**
+	 * Writes the restored value to the page again, stamping the buffer with
+	 * the LSN of this record.
+	 */
+	@Override
+	public void redo() {
+		BufferMgr buffMgr = VanillaDB.bufferMgr();
+		Buffer buff = buffMgr.pin(blk, txNum);
+		if (bytes != null)
+			buff.setBytes(offset, bytes, txNum, lsn);
+		else
+			buff.setVal(offset, val, txNum, lsn);
+		buffMgr.unpin(txNum, buff);
+	}
+
+	@Override
+	public String toString() {
+		return "<CLR " + txNum + " " + blk + " " + offset + " "
+				+ (bytes != null ? bytes.length + " bytes" : val) + " "
+				+ undoNextLsn + ">";
+	}
+}
@@ -0,0 +1,103 @@
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.log.BasicLogRecord;
+
+/**
+ * The non-quiescent (fuzzy) checkpoint log record. It is written while
+ * transactions are running and dirty pages stay in the buffer pool, and it
+ * records the LSN where the restart recovery must start to read the log.
+ * Nothing before that LSN is needed to redo the dirty pages or to undo the
+ * transactions active at the checkpoint.
+ */
+class FuzzyCheckpointRecord implements LogRecord {
+	private long redoLsn;
+	private long lsn = -1;
+
+	/**
+	 * Creates a fuzzy checkpoint record.
+	 * 
+	 * @param redoLsn
+	 *            the LSN from which the restart recovery reads the log
+	 */
+	public FuzzyCheckpointRecord(long redoLsn) {
+		this.redoLsn = redoLsn;
+	}
+
+	/**
+	 * Creates a log record by reading one other value from the log.
+	 * 
+	 * @param rec
+	 *            the basic log record
+	 */
+	public FuzzyCheckpointRecord(BasicLogRecord rec) {
+		this.redoLsn = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.lsn = rec.getLSN();
+	}
+
+	/**
+	 * Writes a fuzzy checkpoint record to the log. This log record contains
+	 * the {@link LogRecord#OP_FUZZY_CHECKPOINT} operator ID, followed by the
+	 * redo LSN.
+	 * 
+	 * @return the LSN of the log record
+	 */
+	@Override
+	public long writeToLog() {
+		Constant[] rec = new Constant[] {
+				new IntegerConstant(OP_FUZZY_CHECKPOINT),
+				new BigIntConstant(redoLsn) };
+		return logMgr.append(rec);
+	}
+
+	@Override
+	public int op() {
+		return OP_FUZZY_CHECKPOINT;
+	}
+
+	/**
+	 * Checkpoint records have no associated transaction, and so the method
+	 * returns a "dummy", negative txid.
+	 */
+	@Override
+	public long txNumber() {
+		return -1; // dummy value
+	}
+
+	@Override
+	public long getLSN() {
+		return lsn;
+	}
+
+	/**
+	 * Returns the LSN from which the restart recovery reads the log.
+	 * 
+	 * @return the redo LSN
+	 */
+	long redoLsn() {
+		return redoLsn;
+	}
+
+	/**
+	 * Does nothing, because a checkpoint record contains no undo information.
+	 */
+	@Override
+	public void undo(long txNum) {
+	}
+
+	/**
+	 * Does nothing, because a checkpoint record contains no redo information.
+	 */
+	@Override
+	public void redo() {
+	}
+
+	@Override
+	public String toString() {
+		return "<FUZZY CHECKPOINT " + redoLsn + ">";
+	}
+}
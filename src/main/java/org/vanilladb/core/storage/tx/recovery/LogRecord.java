@@ -12,7 +12,9 @@ public interface LogRecord {
 	 * @see LogRecord#op()
 	 */
 	static final int OP_CHECKPOINT = -41, OP_START = -42, OP_COMMIT = -43,
-			OP_ROLLBACK = -44;
+			OP_ROLLBACK = -44, OP_COMPENSATION = -45,
+			OP_FUZZY_CHECKPOINT = -46, OP_BULK_LOAD = -47,
+			OP_PAGE_IMAGE = -48;
 
 	static LogMgr logMgr = VanillaDB.logMgr();
 
@@ -42,12 +44,29 @@ public interface LogRecord {
 	long txNumber();
 
 	/**
-	 * Undoes the operation encoded by this log record. The only log record type
-	 * for which this method does anything interesting is {@link SetValueRecord}
-	 * .
+	 * Returns the LSN of this log record, or -1 if the record was not read
+	 * from the log.
+	 * 
+	 * @return the LSN of the log record
+	 */
+	long getLSN();
+
+	/**
+	 * Undoes the operation encoded by this log record. The only log record
+	 * types for which this method does anything interesting are
+	 * {@link SetValueRecord}, {@link PageImageRecord} and
+	 * {@link BulkLoadRecord}.
 	 * 
 	 * @param txNum
 	 *            the id of the transaction that is performing the undo.
 	 */
 	void undo(long txNum);
+
+	/**
+	 * Redoes the operation encoded by this log record. Only the
+	 * {@link SetValueRecord}, the {@link PageImageRecord} and the
+	 * {@link CompensationRecord} carry redo information; the other log record
+	 * types do nothing.
+	 */
+	void redo();
 }
\ No newline at end of file
@@ -25,15 +25,43 @@ class LogRecordIterator implements Iterator<LogRecord> {
 
 	/**
 	 * Constructs a log record from the values in the current basic log record.
-	 * The method first reads an integer, which denotes the type of the log
-	 * record. Based on that type, the method calls the appropriate LogRecord
-	 * constructor to read the remaining values.
 	 * 
 	 * @return the next log record, or null if no more records
+	 * @see #toLogRecord(BasicLogRecord)
 	 */
 	@Override
 	public LogRecord next() {
-		BasicLogRecord rec = iter.next();
+		return toLogRecord(iter.next());
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Reads the log record having the specified LSN without going through the
+	 * log records after it.
+	 * 
+	 * @param lsn
+	 *            the LSN of the log record
+	 * @return the log record
+	 */
+	static LogRecord read(long lsn) {
+		return toLogRecord(VanillaDB.logMgr().read(lsn));
+	}
+
+	/**
+	 * Constructs a log record from the values in a basic log record. The
+	 * method first reads an integer, which denotes the type of the log record.
+	 * Based on that type, the method calls the appropriate LogRecord
+	 * constructor to read the remaining values.
+	 * 
+	 * @param rec
+	 *            the basic log record
+	 * @return the log record
+	 */
+	private static LogRecord toLogRecord(BasicLogRecord rec) {
 		int op = (Integer) rec.nextVal(INTEGER).asJavaVal();
 		switch (op) {
 		case OP_CHECKPOINT:
@@ -44,13 +72,16 @@ class LogRecordIterator implements Iterator<LogRecord> {
 			return new CommitRecord(rec);
 		case OP_ROLLBACK:
 			return new RollbackRecord(rec);
+		case OP_COMPENSATION:
+			return new CompensationRecord(rec);
+		case OP_FUZZY_CHECKPOINT:
+			return new FuzzyCheckpointRecord(rec);
+		case OP_BULK_LOAD:
+			return new BulkLoadRecord(rec);
+		case OP_PAGE_IMAGE:
+			return new PageImageRecord(rec);
 		default:
 			return new SetValueRecord(rec, op);
 		}
 	}
-
-	@Override
-	public void remove() {
-		throw new UnsupportedOperationException();
-	}
 }
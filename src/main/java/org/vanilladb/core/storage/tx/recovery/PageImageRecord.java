@@ -0,0 +1,243 @@
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.log.BasicLogRecord;
+
+/**
+ * The page image log record. Like a {@link SetValueRecord}, it keeps the old
+ * and the new contents of a part of a page, but as raw bytes, so that a
+ * change rewriting a range of a page as a whole, such as the compaction of a
+ * slotted page, is logged by one record instead of a record per value. The
+ * bytes are stored as their length followed by big integers, the last one
+ * padded with zeros.
+ */
+class PageImageRecord implements LogRecord {
+	private static final int LONG_SIZE = Page.maxSize(BIGINT);
+	/*
+	 * The space of a log page taken by the values of a record other than the
+	 * images and the file name, including the pointers to the record.
+	 */
+	private static final int OVERHEAD = 80;
+
+	private long txNum;
+	private int offset;
+	private byte[] oldBytes, newBytes;
+	private BlockId blk;
+	// the LSN of the previous log record of the same transaction
+	private long prevLsn;
+	private long lsn = -1;
+
+	/**
+	 * Creates a new page image log record.
+	 * 
+	 * @param txNum
+	 *            the ID of the specified transaction
+	 * @param blk
+	 *            the block containing the bytes
+	 * @param offset
+	 *            the offset of the bytes in the block
+	 * @param oldBytes
+	 *            the old bytes
+	 * @param newBytes
+	 *            the new bytes, as many as the old ones
+	 * @param prevLsn
+	 *            the LSN of the previous log record of the transaction
+	 */
+	public PageImageRecord(long txNum, BlockId blk, int offset,
+			byte[] oldBytes, byte[] newBytes, long prevLsn) {
+		this.txNum = txNum;
+		this.blk = blk;
+		this.offset = offset;
+		this.oldBytes = oldBytes;
+		this.newBytes = newBytes;
+		this.prevLsn = prevLsn;
+	}
+
+	/**
+	 * Creates a log record by reading six other values and two images from
+	 * the log.
+	 * 
+	 * @param rec
+	 *            the basic log record
+	 */
+	public PageImageRecord(BasicLogRecord rec) {
+		this.txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.prevLsn = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.blk = new BlockId((String) rec.nextVal(VARCHAR).asJavaVal(),
+				(Long) rec.nextVal(BIGINT).asJavaVal());
+		this.offset = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		this.oldBytes = nextBytes(rec);
+		this.newBytes = nextBytes(rec);
+		this.lsn = rec.getLSN();
+	}
+
+	/**
+	 * Returns the maximal number of bytes of a page of the specified file
+	 * whose old and new images fit into a single log record.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return the maximal size of an image
+	 */
+	static int maxImageSize(String fileName) {
+		int size = (Page.BLOCK_SIZE - OVERHEAD - Page.size(new VarcharConstant(
+				fileName))) / 2;
+		return size / LONG_SIZE * LONG_SIZE;
+	}
+
+	/**
+	 * Writes a page image record to the log. This log record contains the
+	 * {@link LogRecord#OP_PAGE_IMAGE} operator ID, followed by the transaction
+	 * ID, the LSN of the previous record of the transaction, the filename,
+	 * block number, and offset of the modified bytes, the old bytes, and the
+	 * new bytes.
+	 * 
+	 * @return the LSN of the log record
+	 */
+	@Override
+	public long writeToLog() {
+		List<Constant> rec = new ArrayList<Constant>();
+		rec.add(new IntegerConstant(OP_PAGE_IMAGE));
+		rec.add(new BigIntConstant(txNum));
+		rec.add(new BigIntConstant(prevLsn));
+		rec.add(new VarcharConstant(blk.fileName()));
+		rec.add(new BigIntConstant(blk.number()));
+		rec.add(new IntegerConstant(offset));
+		addBytes(rec, oldBytes);
+		addBytes(rec, newBytes);
+		return logMgr.append(rec.toArray(new Constant[rec.size()]));
+	}
+
+	@Override
+	public int op() {
+		return OP_PAGE_IMAGE;
+	}
+
+	@Override
+	public long txNumber() {
+		return txNum;
+	}
+
+	@Override
+	public long getLSN() {
+		return lsn;
+	}
+
+	/**
+	 * Returns the LSN of the previous log record of the same transaction.
+	 * 
+	 * @return the LSN of the previous log record
+	 */
+	long prevLsn() {
+		return prevLsn;
+	}
+
+	@Override
+	public String toString() {
+		return "<PAGEIMAGE " + txNum + " " + blk + " " + offset + " "
+				+ oldBytes.length + ">";
+	}
+
+	/**
+	 * Writes the old bytes saved in the log record back to the page, using a
+	 * dummy LSN.
+	 * 
+	 * @see LogRecord#undo(long)
+	 */
+	@Override
+	public void undo(long txNum) {
+		BufferMgr buffMgr = VanillaDB.bufferMgr();
+		Buffer buff = buffMgr.pin(blk, txNumber());
+		buff.setBytes(offset, oldBytes, txNum, -1);
+		buffMgr.unpin(txNumber(), buff);
+	}
+
+	/**
+	 * Restores the old bytes like {@link #undo(long)}, but first writes a
+	 * {@link CompensationRecord} describing the restoration. The buffer is
+	 * stamped with the LSN of the compensation record.
+	 * 
+	 * @param txNum
+	 *            the id of the transaction that is performing the undo
+	 * @param clrPrevLsn
+	 *            the LSN of the last log record of the transaction of this
+	 *            record, which precedes the compensation record
+	 * @return the LSN of the compensation record
+	 */
+	long compensate(long txNum, long clrPrevLsn) {
+		long clrLsn = new CompensationRecord(txNumber(), blk, offset,
+				oldBytes, prevLsn, clrPrevLsn).writeToLog();
+		BufferMgr buffMgr = VanillaDB.bufferMgr();
+		Buffer buff = buffMgr.pin(blk, txNumber());
+		buff.setBytes(offset, oldBytes, txNum, clrLsn);
+		buffMgr.unpin(txNumber(), buff);
+		return clrLsn;
+	}
+
+	/**
+	 * Writes the new bytes saved in the log record to the page again,
+	 * stamping the buffer with the LSN of this record.
+	 * 
+	 * @see LogRecord#redo()
+	 */
+	@Override
+	public void redo() {
+		BufferMgr buffMgr = VanillaDB.bufferMgr();
+		Buffer buff = buffMgr.pin(blk, txNumber());
+		buff.setBytes(offset, newBytes, txNumber(), lsn);
+		buffMgr.unpin(txNumber(), buff);
+	}
+
+	/**
+	 * Adds the values storing the specified bytes to a log record.
+	 * 
+	 * @param rec
+	 *            the values of the log record
+	 * @param bytes
+	 *            the bytes
+	 */
+	static void addBytes(List<Constant> rec, byte[] bytes) {
+		rec.add(new IntegerConstant(bytes.length));
+		int numWords = (bytes.length + LONG_SIZE - 1) / LONG_SIZE;
+		ByteBuffer bb = ByteBuffer.allocate(numWords * LONG_SIZE);
+		bb.put(bytes);
+		for (int i = 0; i < numWords; i++)
+			rec.add(new BigIntConstant(bb.getLong(i * LONG_SIZE)));
+	}
+
+	/**
+	 * Reads the bytes stored by {@link #addBytes(List, byte[])} from a log
+	 * record.
+	 * 
+	 * @param rec
+	 *            the basic log record
+	 * @return the bytes
+	 */
+	static byte[] nextBytes(BasicLogRecord rec) {
+		int length = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		int numWords = (length + LONG_SIZE - 1) / LONG_SIZE;
+		ByteBuffer bb = ByteBuffer.allocate(numWords * LONG_SIZE);
+		for (int i = 0; i < numWords; i++)
+			bb.putLong((Long) rec.nextVal(BIGINT).asJavaVal());
+		byte[] bytes = new byte[length];
+		bb.rewind();
+		bb.get(bytes);
+		return bytes;
+	}
+}
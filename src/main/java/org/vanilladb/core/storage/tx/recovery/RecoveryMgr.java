@@ -10,12 +10,17 @@ import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
+import org.vanilladb.core.storage.tx.concurrency.ConcurrencyMgr;
 
 /**
  * The recovery manager. Each transaction has its own recovery manager.
  */
 public class RecoveryMgr implements TransactionLifecycleListener {
-	private long txNum;
+	protected long txNum;
+	// the LSN of the start record of the transaction
+	protected long startLsn;
+	// the LSN of the last log record of the undo chain of the transaction
+	protected long lastLsn;
 
 	/**
 	 * Creates a recovery manager for the specified transaction.
@@ -25,7 +30,8 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	 */
 	public RecoveryMgr(long txNum) {
 		this.txNum = txNum;
-		new StartRecord(txNum).writeToLog();
+		startLsn = new StartRecord(txNum).writeToLog();
+		lastLsn = startLsn;
 	}
 
 	/**
@@ -35,7 +41,7 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	public void onTxCommit(Transaction tx) {
 		VanillaDB.bufferMgr().flushAll(txNum);
 		long lsn = new CommitRecord(txNum).writeToLog();
-		VanillaDB.logMgr().flush(lsn);
+		VanillaDB.logMgr().flushForCommit(lsn);
 	}
 
 	/**
@@ -46,7 +52,7 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		doRollback();
 		VanillaDB.bufferMgr().flushAll(txNum);
 		long lsn = new RollbackRecord(txNum).writeToLog();
-		VanillaDB.logMgr().flush(lsn);
+		VanillaDB.logMgr().flushForCommit(lsn);
 	}
 
 	@Override
@@ -69,7 +75,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	}
 
 	/**
-	 * Writes a set value record to the log.
+	 * Writes a set value record to the log. The old value is also kept in the
+	 * version store if a snapshot transaction may need it. The caller should
+	 * not hold the monitor of the buffer, so that the readers of the page do
+	 * not wait for the append to the log.
 	 * 
 	 * @param buff
 	 *            the buffer containing the page
@@ -83,27 +92,96 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		BlockId blk = buff.block();
 		if (isTempBlock(blk))
 			return -1;
-		return new SetValueRecord(txNum, blk, offset, buff.getVal(offset,
-				newVal.getType())).writeToLog();
+		Constant oldVal = buff.getVal(offset, newVal.getType());
+		ConcurrencyMgr.versionStore().keepOldVersion(txNum, blk, offset,
+				oldVal);
+		lastLsn = new SetValueRecord(txNum, blk, offset, oldVal, newVal,
+				lastLsn).writeToLog();
+		return lastLsn;
 	}
 
 	/**
-	 * Rolls back the transaction. The method iterates through the log records,
-	 * calling undo() for each log record it finds for the transaction, until it
-	 * finds the transaction's START record.
+	 * Writes page image records of the specified bytes to the log, one record
+	 * for as many bytes as fit into a log page. Unlike
+	 * {@link #setVal(Buffer, int, Constant)}, the old bytes are not kept in
+	 * the version store, so the caller must have kept the image of the whole
+	 * page for the snapshot transactions.
+	 * 
+	 * @param buff
+	 *            the buffer containing the page
+	 * @param offset
+	 *            the offset of the bytes in the page
+	 * @param newBytes
+	 *            the bytes to be written
+	 * @return the LSN of the last log record, or -1 if updates to temporary
+	 *         files
+	 */
+	public long setBytes(Buffer buff, int offset, byte[] newBytes) {
+		BlockId blk = buff.block();
+		if (isTempBlock(blk))
+			return -1;
+		byte[] oldBytes = buff.getBytes(offset, newBytes.length);
+		int max = PageImageRecord.maxImageSize(blk.fileName());
+		for (int from = 0; from < newBytes.length; from += max) {
+			int to = Math.min(from + max, newBytes.length);
+			lastLsn = new PageImageRecord(txNum, blk, offset + from,
+					Arrays.copyOfRange(oldBytes, from, to), Arrays
+							.copyOfRange(newBytes, from, to), lastLsn)
+					.writeToLog();
+		}
+		return lastLsn;
+	}
+
+	/**
+	 * Writes a bulk load record to the log, and flushes it to disk, before the
+	 * transaction appends pages of records to the specified file without
+	 * logging them. The size of the file before the load is kept in the
+	 * version store for the snapshot transactions. The transaction must hold
+	 * the xlock of the file until it ends.
+	 * 
+	 * @param fileName
+	 *            the name of the loaded file
+	 * @param startBlkNum
+	 *            the number of the first block to be appended, which is the
+	 *            current size of the file
+	 * @param format
+	 *            the record format of the file
+	 */
+	public void logBulkLoad(String fileName, long startBlkNum, int format) {
+		ConcurrencyMgr.versionStore().keepOldSize(txNum, fileName,
+				startBlkNum);
+		lastLsn = new BulkLoadRecord(txNum, fileName, startBlkNum, format,
+				lastLsn).writeToLog();
+		VanillaDB.logMgr().flush(lastLsn);
+	}
+
+	/**
+	 * Rolls back the transaction. The method follows the chain of the log
+	 * records of the transaction from the last one back to its START record,
+	 * calling undo() for each of them. The log records of other transactions
+	 * are never read.
 	 */
 	private void doRollback() {
-		Iterator<LogRecord> iter = new LogRecordIterator();
-		while (iter.hasNext()) {
-			LogRecord rec = iter.next();
-			if (rec.txNumber() == txNum) {
-				if (rec.op() == OP_START)
-					return;
-				rec.undo(txNum);
-			}
+		long lsn = lastLsn;
+		while (lsn != startLsn) {
+			LogRecord rec = LogRecordIterator.read(lsn);
+			rec.undo(txNum);
+			lsn = prevLsn(rec);
 		}
 	}
 
+	/**
+	 * Returns the LSN of the previous record of the same transaction, for the
+	 * records in the undo chain of a transaction.
+	 */
+	static long prevLsn(LogRecord rec) {
+		if (rec.op() == OP_BULK_LOAD)
+			return ((BulkLoadRecord) rec).prevLsn();
+		if (rec.op() == OP_PAGE_IMAGE)
+			return ((PageImageRecord) rec).prevLsn();
+		return ((SetValueRecord) rec).prevLsn();
+	}
+
 	/**
 	 * Does a complete database recovery. The method iterates through the log
 	 * records. Whenever it finds a log record for an unfinished transaction, it
@@ -13,6 +13,7 @@ import org.vanilladb.core.storage.log.BasicLogRecord;
  */
 class RollbackRecord implements LogRecord {
 	private long txNum;
+	private long lsn = -1;
 
 	/**
 	 * Creates a new rollback log record for the specified transaction.
@@ -32,6 +33,7 @@ class RollbackRecord implements LogRecord {
 	 */
 	public RollbackRecord(BasicLogRecord rec) {
 		this.txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.lsn = rec.getLSN();
 	}
 
 	/**
@@ -58,6 +60,11 @@ class RollbackRecord implements LogRecord {
 		return txNum;
 	}
 
+	@Override
+	public long getLSN() {
+		return lsn;
+	}
+
 	/**
 	 * Does nothing, because a rollback record contains no undo information.
 	 */
@@ -65,6 +72,13 @@ class RollbackRecord implements LogRecord {
 	public void undo(long txNum) {
 	}
 
+	/**
+	 * Does nothing, because a rollback record contains no redo information.
+	 */
+	@Override
+	public void redo() {
+	}
+
 	@Override
 	public String toString() {
 		return "<ROLLBACK " + txNum + ">";
@@ -19,8 +19,11 @@ import org.vanilladb.core.storage.log.BasicLogRecord;
 class SetValueRecord implements LogRecord {
 	private long txNum;
 	private int offset;
-	private Constant val;
+	private Constant val, newVal;
 	private BlockId blk;
+	// the LSN of the previous log record of the same transaction
+	private long prevLsn;
+	private long lsn = -1;
 
 	/**
 	 * Creates a new setval log record.
@@ -33,16 +36,23 @@ class SetValueRecord implements LogRecord {
 	 *            the offset of the value in the block
 	 * @param val
 	 *            the old value
+	 * @param newVal
+	 *            the new value
+	 * @param prevLsn
+	 *            the LSN of the previous log record of the transaction
 	 */
-	public SetValueRecord(long txNum, BlockId blk, int offset, Constant val) {
+	public SetValueRecord(long txNum, BlockId blk, int offset, Constant val,
+			Constant newVal, long prevLsn) {
 		this.txNum = txNum;
+		this.prevLsn = prevLsn;
 		this.blk = blk;
 		this.offset = offset;
 		this.val = val;
+		this.newVal = newVal;
 	}
 
 	/**
-	 * Creates a log record by reading five other values from the log.
+	 * Creates a log record by reading seven other values from the log.
 	 * 
 	 * @param rec
 	 *            the basic log record
@@ -51,17 +61,21 @@ class SetValueRecord implements LogRecord {
 	 */
 	public SetValueRecord(BasicLogRecord rec, int op) {
 		this.txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.prevLsn = (Long) rec.nextVal(BIGINT).asJavaVal();
 		this.blk = new BlockId((String) rec.nextVal(VARCHAR).asJavaVal(),
 				(Long) rec.nextVal(BIGINT).asJavaVal());
 		this.offset = (Integer) rec.nextVal(INTEGER).asJavaVal();
 		this.val = rec.nextVal(Type.newInstance(op));
+		this.newVal = rec.nextVal(Type.newInstance(op));
+		this.lsn = rec.getLSN();
 	}
 
 	/**
 	 * Writes a setval record to the log. This log record contains the SQL type
 	 * corresponding to the value as the operator ID, followed by the
-	 * transaction ID, the filename, block number, and offset of the modified
-	 * block, and the previous integer value at that offset.
+	 * transaction ID, the LSN of the previous record of the transaction, the
+	 * filename, block number, and offset of the modified
+	 * block, the previous value at that offset, and the new value.
 	 * 
 	 * @return the LSN of the log record
 	 */
@@ -69,9 +83,10 @@ class SetValueRecord implements LogRecord {
 	public long writeToLog() {
 		Constant[] rec = new Constant[] {
 				new IntegerConstant(val.getType().getSqlType()),
-				new BigIntConstant(txNum), new VarcharConstant(blk.fileName()),
+				new BigIntConstant(txNum), new BigIntConstant(prevLsn),
+				new VarcharConstant(blk.fileName()),
 				new BigIntConstant(blk.number()), new IntegerConstant(offset),
-				val };
+				val, newVal };
 		return logMgr.append(rec);
 	}
 
@@ -85,10 +100,24 @@ class SetValueRecord implements LogRecord {
 		return txNum;
 	}
 
+	@Override
+	public long getLSN() {
+		return lsn;
+	}
+
+	/**
+	 * Returns the LSN of the previous log record of the same transaction.
+	 * 
+	 * @return the LSN of the previous log record
+	 */
+	long prevLsn() {
+		return prevLsn;
+	}
+
 	@Override
 	public String toString() {
 		return "<SETVAL " + op() + " " + txNum + " " + blk + " " + offset + " "
-				+ val + ">";
+				+ val + " " + newVal + ">";
 	}
 
 	/**
@@ -105,4 +134,41 @@ class SetValueRecord implements LogRecord {
 		buff.setVal(offset, val, txNum, -1);
 		buffMgr.unpin(txNumber(), buff);
 	}
+
+	/**
+	 * Restores the saved old value like {@link #undo(long)}, but first writes
+	 * a {@link CompensationRecord} describing the restoration, so that the
+	 * undo is itself redone rather than repeated after a crash. The buffer is
+	 * stamped with the LSN of the compensation record.
+	 * 
+	 * @param txNum
+	 *            the id of the transaction that is performing the undo
+	 * @param clrPrevLsn
+	 *            the LSN of the last log record of the transaction of this
+	 *            record, which precedes the compensation record
+	 * @return the LSN of the compensation record
+	 */
+	long compensate(long txNum, long clrPrevLsn) {
+		long clrLsn = new CompensationRecord(txNumber(), blk, offset, val,
+				prevLsn, clrPrevLsn).writeToLog();
+		BufferMgr buffMgr = VanillaDB.bufferMgr();
+		Buffer buff = buffMgr.pin(blk, txNumber());
+		buff.setVal(offset, val, txNum, clrLsn);
+		buffMgr.unpin(txNumber(), buff);
+		return clrLsn;
+	}
+
+	/**
+	 * Writes the new value saved in the log record to the page again, stamping
+	 * the buffer with the LSN of this record.
+	 * 
+	 * @see LogRecord#redo()
+	 */
+	@Override
+	public void redo() {
+		BufferMgr buffMgr = VanillaDB.bufferMgr();
+		Buffer buff = buffMgr.pin(blk, txNumber());
+		buff.setVal(offset, newVal, txNumber(), lsn);
+		buffMgr.unpin(txNumber(), buff);
+	}
 }
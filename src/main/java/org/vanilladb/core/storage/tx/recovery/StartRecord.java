@@ -10,6 +10,7 @@ import org.vanilladb.core.storage.log.BasicLogRecord;
 
 class StartRecord implements LogRecord {
 	private long txNum;
+	private long lsn = -1;
 
 	/**
 	 * Creates a new start log record for the specified transaction.
@@ -29,6 +30,7 @@ class StartRecord implements LogRecord {
 	 */
 	public StartRecord(BasicLogRecord rec) {
 		this.txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		this.lsn = rec.getLSN();
 	}
 
 	/**
@@ -54,6 +56,11 @@ class StartRecord implements LogRecord {
 		return txNum;
 	}
 
+	@Override
+	public long getLSN() {
+		return lsn;
+	}
+
 	/**
 	 * Does nothing, because a start record contains no undo information.
 	 */
@@ -61,6 +68,13 @@ class StartRecord implements LogRecord {
 	public void undo(long txNum) {
 	}
 
+	/**
+	 * Does nothing, because a start record contains no redo information.
+	 */
+	@Override
+	public void redo() {
+	}
+
 	@Override
 	public String toString() {
 		return "<START " + txNum + ">";
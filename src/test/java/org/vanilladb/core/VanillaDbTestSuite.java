@@ -14,26 +14,42 @@ import org.vanilladb.core.query.planner.PlannerTest;
 import org.vanilladb.core.query.planner.QueryVerifierTest;
 import org.vanilladb.core.server.ServerInit;
 import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.storage.buffer.BufferFlusherTest;
 import org.vanilladb.core.storage.buffer.BufferTest;
+import org.vanilladb.core.storage.buffer.PartitionedBufferTest;
+import org.vanilladb.core.storage.buffer.PrefetchTest;
+import org.vanilladb.core.storage.buffer.ReplacementPolicyTest;
 import org.vanilladb.core.storage.file.FileTest;
 import org.vanilladb.core.storage.index.btree.BTreeIndexTest;
+import org.vanilladb.core.storage.index.hash.ExtendibleHashIndexTest;
 import org.vanilladb.core.storage.index.hash.HashIndexTest;
+import org.vanilladb.core.storage.log.GroupCommitTest;
+import org.vanilladb.core.storage.log.LogTest;
 import org.vanilladb.core.storage.metadata.MetadataTest;
 import org.vanilladb.core.storage.metadata.statistics.HistogramTest;
 import org.vanilladb.core.storage.record.RecordTest;
 import org.vanilladb.core.storage.tx.TxTest;
 import org.vanilladb.core.storage.tx.concurrency.ConcurrencyTest;
 import org.vanilladb.core.storage.tx.concurrency.LockTableTest;
+import org.vanilladb.core.storage.tx.concurrency.SnapshotIsolationTest;
+import org.vanilladb.core.storage.tx.recovery.AriesRecoveryTest;
 import org.vanilladb.core.storage.tx.recovery.RecoveryTest;
 import org.vanilladb.core.util.ConstantTest;
 
 @RunWith(IsolatedClassLoaderSuite.class)
-@SuiteClasses({ FileTest.class, BufferTest.class, RecordTest.class,
-		RecoveryTest.class, LockTableTest.class, ConcurrencyTest.class,
-		MaterializeTest.class, TxTest.class, MetadataTest.class,
-		QueryTest.class, PlannerTest.class, QueryVerifierTest.class,
-		ParseTest.class, ConstantRangeTest.class, BTreeIndexTest.class,
-		HashIndexTest.class, ConstantTest.class, HistogramTest.class })
+@SuiteClasses({ FileTest.class, BufferTest.class, BufferFlusherTest.class,
+		PartitionedBufferTest.class, PrefetchTest.class,
+		ReplacementPolicyTest.class,
+		LogTest.class, GroupCommitTest.class, RecordTest.class,
+		RecoveryTest.class,
+		AriesRecoveryTest.class, LockTableTest.class, ConcurrencyTest.class,
+		SnapshotIsolationTest.class,
+		MaterializeTest.class,
+		TxTest.class, MetadataTest.class, QueryTest.class, PlannerTest.class,
+		QueryVerifierTest.class, ParseTest.class, ConstantRangeTest.class,
+		BTreeIndexTest.class, HashIndexTest.class,
+		ExtendibleHashIndexTest.class, ConstantTest.class,
+		HistogramTest.class })
 @IsolationRoot(VanillaDB.class)
 public class VanillaDbTestSuite {
 	@BeforeClass
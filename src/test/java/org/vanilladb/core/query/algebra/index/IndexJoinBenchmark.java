@@ -0,0 +1,117 @@
+package org.vanilladb.core.query.algebra.index;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.sql.Connection;
+import java.util.Random;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.query.algebra.UpdateScan;
+import org.vanilladb.core.query.parse.CreateIndexData;
+import org.vanilladb.core.query.parse.Parser;
+import org.vanilladb.core.query.planner.index.IndexUpdatePlanner;
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Measures an index join of a table of random join values against a large
+ * table indexed by a B-tree, searching the index once for each LHS record
+ * and once for each distinct join value of a {@link ProbeBatch batch} of LHS
+ * records. The batch size is set by
+ * <code>org.vanilladb.core.query.algebra.index.ProbeBatch.BATCH_SIZE</code>
+ * in the properties file.
+ * 
+ * <p>
+ * The searches for the sorted join values of a batch mostly fall in the leaf
+ * of the previous search, so they read the directory and the leaves far less
+ * often than the searches in the order of the LHS records.
+ * </p>
+ * 
+ * <p>
+ * Usage: <code>IndexJoinBenchmark [numRhsRecords] [numLhsRecords]</code>
+ * </p>
+ */
+public class IndexJoinBenchmark {
+	private static final String LHS_TBL = "joinbenchlhs",
+			RHS_TBL = "joinbenchrhs";
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) {
+		int numRhs = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int numLhs = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+		VanillaDB.init("indexjoinbench_" + System.currentTimeMillis());
+		System.out.println("probe batch size: " + ProbeBatch.BATCH_SIZE);
+
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Schema sch = new Schema();
+		sch.addField("rid", INTEGER);
+		sch.addField("k", INTEGER);
+		sch.addField("pad", VARCHAR(40));
+		VanillaDB.mdMgr().createTable(RHS_TBL, sch, tx);
+		UpdateScan us = (UpdateScan) new TablePlan(RHS_TBL, tx).open();
+		for (int i = 0; i < numRhs; i++) {
+			us.insert();
+			us.setVal("rid", new IntegerConstant(i));
+			us.setVal("k", new IntegerConstant(i));
+			us.setVal("pad", new VarcharConstant("pad" + i));
+		}
+		us.close();
+		CreateIndexData idxData = (CreateIndexData) new Parser(
+				"create index joinbenchidx on " + RHS_TBL + "(k)")
+				.updateCommand();
+		new IndexUpdatePlanner().executeCreateIndex(idxData, tx);
+
+		sch = new Schema();
+		sch.addField("lid", INTEGER);
+		sch.addField("jv", INTEGER);
+		VanillaDB.mdMgr().createTable(LHS_TBL, sch, tx);
+		Random rnd = new Random(0);
+		us = (UpdateScan) new TablePlan(LHS_TBL, tx).open();
+		for (int i = 0; i < numLhs; i++) {
+			us.insert();
+			us.setVal("lid", new IntegerConstant(i));
+			us.setVal("jv", new IntegerConstant(rnd.nextInt(numRhs)));
+		}
+		us.close();
+		tx.commit();
+
+		for (int r = 0; r < ROUNDS; r++) {
+			run("per record", numLhs, false);
+			run("batched", numLhs, true);
+		}
+	}
+
+	/**
+	 * Joins the LHS table with the RHS table through the index, reading a
+	 * field of the RHS data records, and prints the throughput.
+	 */
+	private static void run(String name, int numLhs, boolean batched) {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, true);
+		TablePlan lhs = new TablePlan(LHS_TBL, tx);
+		IndexInfo ii = VanillaDB.mdMgr().getIndexInfo(RHS_TBL, tx).get("k");
+		long start = System.nanoTime();
+		Scan s = new IndexJoinScan(lhs.open(), batched ? lhs.schema() : null,
+				ii.open(tx), ii, "jv", (TableScan) new TablePlan(RHS_TBL, tx)
+						.open(), false);
+		s.beforeFirst();
+		long count = 0;
+		while (s.next())
+			if (s.getVal("pad") != null)
+				count++;
+		s.close();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		tx.commit();
+		System.out.println(String.format(
+				"%-12s %10d joined, %10.0f LHS records/s", name, count,
+				numLhs / seconds));
+	}
+}
@@ -1,9 +1,19 @@
 package org.vanilladb.core.query.algebra.parse;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.vanilladb.core.sql.RecordComparator.DIR_ASC;
-
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -11,8 +21,11 @@ import java.util.logging.Logger;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.vanilladb.core.query.parse.BadSyntaxException;
 import org.vanilladb.core.query.parse.CreateTableData;
 import org.vanilladb.core.query.parse.InsertData;
+import org.vanilladb.core.query.parse.LoadData;
+import org.vanilladb.core.query.parse.LoadData.RowIterator;
 import org.vanilladb.core.query.parse.Parser;
 import org.vanilladb.core.query.parse.QueryData;
 import org.vanilladb.core.server.ServerInit;
@@ -20,7 +33,9 @@ import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.DoubleConstant;
 import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.metadata.TableInfo;
 
 public class ParseTest {
 	private static Logger logger = Logger.getLogger(ParseTest.class.getName());
@@ -60,6 +75,68 @@ public class ParseTest {
 
 	}
 
+	@Test
+	public void testParseLoad() {
+		String qry = "LOAD INTO dept(did, dname) FROM '/tmp/dept.csv'";
+
+		LoadData ld = (LoadData) new Parser(qry).updateCommand();
+		assertEquals("*****ParseTest: bad parsing load", "dept",
+				ld.tableName());
+		assertEquals("*****ParseTest: bad parsing load", "did", ld.fields()
+				.get(0));
+		assertEquals("*****ParseTest: bad parsing load", "dname", ld
+				.fields().get(1));
+		assertEquals("*****ParseTest: bad parsing load", "/tmp/dept.csv",
+				ld.fileName());
+	}
+
+	@Test
+	public void testLoadQuotedValues() throws IOException {
+		File file = File.createTempFile("parsetest", ".csv");
+		file.deleteOnExit();
+		Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		w.write("1,plain\n");
+		w.write("2,\"Smith, \"\"Jr.\"\"\"\n");
+		w.write("\"3\",\"\"\n");
+		w.close();
+		Schema sch = new Schema();
+		sch.addField("did", INTEGER);
+		sch.addField("dname", VARCHAR(20));
+		LoadData ld = (LoadData) new Parser("LOAD INTO dept(did, dname) FROM '"
+				+ file.getPath() + "'").updateCommand();
+
+		RowIterator rows = ld.rowIterator(sch);
+		String[] names = { "plain", "Smith, \"Jr.\"", "" };
+		for (int i = 0; i < names.length; i++) {
+			List<Constant> row = rows.next();
+			assertEquals("*****ParseTest: bad loaded value",
+					new IntegerConstant(i + 1), row.get(0));
+			assertEquals("*****ParseTest: bad loaded value",
+					new VarcharConstant(names[i]), row.get(1));
+		}
+		assertTrue("*****ParseTest: bad loaded value", !rows.hasNext());
+	}
+
+	@Test(expected = BadSyntaxException.class)
+	public void testLoadUnclosedQuote() throws IOException {
+		File file = File.createTempFile("parsetest", ".csv");
+		file.deleteOnExit();
+		Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		w.write("1,\"unclosed, value\n");
+		w.close();
+		Schema sch = new Schema();
+		sch.addField("did", INTEGER);
+		sch.addField("dname", VARCHAR(20));
+		LoadData ld = new LoadData("dept", Arrays.asList("did", "dname"),
+				file.getPath());
+		RowIterator rows = ld.rowIterator(sch);
+		try {
+			rows.next();
+		} finally {
+			rows.close();
+		}
+	}
+
 	@Test
 	public void testParseSelect() {
 		// also test that '_' can be keyword's character
@@ -140,5 +217,14 @@ public class ParseTest {
 				.equals("sectionid"));
 		assertTrue("*****ParseTest: bad parsing creat table", flds.next()
 				.equals("studentid"));
+		assertEquals("*****ParseTest: bad parsing creat table",
+				TableInfo.FORMAT_FIXED, ctd.format());
+
+		qry = "create table Notes(Nid int, Body varchar(200)) slotted";
+		ctd = (CreateTableData) new Parser(qry).updateCommand();
+		assertTrue("*****ParseTest: bad parsing creat table", ctd.newSchema()
+				.hasField("body"));
+		assertEquals("*****ParseTest: bad parsing table format",
+				TableInfo.FORMAT_SLOTTED, ctd.format());
 	}
 }
\ No newline at end of file
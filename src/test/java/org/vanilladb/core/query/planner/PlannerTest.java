@@ -3,9 +3,17 @@ package org.vanilladb.core.query.planner;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+import static org.vanilladb.core.storage.index.Index.IDX_BTREE;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -14,15 +22,30 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.vanilladb.core.query.algebra.Plan;
 import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.UpdateScan;
+import org.vanilladb.core.query.algebra.index.IndexJoinPlan;
+import org.vanilladb.core.query.algebra.index.IndexSelectPlan;
+import org.vanilladb.core.query.parse.CreateIndexData;
+import org.vanilladb.core.query.parse.CreateTableData;
 import org.vanilladb.core.query.parse.CreateViewData;
 import org.vanilladb.core.query.parse.DeleteData;
 import org.vanilladb.core.query.parse.InsertData;
+import org.vanilladb.core.query.parse.LoadData;
 import org.vanilladb.core.query.parse.ModifyData;
 import org.vanilladb.core.query.parse.Parser;
 import org.vanilladb.core.query.parse.QueryData;
+import org.vanilladb.core.query.planner.index.IndexUpdatePlanner;
+import org.vanilladb.core.query.planner.opt.HeuristicQueryPlanner;
 import org.vanilladb.core.server.ServerInit;
 import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.tx.Transaction;
 
 public class PlannerTest {
@@ -99,6 +122,94 @@ public class PlannerTest {
 		tx.commit();
 	}
 
+	@Test
+	public void testLoad() throws IOException {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Schema sch = new Schema();
+		sch.addField("lid", INTEGER);
+		sch.addField("lname", VARCHAR(10));
+		VanillaDB.mdMgr().createTable("loadtest", sch,
+				TableInfo.FORMAT_SLOTTED, tx);
+		VanillaDB.mdMgr().createIndex("loadtestidx", "loadtest", "lid",
+				IDX_BTREE, tx);
+		File csv = File.createTempFile("plannertest", ".csv");
+		csv.deleteOnExit();
+		Writer w = new FileWriter(csv);
+		int max = 500;
+		for (int i = max - 1; i >= 0; i--)
+			w.write(i + ",name" + i + "\n");
+		w.close();
+
+		// load the file, building the empty index afterwards
+		String cmd = "load into loadtest(lid, lname) from '" + csv.getPath()
+				+ "'";
+		LoadData ld = (LoadData) new Parser(cmd).updateCommand();
+		int n = new IndexUpdatePlanner().executeLoad(ld, tx);
+		assertEquals("*****PlannerTest: bad load return value", max, n);
+
+		// execute a batch of insertions as a load
+		List<String> cmds = new ArrayList<String>();
+		for (int i = max; i < max + Planner.MIN_BATCH_LOAD; i++)
+			cmds.add("insert into loadtest(lid, lname) values(" + i
+					+ ", 'name" + i + "')");
+		int[] counts = new Planner(new BasicQueryPlanner(),
+				new IndexUpdatePlanner()).executeBatch(cmds, tx);
+		assertEquals("*****PlannerTest: bad batch return value", cmds.size(),
+				counts.length);
+		max += counts.length;
+
+		Plan p = new BasicQueryPlanner().createPlan(new Parser(
+				"select lid, lname from loadtest").query(), tx);
+		Scan s = p.open();
+		s.beforeFirst();
+		int count = 0;
+		while (s.next()) {
+			assertEquals("*****PlannerTest: bad loaded record", "name"
+					+ s.getVal("lid").asJavaVal(), s.getVal("lname")
+					.asJavaVal());
+			count++;
+		}
+		s.close();
+		assertEquals("*****PlannerTest: bad load count", max, count);
+
+		Index idx = VanillaDB.mdMgr().getIndexInfo("loadtest", tx).get("lid")
+				.open(tx);
+		RecordFile rf = VanillaDB.mdMgr().getTableInfo("loadtest", tx)
+				.open(tx);
+		for (int i = 0; i < max; i += 7) {
+			idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(i)));
+			assertTrue("*****PlannerTest: loaded key not indexed", idx.next());
+			rf.moveToRecordId(idx.getDataRecordId());
+			assertEquals("*****PlannerTest: bad loaded index entry", "name"
+					+ i, rf.getVal("lname").asJavaVal());
+			assertTrue("*****PlannerTest: bad loaded index entry",
+					!idx.next());
+		}
+		idx.close();
+
+		// an index created on the loaded table is filled with its records
+		cmd = "create index loadtestidx2 on loadtest(lname)";
+		CreateIndexData cid = (CreateIndexData) new Parser(cmd)
+				.updateCommand();
+		new IndexUpdatePlanner().executeCreateIndex(cid, tx);
+		idx = VanillaDB.mdMgr().getIndexInfo("loadtest", tx).get("lname")
+				.open(tx);
+		for (int i = 0; i < max; i += 7) {
+			idx.beforeFirst(ConstantRange.newInstance(new VarcharConstant(
+					"name" + i)));
+			assertTrue("*****PlannerTest: record not indexed", idx.next());
+			rf.moveToRecordId(idx.getDataRecordId());
+			assertEquals("*****PlannerTest: bad created index entry", i,
+					rf.getInt("lid"));
+			assertTrue("*****PlannerTest: bad created index entry",
+					!idx.next());
+		}
+		rf.close();
+		idx.close();
+		tx.commit();
+	}
+
 	@Test
 	public void testInsert() {
 		Transaction tx = VanillaDB.transaction(
@@ -204,4 +315,173 @@ public class PlannerTest {
 		s.close();
 		tx.rollback();
 	}
+
+	@Test
+	public void testCompositeIndex() {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		IndexUpdatePlanner iup = new IndexUpdatePlanner();
+		iup.executeCreateTable((CreateTableData) new Parser(
+				"create table comptest(cid int, dept int, cname varchar(10))")
+				.updateCommand(), tx);
+		for (int i = 0; i < 200; i++)
+			iup.executeInsert((InsertData) new Parser(
+					"insert into comptest(cid, dept, cname) values(" + i
+							+ ", " + (i % 10) + ", 'n" + i + "')")
+					.updateCommand(), tx);
+		iup.executeCreateIndex((CreateIndexData) new Parser(
+				"create index comptestidx on comptest(dept, cid) "
+						+ "include (cname)").updateCommand(), tx);
+
+		String qry = "select cid, cname from comptest "
+				+ "where dept = 3 and cid > 100";
+		Plan p = new HeuristicQueryPlanner().createPlan(
+				new Parser(qry).query(), tx);
+		assertTrue("*****PlannerTest: composite index not used",
+				hasIndexSelect(p));
+		Scan s = p.open();
+		s.beforeFirst();
+		int count = 0;
+		while (s.next()) {
+			int cid = (Integer) s.getVal("cid").asJavaVal();
+			assertTrue("*****PlannerTest: bad composite retrieval",
+					cid > 100 && cid % 10 == 3);
+			assertEquals("*****PlannerTest: bad included field",
+					"n" + cid, s.getVal("cname").asJavaVal());
+			count++;
+		}
+		s.close();
+		assertEquals("*****PlannerTest: bad composite count", 10, count);
+
+		// a modified included field is updated in the index
+		iup.executeModify((ModifyData) new Parser(
+				"update comptest set cname = 'kkk' where cid = 113")
+				.updateCommand(), tx);
+		s = new HeuristicQueryPlanner().createPlan(
+				new Parser("select cname from comptest "
+						+ "where dept = 3 and cid = 113").query(), tx).open();
+		s.beforeFirst();
+		assertTrue("*****PlannerTest: bad composite modify",
+				s.next() && s.getVal("cname").asJavaVal().equals("kkk")
+						&& !s.next());
+		s.close();
+
+		iup.executeDelete((DeleteData) new Parser(
+				"delete from comptest where dept = 3").updateCommand(), tx);
+		s = new HeuristicQueryPlanner().createPlan(new Parser(qry).query(),
+				tx).open();
+		s.beforeFirst();
+		while (s.next())
+			fail("*****PlannerTest: bad composite delete");
+		s.close();
+		tx.rollback();
+	}
+
+	@Test
+	public void testSortedFetch() {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		IndexUpdatePlanner iup = new IndexUpdatePlanner();
+		iup.executeCreateTable((CreateTableData) new Parser(
+				"create table sorttest(id int, k int, pad varchar(50))")
+				.updateCommand(), tx);
+		iup.executeCreateIndex((CreateIndexData) new Parser(
+				"create index sorttestidx on sorttest(k)").updateCommand(), tx);
+		// the order of the keys is not the order of the records
+		for (int i = 0; i < 1000; i++)
+			iup.executeInsert((InsertData) new Parser(
+					"insert into sorttest(id, k, pad) values(" + i + ", "
+							+ (i * 37 % 500) + ", 'pad" + i + "')")
+					.updateCommand(), tx);
+
+		Plan p = new HeuristicQueryPlanner().createPlan(new Parser(
+				"select id, pad from sorttest where k < 250").query(), tx);
+		assertTrue("*****PlannerTest: index not used", hasIndexSelect(p));
+		Scan s = p.open();
+		s.beforeFirst();
+		int count = 0, lastId = -1;
+		while (s.next()) {
+			int id = (Integer) s.getVal("id").asJavaVal();
+			assertTrue("*****PlannerTest: bad sorted fetch", id > lastId
+					&& id * 37 % 500 < 250);
+			assertEquals("*****PlannerTest: bad sorted fetch", "pad" + id, s
+					.getVal("pad").asJavaVal());
+			lastId = id;
+			count++;
+		}
+		s.close();
+		assertEquals("*****PlannerTest: bad sorted fetch count", 500, count);
+		tx.rollback();
+	}
+
+	@Test
+	public void testBatchedIndexJoin() {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		IndexUpdatePlanner iup = new IndexUpdatePlanner();
+		iup.executeCreateTable((CreateTableData) new Parser(
+				"create table probelhs(lid int, jv int)").updateCommand(), tx);
+		iup.executeCreateTable((CreateTableData) new Parser(
+				"create table proberhs(rid int, k int, pad varchar(20))")
+				.updateCommand(), tx);
+		// each key in [0, 1000) has three records, spread over many leaves
+		UpdateScan us = (UpdateScan) new TablePlan("proberhs", tx).open();
+		for (int i = 0; i < 3000; i++) {
+			us.insert();
+			us.setVal("rid", new IntegerConstant(i));
+			us.setVal("k", new IntegerConstant(i * 7 % 1000));
+			us.setVal("pad", new VarcharConstant("pad" + i));
+		}
+		us.close();
+		// some join values repeat and some have no match
+		int lhsRecs = 800, expected = 0;
+		us = (UpdateScan) new TablePlan("probelhs", tx).open();
+		for (int i = 0; i < lhsRecs; i++) {
+			us.insert();
+			us.setVal("lid", new IntegerConstant(i));
+			us.setVal("jv", new IntegerConstant(i * 13 % 1200));
+			if (i * 13 % 1200 < 1000)
+				expected += 3;
+		}
+		us.close();
+		iup.executeCreateIndex((CreateIndexData) new Parser(
+				"create index proberhsidx on proberhs(k)").updateCommand(), tx);
+
+		Plan p = new IndexJoinPlan(new TablePlan("probelhs", tx),
+				new TablePlan("proberhs", tx), VanillaDB.mdMgr()
+						.getIndexInfo("proberhs", tx).get("k"), "jv", tx);
+		Scan s = p.open();
+		s.beforeFirst();
+		int count = 0, descents = 0, lastJv = -1;
+		while (s.next()) {
+			int jv = (Integer) s.getVal("jv").asJavaVal();
+			int rid = (Integer) s.getVal("rid").asJavaVal();
+			assertTrue("*****PlannerTest: bad batched index join",
+					(Integer) s.getVal("k").asJavaVal() == jv
+							&& rid * 7 % 1000 == jv
+							&& s.getVal("pad").asJavaVal().equals("pad" + rid)
+							&& (Integer) s.getVal("lid").asJavaVal() * 13
+									% 1200 == jv);
+			if (jv < lastJv)
+				descents++;
+			lastJv = jv;
+			count++;
+		}
+		s.close();
+		assertEquals("*****PlannerTest: bad batched index join count",
+				expected, count);
+		// the join values are ascending within each batch of LHS records
+		assertTrue("*****PlannerTest: LHS records not probed in batches",
+				descents < (lhsRecs + 511) / 512);
+		tx.rollback();
+	}
+
+	private boolean hasIndexSelect(Plan p) {
+		if (p instanceof IndexSelectPlan)
+			return true;
+		for (Plan child : p.getUnderlyingPlans())
+			if (hasIndexSelect(child))
+				return true;
+		return false;
+	}
 }
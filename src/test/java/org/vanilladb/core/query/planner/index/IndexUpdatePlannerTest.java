@@ -25,8 +25,14 @@ import org.vanilladb.core.query.parse.QueryData;
 import org.vanilladb.core.query.planner.opt.HeuristicQueryPlanner;
 import org.vanilladb.core.server.ServerInit;
 import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.metadata.MetadataMgr;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.tx.Transaction;
 
 public class IndexUpdatePlannerTest {
@@ -50,8 +56,8 @@ public class IndexUpdatePlannerTest {
 		sch.addField("tname", VARCHAR(10));
 		sch.addField("tdate", BIGINT);
 		md.createTable(tableName, sch, tx);
-		md.createIndex("_tempIUP1", tableName, "tid", IDX_BTREE, tx);
-		md.createIndex("_tempIUP2", tableName, "tdate", IDX_BTREE, tx);
+		md.createIndex("indextestidx1", tableName, "tid", IDX_BTREE, tx);
+		md.createIndex("indextestidx2", tableName, "tdate", IDX_BTREE, tx);
 
 		tx.commit();
 
@@ -156,4 +162,36 @@ public class IndexUpdatePlannerTest {
 
 		tx.rollback();
 	}
+
+	@Test
+	public void testMultiPassMerge() {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		IndexInfo ii = new IndexInfo("indextestmerge", tableName, "tid",
+				IDX_BTREE);
+		String dataFileName = tableName + ".tbl";
+		// five runs and some records in memory, merged two at a time
+		int numRecs = IndexRecordSorter.RUN_SIZE * 5 + 10;
+		IndexRecordSorter sorter = new IndexRecordSorter(INTEGER, null,
+				dataFileName, tx);
+		for (int i = 0; i < numRecs; i++) {
+			int key = (i * 7919) % numRecs;
+			sorter.add(new IntegerConstant(key), new RecordId(new BlockId(
+					dataFileName, key), 0), null);
+		}
+		sorter.loadInto(ii.open(tx), 2);
+
+		Index idx = ii.open(tx);
+		idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(0),
+				true, null, false));
+		int count = 0;
+		while (idx.next()) {
+			assertEquals("*****IndexUpdatePlannerTest: bad merge order",
+					new IntegerConstant(count), idx.getKey());
+			count++;
+		}
+		idx.close();
+		assertEquals("*****IndexUpdatePlannerTest: bad merge", numRecs, count);
+		tx.rollback();
+	}
 }
@@ -0,0 +1,135 @@
+package org.vanilladb.core.storage.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.sql.Connection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class BufferFlusherTest {
+	private static Logger logger = Logger.getLogger(BufferFlusherTest.class
+			.getName());
+	// the updates are logged, so the file must not be a temporary one
+	private static String fileName = "bufferflushertest.0";
+	private static final int NUM_BUFFS = 4;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.initData();
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN BUFFER FLUSHER TEST");
+	}
+
+	@Test
+	public void testFlush() throws InterruptedException {
+		for (int i = 0; i < NUM_BUFFS; i++)
+			writeBlock(new BlockId(fileName, i), 0);
+		BasicBufferMgr pool = new BasicBufferMgr(NUM_BUFFS,
+				Page.blockSize(fileName));
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Buffer[] buffs = new Buffer[NUM_BUFFS];
+		long[] lsns = new long[NUM_BUFFS];
+		for (int i = 0; i < NUM_BUFFS; i++) {
+			buffs[i] = pool.pin(new BlockId(fileName, i));
+			Constant val = new IntegerConstant(100 + i);
+			lsns[i] = tx.recoveryMgr().setVal(buffs[i], 0, val);
+			buffs[i].setVal(0, val, tx.getTransactionNumber(), lsns[i]);
+		}
+		// the first buffer stays pinned
+		for (int i = 1; i < NUM_BUFFS; i++)
+			pool.unpin(buffs[i]);
+		assertTrue("*****BufferFlusherTest: log flushed too early", VanillaDB
+				.logMgr().flushedLSN() < lsns[NUM_BUFFS - 1]);
+
+		Thread[] flushers = BufferFlusher.startFlushers(pool, 1, 0.0, 0.0, 5);
+		try {
+			long deadline = System.currentTimeMillis() + 10000;
+			boolean flushed = false;
+			while (!flushed && System.currentTimeMillis() < deadline) {
+				flushed = true;
+				for (int i = 1; i < NUM_BUFFS; i++) {
+					BlockId blk = new BlockId(fileName, i);
+					// the log reached the page's LSN before the page is written
+					long flushedLsn = VanillaDB.logMgr().flushedLSN();
+					if (readBlock(blk) == 100 + i)
+						assertTrue("*****BufferFlusherTest: page written "
+								+ "before its log record",
+								flushedLsn >= lsns[i]);
+					else
+						flushed = false;
+				}
+				Thread.sleep(5);
+			}
+			assertTrue("*****BufferFlusherTest: dirty buffers not flushed",
+					flushed);
+			for (int i = 1; i < NUM_BUFFS; i++)
+				assertFalse("*****BufferFlusherTest: bad flush",
+						buffs[i].isModified());
+			// the pinned buffer is skipped
+			assertTrue("*****BufferFlusherTest: pinned buffer flushed",
+					buffs[0].isModified());
+			assertEquals("*****BufferFlusherTest: pinned buffer flushed", 0,
+					readBlock(new BlockId(fileName, 0)));
+		} finally {
+			for (Thread t : flushers)
+				t.interrupt();
+			pool.unpin(buffs[0]);
+			tx.rollback();
+		}
+	}
+
+	@Test
+	public void testWatermark() throws InterruptedException {
+		BlockId blk = new BlockId(fileName, 0);
+		writeBlock(blk, 0);
+		BasicBufferMgr pool = new BasicBufferMgr(NUM_BUFFS,
+				Page.blockSize(fileName));
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Buffer buff = pool.pin(blk);
+		Constant val = new IntegerConstant(7);
+		long lsn = tx.recoveryMgr().setVal(buff, 0, val);
+		buff.setVal(0, val, tx.getTransactionNumber(), lsn);
+		pool.unpin(buff);
+
+		// one dirty buffer out of four is below the high watermark
+		Thread[] flushers = BufferFlusher.startFlushers(pool, 1, 0.5, 0.0, 5);
+		try {
+			Thread.sleep(200);
+			assertTrue("*****BufferFlusherTest: flushed below watermark",
+					buff.isModified());
+			assertEquals("*****BufferFlusherTest: flushed below watermark", 0,
+					readBlock(blk));
+		} finally {
+			for (Thread t : flushers)
+				t.interrupt();
+			tx.rollback();
+		}
+	}
+
+	private static void writeBlock(BlockId blk, int val) {
+		Page page = new Page(Page.blockSize(blk.fileName()));
+		page.setVal(0, new IntegerConstant(val));
+		page.write(blk);
+	}
+
+	private static int readBlock(BlockId blk) {
+		Page page = new Page(Page.blockSize(blk.fileName()));
+		page.read(blk);
+		return (Integer) page.getVal(0, INTEGER).asJavaVal();
+	}
+}
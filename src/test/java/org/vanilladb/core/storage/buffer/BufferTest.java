@@ -133,6 +133,26 @@ public class BufferTest {
 		assertEquals("*****BufferTest: bad available", avail7, avail1);
 	}
 
+	@Test
+	public void testLoad() {
+		String loadFileName = "_tempbuffertestload.0";
+		Page page = new Page(Page.blockSize(loadFileName));
+		for (int i = 0; i < 4; i++) {
+			page.setVal(0, new IntegerConstant(100 + i));
+			page.write(new BlockId(loadFileName, i));
+		}
+		int avail = bm.available();
+		// the block beyond the end of the file is skipped
+		bm.load(loadFileName, 0, 5);
+		assertEquals("*****BufferTest: bad available", avail, bm.available());
+		for (int i = 0; i < 4; i++) {
+			Buffer buff = bm.pin(new BlockId(loadFileName, i), txNum);
+			assertEquals("*****BufferTest: bad prefetched value",
+					new IntegerConstant(100 + i), buff.getVal(0, INTEGER));
+			bm.unpin(txNum, buff);
+		}
+	}
+
 	/**
 	 * Tests the buffer manager when a transaction requires buffers more than
 	 * the buffer pool size.
@@ -157,7 +177,7 @@ public class BufferTest {
 	public void testBufferRepinning() {
 		Transaction tx = VanillaDB.transaction(
 				Connection.TRANSACTION_SERIALIZABLE, false);
-		int avail = bm.available();
+		int avail = bm.available(fileName);
 		// leave only two buffers available in buffer pool
 		for (int i = 0; i < avail - 2; i++) {
 			// leave blocks 0 to 3 unpinned
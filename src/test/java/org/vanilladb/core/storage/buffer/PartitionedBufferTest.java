@@ -0,0 +1,127 @@
+package org.vanilladb.core.storage.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+
+public class PartitionedBufferTest {
+	private static Logger logger = Logger.getLogger(PartitionedBufferTest.class
+			.getName());
+	private static String fileName = "_temppartitionedbuffertest.0";
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.initData();
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN PARTITIONED BUFFER TEST");
+	}
+
+	@Test
+	public void testSteal() {
+		// more buffers than any single partition owns
+		PartitionedBufferMgr pool = new PartitionedBufferMgr(8, 4,
+				Page.TEMP_BLOCK_SIZE);
+		Buffer[] buffs = new Buffer[8];
+		for (int i = 0; i < 8; i++) {
+			buffs[i] = pool.pin(new BlockId(fileName, i));
+			assertNotNull("*****PartitionedBufferTest: bad steal", buffs[i]);
+		}
+		assertEquals("*****PartitionedBufferTest: bad available", 0,
+				pool.available());
+		assertNull("*****PartitionedBufferTest: bad pin",
+				pool.pin(new BlockId(fileName, 8)));
+
+		pool.unpin(buffs[3]);
+		assertEquals("*****PartitionedBufferTest: bad available", 1,
+				pool.available());
+		Buffer buff = pool.pin(new BlockId(fileName, 8));
+		assertTrue("*****PartitionedBufferTest: bad replacement",
+				buff == buffs[3]);
+		pool.unpin(buff);
+		for (int i = 0; i < 8; i++)
+			if (i != 3)
+				pool.unpin(buffs[i]);
+		assertEquals("*****PartitionedBufferTest: bad available", 8,
+				pool.available());
+	}
+
+	@Test
+	public void testRepin() {
+		PartitionedBufferMgr pool = new PartitionedBufferMgr(4, 2,
+				Page.TEMP_BLOCK_SIZE);
+		BlockId blk = new BlockId(fileName, 20);
+		Buffer buff1 = pool.pin(blk);
+		buff1.setVal(0, new IntegerConstant(42), 1, -1);
+		Buffer buff2 = pool.pin(blk);
+		assertTrue("*****PartitionedBufferTest: bad repin", buff1 == buff2);
+		pool.unpin(buff1, buff2);
+		pool.flushAll(1);
+
+		// cycle every buffer through other blocks
+		for (int i = 0; i < 8; i++)
+			pool.unpin(pool.pin(new BlockId(fileName, 30 + i)));
+		Buffer buff3 = pool.pin(blk);
+		assertEquals("*****PartitionedBufferTest: bad flush",
+				new IntegerConstant(42), buff3.getVal(0, INTEGER));
+		pool.unpin(buff3);
+	}
+
+	@Test
+	public void testPinNew() {
+		PartitionedBufferMgr pool = new PartitionedBufferMgr(4, 4,
+				Page.TEMP_BLOCK_SIZE);
+		Buffer buff = pool.pinNew(fileName, new PageFormatter() {
+			@Override
+			public void format(Page p) {
+				p.setVal(0, new IntegerConstant(7));
+			}
+		});
+		assertEquals("*****PartitionedBufferTest: bad available", 3,
+				pool.available());
+		Buffer buff2 = pool.pin(buff.block());
+		assertTrue("*****PartitionedBufferTest: bad pinNew", buff == buff2);
+		pool.unpin(buff, buff2);
+		assertEquals("*****PartitionedBufferTest: bad available", 4,
+				pool.available());
+	}
+
+	@Test
+	public void testAdoptPinnedBlock() {
+		BasicBufferMgr partition = new BasicBufferMgr(2, Page.TEMP_BLOCK_SIZE);
+		// a buffer taken from another partition is assigned to a new block
+		Buffer newBuff = new BasicBufferMgr(1, Page.TEMP_BLOCK_SIZE)
+				.evictUnpinnedBuffer();
+		newBuff.assignToNew(fileName, new PageFormatter() {
+			@Override
+			public void format(Page p) {
+				p.setVal(0, new IntegerConstant(9));
+			}
+		});
+		newBuff.pin();
+		BlockId blk = newBuff.block();
+		// the block is pinned by another thread before the buffer is adopted
+		Buffer other = partition.pin(blk);
+		Buffer buff = partition.adopt(newBuff);
+		assertTrue("*****PartitionedBufferTest: bad adopt", buff == other
+				&& partition.pin(blk) == other && newBuff.block() == null);
+		assertEquals("*****PartitionedBufferTest: bad adopt",
+				new IntegerConstant(9), buff.getVal(0, INTEGER));
+		assertEquals("*****PartitionedBufferTest: bad available", 2,
+				partition.available());
+		partition.unpin(other, other, other);
+		assertEquals("*****PartitionedBufferTest: bad available", 3,
+				partition.available());
+	}
+}
@@ -0,0 +1,245 @@
+package org.vanilladb.core.storage.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+
+public class PrefetchTest {
+	private static Logger logger = Logger.getLogger(PrefetchTest.class
+			.getName());
+	private static String fileName = "_tempprefetchtest.0";
+	// a file in a directory that does not exist until the test creates it
+	private static String dirName = "_tempprefetchdir";
+	private static String missingFileName = dirName + "/prefetchtest.0";
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.initData();
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN PREFETCH TEST");
+	}
+
+	@Test
+	public void testWaitUntilLoaded() throws InterruptedException {
+		BlockId blk = new BlockId(fileName, 0);
+		writeBlock(blk, 9);
+		BasicBufferMgr pool = new BasicBufferMgr(4,
+				Page.blockSize(fileName));
+		Buffer buff = pool.reserve(blk);
+		assertNotNull("*****PrefetchTest: bad reserve", buff);
+		assertNull("*****PrefetchTest: bad reserve", pool.reserve(blk));
+
+		Buffer pinned = pool.pin(blk);
+		assertTrue("*****PrefetchTest: bad pin", pinned == buff);
+		Waiter waiter = new Waiter(pinned);
+		waiter.start();
+		waiter.join(200);
+		assertTrue("*****PrefetchTest: waiter did not wait", waiter.isAlive());
+
+		Buffer.loadAll(new Buffer[] { buff });
+		waiter.join(5000);
+		assertFalse("*****PrefetchTest: waiter not woken", waiter.isAlive());
+		assertTrue("*****PrefetchTest: bad load", waiter.loaded);
+		assertEquals("*****PrefetchTest: bad load", 9, waiter.val);
+		// a buffer that is not being loaded never waits
+		assertTrue("*****PrefetchTest: bad wait", buff.waitUntilLoaded());
+		pool.unpin(buff, pinned);
+		assertEquals("*****PrefetchTest: bad available", 4, pool.available());
+	}
+
+	@Test
+	public void testLoadFailure() throws InterruptedException {
+		BlockId blk0 = new BlockId(missingFileName, 0);
+		BlockId blk1 = new BlockId(missingFileName, 1);
+		BasicBufferMgr pool = new BasicBufferMgr(4,
+				Page.blockSize(missingFileName));
+		Buffer[] buffs = { pool.reserve(blk0), pool.reserve(blk1) };
+		Buffer pinned = pool.pin(blk0);
+		assertTrue("*****PrefetchTest: bad pin", pinned == buffs[0]);
+		Waiter waiter = new Waiter(pinned);
+		waiter.start();
+
+		try {
+			Buffer.loadAll(buffs);
+			fail("*****PrefetchTest: bad load of a missing file");
+		} catch (RuntimeException e) {
+		}
+		waiter.join(5000);
+		assertFalse("*****PrefetchTest: waiter not woken", waiter.isAlive());
+		assertFalse("*****PrefetchTest: bad failed load", waiter.loaded);
+		pool.unpin(buffs);
+		pool.unpin(pinned);
+
+		// the blocks are read from disk once they can be
+		File dir = new File(new File(System.getProperty("user.home"),
+				ServerInit.dbName), dirName);
+		dir.mkdirs();
+		try {
+			writeBlock(blk0, 7);
+			for (int i = 0; i < 2; i++) {
+				Buffer buff = pool.pin(blk0);
+				assertEquals("*****PrefetchTest: bad pin after failed load",
+						7, (int) (Integer) buff.getVal(0, INTEGER).asJavaVal());
+				pool.unpin(buff);
+			}
+			assertNull("*****PrefetchTest: bad reserve", pool.reserve(blk0));
+			Buffer buff = pool.reserve(blk1);
+			assertNotNull("*****PrefetchTest: bad reserve", buff);
+			Buffer.loadAll(new Buffer[] { buff });
+			pool.unpin(buff);
+			assertEquals("*****PrefetchTest: bad available", 4,
+					pool.available());
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testSequentialDetection() {
+		RecordingBufferMgr bm = new RecordingBufferMgr(0);
+		ReadAhead ra = new ReadAhead(fileName, bm);
+		ra.blockAccessed(0);
+		ra.blockAccessed(1);
+		assertTrue("*****PrefetchTest: bad prefetch", bm.requests.isEmpty());
+		ra.blockAccessed(2);
+		assertEquals("*****PrefetchTest: bad prefetch", 1, bm.requests.size());
+		assertEquals("*****PrefetchTest: bad prefetch", 3,
+				bm.requests.get(0)[0]);
+
+		// a jump resets the detector
+		bm.requests.clear();
+		ra.blockAccessed(100);
+		ra.blockAccessed(101);
+		ra.blockAccessed(50);
+		ra.blockAccessed(51);
+		assertTrue("*****PrefetchTest: bad prefetch", bm.requests.isEmpty());
+		ra.blockAccessed(52);
+		assertEquals("*****PrefetchTest: bad prefetch", 1, bm.requests.size());
+		assertEquals("*****PrefetchTest: bad prefetch", 53,
+				bm.requests.get(0)[0]);
+
+		// nothing is requested without prefetchers
+		bm = new RecordingBufferMgr(0);
+		bm.canPrefetch = false;
+		ra = new ReadAhead(fileName, bm);
+		for (int i = 0; i < 10; i++)
+			ra.blockAccessed(i);
+		assertTrue("*****PrefetchTest: bad prefetch", bm.requests.isEmpty());
+	}
+
+	@Test
+	public void testWindow() {
+		int maxWindow = Integer.parseInt(System.getProperty(
+				ReadAhead.class.getName() + ".MAX_WINDOW", "64").trim());
+		// a fast scan keeps the smallest window
+		RecordingBufferMgr bm = new RecordingBufferMgr(1);
+		scan(bm, 1000);
+		for (long[] req : bm.requests)
+			assertTrue("*****PrefetchTest: bad window", req[1] <= 4);
+
+		// a scan outrunning the prefetchers widens the window up to the max
+		bm = new RecordingBufferMgr(3600L * 1000 * 1000 * 1000);
+		scan(bm, 1000);
+		long largest = 0;
+		for (long[] req : bm.requests) {
+			assertTrue("*****PrefetchTest: bad window", req[1] <= maxWindow);
+			largest = Math.max(largest, req[1]);
+		}
+		assertTrue("*****PrefetchTest: bad window", largest > maxWindow / 2);
+	}
+
+	/**
+	 * Scans the specified number of blocks, and checks that the requests
+	 * cover the blocks ahead of the scan without gaps or overlaps.
+	 */
+	private void scan(RecordingBufferMgr bm, int numBlocks) {
+		ReadAhead ra = new ReadAhead(fileName, bm);
+		for (int i = 0; i < numBlocks; i++) {
+			ra.blockAccessed(i);
+			if (i >= 2) {
+				long[] last = bm.requests.get(bm.requests.size() - 1);
+				assertTrue("*****PrefetchTest: block " + (i + 1)
+						+ " not prefetched", last[0] + last[1] > i + 1);
+			}
+		}
+		long next = 3;
+		for (long[] req : bm.requests) {
+			assertEquals("*****PrefetchTest: bad prefetch range", next, req[0]);
+			next = req[0] + req[1];
+		}
+	}
+
+	private static void writeBlock(BlockId blk, int val) {
+		Page page = new Page(Page.blockSize(blk.fileName()));
+		page.setVal(0, new IntegerConstant(val));
+		page.write(blk);
+	}
+
+	private static class Waiter extends Thread {
+		private Buffer buff;
+		volatile boolean loaded;
+		volatile int val;
+
+		Waiter(Buffer buff) {
+			this.buff = buff;
+		}
+
+		@Override
+		public void run() {
+			try {
+				loaded = buff.waitUntilLoaded();
+				if (loaded)
+					val = (Integer) buff.getVal(0, INTEGER).asJavaVal();
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	/**
+	 * A buffer manager recording the prefetch requests instead of serving
+	 * them, and reporting a fixed prefetch latency.
+	 */
+	private static class RecordingBufferMgr extends BufferMgr {
+		List<long[]> requests = new ArrayList<long[]>();
+		boolean canPrefetch = true;
+		private long latency;
+
+		RecordingBufferMgr(long latency) {
+			this.latency = latency;
+		}
+
+		@Override
+		public void prefetch(String fileName, long blkNum, int numBlocks) {
+			requests.add(new long[] { blkNum, numBlocks });
+		}
+
+		@Override
+		boolean canPrefetch() {
+			return canPrefetch;
+		}
+
+		@Override
+		long prefetchLatency() {
+			return latency;
+		}
+	}
+}
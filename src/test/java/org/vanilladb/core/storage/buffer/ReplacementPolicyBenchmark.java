@@ -0,0 +1,65 @@
+package org.vanilladb.core.storage.buffer;
+
+import java.util.Random;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+
+/**
+ * Replays a workload mixing point lookups on a small set of hot blocks (such
+ * as B-tree directory and catalog blocks) with periodic full scans of a large
+ * table, and reports the buffer hit ratio of each replacement policy.
+ *
+ * <p>
+ * Usage: <code>ReplacementPolicyBenchmark [numBuffs] [numBlocks]</code>
+ * </p>
+ */
+public class ReplacementPolicyBenchmark {
+	private static final String FILE_NAME = "_tempreplacementbench.tbl";
+	private static final int NUM_HOT_BLOCKS_PERCENT = 10;
+	private static final int LOOKUPS_BETWEEN_SCANS = 5000;
+	private static final int NUM_ROUNDS = 10;
+
+	public static void main(String[] args) {
+		int numBuffs = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		int numBlocks = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+		VanillaDB.initFileAndLogMgr("replacementbench");
+		Page page = new Page(Page.TEMP_BLOCK_SIZE);
+		for (long i = VanillaDB.fileMgr().size(FILE_NAME); i < numBlocks; i++)
+			page.append(FILE_NAME);
+
+		ReplacementPolicy[] policies = { new RoundRobinPolicy(),
+				new ClockPolicy(), new LruKPolicy(), new TwoQueuePolicy() };
+		for (ReplacementPolicy policy : policies) {
+			BasicBufferMgr pool = new BasicBufferMgr(numBuffs,
+					Page.TEMP_BLOCK_SIZE, policy);
+			long start = System.nanoTime();
+			replay(pool, numBlocks, new Random(0));
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			System.out.println(String.format(
+					"%-20s hit ratio %.4f, elapsed %d ms", policy.getClass()
+							.getSimpleName(), pool.hitRatio(), elapsed));
+		}
+	}
+
+	private static void replay(BasicBufferMgr pool, int numBlocks, Random rnd) {
+		int numHot = Math.max(1, numBlocks * NUM_HOT_BLOCKS_PERCENT / 100);
+		for (int round = 0; round < NUM_ROUNDS; round++) {
+			// point lookups, 90% of them on the hot blocks
+			for (int i = 0; i < LOOKUPS_BETWEEN_SCANS; i++) {
+				int blkNum = rnd.nextInt(10) < 9 ? rnd.nextInt(numHot) : rnd
+						.nextInt(numBlocks);
+				access(pool, blkNum);
+			}
+			// a full scan
+			for (int blkNum = 0; blkNum < numBlocks; blkNum++)
+				access(pool, blkNum);
+		}
+	}
+
+	private static void access(BasicBufferMgr pool, int blkNum) {
+		Buffer buff = pool.pin(new BlockId(FILE_NAME, blkNum));
+		pool.unpin(buff);
+	}
+}
@@ -0,0 +1,92 @@
+package org.vanilladb.core.storage.buffer;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+
+public class ReplacementPolicyTest {
+	private static Logger logger = Logger.getLogger(ReplacementPolicyTest.class
+			.getName());
+	private static String fileName = "_tempreplacementpolicytest.0";
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.initData();
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN REPLACEMENT POLICY TEST");
+	}
+
+	@Test
+	public void testAllPinned() {
+		ReplacementPolicy[] policies = { new RoundRobinPolicy(),
+				new ClockPolicy(), new LruKPolicy(), new TwoQueuePolicy() };
+		for (ReplacementPolicy policy : policies) {
+			BasicBufferMgr pool = new BasicBufferMgr(3,
+					Page.TEMP_BLOCK_SIZE, policy);
+			Buffer[] buffs = new Buffer[3];
+			for (int i = 0; i < 3; i++)
+				buffs[i] = pool.pin(new BlockId(fileName, i));
+			assertNull("*****ReplacementPolicyTest: bad pin", pool
+					.pin(new BlockId(fileName, 3)));
+			pool.unpin(buffs);
+		}
+	}
+
+	@Test
+	public void testClock() {
+		BasicBufferMgr pool = new BasicBufferMgr(3,
+				Page.TEMP_BLOCK_SIZE, new ClockPolicy());
+		for (int i = 0; i < 3; i++)
+			access(pool, i);
+		// the first sweep clears every bit, then block 0 is replaced
+		access(pool, 3);
+		// blocks 1 and 2 lost their bits, block 1 is referenced again
+		access(pool, 1);
+		access(pool, 4);
+		assertTrue("*****ReplacementPolicyTest: bad clock", isResident(pool,
+				1));
+		assertTrue("*****ReplacementPolicyTest: bad clock", !isResident(pool,
+				2));
+	}
+
+	@Test
+	public void testScanResistance() {
+		ReplacementPolicy[] policies = { new LruKPolicy(),
+				new TwoQueuePolicy() };
+		for (ReplacementPolicy policy : policies) {
+			BasicBufferMgr pool = new BasicBufferMgr(8,
+					Page.TEMP_BLOCK_SIZE, policy);
+			// block 0 is replaced once and then used repeatedly
+			access(pool, 0);
+			for (int i = 0; i < 8; i++)
+				access(pool, 100 + i);
+			access(pool, 0);
+			access(pool, 0);
+			// a scan over many more blocks than the pool holds
+			for (int i = 1; i <= 32; i++)
+				access(pool, i);
+			assertTrue("*****ReplacementPolicyTest: bad scan resistance of "
+					+ policy.getClass().getSimpleName(), isResident(pool, 0));
+		}
+	}
+
+	private void access(BasicBufferMgr pool, int blkNum) {
+		pool.unpin(pool.pin(new BlockId(fileName, blkNum)));
+	}
+
+	private boolean isResident(BasicBufferMgr pool, int blkNum) {
+		double ratio = pool.hitRatio();
+		Buffer buff = pool.pin(new BlockId(fileName, blkNum));
+		pool.unpin(buff);
+		// a hit raises the hit ratio
+		return pool.hitRatio() > ratio;
+	}
+}
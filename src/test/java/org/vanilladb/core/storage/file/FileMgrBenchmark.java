@@ -0,0 +1,67 @@
+package org.vanilladb.core.storage.file;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.vanilladb.core.server.VanillaDB;
+
+/**
+ * Reads random blocks of one large table file by an increasing number of
+ * threads, and reports the throughput of each run. Since the file manager
+ * takes no lock on block I/O, the throughput should scale with the threads
+ * until the device or the page cache saturates. Setting
+ * <code>FileMgr.MMAP_DATA</code> compares the mapped read path against the
+ * channel.
+ *
+ * <p>
+ * Usage: <code>FileMgrBenchmark [numBlocks] [maxThreads] [seconds]</code>
+ * </p>
+ */
+public class FileMgrBenchmark {
+	private static final String FILE_NAME = "filemgrbench.tbl";
+
+	public static void main(String[] args) throws InterruptedException {
+		int numBlocks = args.length > 0 ? Integer.parseInt(args[0]) : 16384;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime
+				.getRuntime().availableProcessors();
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		VanillaDB.initFileMgr("filemgrbench");
+		Page page = new Page();
+		for (long i = VanillaDB.fileMgr().size(FILE_NAME); i < numBlocks; i++)
+			page.append(FILE_NAME);
+
+		for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+			long numReads = run(numThreads, numBlocks, seconds * 1000L);
+			System.out.println(String.format(
+					"%3d threads: %10d reads, %10.0f reads/s", numThreads,
+					numReads, numReads * 1000.0 / (seconds * 1000L)));
+		}
+	}
+
+	private static long run(int numThreads, final int numBlocks,
+			final long millis) throws InterruptedException {
+		final AtomicLong numReads = new AtomicLong();
+		final long end = System.currentTimeMillis() + millis;
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final long seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Random rnd = new Random(seed);
+					Page page = new Page();
+					long count = 0;
+					while (System.currentTimeMillis() < end) {
+						page.read(new BlockId(FILE_NAME, rnd.nextInt(numBlocks)));
+						count++;
+					}
+					numReads.addAndGet(count);
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		return numReads.get();
+	}
+}
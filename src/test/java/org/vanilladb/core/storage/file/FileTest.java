@@ -6,9 +6,14 @@ import static org.junit.Assert.fail;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
+import static org.vanilladb.core.storage.file.Page.TEMP_BLOCK_SIZE;
 
+import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,9 +45,9 @@ public class FileTest {
 
 		strSize = Page.size(s);
 		fm = VanillaDB.fileMgr();
-		p1 = new Page();
-		p2 = new Page();
-		p3 = new Page();
+		p1 = new Page(TEMP_BLOCK_SIZE);
+		p2 = new Page(TEMP_BLOCK_SIZE);
+		p3 = new Page(TEMP_BLOCK_SIZE);
 
 		if (logger.isLoggable(Level.INFO))
 			logger.info("BEGIN FILE TEST");
@@ -50,7 +55,7 @@ public class FileTest {
 
 	@After
 	public void setup() {
-		for (int pos = 0; pos + intTypeCapacity < BLOCK_SIZE; pos += intTypeCapacity) {
+		for (int pos = 0; pos + intTypeCapacity < TEMP_BLOCK_SIZE; pos += intTypeCapacity) {
 			p1.setVal(pos, new IntegerConstant(0));
 			p2.setVal(pos, new IntegerConstant(0));
 			p3.setVal(pos, new IntegerConstant(0));
@@ -82,12 +87,194 @@ public class FileTest {
 								new IntegerConstant(456)));
 	}
 
+	@Test
+	public void testScatteringRead() {
+		String filename = "_tempfiletestsr." + fileCounter++;
+		for (int i = 0; i < 3; i++) {
+			p1.setVal(0, new IntegerConstant(100 + i));
+			p1.write(new BlockId(filename, i));
+		}
+		// the last page lies beyond the end of the file
+		Page[] pages = new Page[] { p1, p2, p3, new Page(TEMP_BLOCK_SIZE) };
+		Page.read(new BlockId(filename, 0), pages);
+		for (int i = 0; i < 3; i++)
+			assertEquals("*****FileTest: bad scattering read",
+					new IntegerConstant(100 + i), pages[i].getVal(0, INTEGER));
+		assertEquals("*****FileTest: bad scattering read",
+				new IntegerConstant(0), pages[3].getVal(0, INTEGER));
+	}
+
 	@Test
 	public void testFileList() {
 		String filename = "_tempfiletestlist." + fileCounter++;
 		BlockId blk = new BlockId(filename, 14);
 		p1.write(blk);
 		assertEquals("*****FileTest: bad file list", 15, fm.size(filename));
+		// the blocks skipped by the write read as zeros
+		p2.setVal(0, new IntegerConstant(1));
+		p2.read(new BlockId(filename, 7));
+		assertEquals("*****FileTest: bad skipped block", new IntegerConstant(
+				0), p2.getVal(0, INTEGER));
+	}
+
+	@Test
+	public void testConcurrentAppend() throws InterruptedException {
+		final String filename = "_tempfiletestca." + fileCounter++;
+		final int numThreads = 8, blocksPerThread = 200;
+		final AtomicInteger numBad = new AtomicInteger();
+		final BlockId[][] blks = new BlockId[numThreads][blocksPerThread];
+		Thread[] appenders = new Thread[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			final int id = i;
+			appenders[i] = new Thread() {
+				@Override
+				public void run() {
+					Page p = new Page(TEMP_BLOCK_SIZE);
+					for (int j = 0; j < blocksPerThread; j++) {
+						p.setVal(0, new IntegerConstant(marker(id, j)));
+						blks[id][j] = p.append(filename);
+						// the appended block is within the file
+						if (fm.size(filename) <= blks[id][j].number())
+							numBad.incrementAndGet();
+					}
+				}
+			};
+		}
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				Page p = new Page(TEMP_BLOCK_SIZE);
+				while (!done.get()) {
+					long size = fm.size(filename);
+					if (size == 0)
+						continue;
+					// every block within the size has been written
+					p.read(new BlockId(filename, size - 1));
+					if (p.getVal(0, INTEGER).equals(new IntegerConstant(0)))
+						numBad.incrementAndGet();
+				}
+			}
+		};
+		reader.start();
+		for (Thread t : appenders)
+			t.start();
+		for (Thread t : appenders)
+			t.join();
+		done.set(true);
+		reader.join();
+
+		assertEquals("*****FileTest: unwritten block within the file", 0,
+				numBad.get());
+		assertEquals("*****FileTest: bad concurrent append", numThreads
+				* blocksPerThread, fm.size(filename));
+		for (int i = 0; i < numThreads; i++)
+			for (int j = 0; j < blocksPerThread; j++) {
+				p2.read(blks[i][j]);
+				assertEquals("*****FileTest: bad concurrent append",
+						new IntegerConstant(marker(i, j)), p2.getVal(0,
+								INTEGER));
+			}
+	}
+
+	@Test
+	public void testMappedRead() {
+		// chunks of 3 blocks, remapped after growing by 2 blocks
+		String dirName = "filetestmmap";
+		FileMgr mfm = new FileMgr(ServerInit.dbName + "/" + dirName, 3,
+				2);
+		try {
+			String filename = "_tempfiletestmmap." + fileCounter++;
+			for (int i = 0; i < 5; i++)
+				mfm.write(new BlockId(filename, i), block(100 + i));
+
+			// the last of the two chunks is partial
+			for (int i = 0; i < 5; i++)
+				assertEquals("*****FileTest: bad mapped read", 100 + i,
+						readBlock(mfm, new BlockId(filename, i)));
+			assertEquals("*****FileTest: bad mapping", 5,
+					mfm.mappedBlocks(filename));
+
+			// a block beyond the mapping is read from the channel
+			mfm.append(filename, block(105));
+			assertEquals("*****FileTest: bad unmapped read", 105,
+					readBlock(mfm, new BlockId(filename, 5)));
+			assertEquals("*****FileTest: remapped too early", 5,
+					mfm.mappedBlocks(filename));
+
+			// the tail chunk is remapped once the file has grown enough
+			mfm.append(filename,
+					new ByteBuffer[] { block(106), block(107) });
+			assertEquals("*****FileTest: bad remapped read", 107,
+					readBlock(mfm, new BlockId(filename, 7)));
+			assertEquals("*****FileTest: not remapped", 8,
+					mfm.mappedBlocks(filename));
+			ByteBuffer[] bbs = new ByteBuffer[8];
+			for (int i = 0; i < bbs.length; i++)
+				bbs[i] = ByteBuffer.allocateDirect(TEMP_BLOCK_SIZE);
+			mfm.read(new BlockId(filename, 0), bbs);
+			for (int i = 0; i < bbs.length; i++)
+				assertEquals("*****FileTest: bad mapped scattering read",
+						100 + i, bbs[i].getInt(0));
+
+			// the mapping sees the writes through the channel
+			mfm.write(new BlockId(filename, 4), block(200));
+			assertEquals("*****FileTest: stale mapped read", 200,
+					readBlock(mfm, new BlockId(filename, 4)));
+		} finally {
+			File dir = new File(new File(System.getProperty("user.home"),
+					ServerInit.dbName), dirName);
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testLegacyIndexFile() {
+		String dirName = "filetestlegacy";
+		String dbName = ServerInit.dbName + "/" + dirName;
+		File dir = new File(new File(System.getProperty("user.home"),
+				ServerInit.dbName), dirName);
+		try {
+			// an index file written by an older database
+			FileMgr oldFm = new FileMgr(dbName);
+			ByteBuffer bb = ByteBuffer.allocateDirect(BLOCK_SIZE);
+			bb.putInt(0, 300);
+			oldFm.write(new BlockId("filetestidxleaf.tbl", 0), bb);
+
+			FileMgr newFm = new FileMgr(dbName);
+			String fileName = "filetestidxleaf" + FileMgr.INDEX_FILE_EXTENSION;
+			assertEquals("*****FileTest: bad legacy index file", 1,
+					newFm.size(fileName));
+			bb.clear();
+			bb.putInt(0, 0);
+			newFm.read(new BlockId(fileName, 0), bb);
+			assertEquals("*****FileTest: bad legacy index file", 300,
+					bb.getInt(0));
+			assertTrue("*****FileTest: legacy index file not renamed",
+					!new File(dir, "filetestidxleaf.tbl").exists());
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	private static ByteBuffer block(int val) {
+		ByteBuffer bb = ByteBuffer.allocateDirect(TEMP_BLOCK_SIZE);
+		bb.putInt(0, val);
+		return bb;
+	}
+
+	private static int readBlock(FileMgr mfm, BlockId blk) {
+		ByteBuffer bb = ByteBuffer.allocateDirect(TEMP_BLOCK_SIZE);
+		mfm.read(blk, bb);
+		return bb.getInt(0);
+	}
+
+	private static int marker(int thread, int seq) {
+		return thread * 1000 + seq + 1;
 	}
 
 	@Test
@@ -142,13 +329,13 @@ public class FileTest {
 		} catch (Exception e) {
 		}
 		try {
-			p1.setVal(BLOCK_SIZE - (intTypeCapacity / 2), new IntegerConstant(
+			p1.setVal(TEMP_BLOCK_SIZE - (intTypeCapacity / 2), new IntegerConstant(
 					123));
 			fail("*****FileTest: allowed int large offset");
 		} catch (Exception e) {
 		}
 		try {
-			p1.setVal(BLOCK_SIZE - (strSize / 2), s);
+			p1.setVal(TEMP_BLOCK_SIZE - (strSize / 2), s);
 			fail("*****FileTest: allowed String large offset");
 		} catch (Exception e) {
 		}
@@ -0,0 +1,126 @@
+package org.vanilladb.core.storage.file;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+import static org.vanilladb.core.storage.index.Index.IDX_BTREE;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.query.algebra.materialize.SortPlan;
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.metadata.MetadataMgr;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Measures the throughput of sorting a table and of range scans over a B-tree
+ * index under the configured block sizes. The block sizes are fixed when the
+ * {@link Page} class is loaded, so compare the sizes by running the benchmark
+ * once per setting, e.g. with
+ * <code>-Dorg.vanilladb.core.storage.file.Page.TEMP_BLOCK_SIZE=16000</code>
+ * and <code>-Dorg.vanilladb.core.storage.file.Page.INDEX_BLOCK_SIZE=16000</code>.
+ * Each setting loads a database of its own.
+ *
+ * <p>
+ * Usage: <code>PageSizeBenchmark [numRecords] [numScans]</code>
+ * </p>
+ */
+public class PageSizeBenchmark {
+	private static final String TABLE_NAME = "pagesizebench";
+	private static final int SCAN_WIDTH = 100;
+	private static final int RUN_LENGTH = 1000;
+
+	public static void main(String[] args) {
+		int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int numScans = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		VanillaDB.init("pagesizebench_" + Page.BLOCK_SIZE + "_"
+				+ Page.INDEX_BLOCK_SIZE + "_" + Page.TEMP_BLOCK_SIZE);
+		System.out.println(String.format(
+				"block sizes: data %d, index %d, temp %d", Page.BLOCK_SIZE,
+				Page.INDEX_BLOCK_SIZE, Page.TEMP_BLOCK_SIZE));
+		load(numRecords);
+
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, true);
+		long start = System.nanoTime();
+		Scan s = new SortPlan(new TablePlan(TABLE_NAME, tx),
+				Arrays.asList("id"), tx).open();
+		s.beforeFirst();
+		long count = 0;
+		while (s.next())
+			count++;
+		s.close();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%-12s %10d records, %10.0f records/s",
+				"sort", count, count / seconds));
+
+		Index idx = VanillaDB.mdMgr().getIndexInfo(TABLE_NAME, tx).get("id")
+				.open(tx);
+		Random rnd = new Random(0);
+		start = System.nanoTime();
+		count = 0;
+		for (int i = 0; i < numScans; i++) {
+			int low = rnd.nextInt(Math.max(1, numRecords - SCAN_WIDTH));
+			idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(low),
+					true, new IntegerConstant(low + SCAN_WIDTH), false));
+			while (idx.next())
+				count++;
+		}
+		idx.close();
+		seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format(
+				"%-12s %10d entries, %10.0f scans/s", "index scan", count,
+				numScans / seconds));
+		tx.commit();
+	}
+
+	private static void load(int numRecords) {
+		MetadataMgr md = VanillaDB.mdMgr();
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		if (md.getTableInfo(TABLE_NAME, tx) != null) {
+			tx.commit();
+			return;
+		}
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+		sch.addField("pad", VARCHAR(40));
+		md.createTable(TABLE_NAME, sch, tx);
+		md.createIndex(TABLE_NAME + "_id", TABLE_NAME, "id", IDX_BTREE, tx);
+		tx.commit();
+
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		TableInfo ti = md.getTableInfo(TABLE_NAME, tx);
+		Index idx = md.getIndexInfo(TABLE_NAME, tx).get("id").open(tx);
+		TableScan ts = new TableScan(ti, tx);
+		/*
+		 * The sort splits its input into the runs of ascending keys, so the
+		 * keys are inserted as interleaved runs of RUN_LENGTH keys rather than
+		 * in a random order.
+		 */
+		int numRuns = (numRecords + RUN_LENGTH - 1) / RUN_LENGTH;
+		Constant pad = new VarcharConstant("page size benchmark");
+		for (int i = 0; i < numRecords; i++) {
+			Constant key = new IntegerConstant(i % RUN_LENGTH * numRuns + i
+					/ RUN_LENGTH);
+			ts.insert();
+			ts.setVal("id", key);
+			ts.setVal("pad", pad);
+			idx.insert(key, ts.getRecordId());
+		}
+		ts.close();
+		idx.close();
+		tx.commit();
+	}
+}
@@ -0,0 +1,135 @@
+package org.vanilladb.core.storage.index.btree;
+
+import static org.vanilladb.core.sql.Type.VARCHAR;
+import static org.vanilladb.core.storage.metadata.TableInfo.FORMAT_FIXED;
+import static org.vanilladb.core.storage.metadata.TableInfo.FORMAT_SLOTTED;
+
+import java.sql.Connection;
+import java.util.Random;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Measures the shape of a B-tree index on string keys sharing long prefixes,
+ * and the throughput of looking them up. The format of the index is fixed by
+ * {@link BTreeIndex#COMPRESS_KEYS}, so compare the formats by running the
+ * benchmark once with the default setting and once with
+ * <code>-Dorg.vanilladb.core.storage.index.btree.BTreeIndex.COMPRESS_KEYS=false</code>.
+ * Each run loads a database of its own.
+ * 
+ * <p>
+ * A search of the directory pins one block per level of the directory and
+ * then the leaf, so the number of blocks pinned per search is reported along
+ * with the average number of entries of the pages.
+ * </p>
+ * 
+ * <p>
+ * Usage: <code>BTreeCompressionBenchmark [numKeys] [numLookups]</code>
+ * </p>
+ */
+public class BTreeCompressionBenchmark {
+	private static final String IDX_NAME = "btreecompressionbench";
+	private static final String DATA_FILE_NAME = IDX_NAME + ".tbl";
+	private static final Type KEY_TYPE = VARCHAR(64);
+	private static final int BATCH_SIZE = 10000;
+
+	public static void main(String[] args) {
+		int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		VanillaDB.init(IDX_NAME + "_" + BTreeIndex.COMPRESS_KEYS + "_"
+				+ System.currentTimeMillis());
+		System.out.println("compressed keys: " + BTreeIndex.COMPRESS_KEYS);
+
+		// the keys are inserted out of order, and split the pages as they go
+		long start = System.nanoTime();
+		for (int first = 0; first < numKeys; first += BATCH_SIZE) {
+			Transaction tx = VanillaDB.transaction(
+					Connection.TRANSACTION_SERIALIZABLE, false);
+			BTreeIndex idx = new BTreeIndex(DATA_FILE_NAME, IDX_NAME,
+					KEY_TYPE, tx);
+			int end = Math.min(first + BATCH_SIZE, numKeys);
+			for (int i = first; i < end; i++) {
+				int k = (int) ((i * 7919L) % numKeys);
+				idx.insert(key(k), rid(k));
+			}
+			idx.close();
+			tx.commit();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%-12s %10d keys, %10.0f keys/s",
+				"insert", numKeys, numKeys / seconds));
+
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, true);
+		int format = BTreeIndex.COMPRESS_KEYS ? FORMAT_SLOTTED : FORMAT_FIXED;
+		String leafTbl = IDX_NAME + "leaf", dirTbl = IDX_NAME + "dir";
+		TableInfo leafTi = new TableInfo(leafTbl, BTreeLeaf.schema(KEY_TYPE),
+				format, leafTbl + FileMgr.INDEX_FILE_EXTENSION);
+		TableInfo dirTi = new TableInfo(dirTbl, BTreeDir.schema(KEY_TYPE),
+				format, dirTbl + FileMgr.INDEX_FILE_EXTENSION);
+		report("leaves", leafTi, BTreeLeaf.NUM_FLAGS, tx);
+		report("directory", dirTi, BTreeDir.NUM_FLAGS, tx);
+		BTreePage root = BTreePage.newInstance(DATA_FILE_NAME, new BlockId(
+				dirTi.fileName(), 0), BTreeDir.NUM_FLAGS, dirTi, tx);
+		long depth = BTreeDir.getLevelFlag(root) + 1;
+		root.close();
+		System.out.println(String.format(
+				"%-12s %10d levels, %10d blocks pinned per search", "depth",
+				depth, depth + 1));
+
+		BTreeIndex idx = new BTreeIndex(DATA_FILE_NAME, IDX_NAME, KEY_TYPE, tx);
+		Random rnd = new Random(0);
+		start = System.nanoTime();
+		long count = 0;
+		for (int i = 0; i < numLookups; i++) {
+			idx.beforeFirst(ConstantRange.newInstance(key(rnd
+					.nextInt(numKeys))));
+			while (idx.next())
+				count++;
+		}
+		idx.close();
+		seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format(
+				"%-12s %10d entries, %10.0f lookups/s", "lookup", count,
+				numLookups / seconds));
+		tx.commit();
+	}
+
+	/**
+	 * Prints the number of blocks of the specified B-tree file and the
+	 * average number of entries of its pages.
+	 */
+	private static void report(String name, TableInfo ti, int numFlags,
+			Transaction tx) {
+		long numBlocks = VanillaDB.fileMgr().size(ti.fileName());
+		long numRecs = 0;
+		for (long blkNum = 0; blkNum < numBlocks; blkNum++) {
+			BTreePage page = BTreePage.newInstance(DATA_FILE_NAME,
+					new BlockId(ti.fileName(), blkNum), numFlags, ti, tx);
+			numRecs += page.getNumRecords();
+			page.close();
+		}
+		System.out.println(String.format(
+				"%-12s %10d blocks, %10.1f entries per page", name, numBlocks,
+				(double) numRecs / numBlocks));
+	}
+
+	private static Constant key(int k) {
+		return new VarcharConstant(String.format(
+				"https://shop.example.com/catalog/%04d/item/%08d", k / 1000,
+				k));
+	}
+
+	private static RecordId rid(int k) {
+		return new RecordId(new BlockId(DATA_FILE_NAME, k / 100), k % 100);
+	}
+}
@@ -6,7 +6,12 @@ import static org.vanilladb.core.sql.Type.VARCHAR;
 import static org.vanilladb.core.storage.index.Index.IDX_BTREE;
 
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,16 +20,23 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.vanilladb.core.server.ServerInit;
 import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.CompositeConstant;
+import org.vanilladb.core.sql.CompositeConstantRange;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.ConstantRange;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharConstant;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
 import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.IndexLoader;
 import org.vanilladb.core.storage.metadata.MetadataMgr;
+import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
 
 public class BTreeIndexTest {
 	private static Logger logger = Logger.getLogger(BTreeIndexTest.class
@@ -161,4 +173,488 @@ public class BTreeIndexTest {
 		cidIndex.close();
 		tx.commit();
 	}
+
+	@Test
+	public void testUnorderedInsert() {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Map<String, IndexInfo> idxmap = md.getIndexInfo(dataTableName, tx);
+		Index cidIndex = idxmap.get("cid").open(tx);
+		BlockId blk = new BlockId(dataTableName + ".tbl", 0);
+
+		// insert the keys 1000 to 1899 in three interleaved ascending passes
+		for (int r = 0; r < 3; r++)
+			for (int i = 0; i < 300; i++)
+				cidIndex.insert(new IntegerConstant(1000 + i * 3 + r),
+						new RecordId(blk, i * 3 + r));
+		for (int k = 1000; k < 1900; k++) {
+			cidIndex.beforeFirst(ConstantRange.newInstance(new IntegerConstant(
+					k)));
+			assertTrue("*****BTreeIndexTest: bad unordered insert",
+					cidIndex.next());
+			assertTrue("*****BTreeIndexTest: bad unordered insert", cidIndex
+					.getDataRecordId().equals(new RecordId(blk, k - 1000)));
+			assertTrue("*****BTreeIndexTest: bad unordered insert",
+					cidIndex.next() == false);
+		}
+		cidIndex.beforeFirst(ConstantRange.newInstance(new IntegerConstant(
+				1100), true, new IntegerConstant(1200), false));
+		int j = 0;
+		while (cidIndex.next())
+			j++;
+		assertTrue("*****BTreeIndexTest: bad range selection", j == 100);
+
+		for (int k = 1000; k < 1900; k++)
+			cidIndex.delete(new IntegerConstant(k), new RecordId(blk,
+					k - 1000));
+		cidIndex.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testRepeatedSearch() {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Map<String, IndexInfo> idxmap = md.getIndexInfo(dataTableName, tx);
+		Index cidIndex = idxmap.get("cid").open(tx);
+		BlockId blk = new BlockId(dataTableName + ".tbl", 0);
+		// enough keys to fill many leaves
+		for (int k = 5000; k < 7000; k++)
+			cidIndex.insert(new IntegerConstant(k), new RecordId(blk,
+					k - 5000));
+		cidIndex.close();
+
+		// a new search releases the leaf of the previous one
+		int available = VanillaDB.bufferMgr().available();
+		for (int k = 5000; k < 7000; k += 50) {
+			cidIndex.beforeFirst(ConstantRange.newInstance(new IntegerConstant(
+					k)));
+			assertTrue("*****BTreeIndexTest: bad repeated search",
+					cidIndex.next());
+		}
+		assertTrue("*****BTreeIndexTest: leaves pinned by repeated search",
+				VanillaDB.bufferMgr().available() >= available - 1);
+		cidIndex.close();
+
+		for (int k = 5000; k < 7000; k++)
+			cidIndex.delete(new IntegerConstant(k), new RecordId(blk,
+					k - 5000));
+		cidIndex.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testBulkLoad() {
+		// enough records for two levels of directory
+		int numKeys = 20000, dups = 4, bigKey = 7, bigDups = 1000;
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Index idx = new IndexInfo("testbulkidx", dataTableName, "cid", IDX_BTREE)
+				.open(tx);
+		IndexLoader loader = idx.loader();
+		for (int k = 0; k < numKeys; k++) {
+			// the records of the big key fill several leaves
+			int n = k == bigKey ? bigDups : dups;
+			for (int i = 0; i < n; i++)
+				loader.insert(new IntegerConstant(k), rid(k, i));
+		}
+		loader.close();
+
+		for (int k = 0; k < numKeys; k += 37)
+			checkKey(idx, k, dups);
+		checkKey(idx, bigKey, bigDups);
+		idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(
+				numKeys - 10), false, null, false));
+		assertTrue("*****BTreeIndexTest: bad bulk-loaded > selection",
+				count(idx) == 9 * dups);
+		idx.beforeFirst(ConstantRange.newInstance(null, false,
+				new IntegerConstant(10), false));
+		assertTrue("*****BTreeIndexTest: bad bulk-loaded < selection",
+				count(idx) == 9 * dups + bigDups);
+
+		// the loaded index takes insertions and deletions as usual
+		for (int k = 0; k < numKeys; k += 1000)
+			idx.insert(new IntegerConstant(k), rid(k, dups));
+		for (int k = 0; k < numKeys; k += 1000) {
+			checkKey(idx, k, dups + 1);
+			idx.delete(new IntegerConstant(k), rid(k, 0));
+			checkKey(idx, k, dups);
+		}
+		idx.close();
+		tx.commit();
+
+		// a rolled back load leaves the index empty
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo("testrollbackidx", dataTableName, "cid", IDX_BTREE)
+				.open(tx);
+		loader = idx.loader();
+		for (int k = 0; k < numKeys; k++)
+			loader.insert(new IntegerConstant(k), rid(k, 0));
+		loader.close();
+		checkKey(idx, numKeys / 2, 1);
+		tx.rollback();
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo("testrollbackidx", dataTableName, "cid", IDX_BTREE)
+				.open(tx);
+		idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(0),
+				true, null, false));
+		assertTrue("*****BTreeIndexTest: bad rolled back bulk load",
+				!idx.next());
+
+		// the index is still built bottom-up, after the unreachable pages
+		loader = idx.loader();
+		for (int k = 0; k < numKeys; k++)
+			loader.insert(new IntegerConstant(k), rid(k, 0));
+		loader.close();
+		checkKey(idx, numKeys / 2, 1);
+		idx.close();
+		String leafTbl = "testrollbackidxleaf";
+		TableInfo leafTi = new TableInfo(leafTbl, BTreeLeaf.schema(INTEGER),
+				TableInfo.FORMAT_FIXED, leafTbl + FileMgr.INDEX_FILE_EXTENSION);
+		BTreePage firstLeaf = BTreePage.newInstance(dataTableName + ".tbl",
+				new BlockId(leafTi.fileName(), 0), BTreeLeaf.NUM_FLAGS, leafTi,
+				tx);
+		// a built index leaves its first leaf empty
+		assertTrue("*****BTreeIndexTest: bad bulk load after rollback",
+				firstLeaf.getNumRecords() == 0
+						&& BTreeLeaf.getSiblingFlag(firstLeaf) > 0);
+		firstLeaf.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testConcurrentInsert() throws InterruptedException {
+		// enough keys for the threads to split many leaves
+		final int numThreads = 4, numKeys = 3000, batchSize = 50;
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int firstKey = t * numKeys;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					int k = firstKey;
+					while (k < firstKey + numKeys) {
+						Transaction tx = VanillaDB.transaction(
+								Connection.TRANSACTION_SERIALIZABLE, false);
+						try {
+							Index idx = new IndexInfo("testconcurrentidx",
+									dataTableName, "cid", IDX_BTREE).open(tx);
+							for (int i = k; i < k + batchSize; i++)
+								idx.insert(new IntegerConstant(i), rid(i, 0));
+							idx.close();
+							tx.commit();
+							k += batchSize;
+						} catch (LockAbortException e) {
+							// the transaction is rolled back, and retried
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Index idx = new IndexInfo("testconcurrentidx", dataTableName, "cid",
+				IDX_BTREE).open(tx);
+		for (int k = 0; k < numThreads * numKeys; k++) {
+			idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(k)));
+			assertTrue("*****BTreeIndexTest: bad concurrent insert",
+					idx.next() && idx.getDataRecordId().equals(rid(k, 0))
+							&& !idx.next());
+		}
+		idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(0),
+				true, null, false));
+		assertTrue("*****BTreeIndexTest: bad concurrent insert",
+				count(idx) == numThreads * numKeys);
+		idx.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testRolledBackSplit() {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Index idx = new IndexInfo("testsplitidx", dataTableName, "cid",
+				IDX_BTREE).open(tx);
+		for (int k = 0; k < 1000; k++)
+			idx.insert(new IntegerConstant(k), rid(k, 0));
+		idx.close();
+		tx.commit();
+
+		// the leaves split by a rolled back transaction are not posted
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo("testsplitidx", dataTableName, "cid", IDX_BTREE)
+				.open(tx);
+		for (int k = 1000; k < 3000; k++)
+			idx.insert(new IntegerConstant(k), rid(k, 0));
+		idx.close();
+		tx.rollback();
+
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo("testsplitidx", dataTableName, "cid", IDX_BTREE)
+				.open(tx);
+		idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(1000),
+				true, null, false));
+		assertTrue("*****BTreeIndexTest: bad rolled back split", !idx.next());
+		for (int k = 1000; k < 3000; k++)
+			idx.insert(new IntegerConstant(k), rid(k, 0));
+		for (int k = 0; k < 3000; k += 7) {
+			idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(k)));
+			assertTrue("*****BTreeIndexTest: bad rolled back split",
+					idx.next() && idx.getDataRecordId().equals(rid(k, 0))
+							&& !idx.next());
+		}
+		idx.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testCompressedKeys() {
+		int numKeys = 3000, bigKey = 42, bigDups = 500;
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Index idx = new IndexInfo("testcompressedidx", dataTableName, "title",
+				IDX_BTREE).open(tx);
+		// the keys are inserted out of order, and split the pages at their
+		// separators
+		for (int i = 0; i < numKeys; i++) {
+			int k = (int) ((i * 7919L) % numKeys);
+			idx.insert(title(k), rid(k, 0));
+		}
+		for (int i = 1; i < bigDups; i++)
+			idx.insert(title(bigKey), rid(bigKey, i));
+		idx.close();
+		tx.commit();
+
+		// the splits of a rolled back transaction are undone
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo("testcompressedidx", dataTableName, "title",
+				IDX_BTREE).open(tx);
+		for (int k = numKeys; k < 2 * numKeys; k++)
+			idx.insert(title(k), rid(k, 0));
+		for (int k = 0; k < numKeys; k += 2)
+			idx.delete(title(k), rid(k, 0));
+		idx.close();
+		tx.rollback();
+
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo("testcompressedidx", dataTableName, "title",
+				IDX_BTREE).open(tx);
+		for (int k = 0; k < numKeys; k++)
+			checkTitle(idx, k, k == bigKey ? bigDups : 1);
+		checkTitle(idx, numKeys, 0);
+		idx.beforeFirst(ConstantRange.newInstance(title(100), true,
+				title(200), false));
+		assertTrue("*****BTreeIndexTest: bad compressed range selection",
+				count(idx) == 100);
+		for (int k = 0; k < numKeys; k += 2)
+			idx.delete(title(k), rid(k, 0));
+		for (int k = 0; k < numKeys; k++)
+			checkTitle(idx, k, k % 2 == 0 ? (k == bigKey ? bigDups - 1 : 0)
+					: 1);
+		idx.close();
+		tx.commit();
+
+		// a bulk load lays out the compressed pages directly
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo("testcompressedbulkidx", dataTableName, "title",
+				IDX_BTREE).open(tx);
+		IndexLoader loader = idx.loader();
+		for (int k = 0; k < 10 * numKeys; k++) {
+			int n = k == bigKey ? bigDups : 1;
+			for (int i = 0; i < n; i++)
+				loader.insert(title(k), rid(k, i));
+		}
+		loader.close();
+		for (int k = 0; k < 10 * numKeys; k += 37)
+			checkTitle(idx, k, 1);
+		checkTitle(idx, bigKey, bigDups);
+		for (int k = 0; k < 10 * numKeys; k += 1000) {
+			idx.insert(title(k), rid(k, 1));
+			checkTitle(idx, k, 2);
+		}
+		idx.beforeFirst(ConstantRange.newInstance(title(0), true,
+				title(10 * numKeys), false));
+		assertTrue("*****BTreeIndexTest: bad compressed bulk load",
+				count(idx) == 10 * numKeys + bigDups - 1 + 10 * numKeys / 1000);
+		idx.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testCompositeKeys() {
+		int numKeys = 3000, numDepts = 10;
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		IndexInfo ii = new IndexInfo("testcompositeidx", dataTableName,
+				Arrays.asList("deptid", "cid"), Arrays.asList("title"),
+				IDX_BTREE);
+		Index idx = ii.open(tx);
+		for (int i = 0; i < numKeys; i++) {
+			int k = (int) ((i * 7919L) % numKeys);
+			idx.insert(deptKey(k % numDepts, k), rid(k, 0), titles(k));
+		}
+		idx.close();
+		tx.commit();
+
+		// the splits and values of a rolled back transaction are undone
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = ii.open(tx);
+		for (int k = numKeys; k < 2 * numKeys; k++)
+			idx.insert(deptKey(k % numDepts, k), rid(k, 0), titles(k));
+		idx.close();
+		tx.rollback();
+
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = ii.open(tx);
+		checkDept(idx, 3, null, numKeys / numDepts);
+		checkDept(idx, 3, ConstantRange.newInstance(new IntegerConstant(100),
+				true, new IntegerConstant(200), false), 10);
+		checkDept(idx, numDepts, null, 0);
+		idx.close();
+		tx.commit();
+
+		// a bulk load writes the included values as well
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		ii = new IndexInfo("testcompositebulkidx", dataTableName,
+				Arrays.asList("deptid", "cid"), Arrays.asList("title"),
+				IDX_BTREE);
+		idx = ii.open(tx);
+		IndexLoader loader = idx.loader();
+		for (int d = 0; d < numDepts; d++)
+			for (int k = d; k < numKeys; k += numDepts)
+				loader.insert(deptKey(d, k), rid(k, 0), titles(k));
+		loader.close();
+		checkDept(idx, 7, null, numKeys / numDepts);
+		checkDept(idx, 7, ConstantRange.newInstance(new IntegerConstant(
+				2000), true, null, false), 100);
+		idx.close();
+		tx.commit();
+	}
+
+	/**
+	 * Checks the records of the specified department whose cid is in the
+	 * specified range, which are in the order of their cid.
+	 */
+	private void checkDept(Index idx, int dept, ConstantRange cidRange,
+			int count) {
+		List<Constant> prefix = new ArrayList<Constant>();
+		prefix.add(new IntegerConstant(dept));
+		idx.beforeFirst(CompositeConstantRange.newInstance(prefix, cidRange));
+		int n = 0, last = -1;
+		while (idx.next()) {
+			CompositeConstant key = (CompositeConstant) idx.getKey();
+			int cid = (Integer) key.component(1).asJavaVal();
+			assertTrue("*****BTreeIndexTest: bad composite key", key
+					.component(0).equals(new IntegerConstant(dept))
+					&& cid > last
+					&& idx.getDataRecordId().block().number() == cid);
+			assertTrue("*****BTreeIndexTest: bad included values",
+					idx.getIncludedValues().equals(titles(cid)));
+			last = cid;
+			n++;
+		}
+		assertTrue("*****BTreeIndexTest: bad composite range of " + dept,
+				n == count);
+	}
+
+	private Constant deptKey(int dept, int cid) {
+		return new CompositeConstant(Arrays.<Constant> asList(
+				new IntegerConstant(dept), new IntegerConstant(cid)));
+	}
+
+	private Constant titles(int k) {
+		return new CompositeConstant(Arrays.asList(title(k)));
+	}
+
+	@Test
+	public void testLostSplitEntry() {
+		String idxName = "testlostsplitidx";
+		int numKeys = 2000;
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Index idx = new IndexInfo(idxName, dataTableName, "cid", IDX_BTREE)
+				.open(tx);
+		for (int k = 0; k < numKeys; k++)
+			idx.insert(new IntegerConstant(k), rid(k, 0));
+		idx.close();
+		tx.commit();
+
+		// drops the entry of the last leaf, as if its posting were lost
+		String dirTbl = idxName + "dir";
+		TableInfo dirTi = new TableInfo(dirTbl, BTreeDir.schema(INTEGER),
+				TableInfo.FORMAT_FIXED, dirTbl + FileMgr.INDEX_FILE_EXTENSION);
+		BlockId rootBlk = new BlockId(dirTi.fileName(), 0);
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		BTreePage root = BTreePage.newInstance(dataTableName + ".tbl",
+				rootBlk, BTreeDir.NUM_FLAGS, dirTi, tx);
+		assertTrue("*****BTreeIndexTest: bad split", BTreeDir
+				.getLevelFlag(root) == 0 && root.getNumRecords() > 2);
+		int last = root.getNumRecords() - 1;
+		Constant lostKey = BTreeDir.getKey(root, last);
+		long lostChild = BTreeDir.getChildBlockNumber(root, last);
+		root.delete(last);
+		root.close();
+		tx.commit();
+
+		// a search moves right to the leaf, and completes the split
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo(idxName, dataTableName, "cid", IDX_BTREE)
+				.open(tx);
+		checkKey(idx, numKeys - 1, 1);
+		idx.close();
+		tx.commit();
+
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		root = BTreePage.newInstance(dataTableName + ".tbl", rootBlk,
+				BTreeDir.NUM_FLAGS, dirTi, tx);
+		assertTrue("*****BTreeIndexTest: bad completed split", root
+				.getNumRecords() == last + 1
+				&& BTreeDir.getKey(root, last).equals(lostKey)
+				&& BTreeDir.getChildBlockNumber(root, last) == lostChild);
+		root.close();
+		tx.commit();
+	}
+
+	private void checkTitle(Index idx, int key, int dups) {
+		idx.beforeFirst(ConstantRange.newInstance(title(key)));
+		int n = 0;
+		while (idx.next()) {
+			assertTrue("*****BTreeIndexTest: bad compressed record id", idx
+					.getDataRecordId().block().number() == key);
+			n++;
+		}
+		assertTrue("*****BTreeIndexTest: bad compressed key " + key,
+				n == dups);
+	}
+
+	private Constant title(int k) {
+		return new VarcharConstant(String.format("course-title-%06d", k));
+	}
+
+	private void checkKey(Index idx, int key, int dups) {
+		idx.beforeFirst(ConstantRange.newInstance(new IntegerConstant(key)));
+		Set<RecordId> rids = new HashSet<RecordId>();
+		while (idx.next())
+			rids.add(idx.getDataRecordId());
+		assertTrue("*****BTreeIndexTest: bad bulk-loaded key " + key,
+				rids.size() == dups);
+		for (RecordId rid : rids)
+			assertTrue("*****BTreeIndexTest: bad bulk-loaded record id", rid
+					.block().number() == key);
+	}
+
+	private int count(Index idx) {
+		int n = 0;
+		while (idx.next())
+			n++;
+		return n;
+	}
+
+	private RecordId rid(int key, int i) {
+		return new RecordId(new BlockId(dataTableName + ".tbl", key), i);
+	}
 }
@@ -0,0 +1,173 @@
+package org.vanilladb.core.storage.index.hash;
+
+import static org.junit.Assert.assertTrue;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+import static org.vanilladb.core.storage.index.Index.IDX_EXT_HASH;
+
+import java.sql.Connection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.metadata.MetadataMgr;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class ExtendibleHashIndexTest {
+	private static Logger logger = Logger
+			.getLogger(ExtendibleHashIndexTest.class.getName());
+	private static MetadataMgr md;
+	private static String dataTableName = "_tempEHITable";
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.initData();
+		md = VanillaDB.mdMgr();
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN EXTENDIBLE HASH INDEX TEST");
+
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Schema schema = new Schema();
+		schema.addField("cid", INTEGER);
+		schema.addField("title", VARCHAR(20));
+		md.createTable(dataTableName, schema, tx);
+		md.createIndex("_tempEHI1", dataTableName, "cid", IDX_EXT_HASH, tx);
+		md.createIndex("_tempEHI2", dataTableName, "title", IDX_EXT_HASH, tx);
+		tx.commit();
+	}
+
+	@Test
+	public void testBasicOperation() {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Map<String, IndexInfo> idxmap = md.getIndexInfo(dataTableName, tx);
+		Index cidIndex = idxmap.get("cid").open(tx);
+		Constant int5 = new IntegerConstant(5), int7 = new IntegerConstant(7);
+		for (int i = 0; i < 10; i++)
+			cidIndex.insert(int5, rid(5, i));
+		cidIndex.insert(int7, rid(7, 0));
+
+		// a search key of another numeric type finds the same records
+		cidIndex.beforeFirst(ConstantRange.newInstance(new DoubleConstant(5)));
+		assertTrue("*****ExtendibleHashIndexTest: bad insert",
+				count(cidIndex) == 10);
+		cidIndex.beforeFirst(ConstantRange.newInstance(int7));
+		assertTrue("*****ExtendibleHashIndexTest: bad read index",
+				cidIndex.next()
+						&& cidIndex.getDataRecordId().equals(rid(7, 0)));
+
+		for (int i = 0; i < 10; i++)
+			cidIndex.delete(int5, rid(5, i));
+		cidIndex.beforeFirst(ConstantRange.newInstance(int5));
+		assertTrue("*****ExtendibleHashIndexTest: bad delete",
+				!cidIndex.next());
+		cidIndex.delete(int7, rid(7, 0));
+		cidIndex.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testSplits() {
+		// enough keys to split the buckets and double the directory many times
+		int numKeys = 20000, bigKey = 77, bigDups = 1000;
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Index idx = new IndexInfo("testsplitsidx", dataTableName, "cid",
+				IDX_EXT_HASH).open(tx);
+		for (int k = 0; k < numKeys; k++)
+			idx.insert(new IntegerConstant(k), rid(k, 0));
+		// the records of the big key fill a chain of overflow blocks
+		for (int i = 1; i < bigDups; i++)
+			idx.insert(new IntegerConstant(bigKey), rid(bigKey, i));
+		idx.close();
+		tx.commit();
+
+		// the splits of a rolled back transaction are undone
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo("testsplitsidx", dataTableName, "cid",
+				IDX_EXT_HASH).open(tx);
+		for (int k = numKeys; k < 2 * numKeys; k++)
+			idx.insert(new IntegerConstant(k), rid(k, 0));
+		idx.close();
+		tx.rollback();
+
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		idx = new IndexInfo("testsplitsidx", dataTableName, "cid",
+				IDX_EXT_HASH).open(tx);
+		for (int k = 0; k < numKeys; k++)
+			checkKey(idx, new IntegerConstant(k), k, k == bigKey ? bigDups
+					: 1);
+		checkKey(idx, new IntegerConstant(numKeys), numKeys, 0);
+		for (int k = 0; k < numKeys; k += 2)
+			idx.delete(new IntegerConstant(k), rid(k, 0));
+		for (int k = 0; k < numKeys; k++)
+			checkKey(idx, new IntegerConstant(k), k, k % 2 == 0 ? 0
+					: (k == bigKey ? bigDups : 1));
+		idx.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testVarcharKeys() {
+		int numKeys = 5000;
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Map<String, IndexInfo> idxmap = md.getIndexInfo(dataTableName, tx);
+		Index titleIndex = idxmap.get("title").open(tx);
+		for (int k = 0; k < numKeys; k++)
+			titleIndex.insert(title(k), rid(k, 0));
+		for (int k = 0; k < numKeys; k += 13)
+			checkKey(titleIndex, title(k), k, 1);
+		checkKey(titleIndex, title(numKeys), numKeys, 0);
+		for (int k = 0; k < numKeys; k++)
+			titleIndex.delete(title(k), rid(k, 0));
+		checkKey(titleIndex, title(0), 0, 0);
+		titleIndex.close();
+		tx.commit();
+	}
+
+	private void checkKey(Index idx, Constant key, int blkNum, int dups) {
+		idx.beforeFirst(ConstantRange.newInstance(key));
+		Set<RecordId> rids = new HashSet<RecordId>();
+		while (idx.next())
+			rids.add(idx.getDataRecordId());
+		assertTrue("*****ExtendibleHashIndexTest: bad key " + key,
+				rids.size() == dups);
+		for (RecordId rid : rids)
+			assertTrue("*****ExtendibleHashIndexTest: bad record id", rid
+					.block().number() == blkNum);
+	}
+
+	private int count(Index idx) {
+		int n = 0;
+		while (idx.next())
+			n++;
+		return n;
+	}
+
+	private Constant title(int k) {
+		return new VarcharConstant("title" + k);
+	}
+
+	private RecordId rid(int key, int i) {
+		return new RecordId(new BlockId(dataTableName + ".tbl", key), i);
+	}
+}
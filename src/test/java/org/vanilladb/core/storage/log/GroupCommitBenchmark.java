@@ -0,0 +1,63 @@
+package org.vanilladb.core.storage.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+
+/**
+ * Measures the commit rate of many small transactions, each of which appends
+ * a couple of log records and then forces its commit record, with and
+ * without group commit.
+ * 
+ * <p>
+ * Usage: <code>GroupCommitBenchmark [numThreads] [txsPerThread]</code>
+ * </p>
+ */
+public class GroupCommitBenchmark {
+	private static AtomicLong nextTxNum = new AtomicLong();
+
+	public static void main(String[] args) throws InterruptedException {
+		int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int txsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		VanillaDB.initFileMgr("groupcommitbench");
+
+		System.out.println(String.format("%-14s %10.1f commits/s",
+				"no group", run(new LogMgr(false), numThreads, txsPerThread)));
+		System.out.println(String.format("%-14s %10.1f commits/s",
+				"group commit", run(new LogMgr(true), numThreads, txsPerThread)));
+	}
+
+	private static double run(final LogMgr logMgr, int numThreads,
+			final int txsPerThread) throws InterruptedException {
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < txsPerThread; j++) {
+						long txNum = nextTxNum.getAndIncrement();
+						logMgr.append(record(-42, txNum));
+						logMgr.append(record(2, txNum));
+						long lsn = logMgr.append(record(-43, txNum));
+						logMgr.flushForCommit(lsn);
+					}
+				}
+			};
+		}
+		long start = System.nanoTime();
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		return numThreads * txsPerThread / seconds;
+	}
+
+	private static Constant[] record(int op, long txNum) {
+		return new Constant[] { new IntegerConstant(op),
+				new BigIntConstant(txNum) };
+	}
+}
@@ -0,0 +1,94 @@
+package org.vanilladb.core.storage.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+
+public class GroupCommitTest {
+	private static Logger logger = Logger.getLogger(GroupCommitTest.class
+			.getName());
+	// the operator of commit records, which the recovery manager can read
+	private static final int OP_COMMIT = -43;
+	private static final int NUM_THREADS = 16, COMMITS_PER_THREAD = 50;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.initData();
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN GROUP COMMIT TEST");
+	}
+
+	@Test
+	public void testConcurrentCommits() throws InterruptedException {
+		// a log file of its own keeps the records out of the system log
+		final String fileName = "groupcommittest.log";
+		final LogMgr logMgr = new LogMgr(fileName, true);
+		final AtomicInteger numBad = new AtomicInteger();
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int i = 0; i < NUM_THREADS; i++) {
+			final int id = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < COMMITS_PER_THREAD; j++) {
+						long txNum = id * COMMITS_PER_THREAD + j;
+						long lsn = logMgr.append(new Constant[] {
+								new IntegerConstant(OP_COMMIT),
+								new BigIntConstant(txNum) });
+						logMgr.flushForCommit(lsn);
+						// the commit record must be on disk by now
+						if (logMgr.flushedLSN() < lsn
+								|| !isOnDisk(fileName, lsn, txNum))
+							numBad.incrementAndGet();
+					}
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		assertEquals("*****GroupCommitTest: commit returned before flush", 0,
+				numBad.get());
+	}
+
+	@Test
+	public void testLoneCommit() {
+		LogMgr logMgr = new LogMgr("lonecommittest.log", true);
+		for (int i = 0; i < 10; i++) {
+			long start = System.currentTimeMillis();
+			long lsn = logMgr.append(new Constant[] {
+					new IntegerConstant(OP_COMMIT), new BigIntConstant(i) });
+			logMgr.flushForCommit(lsn);
+			long elapsed = System.currentTimeMillis() - start;
+			assertTrue("*****GroupCommitTest: lone commit not flushed",
+					logMgr.flushedLSN() >= lsn);
+			// no other committer arrives, so the batch window bounds the wait
+			assertTrue("*****GroupCommitTest: lone commit delayed " + elapsed
+					+ " ms", elapsed < LogMgr.BATCH_WINDOW + 1000);
+		}
+	}
+
+	private static boolean isOnDisk(String fileName, long lsn, long txNum) {
+		Page pg = new Page();
+		pg.read(new BlockId(fileName, LogMgr.blockNumberOf(lsn)));
+		BasicLogRecord rec = new BasicLogRecord(pg,
+				(int) (lsn % Page.BLOCK_SIZE), lsn);
+		return rec.nextVal(INTEGER).equals(new IntegerConstant(OP_COMMIT))
+				&& rec.nextVal(BIGINT).equals(new BigIntConstant(txNum));
+	}
+}
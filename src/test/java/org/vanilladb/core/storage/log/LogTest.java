@@ -0,0 +1,110 @@
+package org.vanilladb.core.storage.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.file.Page;
+
+public class LogTest {
+	private static Logger logger = Logger.getLogger(LogTest.class.getName());
+	private static LogMgr logMgr;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.initData();
+		// a log file of its own keeps the records out of the system log
+		logMgr = new LogMgr("logtest.log", false);
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN LOG TEST");
+	}
+
+	@Test
+	public void testLsn() {
+		// enough records to wrap around the ring of log pages a few times
+		int numRecs = 10 * Page.BLOCK_SIZE / 16;
+		long[] lsns = new long[numRecs];
+		for (int i = 0; i < numRecs; i++) {
+			lsns[i] = logMgr.append(new Constant[] {
+					new IntegerConstant(i), new BigIntConstant(i) });
+			if (i > 0)
+				assertTrue("*****LogTest: bad lsn order", lsns[i] > lsns[i - 1]);
+		}
+		assertTrue("*****LogTest: bad lsn",
+				LogMgr.blockNumberOf(lsns[0]) < LogMgr
+						.blockNumberOf(lsns[numRecs - 1]));
+
+		Iterator<BasicLogRecord> iter = logMgr.iterator();
+		for (int i = numRecs - 1; i >= 0; i--) {
+			BasicLogRecord rec = iter.next();
+			assertEquals("*****LogTest: bad lsn", lsns[i], rec.getLSN());
+			assertEquals("*****LogTest: bad log record", new IntegerConstant(i),
+					rec.nextVal(INTEGER));
+			assertEquals("*****LogTest: bad log record", new BigIntConstant(i),
+					rec.nextVal(BIGINT));
+		}
+
+		// random access by LSN
+		for (int i = 0; i < numRecs; i += numRecs / 7) {
+			BasicLogRecord rec = logMgr.read(lsns[i]);
+			assertEquals("*****LogTest: bad lsn", lsns[i], rec.getLSN());
+			assertEquals("*****LogTest: bad log record", new IntegerConstant(i),
+					rec.nextVal(INTEGER));
+			assertEquals("*****LogTest: bad log record", new BigIntConstant(i),
+					rec.nextVal(BIGINT));
+		}
+	}
+
+	@Test
+	public void testConcurrentAppend() throws InterruptedException {
+		final LogMgr mgr = new LogMgr("logtestconcurrent.log", false);
+		final int numThreads = 8, numRecs = 2 * Page.BLOCK_SIZE / 16;
+		final long[][] lsns = new long[numThreads][numRecs];
+		final AtomicInteger numBad = new AtomicInteger();
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			final int id = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < numRecs; j++) {
+						lsns[id][j] = mgr.append(new Constant[] {
+								new IntegerConstant(id),
+								new BigIntConstant(j) });
+						// flushes race with the appenders wrapping the ring
+						if (j % 50 == 0)
+							mgr.flush(lsns[id][j]);
+						if (j > 0 && lsns[id][j] <= lsns[id][j - 1])
+							numBad.incrementAndGet();
+					}
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		assertEquals("*****LogTest: bad lsn order", 0, numBad.get());
+
+		for (int i = 0; i < numThreads; i++)
+			for (int j = 0; j < numRecs; j += 7) {
+				BasicLogRecord rec = mgr.read(lsns[i][j]);
+				assertEquals("*****LogTest: bad log record",
+						new IntegerConstant(i), rec.nextVal(INTEGER));
+				assertEquals("*****LogTest: bad log record",
+						new BigIntConstant(j), rec.nextVal(BIGINT));
+			}
+	}
+}
@@ -75,6 +75,31 @@ public class MetadataTest {
 		tx.rollback();
 	}
 
+	@Test
+	public void testTableFormat() {
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Schema sch = new Schema();
+		sch.addField("A", INTEGER);
+		sch.addField("B", VARCHAR(30));
+
+		md.createTable("TFixed", sch, tx);
+		md.createTable("TSlotted", sch, TableInfo.FORMAT_SLOTTED, tx);
+
+		TableInfo ti1 = md.getTableInfo("TFixed", tx);
+		TableInfo ti2 = md.getTableInfo("TSlotted", tx);
+		assertEquals("*****MetadataTest: bad table format",
+				TableInfo.FORMAT_FIXED, ti1.format());
+		assertEquals("*****MetadataTest: bad table format",
+				TableInfo.FORMAT_SLOTTED, ti2.format());
+		assertTrue("*****MetadataTest: bad table info", ti2.schema().fields()
+				.size() == 2
+				&& ti2.schema().hasField("A")
+				&& ti2.schema().hasField("B"));
+
+		tx.rollback();
+	}
+
 	@Test
 	public void testViewMgr() {
 		Transaction tx = VanillaDB.transaction(
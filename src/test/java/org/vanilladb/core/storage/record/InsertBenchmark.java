@@ -0,0 +1,90 @@
+package org.vanilladb.core.storage.record;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.sql.Connection;
+
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Measures the throughput of inserting records into a growing table. The
+ * throughput is reported for each batch of records, so an insertion visiting
+ * every block of the table shows as a throughput falling with the table size,
+ * and the free-space map as a flat one. Finally, one record in every
+ * <code>DELETE_STRIDE</code> is deleted and as many records are inserted, which
+ * have to find the freed slots scattered over the table.
+ *
+ * <p>
+ * Usage: <code>InsertBenchmark [numRecords] [batchSize]</code>
+ * </p>
+ */
+public class InsertBenchmark {
+	private static final String TABLE_NAME = "insertbench";
+	private static final int DELETE_STRIDE = 100;
+
+	public static void main(String[] args) {
+		int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		VanillaDB.init("insertbench_" + System.currentTimeMillis());
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+		sch.addField("pad", VARCHAR(20));
+		TableInfo ti = new TableInfo(TABLE_NAME, sch);
+
+		Constant pad = new VarcharConstant("insert benchmark");
+		for (int start = 0; start < numRecords; start += batchSize) {
+			int end = Math.min(start + batchSize, numRecords);
+			Transaction tx = VanillaDB.transaction(
+					Connection.TRANSACTION_SERIALIZABLE, false);
+			RecordFile rf = ti.open(tx);
+			long begin = System.nanoTime();
+			for (int id = start; id < end; id++) {
+				rf.insert();
+				rf.setVal("id", new IntegerConstant(id));
+				rf.setVal("pad", pad);
+			}
+			double seconds = (System.nanoTime() - begin) / 1e9;
+			System.out.println(String.format(
+					"%-12s %10d records, %8d blocks, %10.0f records/s",
+					"insert", end, rf.fileSize(), (end - start) / seconds));
+			rf.close();
+			tx.commit();
+		}
+
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		RecordFile rf = ti.open(tx);
+		rf.beforeFirst();
+		int numDeleted = 0;
+		while (rf.next())
+			if (rf.getInt("id") % DELETE_STRIDE == 0) {
+				rf.delete();
+				numDeleted++;
+			}
+		rf.close();
+		tx.commit();
+
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = ti.open(tx);
+		long size = rf.fileSize();
+		long begin = System.nanoTime();
+		for (int i = 0; i < numDeleted; i++) {
+			rf.insert();
+			rf.setVal("id", new IntegerConstant(numRecords + i));
+			rf.setVal("pad", pad);
+		}
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		System.out.println(String.format(
+				"%-12s %10d records, %8d new blocks, %10.0f records/s",
+				"refill", numDeleted, rf.fileSize() - size, numDeleted / seconds));
+		rf.close();
+		tx.commit();
+	}
+}
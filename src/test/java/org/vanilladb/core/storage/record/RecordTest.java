@@ -4,6 +4,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.DOUBLE;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
@@ -18,9 +20,16 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.vanilladb.core.server.ServerInit;
 import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.DoubleConstant;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.SchemaIncompatibleException;
 import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.sql.VarcharView;
+import org.vanilladb.core.sql.predicate.ConstantExpression;
+import org.vanilladb.core.sql.predicate.FieldNameExpression;
+import org.vanilladb.core.sql.predicate.Term;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.buffer.BufferMgr;
 import org.vanilladb.core.storage.buffer.PageFormatter;
@@ -201,6 +210,350 @@ public class RecordTest {
 		tx.rollback();
 	}
 
+	@Test
+	public void testPrimitiveRead() {
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+		sch.addField("big", BIGINT);
+		sch.addField("price", DOUBLE);
+		sch.addField("name", VARCHAR(20));
+		TableInfo pti = new TableInfo("testprimitive", sch);
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		RecordFile rf = pti.open(tx);
+		int max = 200;
+		for (int id = 0; id < max; id++) {
+			rf.insert();
+			rf.setVal("id", new IntegerConstant(id - 100));
+			rf.setVal("big", new BigIntConstant((id - 100) * 10000000000L));
+			rf.setVal("price", new DoubleConstant(id * 0.5));
+			rf.setVal("name", new VarcharConstant("\u00e9l\u00e8ve" + id));
+		}
+		rf.close();
+
+		Term idTerm = new Term(new FieldNameExpression("id"), Term.OP_LT,
+				new ConstantExpression(new IntegerConstant(0)));
+		Term bigTerm = new Term(new ConstantExpression(new IntegerConstant(
+				-100)), Term.OP_LTE, new FieldNameExpression("big"));
+		Term priceTerm = new Term(new FieldNameExpression("price"),
+				Term.OP_GTE, new ConstantExpression(new IntegerConstant(50)));
+		Term nameTerm = new Term(new FieldNameExpression("name"), Term.OP_EQ,
+				new ConstantExpression(new VarcharConstant(
+						"\u00e9l\u00e8ve7")));
+		Term[] terms = { idTerm, bigTerm, priceTerm, nameTerm };
+		Term.Evaluator[] evals = new Term.Evaluator[terms.length];
+		for (int i = 0; i < terms.length; i++)
+			evals[i] = terms[i].evaluator(sch);
+		int[] numSatisfied = new int[terms.length];
+		VarcharView view = new VarcharView();
+		int id = 0;
+		rf = pti.open(tx);
+		rf.beforeFirst();
+		while (rf.next()) {
+			assertEquals("*****RecordTest: bad int read", id - 100,
+					rf.getInt("id"));
+			assertEquals("*****RecordTest: bad long read", id - 100,
+					rf.getLong("id"));
+			assertEquals("*****RecordTest: bad long read",
+					(id - 100) * 10000000000L, rf.getLong("big"));
+			assertEquals("*****RecordTest: bad double read", id * 0.5,
+					rf.getDouble("price"), 0);
+			rf.getVarchar("name", view);
+			assertEquals("*****RecordTest: bad varchar read",
+					"\u00e9l\u00e8ve" + id, view.toString());
+			for (int i = 0; i < terms.length; i++) {
+				boolean satisfied = evals[i].isSatisfied(rf);
+				assertEquals("*****RecordTest: bad primitive term",
+						terms[i].isSatisfied(rf), satisfied);
+				if (satisfied)
+					numSatisfied[i]++;
+			}
+			id++;
+		}
+		rf.close();
+		assertEquals("*****RecordTest: wrong number of records", max, id);
+		assertEquals("*****RecordTest: bad int term", 100, numSatisfied[0]);
+		assertEquals("*****RecordTest: bad bigint term", 100, numSatisfied[1]);
+		assertEquals("*****RecordTest: bad double term", 100, numSatisfied[2]);
+		assertEquals("*****RecordTest: bad varchar term", 1, numSatisfied[3]);
+		tx.rollback();
+	}
+
+	@Test
+	public void testSlottedRecordFile() {
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+		sch.addField("note", VARCHAR(300));
+		TableInfo sti = new TableInfo("testslotted", sch,
+				TableInfo.FORMAT_SLOTTED);
+		TableInfo fti = new TableInfo("testslottedfixed", sch);
+		int max = 300;
+
+		// Part 1: Insert short notes into both formats
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		RecordId[] rids = new RecordId[max];
+		RecordFile rf = sti.open(tx);
+		RecordFile ff = fti.open(tx);
+		for (int id = 0; id < max; id++) {
+			rf.insert();
+			rf.setVal("id", new IntegerConstant(id));
+			rf.setVal("note", new VarcharConstant(note(id, id % 10)));
+			rids[id] = rf.currentRecordId();
+			ff.insert();
+			ff.setVal("id", new IntegerConstant(id));
+			ff.setVal("note", new VarcharConstant(note(id, id % 10)));
+		}
+		assertTrue("*****RecordTest: slotted file not smaller",
+				rf.fileSize() < ff.fileSize());
+		rf.close();
+		ff.close();
+		tx.commit();
+
+		// Part 2: Grow the notes out of their pages, then roll back
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = sti.open(tx);
+		rf.beforeFirst();
+		while (rf.next()) {
+			int id = (Integer) rf.getVal("id").asJavaVal();
+			rf.setVal("note", new VarcharConstant(note(id, 300)));
+		}
+		checkSlotted(rf, rids, 300);
+		rf.close();
+		tx.rollback();
+
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = sti.open(tx);
+		for (int id = 0; id < max; id++) {
+			rf.moveToRecordId(rids[id]);
+			assertEquals("*****RecordTest: bad slotted rollback",
+					note(id, id % 10), rf.getVal("note").asJavaVal());
+		}
+
+		// Part 3: Grow and shrink the notes, keeping the record IDs
+		for (int id = 0; id < max; id++) {
+			rf.moveToRecordId(rids[id]);
+			rf.setVal("note", new VarcharConstant(note(id, 300)));
+		}
+		checkSlotted(rf, rids, 300);
+		for (int id = 0; id < max; id++) {
+			rf.moveToRecordId(rids[id]);
+			rf.setVal("note", new VarcharConstant(note(id, id % 7)));
+		}
+		checkSlotted(rf, rids, -1);
+
+		// Part 4: Delete the odd records and reuse their space
+		rf.beforeFirst();
+		while (rf.next())
+			if ((Integer) rf.getVal("id").asJavaVal() % 2 == 1)
+				rf.delete();
+		for (int id = 1; id < max; id += 2) {
+			rf.insert();
+			rf.setVal("id", new IntegerConstant(id));
+			rf.setVal("note", new VarcharConstant(note(id, 50 + id % 7)));
+			rids[id] = rf.currentRecordId();
+		}
+		int count = 0;
+		rf.beforeFirst();
+		while (rf.next()) {
+			int id = (Integer) rf.getVal("id").asJavaVal();
+			int length = (id % 2 == 1) ? 50 + id % 7 : id % 7;
+			assertEquals("*****RecordTest: bad slotted reuse", note(id,
+					length), rf.getVal("note").asJavaVal());
+			count++;
+		}
+		assertEquals("*****RecordTest: wrong number of records", max, count);
+		rf.close();
+		tx.rollback();
+	}
+
+	@Test
+	public void testSlottedMoveTooLarge() {
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+		sch.addField("a", VARCHAR(3000));
+		sch.addField("b", VARCHAR(3000));
+		TableInfo ti = new TableInfo("testslottedlarge", sch,
+				TableInfo.FORMAT_SLOTTED);
+		String half = note(0, 2500);
+
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		RecordFile rf = ti.open(tx);
+		rf.insert();
+		rf.setVal("id", new IntegerConstant(0));
+		rf.setVal("a", new VarcharConstant(half));
+		RecordId rid = rf.currentRecordId();
+		try {
+			rf.setVal("b", new VarcharConstant(half));
+			fail("*****RecordTest: moved a record larger than a page");
+		} catch (SchemaIncompatibleException e) {
+		}
+
+		// the failed move must not leave a half-written record behind
+		rf.moveToRecordId(rid);
+		assertEquals("*****RecordTest: bad unmoved record", half, rf.getVal(
+				"a").asJavaVal());
+		assertEquals("*****RecordTest: bad unmoved record", "", rf.getVal(
+				"b").asJavaVal());
+		rf.insert();
+		assertEquals("*****RecordTest: move target not empty", new RecordId(
+				new BlockId(ti.fileName(), 1), 0), rf.currentRecordId());
+		rf.close();
+		tx.rollback();
+	}
+
+	@Test
+	public void testFreeSpaceMap() {
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+		sch.addField("pad", VARCHAR(100));
+		TableInfo fti = new TableInfo("testfreespace", sch);
+		int max = 500;
+
+		// Part 1: Fill some blocks, then free a slot in the second one
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		RecordFile rf = fti.open(tx);
+		RecordId freed = null;
+		for (int id = 0; id < max; id++) {
+			rf.insert();
+			rf.setVal("id", new IntegerConstant(id));
+			if (freed == null && rf.currentRecordId().block().number() == 1)
+				freed = rf.currentRecordId();
+		}
+		long size = rf.fileSize();
+		assertTrue("*****RecordTest: too few blocks", size > 2);
+		rf.moveToRecordId(freed);
+		rf.delete();
+		rf.insert();
+		assertEquals("*****RecordTest: freed slot not reused", freed,
+				rf.currentRecordId());
+		rf.insert();
+		assertEquals("*****RecordTest: full blocks not skipped", size - 1, rf
+				.currentRecordId().block().number());
+		rf.close();
+		tx.commit();
+
+		// Part 2: The marks of a rolled back transaction are undone
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = fti.open(tx);
+		for (int id = 0; id < max; id++)
+			rf.insert();
+		rf.close();
+		tx.rollback();
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = fti.open(tx);
+		rf.insert();
+		assertTrue("*****RecordTest: bad marks after rollback", rf
+				.currentRecordId().block().number() <= size);
+		rf.close();
+		tx.rollback();
+
+		// Part 3: A rollback keeps the marks of other transactions in a word
+		Transaction tx1 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Transaction tx2 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		long blkNum = 1000;
+		new FreeSpaceMap(fti.fileName(), tx2).markFull(blkNum + 1);
+		new FreeSpaceMap(fti.fileName(), tx1).markFull(blkNum);
+		tx1.commit();
+		tx2.rollback();
+		tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		assertEquals("*****RecordTest: bad marks after rollback", blkNum + 1,
+				new FreeSpaceMap(fti.fileName(), tx).nextFree(blkNum,
+						blkNum + 2));
+		tx.commit();
+	}
+
+	@Test
+	public void testBulkLoad() {
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+		sch.addField("note", VARCHAR(300));
+		TableInfo[] tis = { new TableInfo("testloadfixed", sch),
+				new TableInfo("testloadslotted", sch,
+						TableInfo.FORMAT_SLOTTED) };
+		// enough records for more than a batch of fixed pages
+		int max = 2000;
+		for (TableInfo lti : tis) {
+			// Part 1: Load the records, and check them by scan and by IDs
+			Transaction tx = VanillaDB.transaction(
+					Connection.TRANSACTION_SERIALIZABLE, false);
+			RecordId[] rids = new RecordId[max];
+			RecordLoader loader = new RecordLoader(lti, tx);
+			for (int id = 0; id < max; id++) {
+				loader.insert();
+				loader.setVal("id", new DoubleConstant(id));
+				loader.setVal("note", new VarcharConstant(note(id, id % 7)));
+				rids[id] = loader.currentRecordId();
+			}
+			loader.close();
+			RecordFile rf = lti.open(tx);
+			checkSlotted(rf, rids, -1);
+			// the loaded blocks but the last one are marked full
+			rf.insert();
+			assertEquals("*****RecordTest: loaded blocks not marked",
+					rf.fileSize() - 1, rf.currentRecordId().block().number());
+			rf.delete();
+			rf.close();
+			tx.commit();
+
+			// Part 2: The records of a rolled back load are removed
+			tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE,
+					false);
+			loader = new RecordLoader(lti, tx);
+			for (int id = 0; id < max; id++) {
+				loader.insert();
+				loader.setVal("id", new IntegerConstant(max + id));
+				loader.setVal("note", new VarcharConstant(note(id, 5)));
+			}
+			loader.close();
+			tx.rollback();
+
+			tx = VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE,
+					false);
+			rf = lti.open(tx);
+			checkSlotted(rf, rids, -1);
+			rf.close();
+			tx.commit();
+		}
+	}
+
+	/**
+	 * Checks the records of a slotted file by a scan and by their IDs. The
+	 * note of record <code>id</code> is expected to be of the specified length,
+	 * or <code>id % 7</code> long if the length is negative.
+	 */
+	private void checkSlotted(RecordFile rf, RecordId[] rids, int length) {
+		int count = 0;
+		rf.beforeFirst();
+		while (rf.next()) {
+			int id = (Integer) rf.getVal("id").asJavaVal();
+			assertEquals("*****RecordTest: bad slotted scan", note(id,
+					length < 0 ? id % 7 : length), rf.getVal("note")
+					.asJavaVal());
+			count++;
+		}
+		assertEquals("*****RecordTest: wrong number of records", rids.length,
+				count);
+		for (int id = 0; id < rids.length; id++) {
+			rf.moveToRecordId(rids[id]);
+			assertEquals("*****RecordTest: bad slotted record id", id,
+					rf.getInt("id"));
+			assertEquals("*****RecordTest: bad slotted record id", note(id,
+					length < 0 ? id % 7 : length), rf.getVal("note")
+					.asJavaVal());
+		}
+	}
+
+	private static String note(int id, int length) {
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < length)
+			sb.append((char) ('a' + (id + sb.length()) % 26));
+		return sb.toString();
+	}
 }
 
 class TestFormatter implements PageFormatter {
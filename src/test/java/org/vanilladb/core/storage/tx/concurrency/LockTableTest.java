@@ -1,5 +1,6 @@
 package org.vanilladb.core.storage.tx.concurrency;
 
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.logging.Level;
@@ -166,4 +167,64 @@ public class LockTableTest {
 			fail("*****LockTableTest: bad slocks");
 		}
 	}
+
+	@Test
+	public void testWaitQueue() throws InterruptedException {
+		lockTbl.xLock(blocks[0], txNum1);
+		final boolean[] granted = new boolean[1];
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				lockTbl.sLock(blocks[0], txNum2);
+				granted[0] = true;
+			}
+		};
+		waiter.start();
+		// a release on another item does not grant the lock
+		lockTbl.sLock(blocks[1], txNum1);
+		lockTbl.release(blocks[1], txNum1, LockTable.S_LOCK);
+		Thread.sleep(100);
+		assertTrue("*****LockTableTest: slock allowed after xlock",
+				!granted[0]);
+		lockTbl.releaseAll(txNum1, false);
+		waiter.join();
+		assertTrue("*****LockTableTest: bad wait queue", granted[0]);
+		lockTbl.releaseAll(txNum2, false);
+	}
+
+	@Test
+	public void testDeadlock() throws InterruptedException {
+		lockTbl.xLock(blocks[0], txNum1);
+		lockTbl.xLock(blocks[1], txNum2);
+		final boolean[] granted = new boolean[1];
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				// closes the cycle, the longer waiting tx1 is the victim
+				lockTbl.xLock(blocks[0], txNum2);
+				granted[0] = true;
+			}
+		};
+		long numDeadlocks = lockTbl.numDeadlocks();
+		long timestamp = System.currentTimeMillis();
+		waiter.start();
+		try {
+			lockTbl.sLock(blocks[1], txNum1);
+			fail("*****LockTableTest: deadlock not detected");
+		} catch (LockAbortException e) {
+		}
+		assertTrue("*****LockTableTest: bad deadlock detection",
+				System.currentTimeMillis() - timestamp < 1000);
+		assertTrue("*****LockTableTest: bad deadlock count",
+				lockTbl.numDeadlocks() == numDeadlocks + 1);
+		// the victim rolls back, so the other transaction proceeds
+		lockTbl.releaseAll(txNum1, false);
+		waiter.join();
+		assertTrue("*****LockTableTest: bad deadlock detection", granted[0]);
+		lockTbl.releaseAll(txNum2, false);
+	}
 }
@@ -0,0 +1,241 @@
+package org.vanilladb.core.storage.tx.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.sql.Connection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.remote.jdbc.VanillaDbConnection;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordLoader;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class SnapshotIsolationTest {
+	private static Logger logger = Logger.getLogger(SnapshotIsolationTest.class
+			.getName());
+
+	// versions are not kept for temporary files
+	private static String fileName = "snapshotisolationtest.0";
+	private static BufferMgr bufferMgr;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.initData();
+		bufferMgr = VanillaDB.bufferMgr();
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN SNAPSHOT ISOLATION TEST");
+	}
+
+	@Test
+	public void testSnapshotRead() {
+		BlockId blk = new BlockId(fileName, 0);
+		int numChains = ConcurrencyMgr.versionStore().numChains();
+		Transaction tx0 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		write(tx0, blk, 100);
+		tx0.commit();
+
+		Transaction reader1 = VanillaDB.transaction(
+				VanillaDbConnection.TRANSACTION_SNAPSHOT, true);
+		Transaction tx1 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		write(tx1, blk, 200);
+		write(tx1, blk, 300);
+		// the reader is not blocked by the xlock of tx1
+		assertEquals("*****SnapshotIsolationTest: bad uncommitted read", 100,
+				read(reader1, blk));
+		tx1.commit();
+		assertEquals("*****SnapshotIsolationTest: bad repeated read", 100,
+				read(reader1, blk));
+
+		Transaction reader2 = VanillaDB.transaction(
+				VanillaDbConnection.TRANSACTION_SNAPSHOT, true);
+		assertEquals("*****SnapshotIsolationTest: bad committed read", 300,
+				read(reader2, blk));
+
+		Transaction tx2 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		write(tx2, blk, 400);
+		tx2.rollback();
+		assertEquals("*****SnapshotIsolationTest: bad read after rollback",
+				100, read(reader1, blk));
+		assertEquals("*****SnapshotIsolationTest: bad read after rollback",
+				300, read(reader2, blk));
+
+		reader1.commit();
+		reader2.commit();
+		// no snapshot needs the old versions any more
+		assertTrue("*****SnapshotIsolationTest: bad garbage collection",
+				ConcurrencyMgr.versionStore().numChains() <= numChains);
+	}
+
+	@Test
+	public void testSlottedSnapshotRead() {
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+		sch.addField("note", VARCHAR(50));
+		TableInfo ti = new TableInfo("snapshotslotted", sch,
+				TableInfo.FORMAT_SLOTTED);
+		Transaction tx0 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		RecordFile rf = ti.open(tx0);
+		for (int id = 0; id < 10; id++) {
+			rf.insert();
+			rf.setVal("id", new IntegerConstant(id));
+			rf.setVal("note", new VarcharConstant("old" + id));
+		}
+		rf.close();
+		tx0.commit();
+
+		Transaction reader = VanillaDB.transaction(
+				VanillaDbConnection.TRANSACTION_SNAPSHOT, true);
+		Transaction tx1 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = ti.open(tx1);
+		rf.beforeFirst();
+		while (rf.next()) {
+			int id = (Integer) rf.getVal("id").asJavaVal();
+			if (id % 2 == 0)
+				rf.delete();
+			else
+				rf.setVal("note", new VarcharConstant("a longer new note "
+						+ id));
+		}
+		rf.close();
+		assertEquals("*****SnapshotIsolationTest: bad slotted read",
+				"old0 old1 old2 old3 old4 old5 old6 old7 old8 old9",
+				scan(reader, ti));
+		tx1.commit();
+		assertEquals("*****SnapshotIsolationTest: bad slotted read",
+				"old0 old1 old2 old3 old4 old5 old6 old7 old8 old9",
+				scan(reader, ti));
+		reader.commit();
+
+		reader = VanillaDB.transaction(
+				VanillaDbConnection.TRANSACTION_SNAPSHOT, true);
+		assertEquals("*****SnapshotIsolationTest: bad slotted read",
+				"a longer new note 1 a longer new note 3 a longer new note 5 "
+						+ "a longer new note 7 a longer new note 9",
+				scan(reader, ti));
+		reader.commit();
+	}
+
+	@Test
+	public void testBulkLoadSnapshotRead() {
+		Schema sch = new Schema();
+		sch.addField("id", INTEGER);
+		sch.addField("note", VARCHAR(50));
+		TableInfo ti = new TableInfo("snapshotload", sch);
+		Transaction tx0 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		RecordFile rf = ti.open(tx0);
+		rf.insert();
+		rf.setVal("id", new IntegerConstant(0));
+		rf.setVal("note", new VarcharConstant("old0"));
+		rf.close();
+		tx0.commit();
+
+		Transaction reader = VanillaDB.transaction(
+				VanillaDbConnection.TRANSACTION_SNAPSHOT, true);
+		Transaction tx1 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		RecordLoader loader = new RecordLoader(ti, tx1);
+		for (int id = 1; id < 3; id++) {
+			loader.insert();
+			loader.setVal("id", new IntegerConstant(id));
+			loader.setVal("note", new VarcharConstant("new" + id));
+		}
+		loader.close();
+		tx1.commit();
+		// the loaded pages are hidden from the snapshot started before
+		assertEquals("*****SnapshotIsolationTest: bad bulk load read",
+				"old0", scan(reader, ti));
+		reader.commit();
+
+		reader = VanillaDB.transaction(
+				VanillaDbConnection.TRANSACTION_SNAPSHOT, true);
+		assertEquals("*****SnapshotIsolationTest: bad bulk load read",
+				"old0 new1 new2", scan(reader, ti));
+		reader.commit();
+	}
+
+	@Test
+	public void testWriteBeforeSnapshot() {
+		BlockId blk = new BlockId(fileName, 1);
+		Transaction tx0 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		write(tx0, blk, 500);
+		tx0.commit();
+
+		// the old value is kept even though no snapshot is active
+		Transaction tx1 = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		write(tx1, blk, 600);
+		// so a new snapshot starts without waiting for the writer
+		Transaction reader = VanillaDB.transaction(
+				VanillaDbConnection.TRANSACTION_SNAPSHOT, true);
+		assertEquals("*****SnapshotIsolationTest: bad write before snapshot",
+				500, read(reader, blk));
+		tx1.commit();
+		assertEquals("*****SnapshotIsolationTest: bad write before snapshot",
+				500, read(reader, blk));
+		reader.commit();
+
+		reader = VanillaDB.transaction(
+				VanillaDbConnection.TRANSACTION_SNAPSHOT, true);
+		assertEquals("*****SnapshotIsolationTest: bad write before snapshot",
+				600, read(reader, blk));
+		reader.commit();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly() {
+		VanillaDB.transaction(VanillaDbConnection.TRANSACTION_SNAPSHOT, false);
+	}
+
+	private void write(Transaction tx, BlockId blk, int val) {
+		Buffer buff = bufferMgr.pin(blk, tx.getTransactionNumber());
+		tx.concurrencyMgr().xLock(blk);
+		Constant c = new IntegerConstant(val);
+		long lsn = tx.recoveryMgr().setVal(buff, 0, c);
+		buff.setVal(0, c, tx.getTransactionNumber(), lsn);
+		bufferMgr.unpin(tx.getTransactionNumber(), buff);
+	}
+
+	private String scan(Transaction tx, TableInfo ti) {
+		StringBuilder sb = new StringBuilder();
+		RecordFile rf = ti.open(tx);
+		rf.beforeFirst();
+		while (rf.next())
+			sb.append(sb.length() == 0 ? "" : " ").append(
+					rf.getVal("note").asJavaVal());
+		rf.close();
+		return sb.toString();
+	}
+
+	private int read(Transaction tx, BlockId blk) {
+		Buffer buff = bufferMgr.pin(blk, tx.getTransactionNumber());
+		tx.concurrencyMgr().sLock(blk);
+		int val = (Integer) tx.concurrencyMgr().getVal(buff, 0, INTEGER)
+				.asJavaVal();
+		bufferMgr.unpin(tx.getTransactionNumber(), buff);
+		return val;
+	}
+}
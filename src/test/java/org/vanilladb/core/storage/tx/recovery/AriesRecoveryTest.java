@@ -0,0 +1,194 @@
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_COMPENSATION;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_FUZZY_CHECKPOINT;
+
+import java.sql.Connection;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDB;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class AriesRecoveryTest {
+	private static Logger logger = Logger.getLogger(AriesRecoveryTest.class
+			.getName());
+	private static String fileName = "ariesrecoverytest.0";
+
+	private static BlockId blk;
+	private static BufferMgr bm;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.initData();
+
+		blk = new BlockId(fileName, 12);
+		bm = VanillaDB.bufferMgr();
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN ARIES RECOVERY TEST");
+	}
+
+	@Before
+	public void setup() {
+		// reset initial values in the block
+		long txNum = 250;
+		Buffer buff = bm.pin(blk, txNum);
+		buff.setVal(4, new IntegerConstant(9876), txNum, -1);
+		buff.setVal(20, new VarcharConstant("abcdefg"), txNum, -1);
+		buff.setVal(104, new IntegerConstant(9999), txNum, -1);
+		buff.setVal(120, new VarcharConstant("gfedcba"), txNum, -1);
+		bm.flushAll(txNum);
+		bm.unpin(txNum, buff);
+	}
+
+	@Test
+	public void testRollback() {
+		Transaction tx = newTransaction();
+		long txNum = tx.getTransactionNumber();
+		RecoveryMgr rm = new AriesRecoveryMgr(txNum);
+		Buffer buff = bm.pin(blk, txNum);
+		long lsn = rm.setVal(buff, 4, new IntegerConstant(1234));
+		buff.setVal(4, new IntegerConstant(1234), txNum, lsn);
+		lsn = rm.setVal(buff, 20, new VarcharConstant("xyz"));
+		buff.setVal(20, new VarcharConstant("xyz"), txNum, lsn);
+		bm.unpin(txNum, buff);
+
+		rm.onTxRollback(tx);
+
+		buff = bm.pin(blk, txNum);
+		int ti = (Integer) buff.getVal(4, INTEGER).asJavaVal();
+		String ts = (String) buff.getVal(20, VARCHAR).asJavaVal();
+		assertTrue("*****AriesRecoveryTest: bad rollback",
+				ti == 9876 && ts.equals("abcdefg"));
+		bm.unpin(txNum, buff);
+
+		// each undone update is compensated
+		int numClrs = 0;
+		Iterator<LogRecord> iter = new LogRecordIterator();
+		while (iter.hasNext()) {
+			LogRecord rec = iter.next();
+			if (rec.txNumber() != txNum)
+				continue;
+			if (rec.op() == LogRecord.OP_START)
+				break;
+			if (rec.op() == OP_COMPENSATION)
+				numClrs++;
+		}
+		assertTrue("*****AriesRecoveryTest: bad compensation", numClrs == 2);
+	}
+
+	@Test
+	public void testRecover() {
+		AriesRecoveryMgr.checkpoint();
+		Transaction tx1 = newTransaction();
+		long txNum1 = tx1.getTransactionNumber();
+		RecoveryMgr rm1 = new AriesRecoveryMgr(txNum1);
+		Transaction tx2 = newTransaction();
+		long txNum2 = tx2.getTransactionNumber();
+		RecoveryMgr rm2 = new AriesRecoveryMgr(txNum2);
+
+		Buffer buff = bm.pin(blk, txNum1);
+		long lsn = rm1.setVal(buff, 104, new IntegerConstant(1234));
+		buff.setVal(104, new IntegerConstant(1234), txNum1, lsn);
+		lsn = rm2.setVal(buff, 120, new VarcharConstant("xyz"));
+		buff.setVal(120, new VarcharConstant("xyz"), txNum2, lsn);
+		bm.unpin(txNum1, buff);
+		rm2.onTxCommit(tx2);
+
+		// the committed update was not forced, so losing the page loses it
+		long txNum = 250;
+		buff = bm.pin(blk, txNum);
+		buff.setVal(120, new VarcharConstant("gfedcba"), txNum, -1);
+		bm.unpin(txNum, buff);
+
+		Transaction tx3 = newTransaction();
+		new AriesRecoveryMgr(tx3.getTransactionNumber()).recover();
+
+		// tx2 is redone and tx1 is rolled back
+		buff = bm.pin(blk, txNum1);
+		int ti = (Integer) buff.getVal(104, INTEGER).asJavaVal();
+		String ts = (String) buff.getVal(120, VARCHAR).asJavaVal();
+		assertTrue("*****AriesRecoveryTest: bad recovery",
+				ti == 9999 && ts.equals("xyz"));
+		bm.unpin(txNum1, buff);
+
+		// the recovery ends with a fuzzy checkpoint
+		Iterator<LogRecord> iter = new LogRecordIterator();
+		assertTrue("*****AriesRecoveryTest: bad checkpoint",
+				iter.next().op() == OP_FUZZY_CHECKPOINT);
+	}
+
+	@Test
+	public void testPageImage() {
+		AriesRecoveryMgr.checkpoint();
+		Transaction tx = newTransaction();
+		long txNum = tx.getTransactionNumber();
+		RecoveryMgr rm = new AriesRecoveryMgr(txNum);
+		Buffer buff = bm.pin(blk, txNum);
+		int offset = 200, length = 3000;
+		byte[] oldBytes = buff.getBytes(offset, length);
+		byte[] newBytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			newBytes[i] = (byte) (i % 127 + 1);
+		long lsn = rm.setBytes(buff, offset, newBytes);
+		buff.setBytes(offset, newBytes, txNum, lsn);
+		bm.unpin(txNum, buff);
+
+		rm.onTxRollback(tx);
+
+		buff = bm.pin(blk, txNum);
+		assertArrayEquals("*****AriesRecoveryTest: bad page image rollback",
+				oldBytes, buff.getBytes(offset, length));
+		bm.unpin(txNum, buff);
+
+		// each page image record is compensated
+		int numImages = 0, numClrs = 0;
+		Iterator<LogRecord> iter = new LogRecordIterator();
+		while (iter.hasNext()) {
+			LogRecord rec = iter.next();
+			if (rec.txNumber() != txNum)
+				continue;
+			if (rec.op() == LogRecord.OP_START)
+				break;
+			if (rec.op() == LogRecord.OP_PAGE_IMAGE)
+				numImages++;
+			if (rec.op() == OP_COMPENSATION)
+				numClrs++;
+		}
+		assertTrue("*****AriesRecoveryTest: bad page image compensation",
+				numImages > 1 && numClrs == numImages);
+
+		// the rollback was not forced, so losing the page loses it
+		buff = bm.pin(blk, txNum);
+		buff.setBytes(offset, newBytes, 250, -1);
+		bm.unpin(txNum, buff);
+
+		Transaction tx2 = newTransaction();
+		new AriesRecoveryMgr(tx2.getTransactionNumber()).recover();
+
+		buff = bm.pin(blk, txNum);
+		assertArrayEquals("*****AriesRecoveryTest: bad page image redo",
+				oldBytes, buff.getBytes(offset, length));
+		bm.unpin(txNum, buff);
+	}
+
+	private Transaction newTransaction() {
+		return VanillaDB.transaction(Connection.TRANSACTION_SERIALIZABLE,
+				false);
+	}
+}
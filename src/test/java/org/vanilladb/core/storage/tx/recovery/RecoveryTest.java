@@ -1,5 +1,6 @@
 package org.vanilladb.core.storage.tx.recovery;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
@@ -98,6 +99,39 @@ public class RecoveryTest {
 		bm.unpin(txNum, buff);
 	}
 
+	@Test
+	public void testPageImageRollback() {
+		// the image spans more bytes than a log record can hold
+		Transaction tx = VanillaDB.transaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		RecoveryMgr rm = tx.recoveryMgr();
+		long txNum = tx.getTransactionNumber();
+		Buffer buff = bm.pin(blk, txNum);
+		int offset = 200, length = 3000;
+		byte[] oldBytes = buff.getBytes(offset, length);
+		byte[] newBytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			newBytes[i] = (byte) (i % 127 + 1);
+		long lsn = rm.setBytes(buff, offset, newBytes);
+		buff.setBytes(offset, newBytes, txNum, lsn);
+		bm.unpin(txNum, buff);
+		bm.flushAll(txNum);
+
+		buff = bm.pin(blk, txNum);
+		assertArrayEquals("*****RecoveryTest: page image not written",
+				newBytes, buff.getBytes(offset, length));
+		bm.unpin(txNum, buff);
+
+		rm.onTxRollback(tx);
+
+		buff = bm.pin(blk, txNum);
+		assertArrayEquals("*****RecoveryTest: bad page image rollback",
+				oldBytes, buff.getBytes(offset, length));
+		assertTrue("*****RecoveryTest: bad page image rollback", buff
+				.getVal(104, INTEGER).equals(new IntegerConstant(9999)));
+		bm.unpin(txNum, buff);
+	}
+
 	@Test
 	public void testRecover() {
 		// use different txs to log and make changes to those values